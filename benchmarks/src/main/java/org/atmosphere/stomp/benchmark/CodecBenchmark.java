@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.benchmark;
+
+import org.apache.activemq.apollo.broker.store.MessageRecord;
+import org.apache.activemq.apollo.stomp.StompCodec;
+import org.apache.activemq.util.DataByteArrayOutputStream;
+import org.apache.activemq.transport.stomp.StompWireFormat;
+import org.atmosphere.stomp.protocol.Action;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.ParseException;
+import org.atmosphere.stomp.protocol.Parser;
+import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.protocol.StompFormatImpl;
+import org.fusesource.hawtbuf.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the decoding of the frames sent by clients and the encoding of the frames sent by the server with the
+ * {@link StompFormatImpl} used by the interceptors, the {@link Parser} it relies on, and the alternative codecs from
+ * Apollo and ActiveMQ.
+ * </p>
+ *
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar CodecBenchmark -prof gc} to get the allocated bytes per operation
+ * ({@code gc.alloc.rate.norm}) in addition to the throughput.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * Number of custom headers in each frame.
+     */
+    @Param({ "0", "8", "32" })
+    public int headers;
+
+    /**
+     * Size of the body in bytes.
+     */
+    @Param({ "0", "128", "4096", "65536", "1048576" })
+    public int bodySize;
+
+    /**
+     * Nature of the body characters.
+     */
+    @Param({ "ASCII", "UTF8" })
+    public FrameMix.BodyCharset charset;
+
+    /**
+     * The codec used by the interceptors.
+     */
+    private StompFormat stompFormat;
+
+    /**
+     * A SEND frame as read by the interceptor, without its null byte.
+     */
+    private String input;
+
+    /**
+     * The bytes of the SEND frame as received on the wire.
+     */
+    private byte[] wire;
+
+    /**
+     * A MESSAGE frame to encode.
+     */
+    private Frame message;
+
+    /**
+     * The MESSAGE frame for the Apollo codec.
+     */
+    private org.apache.activemq.apollo.stomp.StompFrame apolloMessage;
+
+    /**
+     * The MESSAGE frame for the ActiveMQ codec.
+     */
+    private org.apache.activemq.transport.stomp.StompFrame activeMqMessage;
+
+    /**
+     * <p>
+     * Builds the frames.
+     * </p>
+     *
+     * @throws ParseException if frame is not valid
+     */
+    @Setup
+    public void setup() throws ParseException {
+        stompFormat = new StompFormatImpl();
+
+        final String body = FrameMix.body(bodySize, charset);
+        final Map<String, String> h = FrameMix.headers(headers, body);
+        final String send = FrameMix.frame(Action.SEND, h, body);
+        input = send.substring(0, send.length() - 1);
+        wire = send.getBytes(FrameMix.UTF_8);
+
+        message = new Frame(Action.MESSAGE, h, body);
+        apolloMessage = decodeApollo(FrameMix.frame(Action.MESSAGE, h, body).getBytes(FrameMix.UTF_8));
+        activeMqMessage = new org.apache.activemq.transport.stomp.StompFrame(Action.MESSAGE.toString(), h, body.getBytes(FrameMix.UTF_8));
+    }
+
+    /**
+     * <p>
+     * Decodes a frame with the Apollo codec.
+     * </p>
+     *
+     * @param bytes the frame
+     * @return the decoded frame
+     */
+    private static org.apache.activemq.apollo.stomp.StompFrame decodeApollo(final byte[] bytes) {
+        final MessageRecord mr = new MessageRecord();
+        mr.buffer_$eq(new Buffer(bytes));
+        return StompCodec.decode(mr).frame();
+    }
+
+    /**
+     * <p>
+     * Decodes a frame with the codec used by the interceptors.
+     * </p>
+     *
+     * @return the frame
+     * @throws ParseException if frame is not valid
+     */
+    @Benchmark
+    public Frame stompFormatParse() throws ParseException {
+        return stompFormat.parse(input);
+    }
+
+    /**
+     * <p>
+     * Encodes a frame with the codec used by the interceptors.
+     * </p>
+     *
+     * @return the frame
+     */
+    @Benchmark
+    public String stompFormatFormat() {
+        return stompFormat.format(message);
+    }
+
+    /**
+     * <p>
+     * Decodes a frame with the {@link Parser}.
+     * </p>
+     *
+     * @return the frame
+     * @throws ParseException if frame is not valid
+     */
+    @Benchmark
+    public Frame parserToFrame() throws ParseException {
+        return new Parser(input).toFrame();
+    }
+
+    /**
+     * <p>
+     * Decodes a frame with the Apollo codec only.
+     * </p>
+     *
+     * @return the frame
+     */
+    @Benchmark
+    public Object apolloDecode() {
+        return decodeApollo(wire);
+    }
+
+    /**
+     * <p>
+     * Encodes a frame with the Apollo codec only.
+     * </p>
+     *
+     * @return the encoded frame
+     */
+    @Benchmark
+    public Object apolloEncode() {
+        final DataByteArrayOutputStream out = new DataByteArrayOutputStream(bodySize + 256);
+        new StompCodec().encode(apolloMessage, out);
+        return out;
+    }
+
+    /**
+     * <p>
+     * Decodes a frame with the ActiveMQ codec.
+     * </p>
+     *
+     * @return the frame
+     * @throws IOException if frame is not valid
+     */
+    @Benchmark
+    public Object activeMqUnmarshal() throws IOException {
+        return new StompWireFormat().unmarshal(new DataInputStream(new ByteArrayInputStream(wire)));
+    }
+
+    /**
+     * <p>
+     * Encodes a frame with the ActiveMQ codec.
+     * </p>
+     *
+     * @return the encoded frame
+     * @throws IOException if encoding fails
+     */
+    @Benchmark
+    public Object activeMqMarshal() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bodySize + 256);
+        new StompWireFormat().marshal(activeMqMessage, new DataOutputStream(out));
+        return out;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.benchmark;
+
+import org.atmosphere.cpr.ApplicationConfig;
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereFramework;
+import org.atmosphere.cpr.AtmosphereHandler;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereRequestImpl;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceImpl;
+import org.atmosphere.cpr.AtmosphereResponseImpl;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.stomp.StompBroadcastFilter;
+import org.atmosphere.stomp.Subscriptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * Measures the cost of the delivery of a message to its subscribers by the {@link StompBroadcastFilter}. Each
+ * subscriber is an {@link AtmosphereResource} without connection whose {@link Subscriptions} are fetched through the
+ * session factory like in production. One subscription of each subscriber matches the destination, the others target
+ * other destinations.
+ * </p>
+ *
+ * <p>
+ * {@link #deliver(Blackhole)} filters the message for one subscriber at a time, so its score is the per-subscriber
+ * cost. {@link #broadcast(Blackhole)} filters the message for all the subscribers, so its score is the cost of a
+ * broadcast.
+ * </p>
+ *
+ * <p>
+ * The resources are not Mockito mocks because a mock records all its invocations, which would grow the heap during
+ * the measurement and distort the results.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FanOutBenchmark {
+
+    /**
+     * The destination the message is broadcasted to.
+     */
+    private static final String DESTINATION = "/topic/benchmark";
+
+    /**
+     * Number of subscribers.
+     */
+    @Param({ "1", "100", "1000", "10000", "100000" })
+    public int subscribers;
+
+    /**
+     * Number of subscriptions of each subscriber.
+     */
+    @Param({ "1", "10", "50" })
+    public int subscriptions;
+
+    /**
+     * Size of the broadcasted body in bytes.
+     */
+    @Param({ "128" })
+    public int bodySize;
+
+    /**
+     * The framework.
+     */
+    private AtmosphereFramework framework;
+
+    /**
+     * The filter.
+     */
+    private StompBroadcastFilter filter;
+
+    /**
+     * The subscribers.
+     */
+    private AtmosphereResource[] resources;
+
+    /**
+     * The broadcasted message.
+     */
+    private String message;
+
+    /**
+     * The next subscriber to deliver.
+     */
+    private int next;
+
+    /**
+     * <p>
+     * Initializes the framework and registers the subscribers.
+     * </p>
+     *
+     * @throws ServletException if framework can't be initialized
+     */
+    @Setup
+    public void setup() throws ServletException {
+        framework = new AtmosphereFramework();
+        framework.init(new ServletConfig() {
+            @Override
+            public String getServletName() {
+                return "benchmark";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return mock(ServletContext.class);
+            }
+
+            @Override
+            public String getInitParameter(final String name) {
+                return null;
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return null;
+            }
+        });
+
+        final AtmosphereConfig config = framework.getAtmosphereConfig();
+        final Broadcaster broadcaster = framework.getBroadcasterFactory().lookup(DESTINATION, true);
+        filter = new StompBroadcastFilter();
+        filter.init(config);
+        message = FrameMix.body(bodySize, FrameMix.BodyCharset.ASCII);
+        resources = new AtmosphereResource[subscribers];
+
+        for (int i = 0; i < subscribers; i++) {
+            final AtmosphereRequest req = new AtmosphereRequestImpl.Builder().pathInfo(DESTINATION).method("GET").build();
+            req.setAttribute(ApplicationConfig.SUSPENDED_ATMOSPHERE_RESOURCE_UUID, "subscriber-" + i);
+
+            final AtmosphereResourceImpl r = new AtmosphereResourceImpl();
+            r.initialize(config, broadcaster, req, AtmosphereResponseImpl.newInstance(), framework.getAsyncSupport(), new NoopHandler());
+
+            final Subscriptions s = Subscriptions.getFromSession(config.sessionFactory().getSession(r));
+            s.addSubscription("0", DESTINATION);
+
+            for (int j = 1; j < subscriptions; j++) {
+                s.addSubscription(String.valueOf(j), "/topic/other-" + j);
+            }
+
+            resources[i] = r;
+        }
+    }
+
+    /**
+     * <p>
+     * Shuts down the framework.
+     * </p>
+     */
+    @TearDown
+    public void tearDown() {
+        filter.destroy();
+        framework.destroy();
+    }
+
+    /**
+     * <p>
+     * Filters the message for the next subscriber.
+     * </p>
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void deliver(final Blackhole bh) {
+        final AtmosphereResource r = resources[next];
+        next = next + 1 == resources.length ? 0 : next + 1;
+        bh.consume(filter.filter(DESTINATION, r, message, message));
+    }
+
+    /**
+     * <p>
+     * Filters the message for all the subscribers.
+     * </p>
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void broadcast(final Blackhole bh) {
+        for (final AtmosphereResource r : resources) {
+            bh.consume(filter.filter(DESTINATION, r, message, message));
+        }
+    }
+
+    /**
+     * <p>
+     * A handler that does nothing.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class NoopHandler implements AtmosphereHandler {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRequest(final AtmosphereResource resource) throws IOException {
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onStateChange(final AtmosphereResourceEvent event) throws IOException {
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.benchmark;
+
+import org.atmosphere.stomp.protocol.Action;
+import org.atmosphere.stomp.protocol.Header;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Builds realistic frames for the benchmarks: the number of custom headers, the body size in bytes and the nature of
+ * the body characters can vary.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public final class FrameMix {
+
+    /**
+     * The charset used on the wire.
+     */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Characters used in ASCII bodies.
+     */
+    private static final String ASCII = "abcdefghijklmnopqrstuvwxyz0123456789 {}:,\"";
+
+    /**
+     * Characters used in UTF-8 bodies, encoded with one to three bytes.
+     */
+    private static final String UNICODE = "a\u00e9\u20ac\u00fc\u6f22 {}:,\"";
+
+    /**
+     * <p>
+     * The nature of the body characters.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public enum BodyCharset {
+
+        /**
+         * Only ASCII characters.
+         */
+        ASCII,
+
+        /**
+         * Characters encoded on several bytes in UTF-8.
+         */
+        UTF8
+    }
+
+    /**
+     * <p>
+     * Private constructor for utility class.
+     * </p>
+     */
+    private FrameMix() {
+    }
+
+    /**
+     * <p>
+     * Builds a body whose UTF-8 encoding has the given size.
+     * </p>
+     *
+     * @param size the size in bytes
+     * @param charset the nature of the characters
+     * @return the body
+     */
+    public static String body(final int size, final BodyCharset charset) {
+        final String chars = charset == BodyCharset.ASCII ? ASCII : UNICODE;
+        final StringBuilder sb = new StringBuilder(size);
+        int bytes = 0;
+
+        for (int i = 0; bytes < size; i++) {
+            final char c = chars.charAt(i % chars.length());
+            final int length = String.valueOf(c).getBytes(UTF_8).length;
+
+            // Fill the last bytes with ASCII characters to get the exact size
+            if (bytes + length > size) {
+                sb.append('a');
+                bytes++;
+            } else {
+                sb.append(c);
+                bytes += length;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * <p>
+     * Builds the headers of a frame sent to a destination with the given number of custom headers.
+     * </p>
+     *
+     * @param custom the number of custom headers
+     * @param body the body
+     * @return the headers
+     */
+    public static Map<String, String> headers(final int custom, final String body) {
+        final Map<String, String> retval = new LinkedHashMap<String, String>();
+        retval.put(Header.DESTINATION, "/queue/benchmark");
+        retval.put(Header.CONTENT_TYPE, "text/plain");
+        retval.put(Header.CONTENT_LENGTH, String.valueOf(body.getBytes(UTF_8).length));
+
+        for (int i = 0; i < custom; i++) {
+            retval.put("x-header-" + i, "value-" + i);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Builds the text of a frame terminated by the null byte, as sent by a client.
+     * </p>
+     *
+     * @param action the action
+     * @param headers the headers
+     * @param body the body
+     * @return the frame
+     */
+    public static String frame(final Action action, final Map<String, String> headers, final String body) {
+        final StringBuilder sb = new StringBuilder(body.length() + 256);
+        sb.append(action.toString()).append('\n');
+
+        for (final Map.Entry<String, String> h : headers.entrySet()) {
+            sb.append(h.getKey()).append(':').append(h.getValue()).append('\n');
+        }
+
+        return sb.append('\n').append(body).append('\u0000').toString();
+    }
+}
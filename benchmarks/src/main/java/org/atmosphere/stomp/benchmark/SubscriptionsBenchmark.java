@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.benchmark;
+
+import org.atmosphere.stomp.Subscriptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Measures the contention on a {@link Subscriptions} instance shared by several threads, like the subscriptions of a
+ * session updated by the SUBSCRIBE and UNSUBSCRIBE frames while the broadcasts look them up.
+ * </p>
+ *
+ * <p>
+ * {@link #lookup()} and {@link #addRemove()} run alone with the number of threads given by the {@code -t} option,
+ * for instance {@code -t 1}, {@code -t 4} and then {@code -t 16} to see where the throughput collapses. The
+ * {@code mixed} group runs three readers for one writer.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionsBenchmark {
+
+    /**
+     * Number of subscriptions before the measurement.
+     */
+    @Param({ "1", "10", "50" })
+    public int subscriptions;
+
+    /**
+     * The shared subscriptions.
+     */
+    private Subscriptions shared;
+
+    /**
+     * The subscribed destinations.
+     */
+    private String[] destinations;
+
+    /**
+     * Gives an index to each thread.
+     */
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /**
+     * <p>
+     * The state of each thread: the IDs it adds and removes never collide with the IDs of other threads.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /**
+         * The IDs of the subscriptions added and removed by the thread.
+         */
+        private String[] ids;
+
+        /**
+         * The next ID or destination.
+         */
+        private int next;
+
+        /**
+         * <p>
+         * Builds the IDs of the thread.
+         * </p>
+         *
+         * @param benchmark the benchmark
+         */
+        @Setup
+        public void setup(final SubscriptionsBenchmark benchmark) {
+            final int thread = benchmark.threads.getAndIncrement();
+            ids = new String[benchmark.destinations.length];
+
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = "thread-" + thread + "-" + i;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Adds the initial subscriptions.
+     * </p>
+     */
+    @Setup
+    public void setup() {
+        shared = new Subscriptions();
+        destinations = new String[subscriptions];
+
+        for (int i = 0; i < subscriptions; i++) {
+            destinations[i] = "/topic/benchmark-" + i;
+            shared.addSubscription(String.valueOf(i), destinations[i]);
+        }
+    }
+
+    /**
+     * <p>
+     * Looks up the subscriptions of a destination.
+     * </p>
+     *
+     * @param state the thread state
+     * @return the subscription IDs
+     */
+    @Benchmark
+    public Object lookup(final ThreadState state) {
+        return shared.getSubscriptionsForDestination(nextDestination(state));
+    }
+
+    /**
+     * <p>
+     * Adds a subscription and removes it.
+     * </p>
+     *
+     * @param state the thread state
+     */
+    @Benchmark
+    public void addRemove(final ThreadState state) {
+        final String id = state.ids[state.next];
+        shared.addSubscription(id, nextDestination(state));
+        shared.removeSubscription(id);
+    }
+
+    /**
+     * <p>
+     * Looks up the subscriptions of a destination while another thread adds and removes subscriptions.
+     * </p>
+     *
+     * @param state the thread state
+     * @return the subscription IDs
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object mixedLookup(final ThreadState state) {
+        return lookup(state);
+    }
+
+    /**
+     * <p>
+     * Adds and removes a subscription while other threads look up the subscriptions.
+     * </p>
+     *
+     * @param state the thread state
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedAddRemove(final ThreadState state) {
+        addRemove(state);
+    }
+
+    /**
+     * <p>
+     * Gets the next destination for the given thread.
+     * </p>
+     *
+     * @param state the thread state
+     * @return the destination
+     */
+    private String nextDestination(final ThreadState state) {
+        final String retval = destinations[state.next];
+        state.next = state.next + 1 == destinations.length ? 0 : state.next + 1;
+        return retval;
+    }
+}
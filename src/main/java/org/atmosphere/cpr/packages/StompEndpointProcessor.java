@@ -24,16 +24,22 @@ import org.atmosphere.config.managed.Encoder;
 import org.atmosphere.config.service.Heartbeat;
 import org.atmosphere.config.service.Message;
 import org.atmosphere.cpr.AtmosphereFramework;
-import org.atmosphere.cpr.AtmosphereHandler;
 import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.cpr.Broadcaster;
 import org.atmosphere.stomp.annotation.StompEndpoint;
 import org.atmosphere.stomp.annotation.StompService;
+import org.atmosphere.stomp.handler.ResultMerger;
 import org.atmosphere.stomp.handler.StompSendActionAtmosphereHandler;
+import org.atmosphere.stomp.journal.Journals;
+import org.atmosphere.stomp.metrics.Metrics;
+import org.atmosphere.stomp.outbound.Conflations;
+import org.atmosphere.stomp.relay.Relays;
+import org.atmosphere.util.ExecutorsFactory;
 import org.atmosphere.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -118,6 +124,11 @@ public class StompEndpointProcessor implements Processor<Object> {
             onHeartbeatMethod = detectHeartbeat(it.next());
         }
 
+        // Frames sent to relay destinations are forwarded without invoking any method
+        for (final String relay : annotatedClass.getAnnotation(StompEndpoint.class).relay()) {
+            Relays.getFromConfig(framework.getAtmosphereConfig()).add(relay);
+        }
+
         // Look for service
         for (final Method m : annotatedClass.getDeclaredMethods()) {
             detectStompService(framework, m, instance);
@@ -157,7 +168,8 @@ public class StompEndpointProcessor implements Processor<Object> {
         if (method.isAnnotationPresent(StompService.class)) {
 
             // The destination will be the broadcaster mapping
-            final String destination = method.getAnnotation(StompService.class).destination();
+            final StompService stompService = method.getAnnotation(StompService.class);
+            final String destination = stompService.destination();
 
             if (destination == null || destination.isEmpty()) {
                 logger.warn("The destination in {} must not be empty", StompService.class.getName(), new IllegalStateException());
@@ -181,13 +193,54 @@ public class StompEndpointProcessor implements Processor<Object> {
                     encoder = null;
                 }
 
+                final ResultMerger<?> merger;
+
+                try {
+                    merger = stompService.aggregationWindow() > 0 && !ResultMerger.None.class.equals(stompService.merger()) ?
+                            framework.newClassInstance(ResultMerger.class, stompService.merger()) : null;
+                } catch (InstantiationException ie) {
+                    logger.warn("Failed to instantiate the merger of {}", method.getName(), ie);
+                    return;
+                } catch (IllegalAccessException iae) {
+                    logger.warn("Failed to instantiate the merger of {}", method.getName(), iae);
+                    return;
+                }
+
                 // Now add to the framework the handler for the declared destination
                 try {
                     final Broadcaster b = framework.getBroadcasterFactory().get(destination);
-                    final AtmosphereHandler ah = new StompSendActionAtmosphereHandler(instance, method, encoder, decoder, b, onHeartbeatMethod);
+                    final StompSendActionAtmosphereHandler ah = new StompSendActionAtmosphereHandler(instance, method, encoder, decoder, b, onHeartbeatMethod,
+                            stompService.batchSize(), stompService.batchDelay(),
+                            stompService.batchSize() > 0 ? ExecutorsFactory.getScheduler(framework.getAtmosphereConfig()) : null);
+
+                    // Results returned within the window are fanned out once
+                    if (stompService.aggregationWindow() > 0) {
+                        ah.aggregate(stompService.aggregationWindow(), merger, ExecutorsFactory.getScheduler(framework.getAtmosphereConfig()));
+                    }
+
+                    final Metrics metrics = Metrics.getFromConfig(framework.getAtmosphereConfig());
+
+                    if (metrics != null) {
+                        ah.measure(metrics.declare(destination));
+                    }
+
                     framework.addAtmosphereHandler(destination, ah);
                 } catch (IllegalArgumentException iae) {
                     logger.warn("Method {} has not the required signature to be a {}", method.getName(), iae);
+                    return;
+                }
+
+                // Load the history of a durable destination
+                if (stompService.durable()) {
+                    try {
+                        Journals.getFromConfig(framework.getAtmosphereConfig()).open(destination);
+                    } catch (IOException ioe) {
+                        logger.warn("Unable to open the journal of destination {}", destination, ioe);
+                    }
+                }
+
+                if (stompService.conflate()) {
+                    Conflations.getFromConfig(framework.getAtmosphereConfig()).enable(destination);
                 }
             }
         }
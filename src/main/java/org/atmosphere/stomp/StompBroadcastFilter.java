@@ -19,16 +19,35 @@ package org.atmosphere.stomp;
 
 import org.atmosphere.cpr.AtmosphereResourceSessionFactory;
 import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceSession;
 import org.atmosphere.cpr.BroadcastFilterLifecycle;
 import org.atmosphere.cpr.PerRequestBroadcastFilter;
 import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.Broadcaster;
 
 import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.journal.Journal;
+import org.atmosphere.stomp.journal.JournaledMessage;
+import org.atmosphere.stomp.journal.Journals;
+import org.atmosphere.stomp.listener.FrameEvent;
+import org.atmosphere.stomp.listener.FrameListeners;
+import org.atmosphere.stomp.metrics.Metrics;
+import org.atmosphere.stomp.outbound.Coalescing;
+import org.atmosphere.stomp.outbound.Conflations;
+import org.atmosphere.stomp.outbound.OutboundLimits;
+import org.atmosphere.stomp.outbound.OutboundQueue;
 import org.atmosphere.stomp.protocol.Action;
 import org.atmosphere.stomp.protocol.Frame;
 import org.atmosphere.stomp.protocol.Header;
 import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.queue.DispatchPolicy;
+import org.atmosphere.stomp.queue.QueueDispatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -40,17 +59,134 @@ import java.util.UUID;
  * A specific frame will be created and broadcasted for each subscription for the mapping (the broadcaster ID).
  * </p>
  *
+ * <p>
+ * When the mapping corresponds to a durable destination, the broadcasted message is also appended to its
+ * {@link Journal journal} with its headers. No frame is built for a subscription the message has already been
+ * replayed to.
+ * </p>
+ *
+ * <p>
+ * When the mapping starts with the {@link FrameInterceptor.Property#QUEUE_PREFIX queue prefix}, each message is
+ * delivered to only one subscriber selected by the configured {@link DispatchPolicy}.
+ * </p>
+ *
+ * <p>
+ * When a subscription specifies a {@link org.atmosphere.stomp.selector.Selector selector}, no frame is built for
+ * that subscription if the message does not match. Each distinct selector is evaluated once per message.
+ * </p>
+ *
+ * <p>
+ * No message is delivered to a subscription that reaches the
+ * {@link FrameInterceptor.Property#MAX_PENDING_ACKS maximum number of messages waiting for an acknowledgment}. A
+ * message sent to a queue is then dispatched to another consumer.
+ * </p>
+ *
+ * <p>
+ * When {@link Conflations conflation} is enabled for the mapping, the frames are enqueued in the
+ * {@link OutboundQueue} of the session and written once the previous write completes, a newer message replacing a
+ * pending message with the same {@link Header#CONFLATION_KEY}.
+ * </p>
+ *
+ * <p>
+ * When {@link OutboundLimits limits} are configured, all the frames go through the {@link OutboundQueue} of the
+ * session and the {@link org.atmosphere.stomp.outbound.OverflowPolicy} applies when a slow client reaches a limit.
+ * Frames also go through this queue when {@link Coalescing coalescing} is enabled, so frames sent to the same client
+ * within a time window are written at once. The messages of the frames discarded by the queue are not awaited as
+ * pending acknowledgments anymore, since the client will never receive them.
+ * </p>
+ *
+ * <p>
+ * When a {@link StompMessage} has been encoded by the {@link StompPublisher}, the shared part of the frame is reused
+ * and only the headers specific to each subscription are written.
+ * </p>
+ *
+ * <p>
+ * When a {@link StompMessageBatch} is broadcasted, the frames of all its messages are written to each subscriber in
+ * a single operation.
+ * </p>
+ *
+ * <p>
+ * When {@link Metrics metrics} are enabled, the number and the length of the frames built for each subscriber are
+ * recorded with the time spent building them.
+ * </p>
+ *
+ * <p>
+ * The {@link FrameListeners} are notified once the frames of a message have been encoded for a subscriber, and when
+ * frames are handed to the broadcaster to be written to the subscriber, directly or when its {@link OutboundQueue} is
+ * flushed.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.1
  * @version 1.0
  */
 public class StompBroadcastFilter implements PerRequestBroadcastFilter, BroadcastFilterLifecycle {
 
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     /**
      * The formatter for frame generation.
      */
     private StompFormat stompFormat;
 
+    /**
+     * The journals of durable destinations.
+     */
+    private Journals journals;
+
+    /**
+     * The policy that selects the consumer of a queue.
+     */
+    private DispatchPolicy dispatchPolicy;
+
+    /**
+     * The prefix of queue destinations.
+     */
+    private String queuePrefix;
+
+    /**
+     * The maximum number of messages waiting for an acknowledgment per subscription.
+     */
+    private int maxPendingAcks;
+
+    /**
+     * The destinations where messages can be conflated.
+     */
+    private Conflations conflations;
+
+    /**
+     * How long in milliseconds a write can last before the pending frames are written anyway.
+     */
+    private long writeTimeout;
+
+    /**
+     * The limits of the outbound queues.
+     */
+    private OutboundLimits outboundLimits;
+
+    /**
+     * The coalescing settings of the outbound queues.
+     */
+    private Coalescing coalescing;
+
+    /**
+     * The metrics of the destinations, {@code null} if they are not measured.
+     */
+    private Metrics metrics;
+
+    /**
+     * The listeners of the frame lifecycle.
+     */
+    private FrameListeners listeners;
+
+    /**
+     * The configuration.
+     */
+    private AtmosphereConfig config;
+
 
     /**
      * {@inheritDoc}
@@ -60,36 +196,289 @@ public class StompBroadcastFilter implements PerRequestBroadcastFilter, Broadcas
                                   final AtmosphereResource atmosphereResource,
                                   final Object originalMessage,
                                   final Object message) {
-        // Get the subscriptions
-        final Subscriptions subscriptions = Subscriptions.getFromSession(atmosphereResource.getAtmosphereConfig().sessionFactory().getSession(atmosphereResource));
-        final Map<String, String> headers = new HashMap<String, String>();
-        headers.put(Header.DESTINATION, broadcasterId);
+        final AtmosphereResourceSession session = atmosphereResource.getAtmosphereConfig().sessionFactory().getSession(atmosphereResource);
+
+        // Write the frames that were waiting for the end of the previous write
+        if (message == OutboundQueue.FLUSH) {
+            return deliver(atmosphereResource, broadcasterId, OutboundQueue.getFromSession(session).poll(writeTimeout, coalescing), message);
+        }
+
+        Object body = message;
 
-        final List<String> subscriptionsIds = subscriptions.getSubscriptionsForDestination(broadcasterId);
+        // Only the selected consumer receives a message sent to a queue
+        if (body instanceof QueueDispatch) {
+            final QueueDispatch dispatch = QueueDispatch.class.cast(body);
+
+            if (!dispatch.getTarget().equals(atmosphereResource.uuid())) {
+                return new BroadcastAction(BroadcastAction.ACTION.ABORT, message);
+            }
+
+            body = dispatch.getMessage();
+        }
+
+        // Subscriptions the journaled message has been replayed to are skipped
+        long position = Long.MIN_VALUE;
+
+        if (body instanceof JournaledMessage) {
+            position = JournaledMessage.class.cast(body).getPosition();
+            body = JournaledMessage.class.cast(body).getMessage();
+        }
+
+        final long start = metrics == null ? 0L : System.nanoTime();
+
+        // Get the subscriptions
+        final Subscriptions subscriptions = Subscriptions.getFromSession(session);
+        final String conflationKey = StompMessage.getHeader(body, Header.CONFLATION_KEY);
         final StringBuilder sb = new StringBuilder();
+        final List<String> acks = new ArrayList<String>();
+        int frameCount = 0;
 
-        // Generate a frame for each subscription
-        for (final String id : subscriptionsIds) {
-            headers.put(Header.MESSAGE_ID, String.valueOf(UUID.randomUUID()));
-            headers.put(Header.SUBSCRIPTION, id);
-            final Frame frame = new Frame(Action.MESSAGE, headers, String.valueOf(message));
-            sb.append(stompFormat.format(frame)).append("\n");
+        // All the messages of a batch are written at once
+        for (final Object m : StompMessageBatch.messagesOf(body)) {
+            frameCount += appendFrames(sb, acks, broadcasterId, subscriptions, m, position);
+        }
+
+        if (frameCount == 0 && !subscriptions.getSubscriptionsForDestination(broadcasterId).isEmpty()) {
+            return new BroadcastAction(BroadcastAction.ACTION.ABORT, message);
         }
 
         // If the resource is added to the broadcaster that triggered the call to the filter, then at least one subscription must exists
         if (sb.length() == 0) {
             throw new IllegalStateException();
+        }
+
+        if (metrics != null) {
+            metrics.get(broadcasterId).delivered(frameCount, sb.length(), System.nanoTime() - start);
+        }
+
+        final String frames = sb.toString();
+        listeners.fire(FrameEvent.Type.MESSAGE_ENCODED, atmosphereResource, null, broadcasterId, frames);
+
+        if (outboundLimits.isBounded() || coalescing.isEnabled() || conflations.isEnabled(broadcasterId)) {
+            // A pending message is replaced by the new one
+            final OutboundQueue queue = OutboundQueue.getFromSession(session);
+            final String key = !conflations.isEnabled(broadcasterId) || body instanceof StompMessageBatch ?
+                    null : conflationKey == null ? broadcasterId : broadcasterId + "\n" + conflationKey;
+
+            final OutboundQueue.Result result = queue.enqueue(atmosphereResource, broadcasterId, key, frames, frameCount, acks, outboundLimits);
+
+            // The client will never acknowledge the messages of the discarded frames
+            subscriptions.releasePendingAcks(queue.drainDiscardedAcks());
+
+            switch (result) {
+                case CONFLATED:
+                    conflations.conflated(broadcasterId);
+                    break;
+
+                case OVERFLOW:
+                    // Slow consumer is disconnected once the error is written
+                    logger.warn("Outbound queue of {} is full, disconnecting", atmosphereResource.uuid());
+                    final Map<String, String> errorHeaders = new HashMap<String, String>();
+                    errorHeaders.put(Header.MESSAGE, "Slow consumer");
+                    return new BroadcastAction(stompFormat.format(
+                            new Frame(Action.ERROR, errorHeaders, "Too many messages are waiting to be sent")));
+
+                default:
+                    break;
+            }
+
+            return deliver(atmosphereResource, broadcasterId, queue.poll(writeTimeout, coalescing), message);
         } else {
-            return new BroadcastAction(sb.toString());
+            return deliver(atmosphereResource, broadcasterId, frames, message);
         }
     }
 
+    /**
+     * <p>
+     * Appends the {@link Action#MESSAGE} frames of the given message for the subscriptions of the given session.
+     * </p>
+     *
+     * @param sb the frames
+     * @param acks the IDs of the messages that must be acknowledged by the client
+     * @param broadcasterId the destination
+     * @param subscriptions the subscriptions of the session
+     * @param message the message
+     * @param position the position of the message in the journal, {@link Long#MIN_VALUE} if it's not journaled
+     * @return the number of appended frames
+     */
+    private int appendFrames(final StringBuilder sb,
+                             final List<String> acks,
+                             final String broadcasterId,
+                             final Subscriptions subscriptions,
+                             final Object message,
+                             final long position) {
+        final Map<String, String> headers = new HashMap<String, String>();
+        Object body = message;
+        final String encoded = body instanceof StompMessage ? StompMessage.class.cast(body).getEncoded(broadcasterId) : null;
+
+        // Subscriptions whose selector rejects the message are skipped before any frame is encoded
+        final List<String> subscriptionsIds = deliverable(subscriptions, broadcasterId,
+                body instanceof StompMessage ? StompMessage.class.cast(body) : null, position);
+
+        // Forward headers specified by the sender
+        if (body instanceof StompMessage) {
+            headers.putAll(StompMessage.class.cast(body).getHeaders());
+            body = StompMessage.class.cast(body).getBody();
+        }
+
+        headers.put(Header.DESTINATION, broadcasterId);
+        int frameCount = 0;
+
+        // Generate a frame for each subscription, or for only one subscription if the destination is a queue
+        for (final String id : isQueue(broadcasterId) && !subscriptionsIds.isEmpty() ? subscriptionsIds.subList(0, 1) : subscriptionsIds) {
+            final String messageId = String.valueOf(UUID.randomUUID());
+            headers.put(Header.MESSAGE_ID, messageId);
+            headers.put(Header.SUBSCRIPTION, id);
+
+            // The client will have to acknowledge the message
+            if (subscriptions.addPendingAck(id, messageId)) {
+                headers.put(Header.ACK, messageId);
+                acks.add(messageId);
+            } else {
+                headers.remove(Header.ACK);
+            }
+
+            if (encoded != null) {
+                // Only the headers specific to the subscription are encoded, the rest of the frame is shared
+                sb.append(Action.MESSAGE.toString()).append("\n")
+                        .append(Header.MESSAGE_ID).append(':').append(messageId).append("\n")
+                        .append(Header.SUBSCRIPTION).append(':').append(id).append("\n");
+
+                if (headers.containsKey(Header.ACK)) {
+                    sb.append(Header.ACK).append(':').append(messageId).append("\n");
+                }
+
+                sb.append(encoded).append("\n");
+            } else {
+                final Frame frame = new Frame(Action.MESSAGE, headers, String.valueOf(body));
+                sb.append(stompFormat.format(frame)).append("\n");
+            }
+
+            frameCount++;
+        }
+
+        return frameCount;
+    }
+
+    /**
+     * <p>
+     * Gets the subscriptions the given message can be delivered to. Subscriptions that don't select the message, that
+     * already received it from the journal or that have too many messages waiting for an acknowledgment are excluded.
+     * </p>
+     *
+     * @param subscriptions the subscriptions of the session
+     * @param broadcasterId the destination
+     * @param message the message, {@code null} if the message has no header
+     * @param position the position of the message in the journal, {@link Long#MIN_VALUE} if it's not journaled
+     * @return the subscription IDs
+     */
+    private List<String> deliverable(final Subscriptions subscriptions,
+                                     final String broadcasterId,
+                                     final StompMessage message,
+                                     final long position) {
+        final List<String> retval = subscriptions.getSubscriptionsForDestination(broadcasterId, message);
+
+        for (final Iterator<String> it = retval.iterator(); it.hasNext();) {
+            final String id = it.next();
+
+            if (position != Long.MIN_VALUE && subscriptions.isReplayed(id, position)) {
+                it.remove();
+            } else if (subscriptions.isSaturated(id, maxPendingAcks)) {
+                logger.debug("Subscription {} has too many messages waiting for an acknowledgment", id);
+                it.remove();
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Builds the action that writes the given frames and notifies the listeners that they are written to the
+     * subscriber.
+     * </p>
+     *
+     * @param atmosphereResource the subscriber
+     * @param broadcasterId the destination
+     * @param frames the frames, {@code null} if nothing can be written
+     * @param message the filtered message
+     * @return the action
+     */
+    private BroadcastAction deliver(final AtmosphereResource atmosphereResource,
+                                    final String broadcasterId,
+                                    final String frames,
+                                    final Object message) {
+        if (frames == null) {
+            return new BroadcastAction(BroadcastAction.ACTION.ABORT, message);
+        }
+
+        listeners.fire(FrameEvent.Type.WRITTEN, atmosphereResource, null, broadcasterId, frames);
+        return new BroadcastAction(frames);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public BroadcastAction filter(final String broadcasterId, final Object originalMessage, final Object message) {
-        return new BroadcastAction(message);
+        if (message == OutboundQueue.FLUSH) {
+            return new BroadcastAction(message);
+        }
+
+        final Journal journal = journals.get(broadcasterId);
+        Object retval = message;
+
+        // Keep the history of durable destinations, all the messages of a batch are appended at once
+        if (journal != null) {
+            synchronized (journal) {
+                for (final Object m : StompMessageBatch.messagesOf(message)) {
+                    try {
+                        retval = new JournaledMessage(journal.append(Journals.encode(m)), message);
+                    } catch (IOException ioe) {
+                        logger.error("Unable to append message to the journal of {}", broadcasterId, ioe);
+                    }
+                }
+            }
+        }
+
+        // Select the consumer of the message sent to a queue
+        if (isQueue(broadcasterId)) {
+            final Broadcaster broadcaster = config.getBroadcasterFactory().lookup(broadcasterId);
+
+            final List<AtmosphereResource> consumers = new ArrayList<AtmosphereResource>();
+            final StompMessage stompMessage = message instanceof StompMessage ? StompMessage.class.cast(message) : null;
+
+            // Only the consumers whose selector matches the message and that are not saturated can receive it
+            if (broadcaster != null) {
+                for (final AtmosphereResource r : broadcaster.getAtmosphereResources()) {
+                    final Subscriptions subscriptions = Subscriptions.getFromSession(config.sessionFactory().getSession(r));
+
+                    if (!deliverable(subscriptions, broadcasterId, stompMessage, Long.MIN_VALUE).isEmpty()) {
+                        consumers.add(r);
+                    }
+                }
+            }
+
+            // Message is lost if nobody consumes the queue
+            if (!consumers.isEmpty()) {
+                final AtmosphereResource consumer = dispatchPolicy.select(broadcasterId, message, consumers);
+                return new BroadcastAction(new QueueDispatch(consumer.uuid(), retval));
+            }
+        }
+
+        return new BroadcastAction(retval);
+    }
+
+    /**
+     * <p>
+     * Indicates if the given destination is a queue.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if each message is consumed by only one subscriber, {@code false} otherwise
+     */
+    private boolean isQueue(final String destination) {
+        return destination.startsWith(queuePrefix);
     }
 
     /**
@@ -98,6 +487,17 @@ public class StompBroadcastFilter implements PerRequestBroadcastFilter, Broadcas
     @Override
     public void init(final AtmosphereConfig config) {
         stompFormat = FrameInterceptor.PropertyClass.STOMP_FORMAT_CLASS.retrieve(StompFormat.class, config);
+        journals = Journals.getFromConfig(config);
+        dispatchPolicy = FrameInterceptor.PropertyClass.DISPATCH_POLICY_CLASS.retrieve(DispatchPolicy.class, config);
+        queuePrefix = FrameInterceptor.Property.QUEUE_PREFIX.retrieve(config);
+        maxPendingAcks = FrameInterceptor.Property.MAX_PENDING_ACKS.retrieveInt(config);
+        conflations = Conflations.getFromConfig(config);
+        writeTimeout = FrameInterceptor.Property.OUTBOUND_WRITE_TIMEOUT.retrieveLong(config);
+        outboundLimits = OutboundLimits.fromConfig(config);
+        coalescing = Coalescing.fromConfig(config);
+        metrics = Metrics.getFromConfig(config);
+        listeners = FrameListeners.getFromConfig(config);
+        this.config = config;
     }
 
     /**
@@ -107,5 +507,11 @@ public class StompBroadcastFilter implements PerRequestBroadcastFilter, Broadcas
     public void destroy() {
         // Let's gc do its job...
         this.stompFormat = null;
+        this.journals = null;
+        this.dispatchPolicy = null;
+        this.conflations = null;
+        this.metrics = null;
+        this.listeners = null;
+        this.config = null;
     }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp;
+
+import org.atmosphere.stomp.protocol.Action;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.selector.Selector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A message broadcasted after a {@link org.atmosphere.stomp.protocol.Action#SEND send} frame has been processed. In
+ * addition to the body, the message keeps the headers specified by the sender that must be forwarded to the
+ * subscribers. Headers reserved by the protocol like {@link Header#DESTINATION} or {@link Header#RECEIPT} are not kept.
+ * </p>
+ *
+ * <p>
+ * The {@link #toString()} method returns the body, so the message can be used as a {@code String} by any component
+ * that does not know this class.
+ * </p>
+ *
+ * <p>
+ * The same message is filtered for each subscriber, so the result of each {@link Selector} is kept to evaluate it only
+ * once per message.
+ * </p>
+ *
+ * <p>
+ * A message can also be {@link #encode(StompFormat, String) encoded} once before it is broadcasted: the
+ * {@link StompBroadcastFilter} then only prepends the headers specific to each subscription instead of encoding the
+ * whole frame for each of them.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StompMessage {
+
+    /**
+     * Headers that are never forwarded from a {@link org.atmosphere.stomp.protocol.Action#SEND} to a
+     * {@link org.atmosphere.stomp.protocol.Action#MESSAGE}.
+     */
+    private static final Set<String> RESERVED_HEADERS = new HashSet<String>(Arrays.asList(
+            Header.DESTINATION,
+            Header.CONTENT_LENGTH,
+            Header.ID,
+            Header.ACK,
+            Header.TRANSACTION,
+            Header.RECEIPT,
+            Header.RECEIPT_ID,
+            Header.SUBSCRIPTION,
+            Header.MESSAGE_ID));
+
+    /**
+     * The forwarded headers.
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The body.
+     */
+    private final Object body;
+
+    /**
+     * The result of the selectors already evaluated, created when the first selector is evaluated.
+     */
+    private volatile Map<Selector, Boolean> selections;
+
+    /**
+     * The destination the message has been {@link #encode(StompFormat, String) encoded} for.
+     */
+    private volatile String encodedDestination;
+
+    /**
+     * The encoded headers and body shared by all the subscribers, without the command line.
+     */
+    private volatile String encoded;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param headers the headers of the frame sent by the client, {@code null} if there is no header
+     * @param body the body
+     */
+    public StompMessage(final Map<String, String> headers, final Object body) {
+        final Map<String, String> forwarded = new HashMap<String, String>();
+
+        if (headers != null) {
+            for (final Map.Entry<String, String> entry : headers.entrySet()) {
+                if (!RESERVED_HEADERS.contains(entry.getKey())) {
+                    forwarded.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        this.headers = Collections.unmodifiableMap(forwarded);
+        this.body = body;
+    }
+
+    /**
+     * <p>
+     * Gets the headers to forward.
+     * </p>
+     *
+     * @return the unmodifiable headers
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * <p>
+     * Gets the body.
+     * </p>
+     *
+     * @return the body
+     */
+    public Object getBody() {
+        return body;
+    }
+
+    /**
+     * <p>
+     * Indicates if this message matches the given selector. The selector is evaluated the first time it's
+     * provided, next calls return the same result.
+     * </p>
+     *
+     * @param selector the selector
+     * @return {@code true} if the selector matches the headers, {@code false} otherwise
+     */
+    public boolean matches(final Selector selector) {
+        Map<Selector, Boolean> s = selections;
+
+        if (s == null) {
+            synchronized (this) {
+                if (selections == null) {
+                    selections = new ConcurrentHashMap<Selector, Boolean>();
+                }
+
+                s = selections;
+            }
+        }
+
+        Boolean retval = s.get(selector);
+
+        if (retval == null) {
+            retval = selector.matches(headers);
+            s.put(selector, retval);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Encodes the headers and the body of the {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames that will be
+     * built for the given destination.
+     * </p>
+     *
+     * @param format the format
+     * @param destination the destination
+     */
+    public void encode(final StompFormat format, final String destination) {
+        final Map<String, String> h = new HashMap<String, String>(headers);
+        h.put(Header.DESTINATION, destination);
+        final String frame = format.format(new Frame(Action.MESSAGE, h, String.valueOf(body)));
+
+        // Keep everything after the command line
+        encoded = frame.substring(frame.indexOf('\n') + 1);
+        encodedDestination = destination;
+    }
+
+    /**
+     * <p>
+     * Gets the encoded headers and body of the frames built for the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the encoded headers and body without the command line, {@code null} if the message has not been encoded
+     * for this destination
+     */
+    String getEncoded(final String destination) {
+        final String retval = encoded;
+        return retval != null && destination.equals(encodedDestination) ? retval : null;
+    }
+
+    /**
+     * <p>
+     * Gets the given header of the given message.
+     * </p>
+     *
+     * @param message the message, which could be a {@link StompMessage} or not
+     * @param name the header name
+     * @return the header value, {@code null} if message is not a {@link StompMessage} or does not define the header
+     */
+    public static String getHeader(final Object message, final String name) {
+        return message instanceof StompMessage ? StompMessage.class.cast(message).headers.get(name) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.valueOf(body);
+    }
+}
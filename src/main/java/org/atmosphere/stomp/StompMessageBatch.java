@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Several messages broadcasted at once to the same destination. The {@link StompBroadcastFilter} builds the
+ * {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames of all the messages for each subscriber and writes them
+ * in a single operation, so the whole batch is fanned out with only one filter and write pass per subscriber.
+ * </p>
+ *
+ * <p>
+ * Each message can be a {@link StompMessage} or any object whose {@link #toString()} method returns the body.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StompMessageBatch {
+
+    /**
+     * The messages in broadcast order.
+     */
+    private final List<Object> messages;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param messages the messages in broadcast order
+     */
+    public StompMessageBatch(final List<?> messages) {
+        this.messages = Collections.unmodifiableList(new ArrayList<Object>(messages));
+    }
+
+    /**
+     * <p>
+     * Gets the messages of the given broadcasted object: the messages of a batch or the object itself otherwise.
+     * </p>
+     *
+     * @param message the broadcasted object
+     * @return the messages
+     */
+    public static List<Object> messagesOf(final Object message) {
+        return message instanceof StompMessageBatch ?
+                StompMessageBatch.class.cast(message).messages : Collections.singletonList(message);
+    }
+
+    /**
+     * <p>
+     * Gets the messages.
+     * </p>
+     *
+     * @return the messages in broadcast order
+     */
+    public List<Object> getMessages() {
+        return messages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.valueOf(messages);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp;
+
+import org.atmosphere.config.managed.Encoder;
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.protocol.StompFormat;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Publishes messages to STOMP destinations from server code, for instance from a backend event consumer. Each message
+ * is sent to the subscribers of the destination in a {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frame, like
+ * the result of a {@link org.atmosphere.stomp.annotation.StompService} method.
+ * </p>
+ *
+ * <p>
+ * The headers and the body of the frame are encoded once before the message is broadcasted, so the fan-out only adds
+ * the headers specific to each subscription. Several messages can be published at once: they are written to each
+ * subscriber in a single operation.
+ * </p>
+ *
+ * <p>
+ * Each method returns the {@link Future} of the broadcast, which completes when the message has been delivered to the
+ * subscribers.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StompPublisher {
+
+    /**
+     * The charset of the bodies published as bytes.
+     */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The key used to store the publisher in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = StompPublisher.class.getName() + ".key";
+
+    /**
+     * The configuration.
+     */
+    private final AtmosphereConfig config;
+
+    /**
+     * The formatter that encodes the frames.
+     */
+    private final StompFormat stompFormat;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param config the configuration
+     */
+    public StompPublisher(final AtmosphereConfig config) {
+        this.config = config;
+        this.stompFormat = FrameInterceptor.PropertyClass.STOMP_FORMAT_CLASS.retrieve(StompFormat.class, config);
+    }
+
+    /**
+     * <p>
+     * Gets a {@link StompPublisher} from the given configuration. If no publisher is bound to the configuration, a new
+     * one is created and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the publisher
+     */
+    public static StompPublisher getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                retval = new StompPublisher(config);
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return StompPublisher.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Publishes a message.
+     * </p>
+     *
+     * @param destination the destination
+     * @param headers the headers forwarded to the subscribers, {@code null} if there is no header
+     * @param body the body
+     * @return the future of the broadcast
+     */
+    public Future<Object> publish(final String destination, final Map<String, String> headers, final String body) {
+        return publish(destination, new StompMessage(headers, body));
+    }
+
+    /**
+     * <p>
+     * Publishes a message whose body is encoded in {@link #CHARSET}.
+     * </p>
+     *
+     * @param destination the destination
+     * @param headers the headers forwarded to the subscribers, {@code null} if there is no header
+     * @param body the body
+     * @return the future of the broadcast
+     */
+    public Future<Object> publish(final String destination, final Map<String, String> headers, final byte[] body) {
+        return publish(destination, headers, new String(body, CHARSET));
+    }
+
+    /**
+     * <p>
+     * Publishes a message whose body is converted with the given encoder.
+     * </p>
+     *
+     * @param destination the destination
+     * @param headers the headers forwarded to the subscribers, {@code null} if there is no header
+     * @param body the object to encode
+     * @param encoder the encoder
+     * @param <T> the type of object
+     * @return the future of the broadcast
+     */
+    public <T> Future<Object> publish(final String destination,
+                                      final Map<String, String> headers,
+                                      final T body,
+                                      final Encoder<T, String> encoder) {
+        return publish(destination, headers, encoder.encode(body));
+    }
+
+    /**
+     * <p>
+     * Publishes a message.
+     * </p>
+     *
+     * @param destination the destination
+     * @param message the message
+     * @return the future of the broadcast
+     */
+    public Future<Object> publish(final String destination, final StompMessage message) {
+        message.encode(stompFormat, destination);
+        return config.getBroadcasterFactory().lookup(destination, true).broadcast(message);
+    }
+
+    /**
+     * <p>
+     * Publishes several messages at once. All the messages are written to each subscriber in a single operation.
+     * </p>
+     *
+     * @param destination the destination
+     * @param messages the messages in publication order
+     * @return the future of the broadcast
+     */
+    public Future<Object> publish(final String destination, final List<StompMessage> messages) {
+        for (final StompMessage m : messages) {
+            m.encode(stompFormat, destination);
+        }
+
+        return config.getBroadcasterFactory().lookup(destination, true).broadcast(new StompMessageBatch(messages));
+    }
+}
@@ -18,10 +18,16 @@
 package org.atmosphere.stomp;
 
 import org.atmosphere.cpr.AtmosphereResourceSession;
+import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.selector.Selector;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
@@ -35,6 +41,21 @@ import java.util.concurrent.locks.ReentrantLock;
  * </p>
  *
  * <p>
+ * When a subscription specifies the {@link #ACK_CLIENT} or {@link #ACK_CLIENT_INDIVIDUAL} {@link Header#ACK mode},
+ * the messages delivered to the client are pending until they are acknowledged.
+ * </p>
+ *
+ * <p>
+ * A subscription can specify a {@link DestinationTrie pattern} as destination. In that case, the subscription is
+ * returned for any destination matching the pattern.
+ * </p>
+ *
+ * <p>
+ * A subscription can also specify a {@link Selector} compiled from the {@link Header#SELECTOR} header. Only the
+ * messages matching the selector are sent for that subscription.
+ * </p>
+ *
+ * <p>
  * The class is thread safe as it is used in a concurrent context.
  * </p>
  *
@@ -49,6 +70,21 @@ public class Subscriptions {
      */
     private static final String ATTRIBUTE_KEY = Subscriptions.class.getName() + ".key";
 
+    /**
+     * The acknowledgment mode where messages are considered as acknowledged when they are sent.
+     */
+    public static final String ACK_AUTO = "auto";
+
+    /**
+     * The acknowledgment mode where an acknowledgment applies to the message and to all the previous ones.
+     */
+    public static final String ACK_CLIENT = "client";
+
+    /**
+     * The acknowledgment mode where an acknowledgment only applies to a single message.
+     */
+    public static final String ACK_CLIENT_INDIVIDUAL = "client-individual";
+
     /**
      * Lock used when performing operations on subscriptions.
      */
@@ -93,6 +129,32 @@ public class Subscriptions {
          */
         private String destination;
 
+        /**
+         * The acknowledgment mode.
+         */
+        private String ack;
+
+        /**
+         * The IDs of the messages waiting for an acknowledgment, in the order they have been sent.
+         */
+        private Set<String> pendingAcks;
+
+        /**
+         * The segments of the destination if it's a pattern, {@code null} otherwise.
+         */
+        private String[] pattern;
+
+        /**
+         * The selector, {@code null} if all the messages are selected.
+         */
+        private Selector selector;
+
+        /**
+         * The position in the journal of the last message replayed when subscribing, messages up to this position
+         * must not be delivered again.
+         */
+        private long replayed;
+
         /**
          * <p>
          * Builds a new instance.
@@ -100,10 +162,17 @@ public class Subscriptions {
          *
          * @param id the id
          * @param destination the destination
+         * @param ack the acknowledgment mode
+         * @param selector the selector
          */
-        Subscription(final String id, final String destination) {
+        Subscription(final String id, final String destination, final String ack, final Selector selector) {
             this.destination = destination;
             this.id = id;
+            this.ack = ack;
+            this.pendingAcks = new LinkedHashSet<String>();
+            this.pattern = DestinationTrie.isPattern(destination) ? DestinationTrie.segments(destination) : null;
+            this.selector = selector;
+            this.replayed = Long.MIN_VALUE;
         }
 
         /**
@@ -127,6 +196,35 @@ public class Subscriptions {
         String getDestination() {
             return destination;
         }
+
+        /**
+         * <p>
+         * Indicates if this subscription receives the messages sent to the given destination.
+         * </p>
+         *
+         * @param d the destination
+         * @param segments the segments of the destination, only required if this subscription is a pattern
+         * @return {@code true} if the destination is the subscribed one or matches the subscribed pattern
+         */
+        boolean matches(final String d, final String[] segments) {
+            return pattern == null ? destination.equals(d) : DestinationTrie.matches(pattern, segments);
+        }
+
+        /**
+         * <p>
+         * Indicates if the given message is selected by this subscription.
+         * </p>
+         *
+         * @param message the message, {@code null} if the message has no header
+         * @return {@code true} if there is no selector or if the selector matches the message
+         */
+        boolean selects(final StompMessage message) {
+            if (selector == null) {
+                return true;
+            }
+
+            return message == null ? selector.matches(Collections.<String, String>emptyMap()) : message.matches(selector);
+        }
     }
 
     /**
@@ -174,9 +272,36 @@ public class Subscriptions {
      * @param destination the subscribed destination
      */
     public void addSubscription(final String id, final String destination) {
+        addSubscription(id, destination, ACK_AUTO);
+    }
+
+    /**
+     * <p>
+     * Adds a subscription with the given acknowledgment mode to the set of subscriptions.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param destination the subscribed destination
+     * @param ack the acknowledgment mode, {@link #ACK_AUTO} if {@code null}
+     */
+    public void addSubscription(final String id, final String destination, final String ack) {
+        addSubscription(id, destination, ack, null);
+    }
+
+    /**
+     * <p>
+     * Adds a subscription with the given acknowledgment mode and the given selector to the set of subscriptions.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param destination the subscribed destination
+     * @param ack the acknowledgment mode, {@link #ACK_AUTO} if {@code null}
+     * @param selector the selector, {@code null} to receive all the messages
+     */
+    public void addSubscription(final String id, final String destination, final String ack, final Selector selector) {
         try {
             lock.lock();
-            subscriptionList.add(new Subscription(id, destination));
+            subscriptionList.add(new Subscription(id, destination, ack == null ? ACK_AUTO : ack, selector));
         } finally {
             lock.unlock();
         }
@@ -184,7 +309,7 @@ public class Subscriptions {
 
     /**
      * <p>
-     * Gets the subscriptions for the given destination.
+     * Gets the subscriptions for the given destination, including the subscriptions to a pattern matching it.
      * </p>
      *
      * @param destination the destination
@@ -194,9 +319,47 @@ public class Subscriptions {
         try {
             lock.lock();
             final List<String> retval = new ArrayList<String>();
+            String[] segments = null;
 
             for (final Subscription s : subscriptionList) {
-                if (s.getDestination().equals(destination)) {
+                // The destination is split once for all the pattern subscriptions
+                if (s.pattern != null && segments == null) {
+                    segments = DestinationTrie.segments(destination);
+                }
+
+                if (s.matches(destination, segments)) {
+                    retval.add(s.getId());
+                }
+            }
+
+            return retval;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the subscriptions for the given destination whose selector matches the given message.
+     * </p>
+     *
+     * @param destination the destination
+     * @param message the message, {@code null} if the message has no header
+     * @return all the IDs mapped to the destination that select the message
+     */
+    public List<String> getSubscriptionsForDestination(final String destination, final StompMessage message) {
+        try {
+            lock.lock();
+            final List<String> retval = new ArrayList<String>();
+            String[] segments = null;
+
+            for (final Subscription s : subscriptionList) {
+                // The destination is split once for all the pattern subscriptions
+                if (s.pattern != null && segments == null) {
+                    segments = DestinationTrie.segments(destination);
+                }
+
+                if (s.matches(destination, segments) && s.selects(message)) {
                     retval.add(s.getId());
                 }
             }
@@ -252,4 +415,187 @@ public class Subscriptions {
             lock.unlock();
         }
     }
+
+    /**
+     * <p>
+     * Indicates that the messages journaled up to the given position have been replayed to the given subscription.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param position the position in the {@link org.atmosphere.stomp.journal.Journal journal}
+     */
+    public void setReplayed(final String id, final long position) {
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                if (s.getId().equals(id)) {
+                    s.replayed = position;
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the message journaled at the given position has already been replayed to the given subscription.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param position the position in the {@link org.atmosphere.stomp.journal.Journal journal}
+     * @return {@code true} if the message must not be delivered again, {@code false} otherwise
+     */
+    public boolean isReplayed(final String id, final long position) {
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                if (s.getId().equals(id)) {
+                    return position <= s.replayed;
+                }
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates that a message has been sent for the given subscription. If the subscription requires acknowledgments,
+     * the message becomes pending.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param messageId the message ID
+     * @return {@code true} if the client must acknowledge the message, {@code false} otherwise
+     */
+    public boolean addPendingAck(final String id, final String messageId) {
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                if (s.getId().equals(id)) {
+                    return !ACK_AUTO.equals(s.ack) && s.pendingAcks.add(messageId);
+                }
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Stops waiting for the acknowledgment of the given messages, because they will never be received by the client.
+     * Unlike {@link #acknowledge(String)}, the messages sent before are still pending.
+     * </p>
+     *
+     * @param messageIds the message IDs
+     */
+    public void releasePendingAcks(final Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                s.pendingAcks.removeAll(messageIds);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given subscription has reached the maximum number of messages waiting for an acknowledgment.
+     * </p>
+     *
+     * @param id the subscription ID
+     * @param maxPendingAcks the maximum number of pending messages, 0 for no limit
+     * @return {@code true} if no message must be delivered to the subscription, {@code false} otherwise
+     */
+    public boolean isSaturated(final String id, final int maxPendingAcks) {
+        if (maxPendingAcks <= 0) {
+            return false;
+        }
+
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                if (s.getId().equals(id)) {
+                    return s.pendingAcks.size() >= maxPendingAcks;
+                }
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the number of messages sent to the given destination that have not been acknowledged yet.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the number of pending messages
+     */
+    public int getPendingAcks(final String destination) {
+        try {
+            lock.lock();
+            int retval = 0;
+            String[] segments = null;
+
+            for (final Subscription s : subscriptionList) {
+                if (s.pattern != null && segments == null) {
+                    segments = DestinationTrie.segments(destination);
+                }
+
+                if (s.matches(destination, segments)) {
+                    retval += s.pendingAcks.size();
+                }
+            }
+
+            return retval;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Acknowledges the given message. If the subscription uses the {@link #ACK_CLIENT} mode, all the messages sent
+     * before are also acknowledged.
+     * </p>
+     *
+     * @param messageId the message ID
+     * @return {@code true} if the message was pending, {@code false} otherwise
+     */
+    public boolean acknowledge(final String messageId) {
+        try {
+            lock.lock();
+            for (final Subscription s : subscriptionList) {
+                if (s.pendingAcks.contains(messageId)) {
+                    if (ACK_CLIENT.equals(s.ack)) {
+                        for (final Iterator<String> it = s.pendingAcks.iterator(); !messageId.equals(it.next()); ) {
+                            it.remove();
+                        }
+                    }
+
+                    s.pendingAcks.remove(messageId);
+                    return true;
+                }
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
 }
@@ -36,4 +36,14 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface StompEndpoint {
+
+    /**
+     * <p>
+     * Gets the {@link org.atmosphere.stomp.relay.Relays relay destinations}: the frames sent to them are forwarded as
+     * is to their subscribers without invoking any method. A relay destination can be a wildcard pattern.
+     * </p>
+     *
+     * @return the relay destinations
+     */
+    String[] relay() default {};
 }
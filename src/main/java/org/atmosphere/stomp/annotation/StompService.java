@@ -17,6 +17,8 @@
 
 package org.atmosphere.stomp.annotation;
 
+import org.atmosphere.stomp.handler.ResultMerger;
+
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -47,4 +49,70 @@ public @interface StompService {
      * @return the value that matches the header value
      */
     String destination();
+
+    /**
+     * <p>
+     * Indicates if the destination is durable. All the messages broadcasted to a durable destination are appended to
+     * a journal stored on the disk. A client can ask to receive the history when it subscribes by specifying the
+     * {@link org.atmosphere.stomp.protocol.Header#REPLAY_SINCE} header.
+     * </p>
+     *
+     * @return {@code true} if destination is durable, {@code false} otherwise
+     */
+    boolean durable() default false;
+
+    /**
+     * <p>
+     * Indicates if last-value conflation is enabled for the destination. A message that is still waiting to be
+     * written to a subscriber is replaced by a newer message sent to the same destination with the same
+     * {@link org.atmosphere.stomp.protocol.Header#CONFLATION_KEY}.
+     * </p>
+     *
+     * @return {@code true} if messages can be conflated, {@code false} otherwise
+     */
+    boolean conflate() default false;
+
+    /**
+     * <p>
+     * Gets the maximum number of frames processed in one invocation when the method declares a {@link java.util.List}
+     * parameter. The bodies of the frames sent to the destination are collected and the method is invoked once per
+     * batch with the decoded bodies in the list. A batch is processed when it reaches this size or when the
+     * {@link #batchDelay()} expires. If the method returns a {@link java.util.Collection}, all the results are
+     * broadcasted in a single {@link org.atmosphere.stomp.StompMessageBatch}.
+     * </p>
+     *
+     * @return the maximum batch size, 0 to process each frame in its own invocation
+     */
+    int batchSize() default 0;
+
+    /**
+     * <p>
+     * Gets how long in milliseconds the first frame of a batch can wait for the others before the batch is processed.
+     * </p>
+     *
+     * @return the maximum delay
+     * @see #batchSize()
+     */
+    long batchDelay() default 10;
+
+    /**
+     * <p>
+     * Gets the window in milliseconds during which the results returned by the method are aggregated. All the results
+     * returned within the window are fanned out once: merged by the {@link #merger()} if specified, written in a
+     * single multi-frame delivery otherwise.
+     * </p>
+     *
+     * @return the aggregation window, 0 to broadcast each result immediately
+     */
+    long aggregationWindow() default 0;
+
+    /**
+     * <p>
+     * Gets the class that merges the results aggregated during the {@link #aggregationWindow()}. The default
+     * {@link ResultMerger.None} class indicates that results are not merged.
+     * </p>
+     *
+     * @return the merger class
+     */
+    Class<? extends ResultMerger<?>> merger() default ResultMerger.None.class;
 }
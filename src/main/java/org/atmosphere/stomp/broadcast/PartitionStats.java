@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.broadcast;
+
+/**
+ * <p>
+ * A snapshot of the timings measured for one partition of a {@link PartitionedBroadcaster}. A delivery is the
+ * filtering and the queuing of one message for all the subscribers of the partition.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class PartitionStats {
+
+    /**
+     * The partition index.
+     */
+    private final int partition;
+
+    /**
+     * The number of deliveries.
+     */
+    private final long deliveries;
+
+    /**
+     * The number of subscribers reached by all the deliveries.
+     */
+    private final long subscribers;
+
+    /**
+     * The total time spent in deliveries in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * The longest delivery in nanoseconds.
+     */
+    private final long maxNanos;
+
+    /**
+     * The last delivery in nanoseconds.
+     */
+    private final long lastNanos;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param partition the partition index
+     * @param deliveries the number of deliveries
+     * @param subscribers the number of subscribers reached
+     * @param totalNanos the total time in nanoseconds
+     * @param maxNanos the longest delivery in nanoseconds
+     * @param lastNanos the last delivery in nanoseconds
+     */
+    public PartitionStats(final int partition,
+                          final long deliveries,
+                          final long subscribers,
+                          final long totalNanos,
+                          final long maxNanos,
+                          final long lastNanos) {
+        this.partition = partition;
+        this.deliveries = deliveries;
+        this.subscribers = subscribers;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.lastNanos = lastNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the partition index.
+     * </p>
+     *
+     * @return the index
+     */
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * <p>
+     * Gets the number of deliveries.
+     * </p>
+     *
+     * @return the deliveries
+     */
+    public long getDeliveries() {
+        return deliveries;
+    }
+
+    /**
+     * <p>
+     * Gets the number of subscribers reached by all the deliveries.
+     * </p>
+     *
+     * @return the subscribers
+     */
+    public long getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * <p>
+     * Gets the total time spent in deliveries.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the longest delivery.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the last delivery.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the average delivery time.
+     * </p>
+     *
+     * @return the time in nanoseconds, 0 if there was no delivery
+     */
+    public long getAverageNanos() {
+        return deliveries == 0 ? 0 : totalNanos / deliveries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("partition %d: %d deliveries to %d subscribers, avg %dns, max %dns, last %dns",
+                partition, deliveries, subscribers, getAverageNanos(), maxNanos, lastNanos);
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.broadcast;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFuture;
+import org.atmosphere.cpr.DefaultBroadcaster;
+import org.atmosphere.cpr.Deliver;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link Broadcaster} for destinations with a very large number of subscribers. The subscribers are split in
+ * {@link FrameInterceptor.Property#FANOUT_PARTITIONS partitions} according to the hash of their UUID and each message
+ * is delivered to the partitions in parallel: the {@link org.atmosphere.stomp.StompBroadcastFilter} runs for the
+ * subscribers of different partitions at the same time on the executor specified with
+ * {@link FrameInterceptor.PropertyClass#FANOUT_EXECUTOR_CLASS}, which is shared by all the partitioned broadcasters.
+ * </p>
+ *
+ * <p>
+ * A subscriber always belongs to the same partition and the messages of a partition are delivered one after the other
+ * in the broadcast order, so each subscriber receives the messages in the order they have been broadcasted. Messages
+ * targeting a single resource or a set of resources go through the same partitions. The caller's future completes
+ * when all the partitions have completed their delivery.
+ * </p>
+ *
+ * <p>
+ * To use this broadcaster, set it as the {@link org.atmosphere.cpr.ApplicationConfig#BROADCASTER_CLASS}. The time
+ * spent by each partition is exposed with {@link #getPartitionStats()}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class PartitionedBroadcaster extends DefaultBroadcaster {
+
+    /**
+     * The key used to store the shared executor in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String EXECUTOR_KEY = PartitionedBroadcaster.class.getName() + ".executor";
+
+    /**
+     * Maximum number of messages a partition delivers before giving its thread back to the executor.
+     */
+    private static final int MAX_DRAIN = 64;
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The partitions.
+     */
+    private Partition[] partitions;
+
+    /**
+     * The executor running the partitions.
+     */
+    private ExecutorService executor;
+
+    /**
+     * <p>
+     * Gets the executor shared by all the partitioned broadcasters of the given configuration. The executor is created
+     * the first time and shut down with the framework.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the executor
+     */
+    static ExecutorService getExecutor(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(EXECUTOR_KEY);
+
+            if (retval == null) {
+                final ExecutorService executor =
+                        FrameInterceptor.PropertyClass.FANOUT_EXECUTOR_CLASS.retrieve(ExecutorService.class, config);
+                config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                    @Override
+                    public void shutdown() {
+                        executor.shutdown();
+                    }
+                });
+
+                retval = executor;
+                properties.put(EXECUTOR_KEY, retval);
+            }
+
+            return ExecutorService.class.cast(retval);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Broadcaster initialize(final String name, final URI uri, final AtmosphereConfig config) {
+        final Broadcaster retval = super.initialize(name, uri, config);
+        final int count = FrameInterceptor.Property.FANOUT_PARTITIONS.retrieveInt(config);
+        partitions = new Partition[count > 0 ? count : Runtime.getRuntime().availableProcessors()];
+
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+
+        executor = getExecutor(config);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the timings measured for each partition since its creation.
+     * </p>
+     *
+     * @return one snapshot per partition
+     */
+    public List<PartitionStats> getPartitionStats() {
+        final List<PartitionStats> retval = new ArrayList<PartitionStats>(partitions.length);
+
+        for (final Partition partition : partitions) {
+            retval.add(partition.snapshot());
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the partition of the given resource.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the partition
+     */
+    private Partition partitionOf(final AtmosphereResource resource) {
+        return partitions[(resource.uuid().hashCode() & Integer.MAX_VALUE) % partitions.length];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void deliverPush(final Deliver deliver, final boolean rec) {
+        // Delayed messages are delivered sequentially with the current message
+        if (rec && !delayedBroadcast.isEmpty()) {
+            super.deliverPush(deliver, rec);
+            return;
+        }
+
+        final Collection<AtmosphereResource> targets;
+
+        switch (deliver.getType()) {
+            case RESOURCE:
+                partitionOf(deliver.getResource()).submit(deliver);
+                return;
+
+            case SET:
+                targets = deliver.getResources();
+                break;
+
+            default:
+                targets = resources;
+                break;
+        }
+
+        // Group the subscribers by partition
+        final List<Set<AtmosphereResource>> groups = new ArrayList<Set<AtmosphereResource>>(partitions.length);
+        int nonEmpty = 0;
+
+        for (int i = 0; i < partitions.length; i++) {
+            groups.add(null);
+        }
+
+        for (final AtmosphereResource r : targets) {
+            final int index = partitionOf(r).index;
+            Set<AtmosphereResource> group = groups.get(index);
+
+            if (group == null) {
+                group = new HashSet<AtmosphereResource>();
+                groups.set(index, group);
+                nonEmpty++;
+            }
+
+            group.add(r);
+        }
+
+        // Nobody to deliver, let the default behavior cache the message if needed
+        if (nonEmpty == 0) {
+            super.deliverPush(deliver, rec);
+            return;
+        }
+
+        notifyOnMessage(deliver);
+        final AtomicInteger remaining = new AtomicInteger(nonEmpty);
+
+        for (int i = 0; i < partitions.length; i++) {
+            final Set<AtmosphereResource> group = groups.get(i);
+
+            if (group != null) {
+                final Deliver d = new Deliver(deliver.getMessage(), group,
+                        new PartitionFuture(deliver.getFuture(), deliver.getMessage(), remaining), deliver.getOriginalMessage());
+                d.setAsync(deliver.isAsync());
+                partitions[i].submit(d);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void notifyOnMessage(final Deliver deliver) {
+        // Listeners have already been notified for the whole message
+        if (!(deliver.getFuture() instanceof PartitionFuture)) {
+            super.notifyOnMessage(deliver);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void entryDone(final BroadcasterFuture<?> f) {
+        if (f instanceof PartitionFuture) {
+            f.done();
+        } else {
+            super.entryDone(f);
+        }
+    }
+
+    /**
+     * <p>
+     * The future of a message delivered to a partition. The future of the broadcasted message is done when the
+     * futures of all its partitions are done.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private final class PartitionFuture extends BroadcasterFuture<Object> {
+
+        /**
+         * The future of the broadcasted message.
+         */
+        private final BroadcasterFuture<?> parent;
+
+        /**
+         * The number of partitions that have not completed their delivery.
+         */
+        private final AtomicInteger remaining;
+
+        /**
+         * Guarantees that this partition is counted once.
+         */
+        private final AtomicBoolean completed;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param parent the future of the broadcasted message
+         * @param message the message
+         * @param remaining the counter shared by all the partitions of the message
+         */
+        private PartitionFuture(final BroadcasterFuture<?> parent, final Object message, final AtomicInteger remaining) {
+            super(message);
+            this.parent = parent;
+            this.remaining = remaining;
+            this.completed = new AtomicBoolean();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BroadcasterFuture<Object> done() {
+            super.done();
+
+            if (completed.compareAndSet(false, true) && remaining.decrementAndGet() == 0) {
+                PartitionedBroadcaster.super.entryDone(parent);
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * <p>
+     * A partition delivers its messages one after the other. It's scheduled on the executor when a message is
+     * submitted and runs until no message is pending.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private final class Partition implements Runnable {
+
+        /**
+         * The index.
+         */
+        private final int index;
+
+        /**
+         * The messages waiting to be delivered.
+         */
+        private final Queue<Deliver> pending;
+
+        /**
+         * Indicates if the partition is running or is about to run.
+         */
+        private final AtomicBoolean scheduled;
+
+        /**
+         * The number of deliveries.
+         */
+        private final AtomicLong deliveries;
+
+        /**
+         * The number of subscribers reached.
+         */
+        private final AtomicLong subscribers;
+
+        /**
+         * The total delivery time.
+         */
+        private final AtomicLong totalNanos;
+
+        /**
+         * The longest delivery time.
+         */
+        private final AtomicLong maxNanos;
+
+        /**
+         * The last delivery time.
+         */
+        private volatile long lastNanos;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param index the index
+         */
+        private Partition(final int index) {
+            this.index = index;
+            this.pending = new ConcurrentLinkedQueue<Deliver>();
+            this.scheduled = new AtomicBoolean();
+            this.deliveries = new AtomicLong();
+            this.subscribers = new AtomicLong();
+            this.totalNanos = new AtomicLong();
+            this.maxNanos = new AtomicLong();
+        }
+
+        /**
+         * <p>
+         * Adds a message to deliver.
+         * </p>
+         *
+         * @param deliver the message
+         */
+        private void submit(final Deliver deliver) {
+            pending.offer(deliver);
+            schedule();
+        }
+
+        /**
+         * <p>
+         * Runs the partition if it's not already running.
+         * </p>
+         */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ree) {
+                    // Executor is shut down, deliver in the calling thread
+                    logger.debug("Fan-out executor rejected partition {} of {}", index, getID(), ree);
+                    run();
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            Deliver deliver;
+            int drained = 0;
+
+            while (drained++ < MAX_DRAIN && (deliver = pending.poll()) != null) {
+                final long start = System.nanoTime();
+
+                try {
+                    PartitionedBroadcaster.super.deliverPush(deliver, false);
+                } catch (RuntimeException re) {
+                    logger.error("Unable to deliver message to partition {} of {}", index, getID(), re);
+                }
+
+                record(System.nanoTime() - start, deliver.getResources() == null ? 1 : deliver.getResources().size());
+            }
+
+            scheduled.set(false);
+
+            // A message could have been submitted after the last poll
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * <p>
+         * Records a delivery.
+         * </p>
+         *
+         * @param nanos the delivery time
+         * @param count the number of subscribers reached
+         */
+        private void record(final long nanos, final int count) {
+            deliveries.incrementAndGet();
+            subscribers.addAndGet(count);
+            totalNanos.addAndGet(nanos);
+            lastNanos = nanos;
+
+            long max = maxNanos.get();
+
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        /**
+         * <p>
+         * Takes a snapshot of the timings.
+         * </p>
+         *
+         * @return the snapshot
+         */
+        private PartitionStats snapshot() {
+            return new PartitionStats(index, deliveries.get(), subscribers.get(), totalNanos.get(), maxNanos.get(), lastNanos);
+        }
+    }
+}
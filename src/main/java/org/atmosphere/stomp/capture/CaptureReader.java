@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.capture;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * Reads the frames recorded by a {@link CaptureWriter} in the order they have been received.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class CaptureReader implements Closeable {
+
+    /**
+     * The stream where records are read.
+     */
+    private final DataInputStream in;
+
+    /**
+     * The time when the capture started in milliseconds.
+     */
+    private final long startMillis;
+
+    /**
+     * <p>
+     * Builds a new instance and reads the file header.
+     * </p>
+     *
+     * @param is the stream containing the capture
+     * @throws IOException if the stream does not contain a supported capture
+     */
+    public CaptureReader(final InputStream is) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(is, 64 * 1024));
+
+        if (in.readInt() != CaptureWriter.MAGIC) {
+            throw new IOException("Not a capture file");
+        }
+
+        final short version = in.readShort();
+
+        if (version != CaptureWriter.VERSION) {
+            throw new IOException("Unsupported capture version " + version);
+        }
+
+        startMillis = in.readLong();
+    }
+
+    /**
+     * <p>
+     * Gets the time when the capture started.
+     * </p>
+     *
+     * @return the time in milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * <p>
+     * Reads the next frame.
+     * </p>
+     *
+     * @return the frame, {@code null} if the end of the capture is reached
+     * @throws IOException if the capture can't be read
+     */
+    public CapturedFrame next() throws IOException {
+        final long elapsed;
+
+        try {
+            elapsed = in.readLong();
+        } catch (EOFException eofe) {
+            return null;
+        }
+
+        final String session = in.readUTF();
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new CapturedFrame(elapsed, session, new String(bytes, CaptureWriter.CHARSET));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
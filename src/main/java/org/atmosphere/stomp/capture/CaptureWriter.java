@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.capture;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * <p>
+ * Records the inbound frames of all the sessions in a compact binary file that can be read with a
+ * {@link CaptureReader} to replay the traffic.
+ * </p>
+ *
+ * <p>
+ * The file starts with the {@link #MAGIC} number, the {@link #VERSION} and the time when the capture started in
+ * milliseconds. Each record then contains the elapsed time since the start in nanoseconds, the session ID and the raw
+ * frame encoded in UTF-8 and prefixed by its length.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class CaptureWriter implements Closeable {
+
+    /**
+     * The number identifying a capture file.
+     */
+    public static final int MAGIC = 0x53544350;
+
+    /**
+     * The version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * The charset of the frames.
+     */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The key used to store the writer in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = CaptureWriter.class.getName() + ".key";
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The stream where records are written.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The time when the capture started in nanoseconds.
+     */
+    private final long start;
+
+    /**
+     * If the writer has been closed or has failed.
+     */
+    private boolean closed;
+
+    /**
+     * <p>
+     * Gets the writer for the given configuration. The file specified by {@link FrameInterceptor.Property#CAPTURE_FILE}
+     * is created the first time and closed with the framework.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the writer, {@code null} if capture is disabled or if the file can't be created
+     */
+    public static CaptureWriter getFromConfig(final AtmosphereConfig config) {
+        final String file = FrameInterceptor.Property.CAPTURE_FILE.retrieve(config);
+
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                try {
+                    final CaptureWriter writer = new CaptureWriter(new FileOutputStream(new File(file)));
+                    config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                        @Override
+                        public void shutdown() {
+                            writer.close();
+                        }
+                    });
+
+                    retval = writer;
+                    properties.put(ATTRIBUTE_KEY, retval);
+                } catch (IOException ioe) {
+                    LoggerFactory.getLogger(CaptureWriter.class).error("Can't capture frames in {}", file, ioe);
+                    return null;
+                }
+            }
+
+            return CaptureWriter.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance and writes the file header.
+     * </p>
+     *
+     * @param os the stream where the capture is written
+     * @throws IOException if header can't be written
+     */
+    public CaptureWriter(final OutputStream os) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        start = System.nanoTime();
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>
+     * Records a frame received from the given session. The capture stops at the first write error.
+     * </p>
+     *
+     * @param session the session ID
+     * @param frame the raw frame
+     */
+    public void record(final String session, final String frame) {
+        final long elapsed = System.nanoTime() - start;
+        final byte[] bytes = frame.getBytes(CHARSET);
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                out.writeLong(elapsed);
+                out.writeUTF(session);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } catch (IOException ioe) {
+                logger.error("Capture stopped", ioe);
+                close();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the buffered records.
+     * </p>
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            try {
+                out.flush();
+            } catch (IOException ioe) {
+                logger.warn("Can't flush capture", ioe);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                logger.warn("Can't close capture", ioe);
+            }
+        }
+    }
+}
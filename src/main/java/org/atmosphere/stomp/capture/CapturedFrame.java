@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.capture;
+
+/**
+ * <p>
+ * A frame read from a capture.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class CapturedFrame {
+
+    /**
+     * The elapsed time since the start of the capture in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * The ID of the session that sent the frame.
+     */
+    private final String session;
+
+    /**
+     * The raw frame.
+     */
+    private final String frame;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param elapsedNanos the elapsed time since the start of the capture
+     * @param session the session ID
+     * @param frame the raw frame
+     */
+    public CapturedFrame(final long elapsedNanos, final String session, final String frame) {
+        this.elapsedNanos = elapsedNanos;
+        this.session = session;
+        this.frame = frame;
+    }
+
+    /**
+     * <p>
+     * Gets the elapsed time since the start of the capture.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the ID of the session that sent the frame.
+     * </p>
+     *
+     * @return the session ID
+     */
+    public String getSession() {
+        return session;
+    }
+
+    /**
+     * <p>
+     * Gets the raw frame as read by the {@link org.atmosphere.stomp.interceptor.FrameInterceptor}.
+     * </p>
+     *
+     * @return the frame
+     */
+    public String getFrame() {
+        return frame;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.executor;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An executor made of shards that each run their tasks one after the other on a dedicated thread. A task is executed
+ * by the shard selected with the hash of its key, so the tasks with the same key are executed in the order they have
+ * been submitted while tasks with different keys can run in parallel.
+ * </p>
+ *
+ * <p>
+ * The number of tasks waiting in a shard is bounded: when the queue of the shard is full, the task is rejected with
+ * a {@link RejectedExecutionException}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class ShardedExecutor {
+
+    /**
+     * The key used to store the executor processing the sent frames in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String SEND_ATTRIBUTE_KEY = ShardedExecutor.class.getName() + ".send";
+
+    /**
+     * The shards.
+     */
+    private final ThreadPoolExecutor[] shards;
+
+    /**
+     * <p>
+     * Gets the executor processing the {@link org.atmosphere.stomp.protocol.Action#SEND} frames for the given
+     * configuration. The executor is created the first time according to the
+     * {@link FrameInterceptor.Property#SEND_SHARDS} and {@link FrameInterceptor.Property#SEND_QUEUE_CAPACITY}
+     * settings and is shut down with the framework.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the executor, {@code null} if sent frames are processed in the request thread
+     */
+    public static ShardedExecutor getSendExecutor(final AtmosphereConfig config) {
+        if (!FrameInterceptor.Property.SEND_EXECUTOR.retrieveBoolean(config)) {
+            return null;
+        }
+
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(SEND_ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final int count = FrameInterceptor.Property.SEND_SHARDS.retrieveInt(config);
+                final ShardedExecutor executor = new ShardedExecutor("stomp-send",
+                        count > 0 ? count : Runtime.getRuntime().availableProcessors(),
+                        FrameInterceptor.Property.SEND_QUEUE_CAPACITY.retrieveInt(config));
+                config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                    @Override
+                    public void shutdown() {
+                        executor.shutdown();
+                    }
+                });
+
+                retval = executor;
+                properties.put(SEND_ATTRIBUTE_KEY, retval);
+            }
+
+            return ShardedExecutor.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param name the prefix of the thread names
+     * @param count the number of shards
+     * @param capacity the maximum number of tasks waiting in each shard
+     */
+    public ShardedExecutor(final String name, final int count, final int capacity) {
+        shards = new ThreadPoolExecutor[count];
+
+        for (int i = 0; i < count; i++) {
+            final String threadName = name + "-" + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(capacity),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r, threadName);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * <p>
+     * Executes the given task in the shard of the given key.
+     * </p>
+     *
+     * @param key the key
+     * @param task the task
+     * @throws RejectedExecutionException if the shard is full or if the executor is shut down
+     */
+    public void execute(final String key, final Runnable task) {
+        shards[shardOf(key)].execute(task);
+    }
+
+    /**
+     * <p>
+     * Gets the index of the shard of the given key.
+     * </p>
+     *
+     * @param key the key
+     * @return the shard index
+     */
+    public int shardOf(final String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * <p>
+     * Gets the number of tasks waiting in the given shard.
+     * </p>
+     *
+     * @param shard the shard index
+     * @return the queue depth
+     */
+    public int getQueueDepth(final int shard) {
+        return shards[shard].getQueue().size();
+    }
+
+    /**
+     * <p>
+     * Gets the number of shards.
+     * </p>
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * <p>
+     * Shuts down all the shards. Tasks already submitted are still executed.
+     * </p>
+     */
+    public void shutdown() {
+        for (final ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
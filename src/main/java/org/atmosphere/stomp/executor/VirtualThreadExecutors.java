@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.executor;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Creates the executor running the {@link org.atmosphere.stomp.annotation.StompService} methods that block, for
+ * instance on JDBC or HTTP calls. When the runtime supports virtual threads, each task runs in its own virtual thread
+ * so thousands of blocking invocations don't need thousands of platform threads. Otherwise, tasks run in a bounded
+ * pool of platform threads: the number of threads and of waiting tasks are limited and a task submitted when the pool
+ * is saturated is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+ * </p>
+ *
+ * <p>
+ * Virtual threads are detected by reflection so the library still runs on older runtimes.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public final class VirtualThreadExecutors {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadExecutors.class);
+
+    /**
+     * The key used to store the executor processing the sent frames in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String SEND_ATTRIBUTE_KEY = VirtualThreadExecutors.class.getName() + ".send";
+
+    /**
+     * The factory method of virtual thread executors in the JDK.
+     */
+    private static final String VIRTUAL_FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * <p>
+     * Private constructor for utility class.
+     * </p>
+     */
+    private VirtualThreadExecutors() {
+    }
+
+    /**
+     * <p>
+     * Gets the executor running the {@link org.atmosphere.stomp.annotation.StompService} methods for the given
+     * configuration. The executor is created the first time according to the
+     * {@link FrameInterceptor.Property#SEND_MAX_THREADS} and {@link FrameInterceptor.Property#SEND_QUEUE_CAPACITY}
+     * settings and is shut down with the framework.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the executor, {@code null} if {@link FrameInterceptor.Property#SEND_VIRTUAL_THREADS} is disabled
+     */
+    public static ExecutorService getSendExecutor(final AtmosphereConfig config) {
+        if (!FrameInterceptor.Property.SEND_VIRTUAL_THREADS.retrieveBoolean(config)) {
+            return null;
+        }
+
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(SEND_ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final ExecutorService executor = newExecutor("stomp-service",
+                        FrameInterceptor.Property.SEND_MAX_THREADS.retrieveInt(config),
+                        FrameInterceptor.Property.SEND_QUEUE_CAPACITY.retrieveInt(config));
+                config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                    @Override
+                    public void shutdown() {
+                        executor.shutdown();
+                    }
+                });
+
+                retval = executor;
+                properties.put(SEND_ATTRIBUTE_KEY, retval);
+            }
+
+            return ExecutorService.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Creates an executor running each task in a new virtual thread if the runtime supports it, in a bounded pool of
+     * platform threads otherwise.
+     * </p>
+     *
+     * @param name the prefix of the platform thread names
+     * @param maxThreads the maximum number of platform threads
+     * @param capacity the maximum number of tasks waiting for a platform thread
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String name, final int maxThreads, final int capacity) {
+        final ExecutorService retval = newVirtualThreadPerTaskExecutor();
+
+        if (retval != null) {
+            LOGGER.info("{} tasks run in virtual threads", name);
+            return retval;
+        }
+
+        LOGGER.info("Virtual threads not supported, {} tasks run in at most {} platform threads", name, maxThreads);
+        return newPlatformExecutor(name, maxThreads, capacity);
+    }
+
+    /**
+     * <p>
+     * Creates a bounded pool of platform threads. Idle threads are released after one minute.
+     * </p>
+     *
+     * @param name the prefix of the thread names
+     * @param maxThreads the maximum number of threads
+     * @param capacity the maximum number of tasks waiting for a thread
+     * @return the executor
+     */
+    public static ExecutorService newPlatformExecutor(final String name, final int maxThreads, final int capacity) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor retval = new ThreadPoolExecutor(maxThreads, maxThreads, 1L, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        retval.allowCoreThreadTimeOut(true);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Creates an executor running each task in a new virtual thread.
+     * </p>
+     *
+     * @return the executor, {@code null} if the runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return ExecutorService.class.cast(Executors.class.getMethod(VIRTUAL_FACTORY_METHOD).invoke(null));
+        } catch (NoSuchMethodException nsme) {
+            return null;
+        } catch (Exception e) {
+            // Preview feature not enabled or access denied
+            LOGGER.debug("Unable to create a virtual thread executor", e);
+            return null;
+        }
+    }
+}
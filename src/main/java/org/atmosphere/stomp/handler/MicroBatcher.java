@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.handler;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Collects the items processed by batch, like the frames sent to a destination whose method is invoked once per batch.
+ * A batch is flushed when it reaches its maximum size or when its first item has waited for the maximum delay.
+ * Batches are flushed one after the other in the order the items have been added.
+ * </p>
+ *
+ * @param <T> the type of item
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+class MicroBatcher<T> {
+
+    /**
+     * <p>
+     * Processes a batch.
+     * </p>
+     *
+     * @param <T> the type of item
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    interface Flusher<T> {
+
+        /**
+         * <p>
+         * Processes the given batch.
+         * </p>
+         *
+         * @param batch the items in arrival order
+         */
+        void flush(List<T> batch);
+    }
+
+    /**
+     * <p>
+     * A frame waiting in a batch.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    static class Entry {
+
+        /**
+         * The resource that sent the frame.
+         */
+        final AtmosphereResource resource;
+
+        /**
+         * The frame body.
+         */
+        final String body;
+
+        /**
+         * The frame headers.
+         */
+        final Map<String, String> headers;
+
+        /**
+         * Runs once the batch of the frame has been processed, {@code null} if nobody waits for it.
+         */
+        final Runnable completion;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param resource the resource that sent the frame
+         * @param body the frame body
+         * @param headers the frame headers
+         * @param completion runs once the batch of the frame has been processed, {@code null} if nobody waits for it
+         */
+        Entry(final AtmosphereResource resource, final String body, final Map<String, String> headers, final Runnable completion) {
+            this.resource = resource;
+            this.body = body;
+            this.headers = headers;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * The maximum batch size.
+     */
+    private final int maxSize;
+
+    /**
+     * The maximum delay in milliseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * The scheduler that flushes the batch when the delay expires.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The batch processor.
+     */
+    private final Flusher<T> flusher;
+
+    /**
+     * Lock held while a batch is flushed, so batches are processed in order.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * The task flushing the batch when the delay expires.
+     */
+    private final Runnable delayedFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MicroBatcher.this) {
+                scheduled = false;
+            }
+
+            flush();
+        }
+    };
+
+    /**
+     * The items of the current batch.
+     */
+    private List<T> pending = new ArrayList<T>();
+
+    /**
+     * If a delayed flush is scheduled.
+     */
+    private boolean scheduled;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param maxSize the maximum batch size
+     * @param maxDelay the maximum delay in milliseconds
+     * @param scheduler the scheduler
+     * @param flusher the batch processor
+     */
+    MicroBatcher(final int maxSize, final long maxDelay, final ScheduledExecutorService scheduler, final Flusher<T> flusher) {
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+        this.flusher = flusher;
+    }
+
+    /**
+     * <p>
+     * Adds an item to the current batch. The batch is flushed in the caller thread if it is full.
+     * </p>
+     *
+     * @param item the item
+     */
+    void add(final T item) {
+        final boolean full;
+
+        synchronized (this) {
+            pending.add(item);
+            full = pending.size() >= maxSize;
+
+            if (!full && !scheduled) {
+                scheduled = true;
+                scheduler.schedule(delayedFlush, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the current batch if it is not empty.
+     * </p>
+     */
+    void flush() {
+        synchronized (flushLock) {
+            final List<T> batch;
+
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+
+                batch = pending;
+                pending = new ArrayList<T>();
+            }
+
+            flusher.flush(batch);
+        }
+    }
+}
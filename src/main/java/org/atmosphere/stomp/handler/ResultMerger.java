@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.handler;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Merges the results returned by a {@link org.atmosphere.stomp.annotation.StompService} method during an aggregation
+ * window into a single result, which is then broadcasted as one message.
+ * </p>
+ *
+ * @param <T> the type of result
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public interface ResultMerger<T> {
+
+    /**
+     * <p>
+     * Merges the given results.
+     * </p>
+     *
+     * @param results the results in the order they have been returned, never empty
+     * @return the merged result, {@code null} if nothing must be broadcasted
+     */
+    Object merge(List<T> results);
+
+    /**
+     * <p>
+     * The default {@link org.atmosphere.stomp.annotation.StompService#merger() merger} indicating that the results
+     * are not merged. This class is never instantiated.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    final class None implements ResultMerger<Object> {
+
+        /**
+         * <p>
+         * No instance is expected.
+         * </p>
+         */
+        private None() {
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object merge(final List<Object> results) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
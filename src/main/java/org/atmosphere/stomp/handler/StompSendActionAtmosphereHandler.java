@@ -25,8 +25,12 @@ import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.cpr.AtmosphereResourceHeartbeatEventListener;
 import org.atmosphere.cpr.Broadcaster;
 import org.atmosphere.handler.AbstractReflectorAtmosphereHandler;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.StompMessageBatch;
 import org.atmosphere.stomp.interceptor.FrameInterceptor;
 import org.atmosphere.stomp.annotation.StompEndpoint;
+import org.atmosphere.stomp.metrics.DestinationMetrics;
+import org.atmosphere.stomp.metrics.Stage;
 import org.atmosphere.stomp.protocol.Action;
 import org.atmosphere.stomp.protocol.Header;
 import org.atmosphere.util.Utils;
@@ -36,6 +40,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * <p>
@@ -44,6 +58,24 @@ import java.lang.reflect.Method;
  * which is mapped to the appropriate annotated method.
  * </p>
  *
+ * <p>
+ * When the method declares a {@link List} parameter and a batch size is specified, the frames are collected and the
+ * method is invoked once per batch with all the decoded bodies. The other parameters are resolved with the last frame
+ * of the batch. When such a method returns a {@link Collection}, the results are broadcasted in a single
+ * {@link StompMessageBatch}.
+ * </p>
+ *
+ * <p>
+ * An {@link #aggregate(long, ResultMerger, ScheduledExecutorService) aggregation window} can be configured so the
+ * results returned within the window are fanned out once, merged by a {@link ResultMerger} or written in a single
+ * multi-frame delivery.
+ * </p>
+ *
+ * <p>
+ * When {@link #measure(DestinationMetrics) metrics} are provided, the duration of each invocation of the method is
+ * recorded.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.1
  * @version 1.0
@@ -96,6 +128,36 @@ public class StompSendActionAtmosphereHandler
      */
     private final Method onHeartbeatMethod;
 
+    /**
+     * The index of the parameter that receives the batch, -1 if the method is invoked for each frame.
+     */
+    private final int batchIndex;
+
+    /**
+     * Decodes each body of a batch, {@code null} if the list contains the raw bodies.
+     */
+    private final Decoder<String, ?> batchDecoder;
+
+    /**
+     * Collects the frames when the method is invoked once per batch.
+     */
+    private final MicroBatcher<MicroBatcher.Entry> batcher;
+
+    /**
+     * Collects the results during the aggregation window, {@code null} if each result is broadcasted immediately.
+     */
+    private volatile MicroBatcher<StompMessage> aggregator;
+
+    /**
+     * Merges the aggregated results, {@code null} if they are broadcasted in a single multi-frame delivery.
+     */
+    private volatile ResultMerger<Object> merger;
+
+    /**
+     * The metrics of the destination, {@code null} if the invocations are not measured.
+     */
+    private volatile DestinationMetrics metrics;
+
     /**
      * <p>
      * Creates a new instance.
@@ -114,6 +176,33 @@ public class StompSendActionAtmosphereHandler
                                             final Decoder<String, ?> decoder,
                                             final Broadcaster broadcaster,
                                             final Method onHeartbeatMethod) {
+        this(toProxy, method, encoder, decoder, broadcaster, onHeartbeatMethod, 0, 0, null);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that can invoke the method once per batch of frames.
+     * </p>
+     *
+     * @param toProxy the object to proxy
+     * @param method the method to invoke on proxy object
+     * @param encoder encodes into expected parameter type
+     * @param decoder converts returned type into {@code String} wrapped in text frame
+     * @param broadcaster the broadcaster associated to the destination declared in the annotated method
+     * @param onHeartbeatMethod the heartbeat method
+     * @param batchSize the maximum number of frames per invocation if the method declares a {@link List} parameter, 0 to disable batching
+     * @param batchDelay how long in milliseconds a frame can wait for the others of its batch
+     * @param scheduler the scheduler that processes the batches whose delay expires, ignored if batching is disabled
+     */
+    public StompSendActionAtmosphereHandler(final Object toProxy,
+                                            final Method method,
+                                            final Encoder<Object, String> encoder,
+                                            final Decoder<String, ?> decoder,
+                                            final Broadcaster broadcaster,
+                                            final Method onHeartbeatMethod,
+                                            final int batchSize,
+                                            final long batchDelay,
+                                            final ScheduledExecutorService scheduler) {
         this.toProxy = toProxy;
         this.method = method;
         this.encoder = encoder;
@@ -123,22 +212,26 @@ public class StompSendActionAtmosphereHandler
         // Detect appropriate provider for each parameter type
         final Class<?>[] paramTypes = method.getParameterTypes();
         paramProviders = new ParamProvider[paramTypes.length];
+        int listIndex = -1;
 
         for (int i = 0; i < paramTypes.length; i++) {
             final Class<?> paramType = paramTypes[i];
 
+            // The list receives the batch when the method is invoked
+            if (batchSize > 0 && listIndex == -1 && paramType.isAssignableFrom(List.class)) {
+                listIndex = i;
             // The atmosphere resource is just the one that sent the message
-            if (paramType.isAssignableFrom(AtmosphereResource.class)) {
+            } else if (paramType.isAssignableFrom(AtmosphereResource.class)) {
                 paramProviders[i] = new ParamProvider() {
                     @Override
-                    public Object getParam(final AtmosphereResource atmosphereResource) {
+                    public Object getParam(final AtmosphereResource atmosphereResource, final String body) {
                         return atmosphereResource;
                     }
                 };
             } else if (paramType.isAssignableFrom(Broadcaster.class)) {
                 paramProviders[i] = new ParamProvider() {
                     @Override
-                    public Object getParam(final AtmosphereResource atmosphereResource) {
+                    public Object getParam(final AtmosphereResource atmosphereResource, final String body) {
                         return broadcaster;
                     }
                 };
@@ -146,16 +239,16 @@ public class StompSendActionAtmosphereHandler
             } else if (paramType.isAssignableFrom(String.class)) {
                 paramProviders[i] = new ParamProvider() {
                     @Override
-                    public Object getParam(final AtmosphereResource atmosphereResource) {
-                        return atmosphereResource.getRequest().getAttribute(FrameInterceptor.STOMP_MESSAGE_BODY);
+                    public Object getParam(final AtmosphereResource atmosphereResource, final String body) {
+                        return body;
                     }
                 };
             // Otherwise we use the decoder to compute the appropriate parameter type
             } else if (decoder != null) {
                 paramProviders[i] = new ParamProvider() {
                     @Override
-                    public Object getParam(final AtmosphereResource atmosphereResource) {
-                        return decoder.decode(atmosphereResource.getRequest().getAttribute(FrameInterceptor.STOMP_MESSAGE_BODY).toString());
+                    public Object getParam(final AtmosphereResource atmosphereResource, final String body) {
+                        return decoder.decode(body);
                     }
                 };
             // No decoder provided, we don't know how to convert raw string into expected parameter type
@@ -163,26 +256,132 @@ public class StompSendActionAtmosphereHandler
                 throw new IllegalArgumentException(IAE_MESSAGE);
             }
         }
+
+        batchIndex = listIndex;
+
+        if (batchIndex == -1) {
+            batchDecoder = null;
+            batcher = null;
+        } else {
+            // Bodies are decoded unless the list declares to contain strings
+            final Type listType = method.getGenericParameterTypes()[batchIndex];
+            final boolean raw = listType instanceof ParameterizedType
+                    && String.class.equals(ParameterizedType.class.cast(listType).getActualTypeArguments()[0]);
+
+            if (!raw && decoder == null) {
+                throw new IllegalArgumentException(IAE_MESSAGE);
+            }
+
+            batchDecoder = raw ? null : decoder;
+            batcher = new MicroBatcher<MicroBatcher.Entry>(batchSize, batchDelay, scheduler, new MicroBatcher.Flusher<MicroBatcher.Entry>() {
+                @Override
+                public void flush(final List<MicroBatcher.Entry> batch) {
+                    invoke(batch);
+                }
+            });
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void onRequest(final AtmosphereResource atmosphereResource) throws IOException {
+        final Object body = atmosphereResource.getRequest().getAttribute(FrameInterceptor.STOMP_MESSAGE_BODY);
+        invoke(atmosphereResource,
+                body == null ? null : body.toString(),
+                (Map<String, String>) atmosphereResource.getRequest().getAttribute(FrameInterceptor.STOMP_MESSAGE_HEADERS));
+    }
+
+    /**
+     * <p>
+     * Invokes the method with the given body and broadcasts the result. Unlike {@link #onRequest(AtmosphereResource)},
+     * the body and the headers are not read from the request, so this method can be called outside the request
+     * processing.
+     * </p>
+     *
+     * @param atmosphereResource the resource that sent the frame
+     * @param body the frame body
+     * @param headers the frame headers
+     * @throws IOException if an error can't be written
+     */
+    public void invoke(final AtmosphereResource atmosphereResource, final String body, final Map<String, String> headers)
+            throws IOException {
+        invoke(atmosphereResource, body, headers, null);
+    }
+
+    /**
+     * <p>
+     * Invokes the method like {@link #invoke(AtmosphereResource, String, Map)} and then runs the given completion.
+     * When the method is invoked {@link #isBatching() once per batch}, the frame is only added to the current batch:
+     * the completion runs once the batch has been processed and the {@link Stage#HANDLER} stage is recorded for the
+     * whole batch.
+     * </p>
+     *
+     * @param atmosphereResource the resource that sent the frame
+     * @param body the frame body
+     * @param headers the frame headers
+     * @param completion runs once the frame has been processed, {@code null} if nobody waits for it
+     * @throws IOException if an error can't be written
+     */
+    public void invoke(final AtmosphereResource atmosphereResource,
+                       final String body,
+                       final Map<String, String> headers,
+                       final Runnable completion)
+            throws IOException {
+        if (batcher != null) {
+            batcher.add(new MicroBatcher.Entry(atmosphereResource, body, headers, completion));
+            return;
+        }
+
+        try {
+            invokeOnce(atmosphereResource, body, headers);
+        } finally {
+            if (completion != null) {
+                completion.run();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the method is invoked once per batch of frames.
+     * </p>
+     *
+     * @return {@code true} if the frames are batched
+     */
+    public boolean isBatching() {
+        return batcher != null;
+    }
+
+    /**
+     * <p>
+     * Invokes the method with the given body and broadcasts the result.
+     * </p>
+     *
+     * @param atmosphereResource the resource that sent the frame
+     * @param body the frame body
+     * @param headers the frame headers
+     * @throws IOException if an error can't be written
+     */
+    private void invokeOnce(final AtmosphereResource atmosphereResource, final String body, final Map<String, String> headers)
+            throws IOException {
+
         try {
             // Compute parameters
             final Object[] params = new Object[paramProviders.length];
 
             for (int i = 0; i < params.length; i++) {
-                params[i] = paramProviders[i].getParam(atmosphereResource);
+                params[i] = paramProviders[i].getParam(atmosphereResource, body);
             }
 
             // Invoke stomp service
-            final Object retval = method.invoke(toProxy, params);
+            final Object retval = invokeMethod(params);
 
             if (retval != null) {
-                broadcaster.broadcast(encoder == null ? retval : encoder.encode(retval));
+                // Headers specified by the sender are forwarded to the subscribers
+                publish(headers, retval);
             } else {
                 // TODO: ack?
             }
@@ -190,20 +389,235 @@ public class StompSendActionAtmosphereHandler
             logger.warn("Failed to process class annotated {}", StompEndpoint.class.getName(), iae);
         } catch (InvocationTargetException ite) {
             logger.info("Invoked method thrown an exception", ite);
+            writeError(atmosphereResource, ite);
+        }
+    }
+
+    /**
+     * <p>
+     * Invokes the method once with all the bodies of the given batch and broadcasts the result. If the invocation
+     * throws an exception, the error is sent to each resource that sent a frame of the batch. The invocation is
+     * recorded in the {@link Stage#HANDLER} stage, then the completion of each frame runs.
+     * </p>
+     *
+     * @param batch the batch
+     */
+    private void invoke(final List<MicroBatcher.Entry> batch) {
+        final MicroBatcher.Entry last = batch.get(batch.size() - 1);
+        final long start = Stage.start();
+
+        try {
+            final List<Object> bodies = new ArrayList<Object>(batch.size());
+
+            for (final MicroBatcher.Entry e : batch) {
+                bodies.add(batchDecoder == null ? e.body : batchDecoder.decode(e.body));
+            }
+
+            // Compute parameters
+            final Object[] params = new Object[paramProviders.length];
+
+            for (int i = 0; i < params.length; i++) {
+                params[i] = i == batchIndex ? bodies : paramProviders[i].getParam(last.resource, last.body);
+            }
+
+            // Invoke stomp service
+            final Object retval = invokeMethod(params);
+
+            if (retval instanceof Collection) {
+                // All the results are fanned out at once
+                final List<StompMessage> messages = new ArrayList<StompMessage>();
+
+                for (final Object r : Collection.class.cast(retval)) {
+                    if (r != null) {
+                        messages.add(new StompMessage(last.headers, r));
+                    }
+                }
+
+                publish(messages);
+            } else if (retval != null) {
+                publish(last.headers, retval);
+            }
+        } catch (IllegalAccessException iae) {
+            logger.warn("Failed to process class annotated {}", StompEndpoint.class.getName(), iae);
+        } catch (InvocationTargetException ite) {
+            logger.info("Invoked method thrown an exception", ite);
+            final Set<AtmosphereResource> senders = new LinkedHashSet<AtmosphereResource>();
+
+            for (final MicroBatcher.Entry e : batch) {
+                senders.add(e.resource);
+            }
+
+            for (final AtmosphereResource r : senders) {
+                writeError(r, ite);
+            }
+        } catch (RuntimeException re) {
+            logger.error("Unable to process a batch of {} frames", batch.size(), re);
+        } finally {
+            Stage.HANDLER.end(start);
+
+            for (final MicroBatcher.Entry e : batch) {
+                if (e.completion != null) {
+                    e.completion.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Invokes the method with the given parameters and records the duration of the invocation if metrics are
+     * provided.
+     * </p>
+     *
+     * @param params the parameters
+     * @return the result
+     * @throws IllegalAccessException if the method is not accessible
+     * @throws InvocationTargetException if the method throws an exception
+     */
+    private Object invokeMethod(final Object[] params) throws IllegalAccessException, InvocationTargetException {
+        final DestinationMetrics m = metrics;
+
+        if (m == null) {
+            return method.invoke(toProxy, params);
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return method.invoke(toProxy, params);
+        } finally {
+            m.invoked(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>
+     * Broadcasts a result, or adds it to the current aggregation window.
+     * </p>
+     *
+     * @param headers the headers of the frame that produced the result
+     * @param result the result
+     */
+    private void publish(final Map<String, String> headers, final Object result) {
+        publish(Collections.singletonList(new StompMessage(headers, result)));
+    }
+
+    /**
+     * <p>
+     * Broadcasts the given results in a single delivery, or adds them to the current aggregation window.
+     * </p>
+     *
+     * @param results the messages whose body is the result to encode
+     */
+    private void publish(final List<StompMessage> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+
+        final MicroBatcher<StompMessage> a = aggregator;
+
+        if (a != null) {
+            for (final StompMessage m : results) {
+                a.add(m);
+            }
+        } else {
+            broadcast(results);
+        }
+    }
+
+    /**
+     * <p>
+     * Encodes and broadcasts the given results. When a {@link ResultMerger} is configured, the results are merged in
+     * a single message. Otherwise, a single result is broadcasted as is and several results are broadcasted in a
+     * {@link StompMessageBatch}.
+     * </p>
+     *
+     * @param results the messages whose body is the result to encode
+     */
+    private void broadcast(final List<StompMessage> results) {
+        final StompMessage last = results.get(results.size() - 1);
+
+        if (merger != null && results.size() > 1) {
+            final List<Object> bodies = new ArrayList<Object>(results.size());
+
+            for (final StompMessage m : results) {
+                bodies.add(m.getBody());
+            }
+
+            final Object merged = merger.merge(bodies);
+
+            if (merged != null) {
+                broadcaster.broadcast(new StompMessage(last.getHeaders(), encoder == null ? merged : encoder.encode(merged)));
+            }
+        } else if (results.size() == 1) {
+            broadcaster.broadcast(new StompMessage(last.getHeaders(), encoder == null ? last.getBody() : encoder.encode(last.getBody())));
+        } else {
+            final List<StompMessage> encoded = new ArrayList<StompMessage>(results.size());
+
+            for (final StompMessage m : results) {
+                encoded.add(new StompMessage(m.getHeaders(), encoder == null ? m.getBody() : encoder.encode(m.getBody())));
+            }
 
-            // Push the error in appropriate frame
-            final StringBuilder sb = new StringBuilder();
-            sb.append(Action.ERROR.toString())
-                    .append("\n")
-                    .append(Header.MESSAGE)
-                    .append(":")
-                    .append(ite.getCause().getMessage())
-                    .append("\n\n\n")
-                    .append(0x00);
-            atmosphereResource.write(sb.toString());
+            broadcaster.broadcast(new StompMessageBatch(encoded));
         }
     }
 
+    /**
+     * <p>
+     * Aggregates the results returned within the given window before broadcasting them once. The results are merged
+     * with the given merger if not {@code null}, written in a single multi-frame delivery otherwise. This method must
+     * be called before the handler processes any frame.
+     * </p>
+     *
+     * @param window the aggregation window in milliseconds, 0 to broadcast each result immediately
+     * @param merger the merger, {@code null} if the results are not merged
+     * @param scheduler the scheduler that broadcasts the results when the window expires
+     */
+    @SuppressWarnings("unchecked")
+    public void aggregate(final long window, final ResultMerger<?> merger, final ScheduledExecutorService scheduler) {
+        this.merger = (ResultMerger<Object>) merger;
+        this.aggregator = window <= 0 ? null : new MicroBatcher<StompMessage>(Integer.MAX_VALUE, window, scheduler,
+                new MicroBatcher.Flusher<StompMessage>() {
+                    @Override
+                    public void flush(final List<StompMessage> batch) {
+                        broadcast(batch);
+                    }
+                });
+    }
+
+    /**
+     * <p>
+     * Records the duration of each invocation of the method in the given metrics. This method must be called before
+     * the handler processes any frame.
+     * </p>
+     *
+     * @param metrics the metrics of the destination, {@code null} to stop measuring the invocations
+     */
+    public void measure(final DestinationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * <p>
+     * Writes an {@link Action#ERROR} frame for the exception thrown by the invoked method.
+     * </p>
+     *
+     * @param atmosphereResource the resource to notify
+     * @param ite the exception
+     */
+    private void writeError(final AtmosphereResource atmosphereResource, final InvocationTargetException ite) {
+        // Push the error in appropriate frame
+        final StringBuilder sb = new StringBuilder();
+        sb.append(Action.ERROR.toString())
+                .append("\n")
+                .append(Header.MESSAGE)
+                .append(":")
+                .append(ite.getCause().getMessage())
+                .append("\n\n\n")
+                .append(0x00);
+        atmosphereResource.write(sb.toString());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -231,8 +645,9 @@ public class StompSendActionAtmosphereHandler
          * </p>
          *
          * @param atmosphereResource the request resource
+         * @param body the frame body
          * @return the object of expected type
          */
-        Object getParam(AtmosphereResource atmosphereResource);
+        Object getParam(AtmosphereResource atmosphereResource, String body);
     }
 }
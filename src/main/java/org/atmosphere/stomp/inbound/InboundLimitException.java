@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.inbound;
+
+import org.atmosphere.stomp.protocol.ParseException;
+
+/**
+ * <p>
+ * This exception is thrown when a frame read from a client exceeds one of the {@link InboundLimits}. The message
+ * describes the exceeded limit and can be sent to the client.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class InboundLimitException extends ParseException {
+
+    /**
+     * <p>
+     * Builds a new exception.
+     * </p>
+     *
+     * @param message the exceeded limit
+     */
+    public InboundLimitException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.inbound;
+
+import org.atmosphere.cpr.ApplicationConfig;
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereRequestImpl;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * The limits of the frames read from a client, measured in UTF-8 bytes: the whole frame, the number of headers, the
+ * length of each header line and the length of the body. A limit lower or equals to 0 means that the value is not
+ * bounded.
+ * </p>
+ *
+ * <p>
+ * The limits are checked while the request is read, so the reading stops as soon as a limit is exceeded and the rest
+ * of the frame is never buffered. When the container has already buffered the frame, for instance a websocket
+ * message, the limits are checked before the frame is parsed. Buffered bytes are checked before they are decoded, and
+ * the size of an already decoded frame is computed from its characters without encoding it.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class InboundLimits {
+
+    /**
+     * The charset of the frames.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The size of the buffer used to read the request.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The maximum length of a frame in bytes.
+     */
+    private final int maxFrameLength;
+
+    /**
+     * The maximum number of headers.
+     */
+    private final int maxHeaders;
+
+    /**
+     * The maximum length in bytes of the command and of each header line.
+     */
+    private final int maxHeaderLength;
+
+    /**
+     * The maximum length of the body in bytes.
+     */
+    private final int maxBodyLength;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param maxFrameLength the maximum length of a frame in bytes
+     * @param maxHeaders the maximum number of headers
+     * @param maxHeaderLength the maximum length of a header line in bytes
+     * @param maxBodyLength the maximum length of the body in bytes
+     */
+    public InboundLimits(final int maxFrameLength, final int maxHeaders, final int maxHeaderLength, final int maxBodyLength) {
+        this.maxFrameLength = maxFrameLength;
+        this.maxHeaders = maxHeaders;
+        this.maxHeaderLength = maxHeaderLength;
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    /**
+     * <p>
+     * Builds the limits specified by the init-params of the given configuration.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the limits
+     */
+    public static InboundLimits fromConfig(final AtmosphereConfig config) {
+        return new InboundLimits(FrameInterceptor.Property.INBOUND_MAX_FRAME_LENGTH.retrieveInt(config),
+                FrameInterceptor.Property.INBOUND_MAX_HEADERS.retrieveInt(config),
+                FrameInterceptor.Property.INBOUND_MAX_HEADER_LENGTH.retrieveInt(config),
+                FrameInterceptor.Property.INBOUND_MAX_BODY_LENGTH.retrieveInt(config));
+    }
+
+    /**
+     * <p>
+     * Indicates if at least one limit is defined.
+     * </p>
+     *
+     * @return {@code true} if frames are bounded, {@code false} otherwise
+     */
+    public boolean isBounded() {
+        return maxFrameLength > 0 || maxHeaders > 0 || maxHeaderLength > 0 || maxBodyLength > 0;
+    }
+
+    /**
+     * <p>
+     * Reads the frame sent by the given resource and checks the limits. Like
+     * {@link org.atmosphere.util.IOUtils#readEntirelyAsString(AtmosphereResource)}, the body of a GET request is
+     * not read unless {@link ApplicationConfig#READ_GET_BODY} is enabled.
+     * </p>
+     *
+     * @param r the resource
+     * @return the frame, an empty string if the request has no body
+     * @throws IOException if the request can't be read
+     * @throws InboundLimitException if a limit is exceeded
+     */
+    public String read(final AtmosphereResource r) throws IOException, InboundLimitException {
+        final AtmosphereRequest request = r.getRequest();
+
+        if (!r.getAtmosphereConfig().getInitParameter(ApplicationConfig.READ_GET_BODY, false)
+                && "GET".equalsIgnoreCase(request.getMethod())) {
+            return "";
+        }
+
+        final AtmosphereRequestImpl.Body body = request.body();
+
+        if (body.hasString()) {
+            final String retval = body.asString();
+            check(retval);
+            return retval;
+        } else if (body.hasBytes()) {
+            // Nothing is decoded if a limit is exceeded
+            new Counter().count(body.asBytes(), body.byteOffset(), body.byteLength());
+            return new String(body.asBytes(), body.byteOffset(), body.byteLength(), CHARSET);
+        }
+
+        final InputStream is = request.getInputStream();
+        final Counter counter = new Counter();
+
+        // Stops reading at the first exceeded limit
+        if (is != null) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+
+            while ((read = is.read(buffer)) != -1) {
+                counter.count(buffer, 0, read);
+                bytes.write(buffer, 0, read);
+            }
+
+            return new String(bytes.toByteArray(), CHARSET);
+        }
+
+        final Reader reader = request.getReader();
+
+        if (reader == null) {
+            return "";
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[BUFFER_SIZE];
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            counter.count(buffer, 0, read);
+            sb.append(buffer, 0, read);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * <p>
+     * Checks the limits for the given frame.
+     * </p>
+     *
+     * @param frame the frame
+     * @throws InboundLimitException if a limit is exceeded
+     */
+    public void check(final String frame) throws InboundLimitException {
+        final Counter counter = new Counter();
+
+        for (int i = 0; i < frame.length(); i++) {
+            counter.count(frame.charAt(i));
+        }
+    }
+
+    /**
+     * <p>
+     * Counts the bytes of a frame read in several parts. The characters delimiting the lines and the body are ASCII,
+     * they are encoded in one byte and never appear inside a multi-byte sequence.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private final class Counter {
+
+        /**
+         * The bytes read.
+         */
+        private int frameLength;
+
+        /**
+         * The headers read.
+         */
+        private int headers;
+
+        /**
+         * The bytes of the current line.
+         */
+        private int lineLength;
+
+        /**
+         * The bytes of the body.
+         */
+        private int bodyLength;
+
+        /**
+         * If the command line has been read.
+         */
+        private boolean command;
+
+        /**
+         * If the body is being read.
+         */
+        private boolean body;
+
+        /**
+         * <p>
+         * Counts the given UTF-8 bytes.
+         * </p>
+         *
+         * @param bytes the bytes
+         * @param offset the first byte
+         * @param length the number of bytes
+         * @throws InboundLimitException if a limit is exceeded
+         */
+        void count(final byte[] bytes, final int offset, final int length) throws InboundLimitException {
+            for (int i = offset; i < offset + length; i++) {
+                count((char) (bytes[i] & 0xFF), 1);
+            }
+        }
+
+        /**
+         * <p>
+         * Counts the bytes of the given characters once encoded in UTF-8.
+         * </p>
+         *
+         * @param chars the characters
+         * @param offset the first character
+         * @param length the number of characters
+         * @throws InboundLimitException if a limit is exceeded
+         */
+        void count(final char[] chars, final int offset, final int length) throws InboundLimitException {
+            for (int i = offset; i < offset + length; i++) {
+                count(chars[i]);
+            }
+        }
+
+        /**
+         * <p>
+         * Counts the bytes of the given character once encoded in UTF-8. Each half of a surrogate pair counts for two
+         * bytes.
+         * </p>
+         *
+         * @param c the character
+         * @throws InboundLimitException if a limit is exceeded
+         */
+        void count(final char c) throws InboundLimitException {
+            count(c, c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3);
+        }
+
+        /**
+         * <p>
+         * Counts the given character or byte.
+         * </p>
+         *
+         * @param c the character, only compared to ASCII delimiters
+         * @param size the number of bytes
+         * @throws InboundLimitException if a limit is exceeded
+         */
+        private void count(final char c, final int size) throws InboundLimitException {
+            if (maxFrameLength > 0 && (frameLength += size) > maxFrameLength) {
+                throw new InboundLimitException("Frame exceeds " + maxFrameLength + " bytes");
+            }
+
+            if (body) {
+                // The NUL terminating the frame is not part of the body
+                if (c != '\0' && maxBodyLength > 0 && (bodyLength += size) > maxBodyLength) {
+                    throw new InboundLimitException("Body exceeds " + maxBodyLength + " bytes");
+                }
+            } else if (c == '\n') {
+                if (!command) {
+                    // End of lines before the command are heartbeats
+                    command = lineLength > 0;
+                } else if (lineLength == 0) {
+                    body = true;
+                } else if (maxHeaders > 0 && ++headers > maxHeaders) {
+                    throw new InboundLimitException("Frame has more than " + maxHeaders + " headers");
+                }
+
+                lineLength = 0;
+            } else if (c != '\r' && (lineLength += size) > maxHeaderLength && maxHeaderLength > 0) {
+                throw new InboundLimitException("Header line exceeds " + maxHeaderLength + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.inbound;
+
+import org.atmosphere.cpr.AtmosphereResourceSession;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The mailbox of a STOMP session: the frames received from the same client are processed one after the other in the
+ * order they arrived, even if they are read by different container threads, for instance when several long-polling
+ * requests are in flight. The mailbox is bound to the {@link AtmosphereResourceSession session}, so frames of
+ * different sessions are still processed concurrently by the container and no global lock is involved.
+ * </p>
+ *
+ * <p>
+ * A thread {@link #enter() enters} the mailbox before processing its frame and waits while frames that arrived before
+ * are processed. Waiting threads are released in arrival order. The thread must {@link #leave() leave} the mailbox
+ * once the frame is processed. A thread processing a frame can enter the mailbox again.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class InboundMailbox {
+
+    /**
+     * The key used to store the mailbox in {@link AtmosphereResourceSession}.
+     */
+    private static final String ATTRIBUTE_KEY = InboundMailbox.class.getName();
+
+    /**
+     * The fair lock that grants the mailbox to the waiting threads in arrival order.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * <p>
+     * Gets the {@link InboundMailbox} bound to the given session. If no mailbox is bound to the session, a new one is
+     * created and then returned.
+     * </p>
+     *
+     * @param session the {@link AtmosphereResourceSession session}
+     * @return the mailbox
+     */
+    public static InboundMailbox getFromSession(final AtmosphereResourceSession session) {
+        // Two threads reading frames from the same client must not create two mailboxes
+        synchronized (session) {
+            Object retval = session.getAttribute(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                retval = new InboundMailbox();
+                session.setAttribute(ATTRIBUTE_KEY, retval);
+            }
+
+            return InboundMailbox.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Waits until all the frames that arrived before have been processed.
+     * </p>
+     */
+    public void enter() {
+        lock.lock();
+    }
+
+    /**
+     * <p>
+     * Releases the mailbox so the next frame can be processed.
+     * </p>
+     */
+    public void leave() {
+        lock.unlock();
+    }
+
+    /**
+     * <p>
+     * Gets the number of frames waiting for the mailbox.
+     * </p>
+     *
+     * @return the estimated number of waiting frames
+     */
+    public int getPending() {
+        return lock.getQueueLength();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.interceptor;
+
+import org.atmosphere.cpr.Action;
+import org.atmosphere.cpr.AtmosphereFramework;
+import org.atmosphere.cpr.AtmosphereInterceptorAdapter;
+import org.atmosphere.stomp.StompInterceptor;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Evaluates the {@link org.atmosphere.stomp.protocol.Action#ACK acknowledgment} and
+ * {@link org.atmosphere.stomp.protocol.Action#NACK negative acknowledgment} frames. In both cases, the message is not
+ * pending anymore for the subscription it has been sent to. The message is not delivered again when a NACK is received.
+ * </p>
+ *
+ * <p>
+ * The message is identified by the {@link Header#ID} header in STOMP 1.2 and by the {@link Header#MESSAGE_ID} header
+ * in previous versions.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @version 1.0
+ * @since 0.5
+ */
+public class AckInterceptor extends AtmosphereInterceptorAdapter implements StompInterceptor {
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Action inspect(final AtmosphereFramework framework,
+                          final Frame frame,
+                          final FrameInterceptor.StompAtmosphereResource r)
+            throws IOException {
+        final String id = frame.getHeaders().get(Header.ID);
+        final String messageId = id != null ? id : frame.getHeaders().get(Header.MESSAGE_ID);
+
+        if (messageId == null
+                || !Subscriptions.getFromSession(framework.sessionFactory().getSession(r.getResource())).acknowledge(messageId)) {
+            logger.debug("{} received for a message which is not pending: {}", frame.getAction(), messageId);
+        }
+
+        return Action.CONTINUE;
+    }
+}
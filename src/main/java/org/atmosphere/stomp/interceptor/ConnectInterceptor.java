@@ -142,6 +142,13 @@ public class ConnectInterceptor extends HeartbeatInterceptor implements StompInt
                 // Extracts heartbeat then clock
                 final Integer[] intervals = parseHeartBeat(frame.getHeaders().get(Header.HEART_BEAT));
 
+                if (intervals == null) {
+                    headers.put(Header.MESSAGE, "Invalid heart-beat header");
+                    r.write(org.atmosphere.stomp.protocol.Action.ERROR, headers, "The heart-beat header must contain two non-negative integers");
+
+                    return Action.CANCELLED;
+                }
+
                 // Extract the desired heartbeat interval
                 // Won't be applied if lower than config value
                 int serverInterval = intervals[1];
@@ -173,7 +180,8 @@ public class ConnectInterceptor extends HeartbeatInterceptor implements StompInt
      * <p>
      * Parse the given header value to extract the most appropriate version sent by client. If value is {@code null},
      * then {@link #DEFAULT_VERSION} is returned. Otherwise, the method looks for the highest version supported by
-     * both client and server. If no version are in common, -1 is returned and an error should be sent
+     * both client and server. If no version are in common, -1 is returned and an error should be sent. Values that
+     * are not numbers are ignored.
      * </p>
      *
      * @param acceptVersion the header value
@@ -187,7 +195,13 @@ public class ConnectInterceptor extends HeartbeatInterceptor implements StompInt
             final String[] versions = acceptVersion.split(",");
 
             for (final String version : versions) {
-                final float clientVersion = Float.parseFloat(version);
+                final float clientVersion;
+
+                try {
+                    clientVersion = Float.parseFloat(version);
+                } catch (NumberFormatException nfe) {
+                    continue;
+                }
 
                 if (clientVersion == DEFAULT_VERSION || clientVersion == HIGHEST_VERSION) {
                     retval = Math.max(retval, clientVersion);
@@ -212,14 +226,25 @@ public class ConnectInterceptor extends HeartbeatInterceptor implements StompInt
      * </p>
      *
      * @param heartbeat the header value
-     * @return the parsed array
+     * @return the parsed array, {@code null} if the value does not contain two non-negative integers
      */
     private Integer[] parseHeartBeat(final String heartbeat) {
         if (heartbeat == null) {
             return new Integer[]{0, 0,};
         } else {
-            final String[] arr = heartbeat.split(",");
-            return new Integer[]{Integer.parseInt(arr[0]), Integer.parseInt(arr[1]),};
+            final int comma = heartbeat.indexOf(',');
+
+            if (comma == -1 || heartbeat.indexOf(',', comma + 1) != -1) {
+                return null;
+            }
+
+            try {
+                final int first = Integer.parseInt(heartbeat.substring(0, comma).trim());
+                final int second = Integer.parseInt(heartbeat.substring(comma + 1).trim());
+                return first < 0 || second < 0 ? null : new Integer[]{first, second,};
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
         }
     }
 }
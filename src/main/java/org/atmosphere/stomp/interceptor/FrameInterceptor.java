@@ -29,21 +29,36 @@ import org.atmosphere.handler.AbstractReflectorAtmosphereHandler;
 import org.atmosphere.stomp.StompBroadcastFilter;
 import org.atmosphere.stomp.StompInterceptor;
 import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.capture.CaptureWriter;
+import org.atmosphere.stomp.inbound.InboundLimitException;
+import org.atmosphere.stomp.inbound.InboundLimits;
+import org.atmosphere.stomp.inbound.InboundMailbox;
+import org.atmosphere.stomp.listener.FrameEvent;
+import org.atmosphere.stomp.listener.FrameListeners;
+import org.atmosphere.stomp.metrics.Stage;
+import org.atmosphere.stomp.outbound.OutboundQueue;
 import org.atmosphere.stomp.protocol.Frame;
 import org.atmosphere.stomp.protocol.Header;
 import org.atmosphere.stomp.protocol.ParseException;
 import org.atmosphere.stomp.protocol.StompFormat;
 import org.atmosphere.stomp.protocol.StompFormatImpl;
+import org.atmosphere.stomp.queue.RoundRobinDispatchPolicy;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
+import org.atmosphere.stomp.wildcard.WildcardSubscriptions;
 import org.atmosphere.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -56,6 +71,31 @@ import java.util.concurrent.ConcurrentHashMap;
  * to suspends the connection. Then it could add any {@link AtmosphereResource} to a {@link org.atmosphere.cpr.Broadcaster} if necessary.
  * </p>
  *
+ * <p>
+ * When {@link Property#INBOUND_ORDERED} is enabled, the frames of a client are processed in arrival order through the
+ * {@link InboundMailbox} bound to its session.
+ * </p>
+ *
+ * <p>
+ * When {@link Property#CAPTURE_FILE} is set, the raw frames are recorded with the ID of their session by a
+ * {@link CaptureWriter} before being parsed.
+ * </p>
+ *
+ * <p>
+ * The frames are read according to the {@link InboundLimits}: a frame exceeding a limit is answered with an ERROR
+ * frame without being entirely read nor parsed.
+ * </p>
+ *
+ * <p>
+ * When {@link Property#STAGE_HISTOGRAMS} is enabled, the reading, the dispatch and the writes of each frame are
+ * recorded in the histograms of their {@link Stage}.
+ * </p>
+ *
+ * <p>
+ * The {@link FrameListeners} are notified when a frame is received, parsed, dispatched and receipted, and when frames
+ * are written in response.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.1
  * @version 1.0
@@ -76,7 +116,19 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
         /**
          * Setting that specifies the {@link org.atmosphere.stomp.protocol.StompFormat} implementation class used by the interceptor.
          */
-        STOMP_FORMAT_CLASS("org.atmosphere.stomp.stompFormatClass", StompFormatImpl.class.getName());
+        STOMP_FORMAT_CLASS("org.atmosphere.stomp.stompFormatClass", StompFormatImpl.class.getName()),
+
+        /**
+         * Setting that specifies the {@link org.atmosphere.stomp.queue.DispatchPolicy} implementation class used to
+         * select the consumer of a queue.
+         */
+        DISPATCH_POLICY_CLASS("org.atmosphere.stomp.dispatchPolicyClass", RoundRobinDispatchPolicy.class.getName()),
+
+        /**
+         * Setting that specifies the {@link java.util.concurrent.ExecutorService} implementation class shared by the
+         * {@link org.atmosphere.stomp.broadcast.PartitionedBroadcaster partitioned broadcasters}.
+         */
+        FANOUT_EXECUTOR_CLASS("org.atmosphere.stomp.fanoutExecutorClass", ForkJoinPool.class.getName());
 
         /**
          * The logger.
@@ -144,6 +196,271 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
         }
     }
 
+    /**
+     * <p>
+     * This enum is dedicated to properties that represents a simple value.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public enum Property {
+
+        /**
+         * Setting that specifies the directory where the journals of durable destinations are stored.
+         */
+        JOURNAL_DIRECTORY("org.atmosphere.stomp.journalDirectory",
+                new File(System.getProperty("java.io.tmpdir"), "atmosphere-stomp-journal").getPath()),
+
+        /**
+         * Setting that specifies the size in bytes of each segment of a journal.
+         */
+        JOURNAL_SEGMENT_SIZE("org.atmosphere.stomp.journalSegmentSize", String.valueOf(64 * 1024 * 1024)),
+
+        /**
+         * Setting that specifies how long in milliseconds a message is retained inside a journal.
+         */
+        JOURNAL_RETENTION("org.atmosphere.stomp.journalRetention", String.valueOf(TimeUnit.DAYS.toMillis(1))),
+
+        /**
+         * Setting that specifies how often in milliseconds the expired segments of the journals are deleted.
+         */
+        JOURNAL_PURGE_INTERVAL("org.atmosphere.stomp.journalPurgeInterval", String.valueOf(TimeUnit.MINUTES.toMillis(1))),
+
+        /**
+         * Setting that specifies the prefix of the destinations where each message is consumed by only one subscriber.
+         */
+        QUEUE_PREFIX("org.atmosphere.stomp.queuePrefix", "/queue/"),
+
+        /**
+         * Setting that specifies the maximum number of messages waiting for an acknowledgment per subscription, 0 for
+         * no limit. No message is delivered to a subscription that reaches this limit until some messages are
+         * acknowledged.
+         */
+        MAX_PENDING_ACKS("org.atmosphere.stomp.maxPendingAcks", "1000"),
+
+        /**
+         * Setting that specifies how long in milliseconds a write to a client can last before the frames pending in
+         * its {@link org.atmosphere.stomp.outbound.OutboundQueue} are written anyway.
+         */
+        OUTBOUND_WRITE_TIMEOUT("org.atmosphere.stomp.outboundWriteTimeout", String.valueOf(TimeUnit.SECONDS.toMillis(5))),
+
+        /**
+         * Setting that specifies the maximum number of frames waiting to be written to a client, 0 for no limit.
+         */
+        OUTBOUND_MAX_FRAMES("org.atmosphere.stomp.outboundMaxFrames", "0"),
+
+        /**
+         * Setting that specifies the maximum number of bytes waiting to be written to a client, 0 for no limit.
+         */
+        OUTBOUND_MAX_BYTES("org.atmosphere.stomp.outboundMaxBytes", "0"),
+
+        /**
+         * Setting that specifies the {@link org.atmosphere.stomp.outbound.OverflowPolicy} applied when a limit of the
+         * outbound queue is reached.
+         */
+        OUTBOUND_OVERFLOW_POLICY("org.atmosphere.stomp.outboundOverflowPolicy", "DROP_OLDEST"),
+
+        /**
+         * Setting that specifies the maximum time window in milliseconds during which frames sent to a client are
+         * coalesced in a single write, 0 to disable coalescing.
+         */
+        OUTBOUND_COALESCING_WINDOW("org.atmosphere.stomp.outboundCoalescingWindow", "0"),
+
+        /**
+         * Setting that specifies the number of coalesced bytes that triggers a write before the end of the window.
+         */
+        OUTBOUND_COALESCING_BUDGET("org.atmosphere.stomp.outboundCoalescingBudget", String.valueOf(64 * 1024)),
+
+        /**
+         * Setting that specifies if the coalescing window adapts to the load.
+         */
+        OUTBOUND_COALESCING_ADAPTIVE("org.atmosphere.stomp.outboundCoalescingAdaptive", "true"),
+
+        /**
+         * Setting that specifies the number of partitions of the subscribers of a
+         * {@link org.atmosphere.stomp.broadcast.PartitionedBroadcaster}, 0 to use the number of available processors.
+         */
+        FANOUT_PARTITIONS("org.atmosphere.stomp.fanoutPartitions", "0"),
+
+        /**
+         * Setting that specifies if the {@link org.atmosphere.stomp.protocol.Action#SEND} frames are processed by an
+         * executor sharded by destination instead of the request thread.
+         */
+        SEND_EXECUTOR("org.atmosphere.stomp.sendExecutor", "false"),
+
+        /**
+         * Setting that specifies the number of shards of the executor processing the sent frames, 0 to use the number
+         * of available processors.
+         */
+        SEND_SHARDS("org.atmosphere.stomp.sendShards", "0"),
+
+        /**
+         * Setting that specifies the maximum number of sent frames waiting in each shard, or waiting for a thread
+         * when virtual threads are not supported.
+         */
+        SEND_QUEUE_CAPACITY("org.atmosphere.stomp.sendQueueCapacity", "1024"),
+
+        /**
+         * Setting that specifies if the {@link org.atmosphere.stomp.annotation.StompService} methods run in virtual
+         * threads instead of the request thread. A bounded pool of platform threads is used if the runtime does not
+         * support virtual threads. This setting can't be enabled with {@link #SEND_EXECUTOR}.
+         */
+        SEND_VIRTUAL_THREADS("org.atmosphere.stomp.sendVirtualThreads", "false"),
+
+        /**
+         * Setting that specifies the maximum number of platform threads running the
+         * {@link org.atmosphere.stomp.annotation.StompService} methods when virtual threads are not supported.
+         */
+        SEND_MAX_THREADS("org.atmosphere.stomp.sendMaxThreads", "200"),
+
+        /**
+         * Setting that specifies a comma-separated list of {@link org.atmosphere.stomp.relay.Relays relay destinations}
+         * where the sent frames are forwarded to the subscribers without invoking any handler.
+         */
+        RELAY_DESTINATIONS("org.atmosphere.stomp.relayDestinations", ""),
+
+        /**
+         * Setting that specifies if the frames received from the same client are processed in arrival order through
+         * its {@link org.atmosphere.stomp.inbound.InboundMailbox}.
+         */
+        INBOUND_ORDERED("org.atmosphere.stomp.inboundOrdered", "false"),
+
+        /**
+         * Setting that specifies the file where the inbound frames are recorded by a
+         * {@link org.atmosphere.stomp.capture.CaptureWriter}, empty to disable the capture.
+         */
+        CAPTURE_FILE("org.atmosphere.stomp.captureFile", ""),
+
+        /**
+         * Setting that specifies the maximum number of bytes of a frame sent by a client, 0 for no limit.
+         */
+        INBOUND_MAX_FRAME_LENGTH("org.atmosphere.stomp.inboundMaxFrameLength", "10485760"),
+
+        /**
+         * Setting that specifies the maximum number of headers of a frame sent by a client, 0 for no limit.
+         */
+        INBOUND_MAX_HEADERS("org.atmosphere.stomp.inboundMaxHeaders", "1000"),
+
+        /**
+         * Setting that specifies the maximum number of bytes of the command and of each header line of a frame sent
+         * by a client, 0 for no limit.
+         */
+        INBOUND_MAX_HEADER_LENGTH("org.atmosphere.stomp.inboundMaxHeaderLength", "8192"),
+
+        /**
+         * Setting that specifies the maximum number of bytes of the body of a frame sent by a client, 0 for no limit.
+         */
+        INBOUND_MAX_BODY_LENGTH("org.atmosphere.stomp.inboundMaxBodyLength", "10485760"),
+
+        /**
+         * Setting that specifies if the throughput and the latency of each destination are measured by
+         * {@link org.atmosphere.stomp.metrics.Metrics}.
+         */
+        METRICS("org.atmosphere.stomp.metrics", "true"),
+
+        /**
+         * Setting that specifies if the metrics of each destination are registered as MBeans.
+         */
+        METRICS_JMX("org.atmosphere.stomp.metricsJmx", "true"),
+
+        /**
+         * Setting that specifies if the duration of each {@link org.atmosphere.stomp.metrics.Stage stage} of the
+         * pipeline is recorded. Recording is enabled for the whole JVM once a framework enables it.
+         */
+        STAGE_HISTOGRAMS("org.atmosphere.stomp.stageHistograms", "false"),
+
+        /**
+         * Setting that specifies the comma separated class names of the
+         * {@link org.atmosphere.stomp.listener.FrameListener listeners} notified of the frame lifecycle.
+         */
+        FRAME_LISTENERS("org.atmosphere.stomp.frameListeners", "");
+
+        /**
+         * The property name.
+         */
+        private final String propertyName;
+
+        /**
+         * The default value if property not set by user.
+         */
+        private final String defaultValue;
+
+        /**
+         * <p>
+         * Builds a new enumeration.
+         * </p>
+         *
+         * @param propertyName the property name
+         * @param defaultValue the default value
+         */
+        private Property(final String propertyName, final String defaultValue) {
+            this.propertyName = propertyName;
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * <p>
+         * Checks in the {@link AtmosphereConfig} if the {@link #propertyName} is defined as an init-param and returns
+         * its value. The default value is returned otherwise.
+         * </p>
+         *
+         * @param config the configuration that provides parameters
+         * @return the value
+         */
+        public String retrieve(final AtmosphereConfig config) {
+            return config.getInitParameter(propertyName, defaultValue);
+        }
+
+        /**
+         * <p>
+         * Retrieves the value as an {@code int}.
+         * </p>
+         *
+         * @param config the configuration that provides parameters
+         * @return the value
+         * @see #retrieve(AtmosphereConfig)
+         */
+        public int retrieveInt(final AtmosphereConfig config) {
+            return Integer.parseInt(retrieve(config).trim());
+        }
+
+        /**
+         * <p>
+         * Retrieves the value as a {@code long}.
+         * </p>
+         *
+         * @param config the configuration that provides parameters
+         * @return the value
+         * @see #retrieve(AtmosphereConfig)
+         */
+        public long retrieveLong(final AtmosphereConfig config) {
+            return Long.parseLong(retrieve(config).trim());
+        }
+
+        /**
+         * <p>
+         * Retrieves the value as a {@code boolean}.
+         * </p>
+         *
+         * @param config the configuration that provides parameters
+         * @return the value
+         * @see #retrieve(AtmosphereConfig)
+         */
+        public boolean retrieveBoolean(final AtmosphereConfig config) {
+            return Boolean.parseBoolean(retrieve(config).trim());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return propertyName;
+        }
+    }
+
     /**
      * <p>
      * Inner class that wraps the {@link AtmosphereResource} during inspection to write frame and check the nature of
@@ -207,13 +524,44 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
          * @param message the message
          */
         public void write(final org.atmosphere.stomp.protocol.Action a, final Map<String, String> headers, final String message) {
-            resource.write(stompFormat.format(new Frame(a, headers, message)));
+            final String formatted = stompFormat.format(new Frame(a, headers, message));
+            final long start = Stage.start();
+            resource.write(formatted);
+            Stage.WRITE.end(start);
+            listeners.fire(FrameEvent.Type.WRITTEN, resource, frame, null, formatted);
 
             if (!hasError) {
                 hasError = org.atmosphere.stomp.protocol.Action.ERROR.equals(a);
             }
         }
 
+        /**
+         * <p>
+         * Write several frames at once. All the frames are sent in the same write operation.
+         * </p>
+         *
+         * @param frames the frames
+         */
+        public void write(final Collection<Frame> frames) {
+            final StringBuilder sb = new StringBuilder();
+
+            for (final Frame f : frames) {
+                sb.append(stompFormat.format(f)).append("\n");
+
+                if (!hasError) {
+                    hasError = org.atmosphere.stomp.protocol.Action.ERROR.equals(f.getAction());
+                }
+            }
+
+            if (sb.length() > 0) {
+                final String formatted = sb.toString();
+                final long start = Stage.start();
+                resource.write(formatted);
+                Stage.WRITE.end(start);
+                listeners.fire(FrameEvent.Type.WRITTEN, resource, frame, null, formatted);
+            }
+        }
+
         /**
          * <p>
          * Sends a receipt if the headers indicate that the client expect a response from the server when the message
@@ -229,6 +577,7 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
                     final Map<String, String> headers = new HashMap<String, String>();
                     headers.put(Header.RECEIPT_ID, frame.getHeaders().get(Header.RECEIPT_ID));
                     write(org.atmosphere.stomp.protocol.Action.RECEIPT, headers);
+                    listeners.fire(FrameEvent.Type.RECEIPTED, resource, frame, null, null);
                 }
             }
         }
@@ -250,6 +599,11 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
      */
     public static final String STOMP_MESSAGE_BODY = "org.atmosphere.stomp.body";
 
+    /**
+     * The attribute name this interceptor uses to inject the headers of the frame in the request.
+     */
+    public static final String STOMP_MESSAGE_HEADERS = "org.atmosphere.stomp.headers";
+
     /**
      * The logger.
      */
@@ -275,6 +629,26 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
      */
     private Map<org.atmosphere.stomp.protocol.Action, StompInterceptor> interceptors;
 
+    /**
+     * If the frames of a client are processed in arrival order.
+     */
+    private boolean ordered;
+
+    /**
+     * The writer recording the inbound frames, {@code null} if capture is disabled.
+     */
+    private CaptureWriter capture;
+
+    /**
+     * The limits of the frames sent by clients.
+     */
+    private InboundLimits inboundLimits;
+
+    /**
+     * The listeners of the frame lifecycle.
+     */
+    private FrameListeners listeners;
+
     /**
      * {@inheritDoc}
      */
@@ -282,6 +656,16 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
     public void configure(final AtmosphereConfig config) {
         framework = config.framework();
         arsf = config.sessionFactory();
+        ordered = Property.INBOUND_ORDERED.retrieveBoolean(config);
+        capture = CaptureWriter.getFromConfig(config);
+        inboundLimits = InboundLimits.fromConfig(config);
+        listeners = FrameListeners.getFromConfig(config);
+
+        // The switch is global, a framework can only turn the recording on
+        if (Property.STAGE_HISTOGRAMS.retrieveBoolean(config)) {
+            Stage.setEnabled(true);
+        }
+
         setStompFormat(PropertyClass.STOMP_FORMAT_CLASS.retrieve(StompFormat.class, config));
 
         try {
@@ -294,6 +678,7 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
             configureInterceptor(config, UnsubscribeInterceptor.class, org.atmosphere.stomp.protocol.Action.UNSUBSCRIBE);
             configureInterceptor(config, SendInterceptor.class, org.atmosphere.stomp.protocol.Action.SEND);
             configureInterceptor(config, DisconnectInterceptor.class, org.atmosphere.stomp.protocol.Action.DISCONNECT);
+            configureInterceptor(config, AckInterceptor.class, org.atmosphere.stomp.protocol.Action.ACK, org.atmosphere.stomp.protocol.Action.NACK);
 
             final BroadcastFilterLifecycle filter = framework.newClassInstance(BroadcastFilterLifecycle.class, StompBroadcastFilter.class);
             framework.broadcasterFilters(filter);
@@ -313,27 +698,41 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
         String body = null;
 
         try {
-            body = IOUtils.readEntirelyAsString(r).toString();
+            final long start = Stage.start();
+            body = inboundLimits.isBounded() ? inboundLimits.read(r) : IOUtils.readEntirelyAsString(r).toString();
+            Stage.READ.end(start);
 
             // Let the global handler suspend the connection if no action is submitted
             if (body.length() == 0) {
                 return Action.CONTINUE;
-            } else if (Arrays.equals(body.getBytes(), ConnectInterceptor.STOMP_HEARTBEAT_DATA)) {
-                // Particular case: the heartbeat is handled by the ConnectInterceptor
-                final Frame f = new Frame(org.atmosphere.stomp.protocol.Action.NULL, new HashMap<String, String>());
-                return inspect(framework, f, new StompAtmosphereResource(r, f));
-            } else {
-                final Frame frame = stompFormat.parse(body.substring(0, body.length() - 1));
-                final StompAtmosphereResource sar = new StompAtmosphereResource(r, frame);
+            }
+
+            if (capture != null) {
+                capture.record(r.uuid(), body);
+            }
+
+            listeners.fire(FrameEvent.Type.RECEIVED, r, null, null, body);
+
+            if (ordered) {
+                final InboundMailbox mailbox = InboundMailbox.getFromSession(arsf.getSession(r));
+                mailbox.enter();
 
                 try {
-                    return inspect(framework, frame, sar);
+                    return inspect(r, body);
                 } finally {
-                    sar.receipt();
+                    mailbox.leave();
                 }
+            } else {
+                return inspect(r, body);
             }
         } catch (final IOException ioe) {
             logger.error("STOMP interceptor fails", ioe);
+        } catch (final InboundLimitException ile) {
+            // The rest of the frame is not read
+            logger.warn("Frame rejected from {}: {}", r.uuid(), ile.getMessage());
+            final Map<String, String> headers = new HashMap<String, String>();
+            headers.put(Header.MESSAGE, ile.getMessage());
+            r.write(stompFormat.format(new Frame(org.atmosphere.stomp.protocol.Action.ERROR, headers, "Frame exceeds the server limits")));
         } catch (final ParseException pe) {
             logger.error("Invalid STOMP string: {} ", body, pe);
         }
@@ -341,6 +740,38 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
         return Action.CANCELLED;
     }
 
+    /**
+     * <p>
+     * Parses the frame read from the given resource and dispatches it.
+     * </p>
+     *
+     * @param r the resource
+     * @param body the body read from the request
+     * @return the action
+     * @throws IOException if inspection fails
+     * @throws ParseException if the body is not a valid frame
+     */
+    private Action inspect(final AtmosphereResource r, final String body) throws IOException, ParseException {
+        if (Arrays.equals(body.getBytes(), ConnectInterceptor.STOMP_HEARTBEAT_DATA)) {
+            // Particular case: the heartbeat is handled by the ConnectInterceptor
+            final Frame f = new Frame(org.atmosphere.stomp.protocol.Action.NULL, new HashMap<String, String>());
+            return inspect(framework, f, new StompAtmosphereResource(r, f));
+        } else {
+            final Frame frame = stompFormat.parse(body.substring(0, body.length() - 1));
+            listeners.fire(FrameEvent.Type.PARSED, r, frame, null, null);
+            final StompAtmosphereResource sar = new StompAtmosphereResource(r, frame);
+            final long start = Stage.start();
+
+            try {
+                return inspect(framework, frame, sar);
+            } finally {
+                Stage.DISPATCH.end(start);
+                listeners.fire(FrameEvent.Type.DISPATCHED, r, frame, null, null);
+                sar.receipt();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -352,9 +783,23 @@ public class FrameInterceptor extends AtmosphereInterceptorAdapter implements St
             final Subscriptions s = Subscriptions.getFromSession(arsf.getSession(atmosphereResource));
             final Set<String> destinations = s.getAllDestinations();
 
+            boolean wildcard = false;
+
             for (final String d : destinations) {
-                framework.getAtmosphereConfig().getBroadcasterFactory().lookup(d).addAtmosphereResource(atmosphereResource);
+                if (DestinationTrie.isPattern(d)) {
+                    wildcard = true;
+                } else {
+                    framework.getAtmosphereConfig().getBroadcasterFactory().lookup(d).addAtmosphereResource(atmosphereResource);
+                }
             }
+
+            // Destinations joined through patterns are remembered, no pattern is matched again
+            if (wildcard) {
+                WildcardSubscriptions.getFromConfig(framework.getAtmosphereConfig()).rejoin(atmosphereResource);
+            }
+
+            // Frames that were waiting for the previous connection can be written now
+            OutboundQueue.resume(arsf.getSession(atmosphereResource), atmosphereResource);
         }
     }
 
@@ -18,15 +18,35 @@
 package org.atmosphere.stomp.interceptor;
 
 import org.atmosphere.cpr.Action;
+import org.atmosphere.cpr.AtmosphereConfig;
 import org.atmosphere.cpr.AtmosphereFramework;
 import org.atmosphere.cpr.AtmosphereInterceptorAdapter;
 import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.stomp.executor.ShardedExecutor;
+import org.atmosphere.stomp.executor.VirtualThreadExecutors;
 import org.atmosphere.stomp.handler.HandlerHelper;
+import org.atmosphere.stomp.handler.StompSendActionAtmosphereHandler;
+import org.atmosphere.stomp.listener.FrameEvent;
+import org.atmosphere.stomp.listener.FrameListeners;
+import org.atmosphere.stomp.metrics.Metrics;
+import org.atmosphere.stomp.metrics.Stage;
 import org.atmosphere.stomp.StompInterceptor;
+import org.atmosphere.stomp.StompMessage;
 import org.atmosphere.stomp.Subscriptions;
 import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.relay.Relays;
+import org.atmosphere.stomp.wildcard.WildcardSubscriptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -49,12 +69,101 @@ import java.io.IOException;
  * {@link AtmosphereResource} and if this transaction is referenced in frame's Strings.
  * </p>
  *
+ * <p>
+ * A frame sent to a {@link Relays relay destination} is directly broadcasted with its headers and its body, without
+ * invoking any method. The frame is encoded once for all the subscribers. No broadcaster is created for a relay
+ * destination: the frame is dropped if nobody subscribed to it.
+ * </p>
+ *
+ * <p>
+ * When {@link FrameInterceptor.Property#SEND_EXECUTOR} is enabled, the method is invoked by a {@link ShardedExecutor}
+ * instead of the request thread: frames sent to the same destination are processed in order while different
+ * destinations are processed in parallel. If too many frames are waiting for the destination's shard, the frame is
+ * rejected with an {@link org.atmosphere.stomp.protocol.Action#ERROR} frame. Otherwise the receipt is sent once the
+ * frame has been accepted by the executor.
+ * </p>
+ *
+ * <p>
+ * When {@link FrameInterceptor.Property#SEND_VIRTUAL_THREADS} is enabled instead, each invocation runs in its own
+ * virtual thread so the method can block without holding the request thread or a platform thread. Invocations are not
+ * ordered in this mode. On runtimes without virtual threads, a bounded pool of platform threads is used and frames are
+ * rejected the same way when it is saturated. Enabling both settings is rejected when the interceptor is configured,
+ * as the ordering provided by the sharded executor would be lost.
+ * </p>
+ *
+ * <p>
+ * When the method is invoked once per batch of frames, the {@link FrameEvent.Type#HANDLER_COMPLETED} event of a frame
+ * is fired once its batch has been processed.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @version 1.0
  * @since 0.2
  */
 public class SendInterceptor extends AtmosphereInterceptorAdapter implements StompInterceptor {
 
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The executor processing the frames, {@code null} if frames are processed in the request thread.
+     */
+    private ShardedExecutor executor;
+
+    /**
+     * The executor running the blocking invocations, {@code null} if they don't run in virtual threads.
+     */
+    private ExecutorService blockingExecutor;
+
+    /**
+     * The relay destinations.
+     */
+    private Relays relays;
+
+    /**
+     * The formatter that encodes the frames sent to relay destinations.
+     */
+    private StompFormat stompFormat;
+
+    /**
+     * The wildcard subscriptions.
+     */
+    private WildcardSubscriptions wildcardSubscriptions;
+
+    /**
+     * The metrics of the destinations, {@code null} if they are not measured.
+     */
+    private Metrics metrics;
+
+    /**
+     * The listeners notified when a handler completes.
+     */
+    private FrameListeners listeners;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(final AtmosphereConfig config) {
+        super.configure(config);
+
+        if (FrameInterceptor.Property.SEND_EXECUTOR.retrieveBoolean(config)
+                && FrameInterceptor.Property.SEND_VIRTUAL_THREADS.retrieveBoolean(config)) {
+            throw new IllegalStateException(String.format("%s and %s can't be both enabled",
+                    FrameInterceptor.Property.SEND_EXECUTOR, FrameInterceptor.Property.SEND_VIRTUAL_THREADS));
+        }
+
+        executor = ShardedExecutor.getSendExecutor(config);
+        blockingExecutor = VirtualThreadExecutors.getSendExecutor(config);
+        relays = Relays.getFromConfig(config);
+        stompFormat = FrameInterceptor.PropertyClass.STOMP_FORMAT_CLASS.retrieve(StompFormat.class, config);
+        wildcardSubscriptions = WildcardSubscriptions.getFromConfig(config);
+        metrics = Metrics.getFromConfig(config);
+        listeners = FrameListeners.getFromConfig(config);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -63,6 +172,13 @@ public class SendInterceptor extends AtmosphereInterceptorAdapter implements Sto
             throws IOException {
         final AtmosphereResource resource = r.getResource();
         final Action retval = inspect(resource);
+        final String relay = frame.getHeaders().get(Header.DESTINATION);
+
+        // The body is forwarded as is, no handler is involved
+        if (relays.isRelay(relay)) {
+            relay(framework, relay, frame);
+            return retval;
+        }
 
         HandlerHelper.INSTANCE.callHandler(resource, frame.getHeaders(), framework, false, new HandlerHelper.Procedure() {
 
@@ -71,15 +187,172 @@ public class SendInterceptor extends AtmosphereInterceptorAdapter implements Sto
              */
             @Override
             public void apply(final Subscriptions subscriptions, final String destination, final AtmosphereFramework.AtmosphereHandlerWrapper handler) throws IOException {
-                final String body = frame.getBody();
+                final String body = bodyOf(frame);
+                received(destination, frame);
+
+                if (handler.atmosphereHandler instanceof StompSendActionAtmosphereHandler) {
+                    final StompSendActionAtmosphereHandler ah = StompSendActionAtmosphereHandler.class.cast(handler.atmosphereHandler);
+
+                    if (executor != null || blockingExecutor != null) {
+                        submit(ah, destination, body, frame, r);
+                        return;
+                    } else if (ah.isBatching()) {
+                        // The frame is only enqueued, the batch flush records the stage and notifies the listeners
+                        ah.invoke(resource, body, frame.getHeaders(), completion(resource, frame, destination));
+                        return;
+                    }
+                }
 
                 // TODO: atmosphereResource.getRequest() may throw an IllegalStateException
-                resource.getRequest().setAttribute(FrameInterceptor.STOMP_MESSAGE_BODY,
-                        body != null && body.endsWith("\n") ? body.substring(0, body.length() - 1) : body);
-                handler.atmosphereHandler.onRequest(resource);
+                resource.getRequest().setAttribute(FrameInterceptor.STOMP_MESSAGE_BODY, body);
+                resource.getRequest().setAttribute(FrameInterceptor.STOMP_MESSAGE_HEADERS, frame.getHeaders());
+                final long start = Stage.start();
+
+                try {
+                    handler.atmosphereHandler.onRequest(resource);
+                } finally {
+                    Stage.HANDLER.end(start);
+                    listeners.fire(FrameEvent.Type.HANDLER_COMPLETED, resource, frame, destination, null);
+                }
             }
         });
 
         return retval;
     }
+
+    /**
+     * <p>
+     * Broadcasts the given frame to the subscribers of a relay destination. The broadcaster is only created when a
+     * resource subscribed to a matching pattern, so the destinations chosen by the clients don't create any
+     * broadcaster.
+     * </p>
+     *
+     * @param framework the framework
+     * @param relay the relay destination
+     * @param frame the frame
+     */
+    private void relay(final AtmosphereFramework framework, final String relay, final Frame frame) {
+        Broadcaster broadcaster = framework.getBroadcasterFactory().lookup(relay);
+
+        if (broadcaster == null && wildcardSubscriptions.hasSubscribers(relay)) {
+            broadcaster = framework.getBroadcasterFactory().lookup(relay, true);
+        }
+
+        if (broadcaster == null || broadcaster.getAtmosphereResources().isEmpty()) {
+            logger.debug("Nobody subscribed to relay destination {}, frame dropped", relay);
+            return;
+        }
+
+        received(relay, frame);
+        final StompMessage message = new StompMessage(frame.getHeaders(), bodyOf(frame));
+        message.encode(stompFormat, relay);
+        broadcaster.broadcast(message);
+    }
+
+    /**
+     * <p>
+     * Gets the body of the given frame without its trailing line feed.
+     * </p>
+     *
+     * @param frame the frame
+     * @return the body
+     */
+    private static String bodyOf(final Frame frame) {
+        return frame.getBody() != null && frame.getBody().endsWith("\n") ?
+                frame.getBody().substring(0, frame.getBody().length() - 1) : frame.getBody();
+    }
+
+    /**
+     * <p>
+     * Records the given frame in the metrics of its destination if they are measured.
+     * </p>
+     *
+     * @param destination the destination
+     * @param frame the frame
+     */
+    private void received(final String destination, final Frame frame) {
+        if (metrics != null) {
+            metrics.get(destination).received(frame.getBody() == null ? 0 : frame.getBody().length());
+        }
+    }
+
+    /**
+     * <p>
+     * Creates the completion notifying the listeners that the handler processed the given frame.
+     * </p>
+     *
+     * @param resource the resource that sent the frame
+     * @param frame the frame
+     * @param destination the destination
+     * @return the completion
+     */
+    private Runnable completion(final AtmosphereResource resource, final Frame frame, final String destination) {
+        return new Runnable() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run() {
+                listeners.fire(FrameEvent.Type.HANDLER_COMPLETED, resource, frame, destination, null);
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Submits the processing of the frame to the blocking executor if any, to the shard of its destination otherwise.
+     * </p>
+     *
+     * @param handler the handler
+     * @param destination the destination
+     * @param body the body
+     * @param frame the frame
+     * @param r the resource that sent the frame
+     */
+    private void submit(final StompSendActionAtmosphereHandler handler,
+                        final String destination,
+                        final String body,
+                        final Frame frame,
+                        final FrameInterceptor.StompAtmosphereResource r) {
+        final AtmosphereResource resource = r.getResource();
+        final Runnable task = new Runnable() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run() {
+                // The batch flush records the stage and notifies the listeners
+                final boolean batching = handler.isBatching();
+                final long start = Stage.start();
+
+                try {
+                    handler.invoke(resource, body, frame.getHeaders(), batching ? completion(resource, frame, destination) : null);
+                } catch (IOException ioe) {
+                    logger.error("Unable to process frame sent to {}", destination, ioe);
+                } catch (RuntimeException re) {
+                    logger.error("Unable to process frame sent to {}", destination, re);
+                } finally {
+                    if (!batching) {
+                        Stage.HANDLER.end(start);
+                        listeners.fire(FrameEvent.Type.HANDLER_COMPLETED, resource, frame, destination, null);
+                    }
+                }
+            }
+        };
+
+        try {
+            if (blockingExecutor != null) {
+                blockingExecutor.execute(task);
+            } else {
+                executor.execute(destination, task);
+            }
+        } catch (RejectedExecutionException ree) {
+            logger.warn("Frame sent to {} by {} rejected", destination, resource.uuid());
+            final Map<String, String> headers = new HashMap<String, String>();
+            headers.put(Header.MESSAGE, "Server busy");
+            r.write(org.atmosphere.stomp.protocol.Action.ERROR, headers, "Too many frames are waiting to be processed for " + destination);
+        }
+    }
 }
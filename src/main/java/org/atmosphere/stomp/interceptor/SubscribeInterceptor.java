@@ -21,13 +21,27 @@ import org.atmosphere.cpr.Action;
 import org.atmosphere.cpr.AtmosphereFramework;
 import org.atmosphere.cpr.AtmosphereInterceptorAdapter;
 import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
 import org.atmosphere.stomp.handler.HandlerHelper;
 import org.atmosphere.stomp.StompInterceptor;
+import org.atmosphere.stomp.StompMessage;
 import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.journal.Journal;
+import org.atmosphere.stomp.journal.Journals;
 import org.atmosphere.stomp.protocol.Frame;
 import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.selector.Selector;
+import org.atmosphere.stomp.selector.Selectors;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
+import org.atmosphere.stomp.wildcard.WildcardSubscriptions;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * <p>
@@ -36,12 +50,41 @@ import java.io.IOException;
  * to the {@link org.atmosphere.cpr.Broadcaster} used by the Atmosphere framework.
  * </p>
  *
+ * <p>
+ * If the destination is durable and the frame specifies the {@link Header#REPLAY_SINCE} header, the messages stored in
+ * the {@link Journal journal} since the given timestamp are sent to the subscriber with their headers, and must be
+ * acknowledged like live messages if the subscription requires it. The resource is added to the broadcaster once the
+ * history has been read, so live messages are received after the history and never twice.
+ * </p>
+ *
+ * <p>
+ * If the destination is a {@link DestinationTrie pattern}, no handler is required: the subscription is registered in
+ * the {@link WildcardSubscriptions} and the resource is added to the broadcasters of all the matching destinations.
+ * </p>
+ *
+ * <p>
+ * The {@link Header#SELECTOR} header is compiled once to a {@link Selector} stored with the subscription. An invalid
+ * selector is answered with an {@link org.atmosphere.stomp.protocol.Action#ERROR} frame and no subscription is made.
+ * The selector also applies to the replayed history.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @version 1.0
  * @since 0.2
  */
 public class SubscribeInterceptor extends AtmosphereInterceptorAdapter implements StompInterceptor {
 
+    /**
+     * Maximum number of replayed messages sent in the same write operation.
+     */
+    private static final int REPLAY_CHUNK_SIZE = 128;
+
+    /**
+     * Maximum number of times the messages appended during the replay are read before the subscriber is added to the
+     * broadcaster.
+     */
+    private static final int REPLAY_CATCH_UP_ROUNDS = 4;
+
     /**
      * {@inheritDoc}
      */
@@ -50,6 +93,21 @@ public class SubscribeInterceptor extends AtmosphereInterceptorAdapter implement
             throws IOException {
         final AtmosphereResource resource = r.getResource();
         final Action retval = inspect(resource);
+        final String destination = frame.getHeaders().get(Header.DESTINATION);
+        final String expression = frame.getHeaders().get(Header.SELECTOR);
+        final Selector selector;
+
+        try {
+            selector = expression == null ? null : Selectors.getFromConfig(framework.getAtmosphereConfig()).compile(expression);
+        } catch (IllegalArgumentException iae) {
+            writeError(r, Header.SELECTOR, iae.getMessage());
+            return retval;
+        }
+
+        if (destination != null && DestinationTrie.isPattern(destination)) {
+            subscribe(framework, frame, r, destination, selector);
+            return retval;
+        }
 
         HandlerHelper.INSTANCE.callHandler(resource, frame.getHeaders(), framework, false, new HandlerHelper.Procedure() {
 
@@ -59,14 +117,254 @@ public class SubscribeInterceptor extends AtmosphereInterceptorAdapter implement
             @Override
             public void apply(final Subscriptions subscriptions, final String destination, final AtmosphereFramework.AtmosphereHandlerWrapper handler)
                     throws IOException {
-                subscriptions.addSubscription(frame.getHeaders().get(Header.ID), destination);
+                subscriptions.addSubscription(frame.getHeaders().get(Header.ID), destination, frame.getHeaders().get(Header.ACK), selector);
 
                 // TODO: check null for test purpose.
                 final AtmosphereResource ar = framework.getAtmosphereConfig().resourcesFactory().find(resource.uuid());
-                handler.broadcaster.addAtmosphereResource(ar == null ? resource : ar);
+                final Journal journal = Journals.getFromConfig(framework.getAtmosphereConfig()).get(destination);
+                final String since = frame.getHeaders().get(Header.REPLAY_SINCE);
+
+                if (journal != null && since != null) {
+                    replay(journal, since, destination, frame.getHeaders().get(Header.ID), selector, r, subscriptions, handler.broadcaster, ar == null ? resource : ar);
+                } else {
+                    handler.broadcaster.addAtmosphereResource(ar == null ? resource : ar);
+                }
             }
         });
 
         return retval;
     }
+
+    /**
+     * <p>
+     * Subscribes the given resource to a destination pattern.
+     * </p>
+     *
+     * @param framework the framework
+     * @param frame the frame
+     * @param r the subscriber
+     * @param pattern the pattern
+     * @param selector the selector, {@code null} if all the messages are selected
+     */
+    private void subscribe(final AtmosphereFramework framework,
+                           final Frame frame,
+                           final FrameInterceptor.StompAtmosphereResource r,
+                           final String pattern,
+                           final Selector selector) {
+        final AtmosphereResource resource = r.getResource();
+        final Subscriptions subscriptions = Subscriptions.getFromSession(framework.sessionFactory().getSession(resource));
+        final String id = frame.getHeaders().get(Header.ID);
+
+        // Subscription must exist before the resource is added to any broadcaster to be able to build the frames
+        subscriptions.addSubscription(id, pattern, frame.getHeaders().get(Header.ACK), selector);
+
+        try {
+            final AtmosphereResource ar = framework.getAtmosphereConfig().resourcesFactory().find(resource.uuid());
+            WildcardSubscriptions.getFromConfig(framework.getAtmosphereConfig()).subscribe(ar == null ? resource : ar, pattern);
+        } catch (IllegalArgumentException iae) {
+            subscriptions.removeSubscription(id);
+            writeError(r, Header.DESTINATION, iae.getMessage());
+        }
+    }
+
+    /**
+     * <p>
+     * Writes an {@link org.atmosphere.stomp.protocol.Action#ERROR} frame when a header of the frame is not valid.
+     * </p>
+     *
+     * @param r the subscriber
+     * @param header the invalid header
+     * @param description the body describing the error
+     */
+    private void writeError(final FrameInterceptor.StompAtmosphereResource r, final String header, final String description) {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Header.MESSAGE, "Invalid " + header + " header");
+        r.write(org.atmosphere.stomp.protocol.Action.ERROR, headers, description);
+    }
+
+    /**
+     * <p>
+     * Sends to the subscriber the messages stored in the journal since the given timestamp and then adds the resource
+     * to the broadcaster. The history is written without holding the journal: the messages appended meanwhile are
+     * read under the journal lock and written once it is released, until a read finds no new message. The resource
+     * is then added to the broadcaster before the journal is released, so live messages are delivered after the
+     * history. After {@link #REPLAY_CATCH_UP_ROUNDS} reads, the resource is added with the last messages read, which
+     * are written right after. The messages appended until then are marked as replayed for the subscription so the
+     * filter does not deliver them again. The messages the selector of the subscription rejects are skipped.
+     * </p>
+     *
+     * @param journal the journal
+     * @param since the timestamp specified by the client
+     * @param destination the destination
+     * @param id the subscription ID
+     * @param selector the selector of the subscription, {@code null} if all the messages are selected
+     * @param r the subscriber
+     * @param subscriptions the subscriptions of the subscriber
+     * @param broadcaster the broadcaster of the destination
+     * @param resource the resource to add to the broadcaster
+     * @throws IOException if journal can't be read
+     */
+    private void replay(final Journal journal,
+                        final String since,
+                        final String destination,
+                        final String id,
+                        final Selector selector,
+                        final FrameInterceptor.StompAtmosphereResource r,
+                        final Subscriptions subscriptions,
+                        final Broadcaster broadcaster,
+                        final AtmosphereResource resource)
+            throws IOException {
+        final long timestamp;
+
+        try {
+            timestamp = Long.parseLong(since.trim());
+        } catch (NumberFormatException nfe) {
+            broadcaster.addAtmosphereResource(resource);
+            writeError(r, Header.REPLAY_SINCE, "The " + Header.REPLAY_SINCE + " header must be a timestamp in milliseconds");
+            return;
+        }
+
+        final ReplayProcedure procedure = new ReplayProcedure(destination, id, selector, r, subscriptions);
+        long position = journal.replay(timestamp, procedure);
+        procedure.flush();
+
+        for (int round = 1; ; round++) {
+            final boolean subscribed;
+
+            // Only the journal is read under the lock, the frames are written once it is released
+            synchronized (journal) {
+                procedure.buffered = true;
+                final long last = journal.replay(timestamp, position, procedure);
+                subscribed = last == position || round == REPLAY_CATCH_UP_ROUNDS;
+                position = last;
+
+                if (subscribed) {
+                    subscriptions.setReplayed(id, position);
+                    broadcaster.addAtmosphereResource(resource);
+                }
+            }
+
+            procedure.buffered = false;
+            procedure.flush();
+
+            if (subscribed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Builds the {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames of the replayed messages. The frames are
+     * written by chunks unless they must be buffered until the next {@link #flush()}. A message the client must
+     * acknowledge becomes pending like a live message.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class ReplayProcedure implements Journal.Procedure {
+
+        /**
+         * The destination.
+         */
+        private final String destination;
+
+        /**
+         * The subscription ID.
+         */
+        private final String id;
+
+        /**
+         * The selector of the subscription, {@code null} if all the messages are selected.
+         */
+        private final Selector selector;
+
+        /**
+         * The subscriber.
+         */
+        private final FrameInterceptor.StompAtmosphereResource r;
+
+        /**
+         * The subscriptions of the subscriber.
+         */
+        private final Subscriptions subscriptions;
+
+        /**
+         * The frames not written yet.
+         */
+        private final List<Frame> frames = new ArrayList<Frame>(REPLAY_CHUNK_SIZE);
+
+        /**
+         * {@code true} if no frame must be written before the next {@link #flush()}.
+         */
+        private boolean buffered;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param destination the destination
+         * @param id the subscription ID
+         * @param selector the selector of the subscription, {@code null} if all the messages are selected
+         * @param r the subscriber
+         * @param subscriptions the subscriptions of the subscriber
+         */
+        private ReplayProcedure(final String destination,
+                                final String id,
+                                final Selector selector,
+                                final FrameInterceptor.StompAtmosphereResource r,
+                                final Subscriptions subscriptions) {
+            this.destination = destination;
+            this.id = id;
+            this.selector = selector;
+            this.r = r;
+            this.subscriptions = subscriptions;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void apply(final long timestamp, final ByteBuffer payload) {
+            final StompMessage message = Journals.decode(payload);
+
+            if (selector != null && !message.matches(selector)) {
+                return;
+            }
+
+            final String messageId = String.valueOf(UUID.randomUUID());
+            final Map<String, String> headers = new HashMap<String, String>(message.getHeaders());
+            headers.put(Header.DESTINATION, destination);
+            headers.put(Header.MESSAGE_ID, messageId);
+            headers.put(Header.SUBSCRIPTION, id);
+
+            // The client will have to acknowledge the message
+            if (subscriptions.addPendingAck(id, messageId)) {
+                headers.put(Header.ACK, messageId);
+            } else {
+                headers.remove(Header.ACK);
+            }
+
+            frames.add(new Frame(org.atmosphere.stomp.protocol.Action.MESSAGE, headers, message.toString()));
+
+            if (!buffered && frames.size() == REPLAY_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * <p>
+         * Writes the frames not written yet.
+         * </p>
+         */
+        private void flush() {
+            if (!frames.isEmpty()) {
+                r.write(frames);
+                frames.clear();
+            }
+        }
+    }
 }
@@ -26,6 +26,8 @@ import org.atmosphere.stomp.StompInterceptor;
 import org.atmosphere.stomp.Subscriptions;
 import org.atmosphere.stomp.protocol.Frame;
 import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
+import org.atmosphere.stomp.wildcard.WildcardSubscriptions;
 
 import java.io.IOException;
 
@@ -35,6 +37,11 @@ import java.io.IOException;
  * path specified in the given {@link String Strings}.
  * </p>
  *
+ * <p>
+ * If the subscription was made to a {@link DestinationTrie pattern}, the resource is removed from the
+ * {@link WildcardSubscriptions}.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @version 1.0
  * @since 0.2
@@ -49,6 +56,17 @@ public class UnsubscribeInterceptor extends AtmosphereInterceptorAdapter impleme
             throws IOException {
         final AtmosphereResource resource = r.getResource();
         final Action retval = inspect(resource);
+        final Subscriptions subscriptions = Subscriptions.getFromSession(framework.sessionFactory().getSession(resource));
+        final String id = frame.getHeaders().get(Header.ID);
+        final String destination = id == null ? null : subscriptions.getDestinationForId(id);
+
+        if (destination != null && DestinationTrie.isPattern(destination)) {
+            final AtmosphereResource ar = framework.getAtmosphereConfig().resourcesFactory().find(resource.uuid());
+            subscriptions.removeSubscription(id);
+            WildcardSubscriptions.getFromConfig(framework.getAtmosphereConfig()).unsubscribe(ar == null ? resource : ar, destination, subscriptions);
+            return retval;
+        }
+
         HandlerHelper.INSTANCE.callHandler(resource, frame.getHeaders(), framework, true, new HandlerHelper.Procedure() {
 
             /**
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>
+ * An append-only journal that keeps the history of the messages broadcasted to a durable destination. The journal is
+ * split in {@link JournalSegment segments} stored in a dedicated directory and mapped in memory. When the active
+ * segment is full, a new one is created. Segments whose last record is older than the retention time are deleted.
+ * </p>
+ *
+ * <p>
+ * Records are never deserialized by the journal: when the history is replayed, each payload is provided as a
+ * {@link ByteBuffer} that directly reads the mapped file.
+ * </p>
+ *
+ * <p>
+ * Each record is identified by a position that grows with each append. A replay returns the position of the last
+ * record it considered, so a subsequent replay can continue after it. Appends are synchronized on the journal: a
+ * caller holding its monitor can replay the last records and then start listening to the destination without
+ * missing any message appended in between.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Journal {
+
+    /**
+     * <p>
+     * This interface defines a procedure applied to each record read when the journal is replayed.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public static interface Procedure {
+
+        /**
+         * <p>
+         * Processes a record.
+         * </p>
+         *
+         * @param timestamp the date when the record has been appended
+         * @param payload the payload, only valid during the call
+         * @throws IOException if processing fails
+         */
+        void apply(long timestamp, ByteBuffer payload) throws IOException;
+    }
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The directory containing the segments.
+     */
+    private final File directory;
+
+    /**
+     * The capacity of a new segment.
+     */
+    private final int segmentSize;
+
+    /**
+     * How long in milliseconds a record is retained.
+     */
+    private final long retention;
+
+    /**
+     * All the segments, the last one being the active segment.
+     */
+    private final List<JournalSegment> segments;
+
+    /**
+     * The sequence number of the next segment, never reused even if all segments have been purged.
+     */
+    private long nextSequence;
+
+    /**
+     * <p>
+     * Builds a new instance. Segments already existing in the given directory are loaded.
+     * </p>
+     *
+     * @param directory the directory
+     * @param segmentSize the capacity in bytes of each segment
+     * @param retention how long in milliseconds a record is retained
+     * @throws IOException if existing segments can't be loaded
+     */
+    public Journal(final File directory, final int segmentSize, final long retention) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retention = retention;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+
+        final String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(JournalSegment.EXTENSION);
+            }
+        });
+
+        // File names are zero-padded sequence numbers, so lexical order is the sequence order
+        Arrays.sort(names);
+        final List<JournalSegment> loaded = new ArrayList<JournalSegment>(names.length);
+
+        for (final String name : names) {
+            final long sequence = Long.parseLong(name.substring(0, name.length() - JournalSegment.EXTENSION.length()));
+            loaded.add(new JournalSegment(new File(directory, name), sequence, segmentSize));
+        }
+
+        segments = new CopyOnWriteArrayList<JournalSegment>(loaded);
+        nextSequence = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).getSequence() + 1;
+        purge();
+    }
+
+    /**
+     * <p>
+     * Appends a record with the current date. A new segment is created if the active one is full.
+     * </p>
+     *
+     * @param payload the payload
+     * @return the position of the record
+     * @throws IOException if a new segment can't be created
+     */
+    public synchronized long append(final byte[] payload) throws IOException {
+        JournalSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+        if (active == null || !active.canAppend(payload.length)) {
+            final long sequence = nextSequence++;
+            final File file = new File(directory, String.format("%019d%s", sequence, JournalSegment.EXTENSION));
+            active = new JournalSegment(file, sequence, Math.max(segmentSize, JournalSegment.HEADER_SIZE + payload.length));
+            segments.add(active);
+            purge();
+        }
+
+        active.append(System.currentTimeMillis(), payload);
+        return position(active.getSequence(), active.getPosition());
+    }
+
+    /**
+     * <p>
+     * Reads in order all the retained records appended at or after the given timestamp.
+     * </p>
+     *
+     * @param since the timestamp, 0 to read the entire history
+     * @param procedure the procedure to apply to each record
+     * @return the position of the last record considered by the replay, a negative value if journal is empty
+     * @throws IOException if procedure fails
+     */
+    public long replay(final long since, final Procedure procedure) throws IOException {
+        return replay(since, -1L, procedure);
+    }
+
+    /**
+     * <p>
+     * Reads in order all the retained records appended at or after the given timestamp whose position is greater
+     * than the given one.
+     * </p>
+     *
+     * @param since the timestamp, 0 to read the entire history
+     * @param after the position returned by a previous replay
+     * @param procedure the procedure to apply to each record
+     * @return the position of the last record considered by the replay, {@code after} if no record has been appended
+     * @throws IOException if procedure fails
+     */
+    public long replay(final long since, final long after, final Procedure procedure) throws IOException {
+        final long from = Math.max(since, System.currentTimeMillis() - retention);
+        long retval = after;
+
+        for (final JournalSegment segment : segments) {
+            // Read the limit first: records appended later are left to the next replay
+            final int limit = segment.getPosition();
+            final long end = position(segment.getSequence(), limit);
+
+            if (end > after && segment.getLastTimestamp() >= from) {
+                final int offset = after >= position(segment.getSequence(), 0) ? (int) after : 0;
+                segment.replay(from, offset, limit, procedure);
+            }
+
+            retval = Math.max(retval, end);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Computes the position of the end of a record.
+     * </p>
+     *
+     * @param sequence the segment sequence
+     * @param offset the offset in the segment of the end of the record
+     * @return the position
+     */
+    private static long position(final long sequence, final int offset) {
+        return sequence << 32 | offset;
+    }
+
+    /**
+     * <p>
+     * Deletes all the segments whose last record is older than the retention time. Empty segments are also deleted,
+     * except the active one.
+     * </p>
+     */
+    public synchronized void purge() {
+        final long expiration = System.currentTimeMillis() - retention;
+
+        for (int i = 0; i < segments.size(); i++) {
+            final JournalSegment segment = segments.get(i);
+            final boolean active = i == segments.size() - 1;
+
+            if (segment.isEmpty() ? !active : segment.getLastTimestamp() < expiration) {
+                segments.remove(i--);
+
+                if (!segment.delete()) {
+                    logger.warn("Unable to delete journal segment {} in {}", segment.getSequence(), directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Writes all the segments to the storage device.
+     * </p>
+     */
+    public synchronized void flush() {
+        for (final JournalSegment segment : segments) {
+            segment.flush();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * A segment is a file of fixed capacity mapped in memory where records are appended sequentially. Each record is
+ * stored as follow:
+ * <ul>
+ *     <li>The size of the whole record as an {@code int}</li>
+ *     <li>The timestamp of the record as a {@code long}</li>
+ *     <li>The payload</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * The size is written after the timestamp and the payload. Consequently, a record interrupted by a crash is never
+ * considered when the segment is opened again because its size is zero. Only one thread must append a record at a
+ * time while many threads can read the segment concurrently.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+class JournalSegment {
+
+    /**
+     * The size of the record header: the size and the timestamp.
+     */
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * The file extension of segments.
+     */
+    static final String EXTENSION = ".segment";
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The sequence number of this segment in the journal.
+     */
+    private final long sequence;
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The position where next record will be written. Reader can't read beyond this limit.
+     */
+    private volatile int position;
+
+    /**
+     * The timestamp of the last record.
+     */
+    private volatile long lastTimestamp;
+
+    /**
+     * <p>
+     * Builds a new instance. The file is created if it does not exists, otherwise the records are read to detect
+     * the position where next record should be written.
+     * </p>
+     *
+     * @param file the file
+     * @param sequence the sequence number
+     * @param capacity the capacity in bytes
+     * @throws IOException if file can't be mapped
+     */
+    JournalSegment(final File file, final long sequence, final int capacity) throws IOException {
+        this.file = file;
+        this.sequence = sequence;
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            // Mapping remains valid after the channel has been closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, raf.length()));
+        } finally {
+            raf.close();
+        }
+
+        recover();
+    }
+
+    /**
+     * <p>
+     * Reads all the complete records to detect the current position and the last timestamp.
+     * </p>
+     */
+    private void recover() {
+        int pos = 0;
+        long timestamp = file.lastModified();
+
+        while (pos + HEADER_SIZE <= buffer.capacity()) {
+            final int size = buffer.getInt(pos);
+
+            if (size < HEADER_SIZE || pos + size > buffer.capacity()) {
+                break;
+            }
+
+            timestamp = buffer.getLong(pos + 4);
+            pos += size;
+        }
+
+        position = pos;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * <p>
+     * Indicates if a payload of the given length can be appended.
+     * </p>
+     *
+     * @param length the payload length
+     * @return {@code true} if enough space remains, {@code false} otherwise
+     */
+    boolean canAppend(final int length) {
+        return position + HEADER_SIZE + length <= buffer.capacity();
+    }
+
+    /**
+     * <p>
+     * Appends a record. Caller must check before that the segment {@link #canAppend(int) can append} the record.
+     * </p>
+     *
+     * @param timestamp the timestamp
+     * @param payload the payload
+     */
+    void append(final long timestamp, final byte[] payload) {
+        final int pos = position;
+        final ByteBuffer b = buffer.duplicate();
+        b.position(pos + 4);
+        b.putLong(timestamp);
+        b.put(payload);
+
+        // Record is visible once its size is written
+        buffer.putInt(pos, HEADER_SIZE + payload.length);
+        lastTimestamp = timestamp;
+        position = pos + HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * <p>
+     * Reads the records written at or after the given timestamp, starting at the given offset and stopping at the
+     * given limit.
+     * </p>
+     *
+     * @param since the timestamp
+     * @param from the offset of the first record to read
+     * @param limit the offset where reading stops, a value previously returned by {@link #getPosition()}
+     * @param procedure the procedure to apply for each record
+     * @throws IOException if procedure fails
+     */
+    void replay(final long since, final int from, final int limit, final Journal.Procedure procedure) throws IOException {
+        final ByteBuffer b = buffer.duplicate();
+        int pos = from;
+
+        while (pos < limit) {
+            final int size = b.getInt(pos);
+            final long timestamp = b.getLong(pos + 4);
+
+            if (timestamp >= since) {
+                b.limit(pos + size).position(pos + HEADER_SIZE);
+                procedure.apply(timestamp, b.slice());
+                b.limit(b.capacity());
+            }
+
+            pos += size;
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the offset where the next record will be written.
+     * </p>
+     *
+     * @return the position
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * <p>
+     * Forces any change to be written to the storage device.
+     * </p>
+     */
+    void flush() {
+        buffer.force();
+    }
+
+    /**
+     * <p>
+     * Deletes the file.
+     * </p>
+     *
+     * @return {@code true} if file has been deleted
+     */
+    boolean delete() {
+        return file.delete();
+    }
+
+    /**
+     * <p>
+     * Gets the sequence number.
+     * </p>
+     *
+     * @return the sequence
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * <p>
+     * Gets the timestamp of the last record. If the segment is empty, the date of its creation is returned.
+     * </p>
+     *
+     * @return the timestamp
+     */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * <p>
+     * Indicates if the segment contains at least one record.
+     * </p>
+     *
+     * @return {@code true} if it's empty, {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return position == 0;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.journal;
+
+/**
+ * <p>
+ * A message broadcasted to a durable destination once it has been appended to the {@link Journal}. The position
+ * allows to skip the subscriptions the message has already been replayed to.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class JournaledMessage {
+
+    /**
+     * The position of the last record of the message in the journal.
+     */
+    private final long position;
+
+    /**
+     * The journaled message.
+     */
+    private final Object message;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param position the position returned when the message has been appended
+     * @param message the message
+     */
+    public JournaledMessage(final long position, final Object message) {
+        this.position = position;
+        this.message = message;
+    }
+
+    /**
+     * <p>
+     * Gets the position of the message in the journal.
+     * </p>
+     *
+     * @return the position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * <p>
+     * Gets the journaled message.
+     * </p>
+     *
+     * @return the message
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.valueOf(message);
+    }
+}
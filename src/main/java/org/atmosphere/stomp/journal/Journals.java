@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.journal;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.util.ExecutorsFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Provides the {@link Journal} of each durable destination. Each journal is stored in its own sub directory of the
+ * {@link FrameInterceptor.Property#JOURNAL_DIRECTORY journal directory}.
+ * </p>
+ *
+ * <p>
+ * A message is stored with the headers to forward: each header is written on its own line with the STOMP 1.1
+ * escaping, an empty line then separates the headers from the body.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Journals {
+
+    /**
+     * The key used to store journals in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = Journals.class.getName() + ".key";
+
+    /**
+     * The charset used to store the messages in the journals.
+     */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The root directory.
+     */
+    private final File directory;
+
+    /**
+     * The capacity of each segment.
+     */
+    private final int segmentSize;
+
+    /**
+     * How long a record is retained.
+     */
+    private final long retention;
+
+    /**
+     * Journals associated to their destination.
+     */
+    private final Map<String, Journal> journals;
+
+    /**
+     * <p>
+     * Gets a {@link Journals} object from the given configuration. If no journals are bound to the configuration,
+     * a new object is created and then returned. Expired records are periodically purged and journals are flushed
+     * when the framework is destroyed.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the journals
+     */
+    public static Journals getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final Journals journals = new Journals(new File(FrameInterceptor.Property.JOURNAL_DIRECTORY.retrieve(config)),
+                        FrameInterceptor.Property.JOURNAL_SEGMENT_SIZE.retrieveInt(config),
+                        FrameInterceptor.Property.JOURNAL_RETENTION.retrieveLong(config));
+                final long interval = FrameInterceptor.Property.JOURNAL_PURGE_INTERVAL.retrieveLong(config);
+                final ScheduledFuture<?> purge = ExecutorsFactory.getScheduler(config).scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        journals.purge();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+
+                config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                    @Override
+                    public void shutdown() {
+                        purge.cancel(false);
+                        journals.flush();
+                    }
+                });
+
+                retval = journals;
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return Journals.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param directory the root directory
+     * @param segmentSize the capacity in bytes of each segment
+     * @param retention how long in milliseconds a record is retained
+     */
+    public Journals(final File directory, final int segmentSize, final long retention) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retention = retention;
+        this.journals = new ConcurrentHashMap<String, Journal>();
+    }
+
+    /**
+     * <p>
+     * Opens the journal of the given destination, which becomes durable. The history already stored on the disk is
+     * loaded.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the journal
+     * @throws IOException if journal can't be opened
+     */
+    public synchronized Journal open(final String destination) throws IOException {
+        Journal retval = journals.get(destination);
+
+        if (retval == null) {
+            try {
+                retval = new Journal(new File(directory, URLEncoder.encode(destination, "UTF-8")), segmentSize, retention);
+            } catch (UnsupportedEncodingException uee) {
+                throw new IOException(uee);
+            }
+
+            journals.put(destination, retval);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the journal of the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the journal, {@code null} if destination is not durable
+     */
+    public Journal get(final String destination) {
+        return journals.get(destination);
+    }
+
+    /**
+     * <p>
+     * Deletes the expired segments of all the journals.
+     * </p>
+     */
+    public void purge() {
+        for (final Journal journal : journals.values()) {
+            journal.purge();
+        }
+    }
+
+    /**
+     * <p>
+     * Encodes the given message to a record payload. The headers of a {@link StompMessage} are kept.
+     * </p>
+     *
+     * @param message the message
+     * @return the payload
+     */
+    public static byte[] encode(final Object message) {
+        final StringBuilder sb = new StringBuilder();
+
+        if (message instanceof StompMessage) {
+            for (final Map.Entry<String, String> header : StompMessage.class.cast(message).getHeaders().entrySet()) {
+                escape(sb, header.getKey()).append(':');
+                escape(sb, header.getValue()).append('\n');
+            }
+        }
+
+        return sb.append('\n').append(message).toString().getBytes(CHARSET);
+    }
+
+    /**
+     * <p>
+     * Decodes a record payload {@link #encode(Object) encoded} by this class.
+     * </p>
+     *
+     * @param payload the payload
+     * @return the message with its headers
+     */
+    public static StompMessage decode(final ByteBuffer payload) {
+        final String record = CHARSET.decode(payload).toString();
+        final Map<String, String> headers = new HashMap<String, String>();
+        int pos = 0;
+
+        for (int end = record.indexOf('\n'); end > pos; end = record.indexOf('\n', pos)) {
+            final int colon = record.indexOf(':', pos);
+            headers.put(unescape(record.substring(pos, colon)), unescape(record.substring(colon + 1, end)));
+            pos = end + 1;
+        }
+
+        return new StompMessage(headers, record.substring(pos + 1));
+    }
+
+    /**
+     * <p>
+     * Appends the given header name or value, escaping the backslash, the line feed and the colon.
+     * </p>
+     *
+     * @param sb the target
+     * @param value the value to escape
+     * @return the target
+     */
+    private static StringBuilder escape(final StringBuilder sb, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case ':':
+                    sb.append("\\c");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+
+        return sb;
+    }
+
+    /**
+     * <p>
+     * Reverts the {@link #escape(StringBuilder, String) escaping} of a header name or value.
+     * </p>
+     *
+     * @param value the escaped value
+     * @return the value
+     */
+    private static String unescape(final String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+
+        final StringBuilder sb = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if (c == '\\' && i + 1 < value.length()) {
+                final char next = value.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 'c' ? ':' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * <p>
+     * Writes all the journals to the storage device.
+     * </p>
+     */
+    public void flush() {
+        for (final Journal journal : journals.values()) {
+            journal.flush();
+        }
+    }
+}
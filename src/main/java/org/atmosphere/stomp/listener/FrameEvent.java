@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.listener;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.Header;
+
+/**
+ * <p>
+ * A step of the lifecycle of a frame notified to the {@link FrameListener listeners}. Each thread reuses one instance
+ * per {@link Type}, so notifying an event does not allocate. The values are only valid during the notification.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class FrameEvent {
+
+    /**
+     * <p>
+     * The steps of the lifecycle.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public enum Type {
+
+        /**
+         * A frame has been read from a client, the {@link #getData() data} is the raw frame.
+         */
+        RECEIVED,
+
+        /**
+         * A frame sent by a client has been parsed.
+         */
+        PARSED,
+
+        /**
+         * A frame sent by a client has been processed by the interceptor of its action.
+         */
+        DISPATCHED,
+
+        /**
+         * The handler of the destination has processed a {@link org.atmosphere.stomp.protocol.Action#SEND} frame.
+         */
+        HANDLER_COMPLETED,
+
+        /**
+         * The {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames of a broadcasted message have been encoded
+         * for a subscriber, the {@link #getData() data} contains the frames.
+         */
+        MESSAGE_ENCODED,
+
+        /**
+         * Frames have been written to a client, either to the client that sent a frame or to a subscriber, the
+         * {@link #getData() data} contains the frames. The {@link #getFrame() frame} is {@code null} for the frames
+         * delivered to a subscriber.
+         */
+        WRITTEN,
+
+        /**
+         * The {@link org.atmosphere.stomp.protocol.Action#RECEIPT} of a frame has been written.
+         */
+        RECEIPTED
+    }
+
+    /**
+     * The type.
+     */
+    private final Type type;
+
+    /**
+     * The resource.
+     */
+    private AtmosphereResource resource;
+
+    /**
+     * The frame.
+     */
+    private Frame frame;
+
+    /**
+     * The destination.
+     */
+    private String destination;
+
+    /**
+     * The data.
+     */
+    private String data;
+
+    /**
+     * If the event is being notified.
+     */
+    boolean notifying;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param type the type
+     */
+    FrameEvent(final Type type) {
+        this.type = type;
+    }
+
+    /**
+     * <p>
+     * Sets the values of the event.
+     * </p>
+     *
+     * @param resource the resource
+     * @param frame the frame
+     * @param destination the destination
+     * @param data the data
+     */
+    void set(final AtmosphereResource resource, final Frame frame, final String destination, final String data) {
+        this.resource = resource;
+        this.frame = frame;
+        this.destination = destination;
+        this.data = data;
+    }
+
+    /**
+     * <p>
+     * Gets the step of the lifecycle.
+     * </p>
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * <p>
+     * Gets the resource that sent the frame, or the subscriber for a {@link Type#MESSAGE_ENCODED} event.
+     * </p>
+     *
+     * @return the resource
+     */
+    public AtmosphereResource getResource() {
+        return resource;
+    }
+
+    /**
+     * <p>
+     * Gets the frame sent by the client.
+     * </p>
+     *
+     * @return the frame, {@code null} for the {@link Type#RECEIVED} and {@link Type#MESSAGE_ENCODED} events
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * <p>
+     * Gets the destination of the frame.
+     * </p>
+     *
+     * @return the destination, {@code null} if the frame has no destination
+     */
+    public String getDestination() {
+        return destination != null || frame == null ? destination : frame.getHeaders().get(Header.DESTINATION);
+    }
+
+    /**
+     * <p>
+     * Gets the raw frames read or written.
+     * </p>
+     *
+     * @return the data, {@code null} if the event is not related to raw frames
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return type + " " + getDestination() + (resource == null ? "" : " (" + resource.uuid() + ")");
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.listener;
+
+/**
+ * <p>
+ * Receives the {@link FrameEvent events} of the frame lifecycle. Listeners are registered in the {@link FrameListeners}
+ * of a framework, programmatically or with the {@link org.atmosphere.stomp.interceptor.FrameInterceptor.Property#FRAME_LISTENERS}
+ * init-param.
+ * </p>
+ *
+ * <p>
+ * A listener is called in the thread processing the frame, so it must be fast and thread safe. The event is reused
+ * once the listener returns and must not be retained: a listener that needs its values later must copy them.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public interface FrameListener {
+
+    /**
+     * <p>
+     * Called when a frame reaches a step of its lifecycle.
+     * </p>
+     *
+     * @param event the event, only valid during the call
+     */
+    void onFrameEvent(FrameEvent event);
+}
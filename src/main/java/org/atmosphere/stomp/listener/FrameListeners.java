@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.listener;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.protocol.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>
+ * Keeps the {@link FrameListener listeners} of a framework and notifies them. The listeners are stored in an array
+ * replaced when a listener is added or removed, so notifying reads a single field and returns immediately when no
+ * listener is registered. Otherwise, the {@link FrameEvent} of the current thread is filled and given to each
+ * listener.
+ * </p>
+ *
+ * <p>
+ * An exception thrown by a listener is logged and does not prevent the other listeners to be notified nor the frame to
+ * be processed.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class FrameListeners {
+
+    /**
+     * The key used to store listeners in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = FrameListeners.class.getName() + ".key";
+
+    /**
+     * No listener.
+     */
+    private static final FrameListener[] EMPTY = new FrameListener[0];
+
+    /**
+     * The events reused by each thread, one per type.
+     */
+    private static final ThreadLocal<FrameEvent[]> EVENTS = new ThreadLocal<FrameEvent[]>() {
+        @Override
+        protected FrameEvent[] initialValue() {
+            final FrameEvent.Type[] types = FrameEvent.Type.values();
+            final FrameEvent[] retval = new FrameEvent[types.length];
+
+            for (int i = 0; i < types.length; i++) {
+                retval[i] = new FrameEvent(types[i]);
+            }
+
+            return retval;
+        }
+    };
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The listeners.
+     */
+    private volatile FrameListener[] listeners = EMPTY;
+
+    /**
+     * <p>
+     * Gets a {@link FrameListeners} object from the given configuration. If no listeners are bound to the
+     * configuration, a new object is created with the listeners declared in the init-params and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the listeners
+     */
+    public static FrameListeners getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final FrameListeners listeners = new FrameListeners();
+
+                for (final String className : FrameInterceptor.Property.FRAME_LISTENERS.retrieve(config).split(",")) {
+                    if (!className.trim().isEmpty()) {
+                        try {
+                            listeners.add(config.framework().newClassInstance(FrameListener.class,
+                                    Class.forName(className.trim()).asSubclass(FrameListener.class)));
+                        } catch (Exception e) {
+                            LoggerFactory.getLogger(FrameListeners.class).error("Unable to initialize {}", className, e);
+                        }
+                    }
+                }
+
+                retval = listeners;
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return FrameListeners.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Adds a listener.
+     * </p>
+     *
+     * @param listener the listener
+     */
+    public synchronized void add(final FrameListener listener) {
+        final FrameListener[] l = Arrays.copyOf(listeners, listeners.length + 1);
+        l[l.length - 1] = listener;
+        listeners = l;
+    }
+
+    /**
+     * <p>
+     * Removes a listener.
+     * </p>
+     *
+     * @param listener the listener
+     * @return {@code true} if the listener was registered, {@code false} otherwise
+     */
+    public synchronized boolean remove(final FrameListener listener) {
+        final FrameListener[] l = listeners;
+
+        for (int i = 0; i < l.length; i++) {
+            if (l[i] == listener) {
+                final FrameListener[] retval = l.length == 1 ? EMPTY : new FrameListener[l.length - 1];
+                System.arraycopy(l, 0, retval, 0, i);
+                System.arraycopy(l, i + 1, retval, i, l.length - i - 1);
+                listeners = retval;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Indicates if no listener is registered.
+     * </p>
+     *
+     * @return {@code true} if there is no listener, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * <p>
+     * Notifies the listeners. The destination of the event is read from the frame if not specified.
+     * </p>
+     *
+     * @param type the step of the lifecycle
+     * @param resource the resource
+     * @param frame the frame, {@code null} if the frame is not parsed
+     * @param destination the destination, {@code null} to read it from the frame
+     * @param data the raw frames, {@code null} if the event is not related to raw frames
+     */
+    public void fire(final FrameEvent.Type type,
+                     final AtmosphereResource resource,
+                     final Frame frame,
+                     final String destination,
+                     final String data) {
+        final FrameListener[] l = listeners;
+
+        if (l.length == 0) {
+            return;
+        }
+
+        FrameEvent event = EVENTS.get()[type.ordinal()];
+
+        // A listener that triggers the same event gets its own instance
+        if (event.notifying) {
+            event = new FrameEvent(type);
+        }
+
+        event.notifying = true;
+        event.set(resource, frame, destination, data);
+
+        try {
+            for (final FrameListener listener : l) {
+                try {
+                    listener.onFrameEvent(event);
+                } catch (RuntimeException re) {
+                    logger.warn("Listener {} failed on {}", listener, event, re);
+                }
+            }
+        } finally {
+            event.set(null, null, null, null);
+            event.notifying = false;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFactory;
+
+/**
+ * <p>
+ * The throughput and latency metrics of one destination. Counters are {@link StripedCounter striped} so the threads
+ * processing frames for the same destination don't contend when they record.
+ * </p>
+ *
+ * <p>
+ * A fan-out is the filtering of one broadcasted message for one subscriber, during which its
+ * {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames are built.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class DestinationMetrics implements DestinationMetricsMBean {
+
+    /**
+     * The destination.
+     */
+    private final String destination;
+
+    /**
+     * The configuration providing the broadcaster of the destination.
+     */
+    private final AtmosphereConfig config;
+
+    /**
+     * The received frames.
+     */
+    private final StripedCounter sendFramesIn = new StripedCounter();
+
+    /**
+     * The length of the received bodies.
+     */
+    private final StripedCounter bytesIn = new StripedCounter();
+
+    /**
+     * The built frames.
+     */
+    private final StripedCounter messageFramesOut = new StripedCounter();
+
+    /**
+     * The length of the built frames.
+     */
+    private final StripedCounter bytesOut = new StripedCounter();
+
+    /**
+     * The invocations of the handler.
+     */
+    private final LatencyCounter handler = new LatencyCounter();
+
+    /**
+     * The fan-outs.
+     */
+    private final LatencyCounter fanOut = new LatencyCounter();
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param destination the destination
+     * @param config the configuration, {@code null} if the subscribers are not counted
+     */
+    public DestinationMetrics(final String destination, final AtmosphereConfig config) {
+        this.destination = destination;
+        this.config = config;
+    }
+
+    /**
+     * <p>
+     * Records a {@link org.atmosphere.stomp.protocol.Action#SEND} frame received for the destination.
+     * </p>
+     *
+     * @param length the length of the body
+     */
+    public void received(final int length) {
+        sendFramesIn.increment();
+        bytesIn.add(length);
+    }
+
+    /**
+     * <p>
+     * Records an invocation of the method handling the destination.
+     * </p>
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void invoked(final long nanos) {
+        handler.record(nanos);
+    }
+
+    /**
+     * <p>
+     * Records a fan-out.
+     * </p>
+     *
+     * @param frames the number of built frames
+     * @param length the length of the built frames
+     * @param nanos the duration in nanoseconds
+     */
+    public void delivered(final int frames, final int length, final long nanos) {
+        messageFramesOut.add(frames);
+        bytesOut.add(length);
+        fanOut.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSendFramesIn() {
+        return sendFramesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessageFramesOut() {
+        return messageFramesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSubscribers() {
+        final BroadcasterFactory factory = config == null ? null : config.getBroadcasterFactory();
+        final Broadcaster b = factory == null ? null : factory.lookup(destination);
+        return b == null ? 0 : b.getAtmosphereResources().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHandlerInvocations() {
+        return handler.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHandlerAverageNanos() {
+        return handler.getAverageNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHandlerMaxNanos() {
+        return handler.getMaxNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFanOuts() {
+        return fanOut.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFanOutAverageNanos() {
+        return fanOut.getAverageNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFanOutMaxNanos() {
+        return fanOut.getMaxNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        sendFramesIn.reset();
+        bytesIn.reset();
+        messageFramesOut.reset();
+        bytesOut.reset();
+        handler.reset();
+        fanOut.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d frames in (%d chars), %d frames out (%d chars), %d subscribers, handler %s, fan-out %s",
+                destination, getSendFramesIn(), getBytesIn(), getMessageFramesOut(), getBytesOut(), getSubscribers(),
+                handler, fanOut);
+    }
+}
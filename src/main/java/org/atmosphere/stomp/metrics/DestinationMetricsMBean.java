@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+/**
+ * <p>
+ * The management interface of the {@link DestinationMetrics}. Sizes are counted in characters, as frames are handled
+ * as strings.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public interface DestinationMetricsMBean {
+
+    /**
+     * <p>
+     * Gets the destination.
+     * </p>
+     *
+     * @return the destination
+     */
+    String getDestination();
+
+    /**
+     * <p>
+     * Gets the number of {@link org.atmosphere.stomp.protocol.Action#SEND} frames received for the destination.
+     * </p>
+     *
+     * @return the number of frames
+     */
+    long getSendFramesIn();
+
+    /**
+     * <p>
+     * Gets the length of the bodies of the received {@link org.atmosphere.stomp.protocol.Action#SEND} frames.
+     * </p>
+     *
+     * @return the number of characters
+     */
+    long getBytesIn();
+
+    /**
+     * <p>
+     * Gets the number of {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames built for the subscribers.
+     * </p>
+     *
+     * @return the number of frames
+     */
+    long getMessageFramesOut();
+
+    /**
+     * <p>
+     * Gets the length of the {@link org.atmosphere.stomp.protocol.Action#MESSAGE} frames built for the subscribers.
+     * </p>
+     *
+     * @return the number of characters
+     */
+    long getBytesOut();
+
+    /**
+     * <p>
+     * Gets the number of resources currently added to the broadcaster of the destination.
+     * </p>
+     *
+     * @return the number of subscribers
+     */
+    int getSubscribers();
+
+    /**
+     * <p>
+     * Gets the number of invocations of the method handling the destination.
+     * </p>
+     *
+     * @return the number of invocations
+     */
+    long getHandlerInvocations();
+
+    /**
+     * <p>
+     * Gets the average duration of the invocations of the method handling the destination.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    long getHandlerAverageNanos();
+
+    /**
+     * <p>
+     * Gets the longest invocation of the method handling the destination.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    long getHandlerMaxNanos();
+
+    /**
+     * <p>
+     * Gets the number of deliveries to a subscriber.
+     * </p>
+     *
+     * @return the number of deliveries
+     */
+    long getFanOuts();
+
+    /**
+     * <p>
+     * Gets the average time spent building the frames delivered to a subscriber.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    long getFanOutAverageNanos();
+
+    /**
+     * <p>
+     * Gets the longest time spent building the frames delivered to a subscriber.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    long getFanOutMaxNanos();
+
+    /**
+     * <p>
+     * Resets all the counters.
+     * </p>
+     */
+    void reset();
+}
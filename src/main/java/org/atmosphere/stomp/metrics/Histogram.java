@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of durations with a fixed memory footprint. Durations are counted in buckets whose width grows with the
+ * value: each power of two is split in {@link #SUB_BUCKETS} buckets, so a duration is known within about 3% whatever
+ * its magnitude. Durations below {@link #SUB_BUCKETS} nanoseconds are counted exactly and durations above
+ * {@link #HIGHEST_TRACKABLE} are counted in the last bucket.
+ * </p>
+ *
+ * <p>
+ * Recording is a bucket index computation followed by atomic increments, without any allocation. A
+ * {@link #snapshot(boolean) snapshot} copies the buckets and can reset them to measure the next interval.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Histogram {
+
+    /**
+     * The number of bits of the sub-bucket index.
+     */
+    static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of bits of the highest trackable value.
+     */
+    static final int HIGHEST_BITS = 40;
+
+    /**
+     * The highest trackable value in nanoseconds, about 18 minutes.
+     */
+    public static final long HIGHEST_TRACKABLE = (1L << HIGHEST_BITS) - 1;
+
+    /**
+     * The number of buckets.
+     */
+    static final int BUCKETS = (HIGHEST_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The number of durations in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total of the recorded durations in nanoseconds.
+     */
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    /**
+     * The longest recorded duration in nanoseconds.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * <p>
+     * Records a duration.
+     * </p>
+     *
+     * @param nanos the duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : nanos > HIGHEST_TRACKABLE ? HIGHEST_TRACKABLE : nanos;
+        counts.incrementAndGet(indexOf(value));
+        totalNanos.add(value);
+
+        for (long max = maxNanos.get(); value > max; max = maxNanos.get()) {
+            if (maxNanos.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Copies the recorded durations. Durations recorded during the copy are counted in this snapshot or in the next
+     * one if the histogram is reset.
+     * </p>
+     *
+     * @param reset {@code true} if the histogram is reset so the next snapshot only contains the next durations
+     * @return the snapshot
+     */
+    public HistogramSnapshot snapshot(final boolean reset) {
+        final long[] copy = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0L) : counts.get(i);
+        }
+
+        final long total = totalNanos.sum();
+        final long max = reset ? maxNanos.getAndSet(0L) : maxNanos.get();
+
+        if (reset) {
+            totalNanos.add(-total);
+        }
+
+        return new HistogramSnapshot(copy, total, max);
+    }
+
+    /**
+     * <p>
+     * Gets the index of the bucket counting the given value.
+     * </p>
+     *
+     * @param value the value, between 0 and {@link #HIGHEST_TRACKABLE}
+     * @return the index
+     */
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // The sub-bucket is given by the SUB_BUCKET_BITS bits following the highest one
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * <p>
+     * Gets the highest value counted in the given bucket.
+     * </p>
+     *
+     * @param index the index of the bucket
+     * @return the value
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = (index >> SUB_BUCKET_BITS) - 1;
+        final long lowest = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+/**
+ * <p>
+ * The durations counted by a {@link Histogram} at a given time. Percentiles are reported as the highest value of the
+ * bucket that contains them, so they are never underestimated by more than the bucket precision.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class HistogramSnapshot {
+
+    /**
+     * The number of durations in each bucket.
+     */
+    private final long[] counts;
+
+    /**
+     * The number of durations.
+     */
+    private final long count;
+
+    /**
+     * The total of the durations in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * The longest duration in nanoseconds.
+     */
+    private final long maxNanos;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param counts the number of durations in each bucket
+     * @param totalNanos the total of the durations in nanoseconds
+     * @param maxNanos the longest duration in nanoseconds
+     */
+    HistogramSnapshot(final long[] counts, final long totalNanos, final long maxNanos) {
+        long c = 0;
+
+        for (final long n : counts) {
+            c += n;
+        }
+
+        this.counts = counts;
+        this.count = c;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the number of durations.
+     * </p>
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * <p>
+     * Gets the longest duration.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * <p>
+     * Gets the average duration.
+     * </p>
+     *
+     * @return the time in nanoseconds, 0 if there was no duration
+     */
+    public long getAverageNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * <p>
+     * Gets the duration below which the given percentage of the durations fall.
+     * </p>
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the time in nanoseconds, 0 if there was no duration
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100d) / 100d * count));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(Histogram.highestValueOf(i), maxNanos);
+            }
+        }
+
+        return maxNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%d, avg %dns, p50 %dns, p90 %dns, p99 %dns, p99.9 %dns, max %dns", count,
+                getAverageNanos(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), maxNanos);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Counts durations and keeps their total and the longest one. The count and the total are {@link StripedCounter
+ * striped}; the maximum is only written when a longer duration is recorded, which becomes rare once the counter has
+ * seen the usual durations.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class LatencyCounter {
+
+    /**
+     * The number of recorded durations.
+     */
+    private final StripedCounter count = new StripedCounter();
+
+    /**
+     * The total of the recorded durations in nanoseconds.
+     */
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    /**
+     * The longest recorded duration in nanoseconds.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * <p>
+     * Records a duration.
+     * </p>
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(final long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+
+        for (long max = maxNanos.get(); nanos > max; max = maxNanos.get()) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the number of recorded durations.
+     * </p>
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * <p>
+     * Gets the total of the recorded durations.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * <p>
+     * Gets the longest recorded duration.
+     * </p>
+     *
+     * @return the time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * <p>
+     * Gets the average recorded duration.
+     * </p>
+     *
+     * @return the time in nanoseconds, 0 if nothing was recorded
+     */
+    public long getAverageNanos() {
+        final long c = count.sum();
+        return c == 0 ? 0 : totalNanos.sum() / c;
+    }
+
+    /**
+     * <p>
+     * Forgets the recorded durations.
+     * </p>
+     */
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%d, avg %dns, max %dns", getCount(), getAverageNanos(), getMaxNanos());
+    }
+}
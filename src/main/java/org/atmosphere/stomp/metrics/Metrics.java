@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterListenerAdapter;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Keeps the {@link DestinationMetrics} of each destination that received or delivered a frame. Only the destinations
+ * declared by the server are measured: a {@link org.atmosphere.stomp.annotation.StompService}, a
+ * {@link org.atmosphere.stomp.relay.Relays relay} or a destination with a broadcaster.
+ * </p>
+ *
+ * <p>
+ * The metrics can be pulled with {@link #get(String)} and {@link #getDestinations()}. When
+ * {@link FrameInterceptor.Property#METRICS_JMX} is enabled, each {@link DestinationMetrics} is also registered in
+ * the platform MBean server under the {@link #DOMAIN} domain until the framework is shut down.
+ * </p>
+ *
+ * <p>
+ * This object listens the {@link org.atmosphere.cpr.BroadcasterFactory}: the metrics of a destination are removed and
+ * unregistered when its broadcaster is destroyed, unless the destination has been {@link #declare(String) declared}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Metrics extends BroadcasterListenerAdapter {
+
+    /**
+     * The domain of the registered MBeans.
+     */
+    public static final String DOMAIN = "org.atmosphere.stomp";
+
+    /**
+     * The key used to store metrics in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = Metrics.class.getName() + ".key";
+
+    /**
+     * Distinguishes the MBeans of the frameworks running in the same JVM.
+     */
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The metrics associated to each destination.
+     */
+    private final ConcurrentMap<String, DestinationMetrics> destinations = new ConcurrentHashMap<String, DestinationMetrics>();
+
+    /**
+     * The destinations whose metrics are kept when their broadcaster is destroyed.
+     */
+    private final Set<String> declared = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The configuration.
+     */
+    private final AtmosphereConfig config;
+
+    /**
+     * The MBean server, {@code null} if metrics are not registered.
+     */
+    private final MBeanServer server;
+
+    /**
+     * The identifier of this instance in the MBean names.
+     */
+    private final int id;
+
+    /**
+     * <p>
+     * Gets a {@link Metrics} object from the given configuration. If no metrics are bound to the configuration, a new
+     * object is created, registered as a listener of the {@link org.atmosphere.cpr.BroadcasterFactory} and then
+     * returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the metrics, {@code null} if {@link FrameInterceptor.Property#METRICS} is disabled
+     */
+    public static Metrics getFromConfig(final AtmosphereConfig config) {
+        if (!FrameInterceptor.Property.METRICS.retrieveBoolean(config)) {
+            return null;
+        }
+
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final Metrics metrics = new Metrics(config, FrameInterceptor.Property.METRICS_JMX.retrieveBoolean(config) ?
+                        ManagementFactory.getPlatformMBeanServer() : null);
+                config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+                    @Override
+                    public void shutdown() {
+                        metrics.unregister();
+                    }
+                });
+
+                config.getBroadcasterFactory().addBroadcasterListener(metrics);
+                retval = metrics;
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return Metrics.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param config the configuration, {@code null} if the subscribers are not counted
+     * @param server the server where metrics are registered, {@code null} if they are not
+     */
+    public Metrics(final AtmosphereConfig config, final MBeanServer server) {
+        this.config = config;
+        this.server = server;
+        this.id = SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * <p>
+     * Gets the metrics of the given destination, creating them the first time.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the metrics
+     */
+    public DestinationMetrics get(final String destination) {
+        DestinationMetrics retval = destinations.get(destination);
+
+        if (retval == null) {
+            final DestinationMetrics created = new DestinationMetrics(destination, config);
+            retval = destinations.putIfAbsent(destination, created);
+
+            if (retval == null) {
+                retval = created;
+                register(created);
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the metrics of the given destination like {@link #get(String)} and keeps them when its broadcaster is
+     * destroyed. This is used for the destinations measured for the whole life of the framework.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the metrics
+     */
+    public DestinationMetrics declare(final String destination) {
+        declared.add(destination);
+        return get(destination);
+    }
+
+    /**
+     * <p>
+     * Removes the metrics of the given destination and unregisters them from the MBean server if any. Declared
+     * destinations are kept.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if the metrics have been removed
+     */
+    public boolean remove(final String destination) {
+        if (declared.contains(destination) || destinations.remove(destination) == null) {
+            return false;
+        }
+
+        unregister(destination);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPreDestroy(final Broadcaster b) {
+        remove(b.getID());
+    }
+
+    /**
+     * <p>
+     * Gets the metrics of all the measured destinations.
+     * </p>
+     *
+     * @return the metrics associated to each destination
+     */
+    public Map<String, DestinationMetrics> getDestinations() {
+        return Collections.unmodifiableMap(destinations);
+    }
+
+    /**
+     * <p>
+     * Gets the name of the MBean of the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the name
+     * @throws JMException if the name is not valid
+     */
+    public ObjectName getObjectName(final String destination) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Destination,metrics=" + id + ",name=" + ObjectName.quote(destination));
+    }
+
+    /**
+     * <p>
+     * Registers the given metrics in the MBean server if any.
+     * </p>
+     *
+     * @param metrics the metrics
+     */
+    private void register(final DestinationMetrics metrics) {
+        if (server != null) {
+            try {
+                server.registerMBean(metrics, getObjectName(metrics.getDestination()));
+            } catch (JMException jme) {
+                logger.warn("Unable to register the metrics of {}", metrics.getDestination(), jme);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all the metrics and unregisters them from the MBean server if any.
+     * </p>
+     */
+    void unregister() {
+        for (final String destination : destinations.keySet()) {
+            if (destinations.remove(destination) != null) {
+                unregister(destination);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Unregisters the metrics of the given destination from the MBean server if any.
+     * </p>
+     *
+     * @param destination the destination
+     */
+    private void unregister(final String destination) {
+        if (server != null) {
+            try {
+                server.unregisterMBean(getObjectName(destination));
+            } catch (JMException jme) {
+                logger.debug("Unable to unregister the metrics of {}", destination, jme);
+            }
+        }
+    }
+}
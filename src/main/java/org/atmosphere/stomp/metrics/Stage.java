@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The stages of the frame pipeline whose durations are counted in a {@link Histogram}. The histograms are shared by
+ * all the frameworks of the JVM and recording is switched on and off globally with {@link #setEnabled(boolean)}.
+ * </p>
+ *
+ * <p>
+ * A stage is measured by calling {@link #start()} before it and {@link #end(long)} after it. When recording is
+ * disabled, {@link #start()} returns {@link #DISABLED} without reading the clock and {@link #end(long)} does nothing.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public enum Stage {
+
+    /**
+     * The reading of the frame from the request.
+     */
+    READ,
+
+    /**
+     * The parsing of the frame by the {@link org.atmosphere.stomp.protocol.StompFormat}.
+     */
+    PARSE,
+
+    /**
+     * The processing of the frame by the interceptor of its action, handler included.
+     */
+    DISPATCH,
+
+    /**
+     * The invocation of the handler of the destination.
+     */
+    HANDLER,
+
+    /**
+     * The formatting of a frame by the {@link org.atmosphere.stomp.protocol.StompFormat}.
+     */
+    ENCODE,
+
+    /**
+     * The write of frames to the client that sent a frame.
+     */
+    WRITE;
+
+    /**
+     * Returned by {@link #start()} when recording is disabled.
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+
+    /**
+     * If recording is enabled.
+     */
+    private static volatile boolean enabled;
+
+    /**
+     * The durations of this stage.
+     */
+    private final Histogram histogram = new Histogram();
+
+    /**
+     * <p>
+     * Enables or disables the recording for all the stages.
+     * </p>
+     *
+     * @param enabled {@code true} to record the durations, {@code false} otherwise
+     */
+    public static void setEnabled(final boolean enabled) {
+        Stage.enabled = enabled;
+    }
+
+    /**
+     * <p>
+     * Indicates if the durations are recorded.
+     * </p>
+     *
+     * @return {@code true} if recording is enabled, {@code false} otherwise
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * <p>
+     * Starts measuring a stage.
+     * </p>
+     *
+     * @return the start time to give to {@link #end(long)}, {@link #DISABLED} if recording is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * <p>
+     * Records the duration of this stage since the given start time.
+     * </p>
+     *
+     * @param start the value returned by {@link #start()}
+     */
+    public void end(final long start) {
+        if (start != DISABLED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the histogram of this stage.
+     * </p>
+     *
+     * @return the histogram
+     */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * <p>
+     * Takes a snapshot of the histogram of each stage.
+     * </p>
+     *
+     * @param reset {@code true} if the histograms are reset so the next snapshots cover the next interval
+     * @return the snapshot of each stage
+     */
+    public static Map<Stage, HistogramSnapshot> snapshots(final boolean reset) {
+        final Map<Stage, HistogramSnapshot> retval = new EnumMap<Stage, HistogramSnapshot>(Stage.class);
+
+        for (final Stage s : values()) {
+            retval.put(s, s.histogram.snapshot(reset));
+        }
+
+        return retval;
+    }
+}
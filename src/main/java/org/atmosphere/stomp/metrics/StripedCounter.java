@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A counter that can be incremented by many threads without contending on a single memory location. The value is
+ * first added to a base counter. Once two threads have collided on it, each thread adds to its own stripe selected
+ * with its identifier and the value is the sum of the base and of all the stripes. Stripes are padded so they don't
+ * share a cache line.
+ * </p>
+ *
+ * <p>
+ * The {@link #sum()} is not an atomic snapshot when the counter is updated concurrently, which is acceptable for
+ * statistics.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StripedCounter {
+
+    /**
+     * The number of longs between two stripes, so each stripe has its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of stripes, a power of two.
+     */
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    /**
+     * The counter used until a contention is detected.
+     */
+    private final AtomicLong base = new AtomicLong();
+
+    /**
+     * The stripes, {@code null} until a contention is detected.
+     */
+    private volatile AtomicLongArray stripes;
+
+    /**
+     * <p>
+     * Adds the given value.
+     * </p>
+     *
+     * @param x the value
+     */
+    public void add(final long x) {
+        AtomicLongArray s = stripes;
+
+        if (s == null) {
+            final long b = base.get();
+
+            if (base.compareAndSet(b, b + x)) {
+                return;
+            }
+
+            s = stripes();
+        }
+
+        s.getAndAdd(index(), x);
+    }
+
+    /**
+     * <p>
+     * Adds one.
+     * </p>
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * <p>
+     * Gets the sum of the added values.
+     * </p>
+     *
+     * @return the sum
+     */
+    public long sum() {
+        long retval = base.get();
+        final AtomicLongArray s = stripes;
+
+        if (s != null) {
+            for (int i = 0; i < s.length(); i += PADDING) {
+                retval += s.get(i);
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Resets the sum to 0. Values added concurrently may be lost.
+     * </p>
+     */
+    public void reset() {
+        base.set(0L);
+        final AtomicLongArray s = stripes;
+
+        if (s != null) {
+            for (int i = 0; i < s.length(); i += PADDING) {
+                s.set(i, 0L);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the stripes, creating them the first time.
+     * </p>
+     *
+     * @return the stripes
+     */
+    private AtomicLongArray stripes() {
+        synchronized (base) {
+            if (stripes == null) {
+                stripes = new AtomicLongArray(STRIPES * PADDING);
+            }
+
+            return stripes;
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the index of the stripe of the current thread.
+     * </p>
+     *
+     * @return the index
+     */
+    private static int index() {
+        final long id = Thread.currentThread().getId();
+        return ((int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16 & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.valueOf(sum());
+    }
+}
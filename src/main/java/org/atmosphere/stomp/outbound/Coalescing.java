@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.outbound;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.util.ExecutorsFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Settings of the write coalescing. When enabled, frames sent to the same client within a time window are
+ * concatenated in the {@link OutboundQueue} and written at once, unless the byte budget is reached before the end of
+ * the window.
+ * </p>
+ *
+ * <p>
+ * The window can be adaptive: each queue starts without window, the window grows when several frames have been
+ * coalesced in the same write and shrinks when a write contains a single frame. Consequently, latency is not
+ * impacted when the load is low.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Coalescing {
+
+    /**
+     * The maximum window in milliseconds, 0 if coalescing is disabled.
+     */
+    private final long maxWindow;
+
+    /**
+     * Pending bytes that trigger a write before the end of the window.
+     */
+    private final long budget;
+
+    /**
+     * {@code true} if the window adapts to the load.
+     */
+    private final boolean adaptive;
+
+    /**
+     * The scheduler that flushes the queues at the end of the window.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param maxWindow the maximum window in milliseconds, 0 to disable coalescing
+     * @param budget the byte budget
+     * @param adaptive if the window adapts to the load
+     * @param scheduler the scheduler
+     */
+    public Coalescing(final long maxWindow, final long budget, final boolean adaptive, final ScheduledExecutorService scheduler) {
+        this.maxWindow = maxWindow;
+        this.budget = budget;
+        this.adaptive = adaptive;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * <p>
+     * Builds the settings specified by the init-params of the given configuration.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the settings
+     */
+    public static Coalescing fromConfig(final AtmosphereConfig config) {
+        final long window = FrameInterceptor.Property.OUTBOUND_COALESCING_WINDOW.retrieveLong(config);
+        return new Coalescing(window,
+                FrameInterceptor.Property.OUTBOUND_COALESCING_BUDGET.retrieveLong(config),
+                FrameInterceptor.Property.OUTBOUND_COALESCING_ADAPTIVE.retrieveBoolean(config),
+                window > 0 ? ExecutorsFactory.getScheduler(config) : null);
+    }
+
+    /**
+     * <p>
+     * Indicates if coalescing is enabled.
+     * </p>
+     *
+     * @return {@code true} if frames are coalesced, {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return maxWindow > 0;
+    }
+
+    /**
+     * <p>
+     * Gets the window a new queue starts with.
+     * </p>
+     *
+     * @return the window in milliseconds
+     */
+    long initialWindow() {
+        return adaptive ? 0 : maxWindow;
+    }
+
+    /**
+     * <p>
+     * Computes the next window of a queue after a write.
+     * </p>
+     *
+     * @param window the current window
+     * @param entries the number of entries coalesced in the write
+     * @return the next window
+     */
+    long nextWindow(final long window, final int entries) {
+        if (!adaptive) {
+            return maxWindow;
+        } else if (entries > 1) {
+            return Math.min(maxWindow, Math.max(1, window * 2));
+        } else {
+            return window / 2;
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given number of pending bytes reaches the budget.
+     * </p>
+     *
+     * @param bytes the pending bytes
+     * @return {@code true} if frames must be written now
+     */
+    boolean isBudgetReached(final long bytes) {
+        return budget > 0 && bytes >= budget;
+    }
+
+    /**
+     * <p>
+     * Runs the given task after the given delay.
+     * </p>
+     *
+     * @param task the task
+     * @param delay the delay in milliseconds
+     */
+    void schedule(final Runnable task, final long delay) {
+        scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+}
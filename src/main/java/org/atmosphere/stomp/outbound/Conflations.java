@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.outbound;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keeps the destinations where last-value conflation is enabled and counts how many messages have been conflated for
+ * each of them. A message is conflated when it replaces a message that was still pending in the {@link OutboundQueue}
+ * of a subscriber for the same destination and the same {@link org.atmosphere.stomp.protocol.Header#CONFLATION_KEY}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Conflations {
+
+    /**
+     * The key used to store conflations in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = Conflations.class.getName() + ".key";
+
+    /**
+     * The number of conflated messages associated to each conflated destination.
+     */
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * <p>
+     * Gets a {@link Conflations} object from the given configuration. If no conflations are bound to the configuration,
+     * a new object is created and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the conflations
+     */
+    public static Conflations getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                retval = new Conflations();
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return Conflations.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Enables the conflation for the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     */
+    public void enable(final String destination) {
+        synchronized (counters) {
+            if (!counters.containsKey(destination)) {
+                counters.put(destination, new AtomicLong());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the conflation is enabled for the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if conflation is enabled, {@code false} otherwise
+     */
+    public boolean isEnabled(final String destination) {
+        return counters.containsKey(destination);
+    }
+
+    /**
+     * <p>
+     * Indicates that a message sent to the given destination has been conflated.
+     * </p>
+     *
+     * @param destination the destination
+     */
+    public void conflated(final String destination) {
+        final AtomicLong counter = counters.get(destination);
+
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the number of messages conflated for the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the number of conflated messages, 0 if conflation is not enabled
+     */
+    public long getConflatedCount(final String destination) {
+        final AtomicLong counter = counters.get(destination);
+        return counter == null ? 0L : counter.get();
+    }
+
+    /**
+     * <p>
+     * Gets the number of messages conflated for each destination where the conflation is enabled.
+     * </p>
+     *
+     * @return a snapshot of the counters
+     */
+    public Map<String, Long> getConflatedCounts() {
+        final Map<String, Long> retval = new HashMap<String, Long>();
+
+        for (final Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            retval.put(entry.getKey(), entry.getValue().get());
+        }
+
+        return retval;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.outbound;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+
+/**
+ * <p>
+ * The limits of the {@link OutboundQueue} of each client, measured in frames and bytes, and the policy applied when
+ * a limit is reached. A limit lower or equals to 0 means that the queue is not bounded.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class OutboundLimits {
+
+    /**
+     * The maximum number of pending frames.
+     */
+    private final int maxFrames;
+
+    /**
+     * The maximum number of pending bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * The policy applied when a limit is reached.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param maxFrames the maximum number of pending frames
+     * @param maxBytes the maximum number of pending bytes
+     * @param policy the overflow policy
+     */
+    public OutboundLimits(final int maxFrames, final long maxBytes, final OverflowPolicy policy) {
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * <p>
+     * Builds the limits specified by the init-params of the given configuration.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the limits
+     */
+    public static OutboundLimits fromConfig(final AtmosphereConfig config) {
+        return new OutboundLimits(FrameInterceptor.Property.OUTBOUND_MAX_FRAMES.retrieveInt(config),
+                FrameInterceptor.Property.OUTBOUND_MAX_BYTES.retrieveLong(config),
+                OverflowPolicy.valueOf(FrameInterceptor.Property.OUTBOUND_OVERFLOW_POLICY.retrieve(config).trim().toUpperCase()));
+    }
+
+    /**
+     * <p>
+     * Indicates if at least one limit is defined.
+     * </p>
+     *
+     * @return {@code true} if queues are bounded, {@code false} otherwise
+     */
+    public boolean isBounded() {
+        return maxFrames > 0 || maxBytes > 0;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given queue size exceeds a limit.
+     * </p>
+     *
+     * @param frames the number of frames
+     * @param bytes the number of bytes
+     * @return {@code true} if a limit is exceeded, {@code false} otherwise
+     */
+    public boolean isExceeded(final int frames, final long bytes) {
+        return (maxFrames > 0 && frames > maxFrames) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * <p>
+     * Gets the overflow policy.
+     * </p>
+     *
+     * @return the policy
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+}
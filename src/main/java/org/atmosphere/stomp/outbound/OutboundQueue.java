@@ -0,0 +1,739 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.outbound;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListener;
+import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
+import org.atmosphere.cpr.AtmosphereResourceSession;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.util.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Frames waiting to be written to a client while a previous write is still in progress. The queue is bound to the
+ * {@link AtmosphereResourceSession session} so it survives the reconnections of the client.
+ * </p>
+ *
+ * <p>
+ * When a frame is enqueued with a conflation key and another frame with the same key is still pending, the new frame
+ * replaces the previous one at its position in the queue. When the write in progress completes, all the pending
+ * frames are {@link #FLUSH flushed} in a single write through the {@link Broadcaster} of the last enqueued frame.
+ * Clients using a resumable transport are flushed when they reconnect.
+ * </p>
+ *
+ * <p>
+ * The queue can be bounded in frames and bytes with {@link OutboundLimits}. When a limit is reached, the configured
+ * {@link OverflowPolicy} applies, so a client that can't keep up never accumulates an unbounded amount of memory.
+ * The IDs of the messages the client had to acknowledge in the discarded frames are kept until they are
+ * {@link #drainDiscardedAcks() drained}, so the caller can stop waiting for their acknowledgment.
+ * </p>
+ *
+ * <p>
+ * With {@link Coalescing}, frames enqueued within a time window are written at once even if no write is in progress.
+ * </p>
+ *
+ * <p>
+ * The class is thread safe as it is used in a concurrent context.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class OutboundQueue {
+
+    /**
+     * The message broadcasted to a particular resource to make the filter write its pending frames.
+     */
+    public static final Object FLUSH = new Object() {
+        @Override
+        public String toString() {
+            return OutboundQueue.class.getSimpleName() + ".FLUSH";
+        }
+    };
+
+    /**
+     * The key used to store the queue in {@link AtmosphereResourceSession}.
+     */
+    private static final String ATTRIBUTE_KEY = OutboundQueue.class.getName() + ".key";
+
+    /**
+     * <p>
+     * This enum defines what happened to enqueued frames.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public enum Result {
+
+        /**
+         * Frames have been added to the queue.
+         */
+        QUEUED,
+
+        /**
+         * Frames have replaced pending frames.
+         */
+        CONFLATED,
+
+        /**
+         * Frames, or older pending frames, have been dropped because a limit has been reached.
+         */
+        DROPPED,
+
+        /**
+         * A limit has been reached and the client must be disconnected. The queue does not accept frames anymore.
+         */
+        OVERFLOW
+    }
+
+    /**
+     * <p>
+     * A pending entry.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Entry {
+
+        /**
+         * The destination.
+         */
+        private final String destination;
+
+        /**
+         * The conflation key, {@code null} if entry can't be replaced.
+         */
+        private String key;
+
+        /**
+         * The formatted frames.
+         */
+        private String frames;
+
+        /**
+         * The number of frames.
+         */
+        private int count;
+
+        /**
+         * The size of the frames in bytes.
+         */
+        private long bytes;
+
+        /**
+         * The IDs of the messages that must be acknowledged by the client.
+         */
+        private Collection<String> acks;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param destination the destination
+         * @param key the conflation key
+         * @param frames the frames
+         * @param count the number of frames
+         * @param acks the IDs of the messages that must be acknowledged
+         */
+        private Entry(final String destination, final String key, final String frames, final int count, final Collection<String> acks) {
+            this.destination = destination;
+            this.key = key;
+            this.frames = frames;
+            this.count = count;
+            this.bytes = utf8Length(frames);
+            this.acks = acks;
+        }
+    }
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The pending entries in the order they must be written.
+     */
+    private final Deque<Entry> pending = new ArrayDeque<Entry>();
+
+    /**
+     * The pending entries that can be replaced, associated to their conflation key.
+     */
+    private final Map<String, Entry> conflatable = new HashMap<String, Entry>();
+
+    /**
+     * The IDs of the messages to acknowledge in the frames discarded since the last drain.
+     */
+    private final List<String> discardedAcks = new ArrayList<String>();
+
+    /**
+     * The listener notified when a write completes.
+     */
+    private final AtmosphereResourceEventListener listener = new AtmosphereResourceEventListenerAdapter() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onBroadcast(final AtmosphereResourceEvent event) {
+            written(event.getResource(), false);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onThrowable(final AtmosphereResourceEvent event) {
+            written(event.getResource(), false);
+        }
+    };
+
+    /**
+     * The number of pending frames.
+     */
+    private int frames;
+
+    /**
+     * The number of pending bytes.
+     */
+    private long bytes;
+
+    /**
+     * The number of frames dropped or conflated since the queue has been created.
+     */
+    private long dropped;
+
+    /**
+     * {@code true} if the client must be disconnected.
+     */
+    private boolean closed;
+
+    /**
+     * When the oldest pending entry has been enqueued.
+     */
+    private long firstPendingAt;
+
+    /**
+     * The current coalescing window in milliseconds, negative if not initialized yet.
+     */
+    private long window = -1;
+
+    /**
+     * {@code true} if a flush will be performed at the end of the coalescing window.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * {@code true} if a write is in progress.
+     */
+    private boolean inFlight;
+
+    /**
+     * When the write in progress started.
+     */
+    private long inFlightSince;
+
+    /**
+     * The broadcaster of the last enqueued frame.
+     */
+    private String broadcasterId;
+
+    /**
+     * The resource the listener has been added to.
+     */
+    private AtmosphereResource watched;
+
+    /**
+     * <p>
+     * Gets a {@link OutboundQueue} object from the given session. If no queue is bound to the session, a new one is
+     * created and then returned.
+     * </p>
+     *
+     * @param session the {@link AtmosphereResourceSession session}
+     * @return the queue
+     */
+    public static OutboundQueue getFromSession(final AtmosphereResourceSession session) {
+        // Broadcasters of different destinations filtering for the same client must not create two queues
+        synchronized (session) {
+            Object retval = session.getAttribute(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                retval = new OutboundQueue();
+                session.setAttribute(ATTRIBUTE_KEY, retval);
+            }
+
+            return OutboundQueue.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the queue bound to the given session, if any, when the client reconnects. Any write in progress is
+     * considered as completed.
+     * </p>
+     *
+     * @param session the session
+     * @param resource the resource of the new connection
+     */
+    public static void resume(final AtmosphereResourceSession session, final AtmosphereResource resource) {
+        final Object queue = session.getAttribute(ATTRIBUTE_KEY);
+
+        if (queue != null) {
+            OutboundQueue.class.cast(queue).written(resource, true);
+        }
+    }
+
+    /**
+     * <p>
+     * Enqueues frames sent by the given broadcaster to the given resource.
+     * </p>
+     *
+     * @param resource the resource
+     * @param broadcasterId the broadcaster ID
+     * @param key the conflation key, {@code null} if frames can't be conflated
+     * @param frames the formatted frames
+     * @param count the number of frames
+     * @param limits the limits of the queue
+     * @return what happened to the frames
+     */
+    public Result enqueue(final AtmosphereResource resource,
+                          final String broadcasterId,
+                          final String key,
+                          final String frames,
+                          final int count,
+                          final OutboundLimits limits) {
+        return enqueue(resource, broadcasterId, key, frames, count, Collections.<String>emptyList(), limits);
+    }
+
+    /**
+     * <p>
+     * Enqueues frames sent by the given broadcaster to the given resource. If the frames are discarded, the given
+     * message IDs become available through {@link #drainDiscardedAcks()}.
+     * </p>
+     *
+     * @param resource the resource
+     * @param broadcasterId the broadcaster ID
+     * @param key the conflation key, {@code null} if frames can't be conflated
+     * @param frames the formatted frames
+     * @param count the number of frames
+     * @param acks the IDs of the messages the client must acknowledge in the frames
+     * @param limits the limits of the queue
+     * @return what happened to the frames
+     */
+    public synchronized Result enqueue(final AtmosphereResource resource,
+                                       final String broadcasterId,
+                                       final String key,
+                                       final String frames,
+                                       final int count,
+                                       final Collection<String> acks,
+                                       final OutboundLimits limits) {
+        if (closed) {
+            dropped += count;
+            discardedAcks.addAll(acks);
+            return Result.DROPPED;
+        }
+
+        this.broadcasterId = broadcasterId;
+
+        // Be notified when the writes complete
+        if (watched != resource) {
+            watched = resource;
+            resource.addEventListener(listener);
+        }
+
+        final Entry entry = new Entry(broadcasterId, key, frames, count, acks);
+
+        if (key != null) {
+            final Entry previous = conflatable.get(key);
+
+            if (previous != null) {
+                replace(previous, entry);
+                return Result.CONFLATED;
+            }
+        }
+
+        Result retval = Result.QUEUED;
+
+        if (limits.isExceeded(this.frames + entry.count, this.bytes + entry.bytes)) {
+            switch (limits.getPolicy()) {
+                case DROP_NEWEST:
+                    dropped += entry.count;
+                    discardedAcks.addAll(entry.acks);
+                    return Result.DROPPED;
+
+                case CONFLATE:
+                    for (final Iterator<Entry> it = pending.descendingIterator(); it.hasNext();) {
+                        final Entry previous = it.next();
+
+                        if (previous.destination.equals(broadcasterId)) {
+                            replace(previous, entry);
+                            return Result.CONFLATED;
+                        }
+                    }
+
+                    // No frame to replace, drop the oldest
+                    retval = dropOldest(entry, limits);
+                    break;
+
+                case DISCONNECT:
+                    dropped += this.frames + entry.count;
+                    discardedAcks.addAll(entry.acks);
+
+                    for (final Entry e : pending) {
+                        discardedAcks.addAll(e.acks);
+                    }
+
+                    clear();
+                    closed = true;
+                    return Result.OVERFLOW;
+
+                default:
+                    retval = dropOldest(entry, limits);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            firstPendingAt = System.currentTimeMillis();
+        }
+
+        pending.add(entry);
+        this.frames += entry.count;
+        this.bytes += entry.bytes;
+
+        if (key != null) {
+            conflatable.put(key, entry);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Replaces a pending entry by a new one. The messages of the replaced frames are discarded.
+     * </p>
+     *
+     * @param previous the pending entry
+     * @param entry the new entry
+     */
+    private void replace(final Entry previous, final Entry entry) {
+        frames += entry.count - previous.count;
+        bytes += entry.bytes - previous.bytes;
+        dropped += previous.count;
+        discardedAcks.addAll(previous.acks);
+
+        if (previous.key != null && !previous.key.equals(entry.key)) {
+            conflatable.remove(previous.key);
+        }
+
+        previous.key = entry.key;
+        previous.frames = entry.frames;
+        previous.count = entry.count;
+        previous.bytes = entry.bytes;
+        previous.acks = entry.acks;
+
+        if (entry.key != null) {
+            conflatable.put(entry.key, previous);
+        }
+    }
+
+    /**
+     * <p>
+     * Drops the oldest pending entries until the given entry can be enqueued.
+     * </p>
+     *
+     * @param entry the new entry
+     * @param limits the limits
+     * @return {@link Result#DROPPED} if at least one entry has been dropped, {@link Result#QUEUED} otherwise
+     */
+    private Result dropOldest(final Entry entry, final OutboundLimits limits) {
+        Result retval = Result.QUEUED;
+
+        while (!pending.isEmpty() && limits.isExceeded(frames + entry.count, bytes + entry.bytes)) {
+            final Entry oldest = pending.removeFirst();
+            frames -= oldest.count;
+            bytes -= oldest.bytes;
+            dropped += oldest.count;
+            discardedAcks.addAll(oldest.acks);
+
+            if (oldest.key != null) {
+                conflatable.remove(oldest.key);
+            }
+
+            retval = Result.DROPPED;
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Discards all the pending entries.
+     * </p>
+     */
+    private void clear() {
+        pending.clear();
+        conflatable.clear();
+        frames = 0;
+        bytes = 0;
+    }
+
+    /**
+     * <p>
+     * Removes all the pending frames if no write is in progress. The caller must write the returned frames. A write
+     * in progress for a longer time than the given timeout is considered as lost. When coalescing is enabled, frames
+     * are kept until the end of the current window or until the byte budget is reached.
+     * </p>
+     *
+     * @param writeTimeout the write timeout in milliseconds
+     * @param coalescing the coalescing settings
+     * @return the frames to write, {@code null} if nothing can be written now
+     */
+    public synchronized String poll(final long writeTimeout, final Coalescing coalescing) {
+        final long now = System.currentTimeMillis();
+
+        if (pending.isEmpty() || (inFlight && now - inFlightSince < writeTimeout)) {
+            return null;
+        }
+
+        if (coalescing.isEnabled()) {
+            if (window < 0) {
+                window = coalescing.initialWindow();
+            }
+
+            // Wait for more frames until the end of the window unless the budget is reached
+            final long delay = firstPendingAt + window - now;
+
+            if (delay > 0 && !coalescing.isBudgetReached(bytes)) {
+                scheduleFlush(coalescing, delay);
+                return null;
+            }
+
+            window = coalescing.nextWindow(window, pending.size());
+        }
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (final Entry entry : pending) {
+            sb.append(entry.frames);
+        }
+
+        clear();
+        inFlight = true;
+        inFlightSince = now;
+
+        return sb.toString();
+    }
+
+    /**
+     * <p>
+     * Flushes the queue after the given delay, unless a flush is already scheduled.
+     * </p>
+     *
+     * @param coalescing the scheduler provider
+     * @param delay the delay in milliseconds
+     */
+    private void scheduleFlush(final Coalescing coalescing, final long delay) {
+        if (flushScheduled) {
+            return;
+        }
+
+        flushScheduled = true;
+        final AtmosphereResource resource = watched;
+        final String id = broadcasterId;
+
+        coalescing.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (OutboundQueue.this) {
+                    flushScheduled = false;
+                }
+
+                // Resumable transports will be flushed when the client reconnects
+                if (resource.isSuspended()) {
+                    flush(resource, id);
+                }
+            }
+        }, delay);
+    }
+
+    /**
+     * <p>
+     * Broadcasts the {@link #FLUSH} message to the given resource.
+     * </p>
+     *
+     * @param resource the resource
+     * @param broadcasterId the broadcaster used to reach the resource
+     */
+    private void flush(final AtmosphereResource resource, final String broadcasterId) {
+        final Broadcaster broadcaster = resource.getAtmosphereConfig().getBroadcasterFactory().lookup(broadcasterId);
+
+        if (broadcaster != null) {
+            broadcaster.broadcast(FLUSH, resource);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the IDs of the messages to acknowledge in the frames discarded since the last call. The client will never
+     * receive these messages, so their acknowledgment must not be awaited anymore.
+     * </p>
+     *
+     * @return the message IDs, empty if no frame has been discarded
+     */
+    public synchronized List<String> drainDiscardedAcks() {
+        if (discardedAcks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<String> retval = new ArrayList<String>(discardedAcks);
+        discardedAcks.clear();
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the number of pending frames.
+     * </p>
+     *
+     * @return the queue depth in frames
+     */
+    public synchronized int size() {
+        return frames;
+    }
+
+    /**
+     * <p>
+     * Gets the size of the pending frames.
+     * </p>
+     *
+     * @return the queue depth in bytes
+     */
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Gets the number of frames dropped or conflated since the queue has been created.
+     * </p>
+     *
+     * @return the number of dropped frames
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * <p>
+     * Gets the current coalescing window.
+     * </p>
+     *
+     * @return the window in milliseconds, negative if coalescing is not used
+     */
+    public synchronized long getWindow() {
+        return window;
+    }
+
+    /**
+     * <p>
+     * Computes the number of bytes of the given string encoded in UTF-8 without encoding it.
+     * </p>
+     *
+     * @param str the string
+     * @return the number of bytes
+     */
+    static long utf8Length(final CharSequence str) {
+        long retval = 0;
+
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+
+            if (c < 0x80) {
+                retval++;
+            } else if (c < 0x800) {
+                retval += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                retval += 4;
+                i++;
+            } else {
+                retval += 3;
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Indicates that the write in progress has completed and flushes the pending frames if any.
+     * </p>
+     *
+     * @param resource the resource
+     * @param reconnected {@code true} if the client has just reconnected
+     */
+    private void written(final AtmosphereResource resource, final boolean reconnected) {
+        final String id;
+        final boolean close;
+
+        synchronized (this) {
+            inFlight = false;
+            close = closed;
+            id = broadcasterId;
+
+            if (!close && (pending.isEmpty() || id == null)) {
+                return;
+            }
+        }
+
+        // The error frame has been written, the client is disconnected
+        if (close) {
+            try {
+                resource.close();
+            } catch (IOException ioe) {
+                logger.debug("Unable to close resource {}", resource.uuid(), ioe);
+            }
+
+            return;
+        }
+
+        // Resumable transports will be flushed when the client reconnects
+        if (reconnected || (resource.isSuspended() && !Utils.resumableTransport(resource.transport()))) {
+            flush(resource, id);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.outbound;
+
+/**
+ * <p>
+ * This enum defines what happens when a frame is enqueued while the {@link OutboundQueue} of a slow client has
+ * reached its {@link OutboundLimits limits}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The oldest pending frames are dropped until the new frame can be enqueued.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new frame is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The new frame replaces the most recent pending frame sent to the same destination. If there is no such frame,
+     * the oldest pending frames are dropped.
+     */
+    CONFLATE,
+
+    /**
+     * The pending frames are discarded, an {@link org.atmosphere.stomp.protocol.Action#ERROR} frame is sent and then
+     * the client is disconnected.
+     */
+    DISCONNECT
+}
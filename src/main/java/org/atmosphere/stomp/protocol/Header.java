@@ -121,4 +121,24 @@ public interface Header {
      * Server name and version that exposes STOMP support.
      */
     String SERVER = "server";
+
+    /**
+     * Timestamp in milliseconds since which the history of a durable destination should be replayed to the subscriber.
+     */
+    String REPLAY_SINCE = "replay-since";
+
+    /**
+     * Group of related messages that must be consumed by the same subscriber of a queue.
+     */
+    String GROUP = "group";
+
+    /**
+     * Key identifying the messages of a conflated destination that replace each other when they are still pending.
+     */
+    String CONFLATION_KEY = "conflation-key";
+
+    /**
+     * Expression over the message headers that a message must match to be sent to a subscriber.
+     */
+    String SELECTOR = "selector";
 }
\ No newline at end of file
@@ -39,6 +39,17 @@ public class ParseException extends Exception {
         super(origin);
     }
 
+    /**
+     * <p>
+     * Builds a new exception with a message.
+     * </p>
+     *
+     * @param message the message
+     */
+    public ParseException(final String message) {
+        super(message);
+    }
+
     /**
      * <p>
      * Builds a new exception.
@@ -21,6 +21,7 @@ import org.apache.activemq.apollo.stomp.BufferContent;
 import org.apache.activemq.apollo.stomp.StompCodec;
 import org.apache.activemq.apollo.stomp.StompContent;
 import org.apache.activemq.apollo.stomp.StompFrame;
+import org.atmosphere.stomp.metrics.Stage;
 import org.fusesource.hawtbuf.AsciiBuffer;
 import org.fusesource.hawtbuf.DataByteArrayOutputStream;
 import scala.Tuple2;
@@ -35,6 +36,11 @@ import java.util.Map;
  * This {@link StompFormat} implementation is based in apache Apollo.
  * </p>
  *
+ * <p>
+ * The parsing and the formatting are recorded in the {@link Stage#PARSE} and {@link Stage#ENCODE} histograms when
+ * they are enabled.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.1
  * @version 1.0
@@ -46,9 +52,12 @@ public class StompFormatImpl implements StompFormat {
      */
     @Override
     public Frame parse(final String str) throws ParseException {
+        final long start = Stage.start();
         final Parser parser = new Parser(str);
         parser.parse();
-        return parser.toFrame();
+        final Frame retval = parser.toFrame();
+        Stage.PARSE.end(start);
+        return retval;
     }
 
     /**
@@ -56,6 +65,7 @@ public class StompFormatImpl implements StompFormat {
      */
     @Override
     public String format(final Frame msg) {
+        final long start = Stage.start();
         final DataByteArrayOutputStream dbaos = new DataByteArrayOutputStream();
         final List<Tuple2<AsciiBuffer, AsciiBuffer>> headers = new ArrayList<Tuple2<AsciiBuffer, AsciiBuffer>>();
 
@@ -71,6 +81,8 @@ public class StompFormatImpl implements StompFormat {
         final String toString = new String(dbaos.getData());
 
         // Cut at null byte
-        return toString.substring(0, toString.indexOf(0x00) + 1);
+        final String retval = toString.substring(0, toString.indexOf(0x00) + 1);
+        Stage.ENCODE.end(start);
+        return retval;
     }
 }
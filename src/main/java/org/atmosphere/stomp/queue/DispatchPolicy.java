@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.queue;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A dispatch policy selects the unique consumer that receives a message broadcasted to a queue destination. The
+ * implementation is specified with the {@link org.atmosphere.stomp.interceptor.FrameInterceptor.PropertyClass#DISPATCH_POLICY_CLASS}
+ * init-param.
+ * </p>
+ *
+ * <p>
+ * A policy is shared by all the queues and is called concurrently, so implementations must be thread safe.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public interface DispatchPolicy {
+
+    /**
+     * <p>
+     * Selects the consumer of a message.
+     * </p>
+     *
+     * @param destination the queue destination
+     * @param message the broadcasted message, which could be a {@link org.atmosphere.stomp.StompMessage}
+     * @param consumers the resources subscribed to the queue, never empty
+     * @return the selected consumer
+     */
+    AtmosphereResource select(String destination, Object message, List<AtmosphereResource> consumers);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.queue;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.Subscriptions;
+
+import java.util.List;
+
+/**
+ * <p>
+ * This policy selects the consumer with the smallest number of messages not acknowledged yet. Consumers with the same
+ * number of pending messages are selected one after the other. If the subscriptions use the
+ * {@link Subscriptions#ACK_AUTO auto} acknowledgment mode, this policy behaves like the {@link RoundRobinDispatchPolicy}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class LeastPendingAcksDispatchPolicy extends RoundRobinDispatchPolicy {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AtmosphereResource select(final String destination, final Object message, final List<AtmosphereResource> consumers) {
+        final int size = consumers.size();
+        final int start = next(destination, size);
+        AtmosphereResource retval = null;
+        int min = Integer.MAX_VALUE;
+
+        for (int i = 0; i < size && min > 0; i++) {
+            final AtmosphereResource r = consumers.get((start + i) % size);
+            final int pending = Subscriptions.getFromSession(r.getAtmosphereConfig().sessionFactory().getSession(r))
+                    .getPendingAcks(destination);
+
+            if (pending < min) {
+                min = pending;
+                retval = r;
+            }
+        }
+
+        return retval;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.queue;
+
+/**
+ * <p>
+ * A message broadcasted to a queue destination once its consumer has been selected by the {@link DispatchPolicy}.
+ * Only the resource identified by the {@link #getTarget() target} receives the message.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class QueueDispatch {
+
+    /**
+     * The UUID of the consumer.
+     */
+    private final String target;
+
+    /**
+     * The dispatched message.
+     */
+    private final Object message;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param target the UUID of the consumer
+     * @param message the message
+     */
+    public QueueDispatch(final String target, final Object message) {
+        this.target = target;
+        this.message = message;
+    }
+
+    /**
+     * <p>
+     * Gets the UUID of the resource that consumes the message.
+     * </p>
+     *
+     * @return the UUID
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * <p>
+     * Gets the dispatched message.
+     * </p>
+     *
+     * @return the message
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.valueOf(message);
+    }
+}
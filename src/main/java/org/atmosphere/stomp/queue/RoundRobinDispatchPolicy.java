@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.queue;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * This policy selects the consumers of a queue one after the other. This is the default {@link DispatchPolicy}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class RoundRobinDispatchPolicy implements DispatchPolicy {
+
+    /**
+     * The counter of each queue.
+     */
+    private final ConcurrentMap<String, AtomicInteger> counters = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AtmosphereResource select(final String destination, final Object message, final List<AtmosphereResource> consumers) {
+        return consumers.get(next(destination, consumers.size()));
+    }
+
+    /**
+     * <p>
+     * Gets the next index for the given queue.
+     * </p>
+     *
+     * @param destination the queue
+     * @param size the number of consumers
+     * @return the index, between 0 (inclusive) and size (exclusive)
+     */
+    protected int next(final String destination, final int size) {
+        AtomicInteger counter = counters.get(destination);
+
+        if (counter == null) {
+            final AtomicInteger previous = counters.putIfAbsent(destination, counter = new AtomicInteger());
+
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+
+        // Mask the sign bit when the counter overflows
+        return (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+}
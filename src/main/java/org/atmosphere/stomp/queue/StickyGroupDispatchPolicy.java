@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.queue;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.protocol.Header;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * This policy guarantees that all the messages sent with the same {@link Header#GROUP group} header are consumed by the
+ * same subscriber, as long as this subscriber is connected. The first message of a group and the messages without
+ * group are dispatched with the {@link RoundRobinDispatchPolicy round-robin} policy.
+ * </p>
+ *
+ * <p>
+ * The groups are chosen by the clients, so the number of groups remembered for each queue is bounded: when the limit
+ * is reached, the least recently used group is forgotten and its next message is assigned again like the first one.
+ * The groups of a consumer that is not subscribed anymore are forgotten as soon as a message of one of them is
+ * dispatched.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StickyGroupDispatchPolicy extends RoundRobinDispatchPolicy {
+
+    /**
+     * The default maximum number of groups remembered for each queue.
+     */
+    public static final int DEFAULT_MAX_GROUPS = 10000;
+
+    /**
+     * The UUID of the resource that consumes each group, per queue. Each map is ordered by access.
+     */
+    private final Map<String, Map<String, String>> owners = new ConcurrentHashMap<String, Map<String, String>>();
+
+    /**
+     * The maximum number of groups remembered for each queue.
+     */
+    private final int maxGroups;
+
+    /**
+     * <p>
+     * Builds a new instance remembering at most {@link #DEFAULT_MAX_GROUPS} groups per queue.
+     * </p>
+     */
+    public StickyGroupDispatchPolicy() {
+        this(DEFAULT_MAX_GROUPS);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param maxGroups the maximum number of groups remembered for each queue
+     */
+    public StickyGroupDispatchPolicy(final int maxGroups) {
+        this.maxGroups = maxGroups;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AtmosphereResource select(final String destination, final Object message, final List<AtmosphereResource> consumers) {
+        final String group = StompMessage.getHeader(message, Header.GROUP);
+
+        if (group == null) {
+            return super.select(destination, message, consumers);
+        }
+
+        Map<String, String> groups = owners.get(destination);
+
+        if (groups == null) {
+            synchronized (owners) {
+                groups = owners.get(destination);
+
+                if (groups == null) {
+                    groups = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+                        /**
+                         * {@inheritDoc}
+                         */
+                        @Override
+                        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                            return size() > maxGroups;
+                        }
+                    };
+
+                    owners.put(destination, groups);
+                }
+            }
+        }
+
+        synchronized (groups) {
+            final String owner = groups.get(group);
+
+            if (owner != null) {
+                for (final AtmosphereResource r : consumers) {
+                    if (r.uuid().equals(owner)) {
+                        return r;
+                    }
+                }
+            }
+
+            // New group or owner has gone, assign the group to another consumer
+            final AtmosphereResource retval = super.select(destination, message, consumers);
+
+            // Forget the groups owned by consumers that are not subscribed anymore
+            if (owner != null) {
+                groups.values().removeAll(Collections.singleton(owner));
+            }
+
+            groups.put(group, retval.uuid());
+            return retval;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.relay;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>
+ * Keeps the relay destinations. A frame sent to a relay destination is forwarded as is to its subscribers without
+ * invoking any {@link org.atmosphere.stomp.annotation.StompService} method, so no handler, decoder or encoder is
+ * involved. Relay destinations are declared with the {@link FrameInterceptor.Property#RELAY_DESTINATIONS} init-param
+ * or with {@link org.atmosphere.stomp.annotation.StompEndpoint#relay()}. A relay destination can be a wildcard
+ * pattern.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Relays {
+
+    /**
+     * The key used to store relays in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = Relays.class.getName() + ".key";
+
+    /**
+     * The relay destinations without wildcard.
+     */
+    private final Set<String> destinations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The segments of the relay patterns.
+     */
+    private final List<String[]> patterns = new CopyOnWriteArrayList<String[]>();
+
+    /**
+     * <p>
+     * Gets a {@link Relays} object from the given configuration. If no relays are bound to the configuration, a new
+     * object is created with the destinations declared in the init-params and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the relays
+     */
+    public static Relays getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final Relays relays = new Relays();
+
+                for (final String d : FrameInterceptor.Property.RELAY_DESTINATIONS.retrieve(config).split(",")) {
+                    if (!d.trim().isEmpty()) {
+                        relays.add(d.trim());
+                    }
+                }
+
+                retval = relays;
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return Relays.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Declares the given relay destination.
+     * </p>
+     *
+     * @param destination the destination or the pattern
+     */
+    public void add(final String destination) {
+        if (DestinationTrie.isPattern(destination)) {
+            patterns.add(DestinationTrie.segments(destination));
+        } else {
+            destinations.add(destination);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given destination is a relay.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if frames are forwarded as is, {@code false} otherwise
+     */
+    public boolean isRelay(final String destination) {
+        if (destination == null) {
+            return false;
+        } else if (destinations.contains(destination)) {
+            return true;
+        }
+
+        final String[] segments = patterns.isEmpty() ? null : DestinationTrie.segments(destination);
+
+        for (final String[] p : patterns) {
+            if (DestinationTrie.matches(p, segments)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
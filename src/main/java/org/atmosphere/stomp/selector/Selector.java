@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.selector;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * A predicate compiled from the {@link org.atmosphere.stomp.protocol.Header#SELECTOR} header of a subscription. The
+ * predicate is evaluated against the headers of each message broadcasted to the subscribed destination and the
+ * message is only sent when it matches.
+ * </p>
+ *
+ * <p>
+ * Selectors are immutable and thread safe. Identical expressions are compiled to the same instance by
+ * {@link Selectors#compile(String)}, so they can be used as keys to evaluate a selector only once per message.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public interface Selector {
+
+    /**
+     * <p>
+     * Evaluates the selector.
+     * </p>
+     *
+     * @param headers the message headers
+     * @return {@code true} if the message must be sent, {@code false} otherwise
+     */
+    boolean matches(Map<String, String> headers);
+}
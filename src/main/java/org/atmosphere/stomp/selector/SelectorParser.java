@@ -0,0 +1,792 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.selector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A recursive descent parser that compiles a selector expression to a tree of {@link Selector predicates}. The grammar
+ * is a subset of the SQL-92 conditional expressions used by JMS selectors:
+ * <pre>
+ * expression := and ( OR and )*
+ * and        := not ( AND not )*
+ * not        := NOT not | primary
+ * primary    := '(' expression ')'
+ *             | header ( '=' | '&lt;&gt;' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' ) literal
+ *             | header [ NOT ] IN '(' literal ( ',' literal )* ')'
+ *             | header [ NOT ] BETWEEN literal AND literal
+ *             | header IS [ NOT ] NULL
+ * literal    := 'string' | number | TRUE | FALSE
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * Keywords are case insensitive. When the literal is a number, the header value is compared as a number, otherwise
+ * it's compared as a string. A comparison with a header that is missing or that is not a number when a number is
+ * expected is always {@code false}.
+ * </p>
+ *
+ * <p>
+ * As the expression is specified by a client, its length and the number of nested parentheses and negations are
+ * limited to keep the recursion bounded.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+class SelectorParser {
+
+    /**
+     * The comparison operators.
+     */
+    private static final String[] OPERATORS = { "<>", "!=", "<=", ">=", "=", "<", ">" };
+
+    /**
+     * The maximum length of an expression.
+     */
+    static final int MAX_LENGTH = 4096;
+
+    /**
+     * The maximum number of nested parentheses and negations.
+     */
+    static final int MAX_DEPTH = 32;
+
+    /**
+     * The expression.
+     */
+    private final String expression;
+
+    /**
+     * The position of the next character to read.
+     */
+    private int position;
+
+    /**
+     * The number of parentheses and negations enclosing the next token.
+     */
+    private int depth;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param expression the expression to parse
+     */
+    SelectorParser(final String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * <p>
+     * Compiles the expression.
+     * </p>
+     *
+     * @return the selector
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    Selector parse() {
+        if (expression.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException(String.format("Selector exceeds %d characters", MAX_LENGTH));
+        }
+
+        final Selector retval = parseOr();
+        skipWhitespaces();
+
+        if (position != expression.length()) {
+            throw error("Unexpected character");
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Parses a disjunction.
+     * </p>
+     *
+     * @return the selector
+     */
+    private Selector parseOr() {
+        final List<Selector> operands = new ArrayList<Selector>();
+        operands.add(parseAnd());
+
+        while (acceptKeyword("OR")) {
+            operands.add(parseAnd());
+        }
+
+        return operands.size() == 1 ? operands.get(0) : new Or(operands.toArray(new Selector[operands.size()]));
+    }
+
+    /**
+     * <p>
+     * Parses a conjunction.
+     * </p>
+     *
+     * @return the selector
+     */
+    private Selector parseAnd() {
+        final List<Selector> operands = new ArrayList<Selector>();
+        operands.add(parseNot());
+
+        while (acceptKeyword("AND")) {
+            operands.add(parseNot());
+        }
+
+        return operands.size() == 1 ? operands.get(0) : new And(operands.toArray(new Selector[operands.size()]));
+    }
+
+    /**
+     * <p>
+     * Parses a negation.
+     * </p>
+     *
+     * @return the selector
+     */
+    private Selector parseNot() {
+        if (acceptKeyword("NOT")) {
+            enter();
+            final Selector retval = new Not(parseNot());
+            depth--;
+            return retval;
+        }
+
+        return parsePrimary();
+    }
+
+    /**
+     * <p>
+     * Parses a parenthesized expression or a predicate on a header.
+     * </p>
+     *
+     * @return the selector
+     */
+    private Selector parsePrimary() {
+        if (accept('(')) {
+            enter();
+            final Selector retval = parseOr();
+            expect(')');
+            depth--;
+            return retval;
+        }
+
+        final String header = parseIdentifier();
+
+        if (acceptKeyword("IS")) {
+            final boolean negated = acceptKeyword("NOT");
+            expectKeyword("NULL");
+            return new IsNull(header, negated);
+        }
+
+        final boolean negated = acceptKeyword("NOT");
+        final Selector retval;
+
+        if (acceptKeyword("IN")) {
+            expect('(');
+            final List<Literal> values = new ArrayList<Literal>();
+
+            do {
+                values.add(parseLiteral());
+            } while (accept(','));
+
+            expect(')');
+            retval = new In(header, values);
+        } else if (acceptKeyword("BETWEEN")) {
+            final Literal low = parseLiteral();
+            expectKeyword("AND");
+            retval = new And(new Comparison(header, ">=", low), new Comparison(header, "<=", parseLiteral()));
+        } else if (negated) {
+            throw error("IN or BETWEEN expected");
+        } else {
+            retval = new Comparison(header, parseOperator(), parseLiteral());
+        }
+
+        return negated ? new Not(retval) : retval;
+    }
+
+    /**
+     * <p>
+     * Enters a nested expression.
+     * </p>
+     *
+     * @throws IllegalArgumentException if the expression is nested too deeply
+     */
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("More than " + MAX_DEPTH + " nested parentheses or negations");
+        }
+    }
+
+    /**
+     * <p>
+     * Parses a header name.
+     * </p>
+     *
+     * @return the name
+     */
+    private String parseIdentifier() {
+        skipWhitespaces();
+        final int start = position;
+
+        while (position < expression.length() && isIdentifierPart(expression.charAt(position), position == start)) {
+            position++;
+        }
+
+        if (start == position) {
+            throw error("Header name expected");
+        }
+
+        return expression.substring(start, position);
+    }
+
+    /**
+     * <p>
+     * Parses a comparison operator.
+     * </p>
+     *
+     * @return the operator
+     */
+    private String parseOperator() {
+        skipWhitespaces();
+
+        for (final String operator : OPERATORS) {
+            if (expression.startsWith(operator, position)) {
+                position += operator.length();
+                return operator;
+            }
+        }
+
+        throw error("Comparison operator expected");
+    }
+
+    /**
+     * <p>
+     * Parses a string, a number or a boolean.
+     * </p>
+     *
+     * @return the literal
+     */
+    private Literal parseLiteral() {
+        skipWhitespaces();
+
+        if (accept('\'')) {
+            final StringBuilder sb = new StringBuilder();
+
+            while (true) {
+                if (position == expression.length()) {
+                    throw error("Unterminated string");
+                }
+
+                final char c = expression.charAt(position++);
+
+                if (c != '\'') {
+                    sb.append(c);
+                } else if (position < expression.length() && expression.charAt(position) == '\'') {
+                    // Quote is escaped by another quote
+                    sb.append(c);
+                    position++;
+                } else {
+                    return new Literal(sb.toString(), null);
+                }
+            }
+        } else if (acceptKeyword("TRUE")) {
+            return new Literal("true", null);
+        } else if (acceptKeyword("FALSE")) {
+            return new Literal("false", null);
+        }
+
+        final int start = position;
+
+        while (position < expression.length() && "+-.0123456789eE".indexOf(expression.charAt(position)) != -1) {
+            position++;
+        }
+
+        try {
+            final String text = expression.substring(start, position);
+            return new Literal(text, Double.valueOf(text));
+        } catch (NumberFormatException nfe) {
+            position = start;
+            throw error("Literal expected");
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given character can be part of a header name.
+     * </p>
+     *
+     * @param c the character
+     * @param first if the character is the first one of the name
+     * @return {@code true} if the character is allowed, {@code false} otherwise
+     */
+    private static boolean isIdentifierPart(final char c, final boolean first) {
+        return Character.isLetter(c) || c == '_' || c == '$' || (!first && (Character.isDigit(c) || c == '-' || c == '.' || c == ':'));
+    }
+
+    /**
+     * <p>
+     * Skips the whitespaces before the next token.
+     * </p>
+     */
+    private void skipWhitespaces() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * <p>
+     * Consumes the given character if it's the next token.
+     * </p>
+     *
+     * @param c the character
+     * @return {@code true} if the character has been consumed, {@code false} otherwise
+     */
+    private boolean accept(final char c) {
+        skipWhitespaces();
+
+        if (position < expression.length() && expression.charAt(position) == c) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Consumes the given character, which must be the next token.
+     * </p>
+     *
+     * @param c the character
+     */
+    private void expect(final char c) {
+        if (!accept(c)) {
+            throw error("'" + c + "' expected");
+        }
+    }
+
+    /**
+     * <p>
+     * Consumes the given keyword if it's the next token.
+     * </p>
+     *
+     * @param keyword the upper case keyword
+     * @return {@code true} if the keyword has been consumed, {@code false} otherwise
+     */
+    private boolean acceptKeyword(final String keyword) {
+        skipWhitespaces();
+        final int end = position + keyword.length();
+
+        if (expression.regionMatches(true, position, keyword, 0, keyword.length())
+                && (end == expression.length() || !isIdentifierPart(expression.charAt(end), false))) {
+            position = end;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Consumes the given keyword, which must be the next token.
+     * </p>
+     *
+     * @param keyword the upper case keyword
+     */
+    private void expectKeyword(final String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error(keyword + " expected");
+        }
+    }
+
+    /**
+     * <p>
+     * Builds the exception thrown when the expression is not valid.
+     * </p>
+     *
+     * @param message the reason
+     * @return the exception
+     */
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(String.format("%s at position %d in selector %s", message, position, expression));
+    }
+
+    /**
+     * <p>
+     * A string or a number specified in the expression.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Literal {
+
+        /**
+         * The text.
+         */
+        private final String text;
+
+        /**
+         * The numeric value, {@code null} if the literal is not a number.
+         */
+        private final Double number;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param text the text
+         * @param number the number
+         */
+        private Literal(final String text, final Double number) {
+            this.text = text;
+            this.number = number;
+        }
+
+        /**
+         * <p>
+         * Compares the given header value to this literal.
+         * </p>
+         *
+         * @param value the header value
+         * @return the comparison result, {@code null} if the value can't be compared
+         */
+        private Integer compare(final String value) {
+            if (value == null) {
+                return null;
+            } else if (number == null) {
+                return value.compareTo(text);
+            }
+
+            try {
+                return Double.valueOf(value.trim()).compareTo(number);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Compares a header to a literal.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Comparison implements Selector {
+
+        /**
+         * The header name.
+         */
+        private final String header;
+
+        /**
+         * The operator.
+         */
+        private final String operator;
+
+        /**
+         * The literal.
+         */
+        private final Literal literal;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param header the header name
+         * @param operator the operator
+         * @param literal the literal
+         */
+        private Comparison(final String header, final String operator, final Literal literal) {
+            this.header = header;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            final Integer c = literal.compare(headers.get(header));
+
+            if (c == null) {
+                return false;
+            } else if ("=".equals(operator)) {
+                return c == 0;
+            } else if ("<>".equals(operator) || "!=".equals(operator)) {
+                return c != 0;
+            } else if ("<".equals(operator)) {
+                return c < 0;
+            } else if ("<=".equals(operator)) {
+                return c <= 0;
+            } else if (">".equals(operator)) {
+                return c > 0;
+            } else {
+                return c >= 0;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Checks that a header is equal to one of the given literals.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class In implements Selector {
+
+        /**
+         * The header name.
+         */
+        private final String header;
+
+        /**
+         * The string literals.
+         */
+        private final Set<String> strings;
+
+        /**
+         * The numeric literals.
+         */
+        private final Set<Double> numbers;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param header the header name
+         * @param literals the literals
+         */
+        private In(final String header, final List<Literal> literals) {
+            this.header = header;
+            this.strings = new HashSet<String>();
+            this.numbers = new HashSet<Double>();
+
+            for (final Literal literal : literals) {
+                if (literal.number == null) {
+                    strings.add(literal.text);
+                } else {
+                    numbers.add(literal.number);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            final String value = headers.get(header);
+
+            if (value == null) {
+                return false;
+            } else if (strings.contains(value)) {
+                return true;
+            } else if (numbers.isEmpty()) {
+                return false;
+            }
+
+            try {
+                return numbers.contains(Double.valueOf(value.trim()));
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Checks that a header is missing or not.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class IsNull implements Selector {
+
+        /**
+         * The header name.
+         */
+        private final String header;
+
+        /**
+         * If the header must be present.
+         */
+        private final boolean negated;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param header the header name
+         * @param negated {@code true} for {@code IS NOT NULL}
+         */
+        private IsNull(final String header, final boolean negated) {
+            this.header = header;
+            this.negated = negated;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            return (headers.get(header) == null) != negated;
+        }
+    }
+
+    /**
+     * <p>
+     * Negates a selector.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Not implements Selector {
+
+        /**
+         * The negated selector.
+         */
+        private final Selector operand;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param operand the negated selector
+         */
+        private Not(final Selector operand) {
+            this.operand = operand;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            return !operand.matches(headers);
+        }
+    }
+
+    /**
+     * <p>
+     * Matches when all the operands match.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class And implements Selector {
+
+        /**
+         * The operands.
+         */
+        private final Selector[] operands;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param operands the operands
+         */
+        private And(final Selector... operands) {
+            this.operands = operands;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            for (final Selector operand : operands) {
+                if (!operand.matches(headers)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * <p>
+     * Matches when at least one operand matches.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Or implements Selector {
+
+        /**
+         * The operands.
+         */
+        private final Selector[] operands;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param operands the operands
+         */
+        private Or(final Selector... operands) {
+            this.operands = operands;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean matches(final Map<String, String> headers) {
+            for (final Selector operand : operands) {
+                if (operand.matches(headers)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
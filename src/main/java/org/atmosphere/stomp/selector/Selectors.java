@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.selector;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Compiles the selectors specified by the subscribers. Identical expressions share the same {@link Selector} instance,
+ * so a selector used by many subscribers of a destination is evaluated only once per message. The number of cached
+ * selectors is bounded to prevent clients from filling the memory with distinct expressions: once the limit is
+ * reached, new expressions are still compiled but not shared.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class Selectors {
+
+    /**
+     * The key used to store selectors in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = Selectors.class.getName() + ".key";
+
+    /**
+     * The maximum number of shared selectors.
+     */
+    private static final int MAX_CACHED = 1024;
+
+    /**
+     * The compiled selectors associated to their expression.
+     */
+    private final ConcurrentMap<String, Selector> selectors = new ConcurrentHashMap<String, Selector>();
+
+    /**
+     * <p>
+     * Gets a {@link Selectors} object from the given configuration. If no selectors are bound to the configuration,
+     * a new object is created and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the selectors
+     */
+    public static Selectors getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                retval = new Selectors();
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return Selectors.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Compiles the given expression or returns the selector already compiled for the same expression.
+     * </p>
+     *
+     * @param expression the expression
+     * @return the selector
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public Selector compile(final String expression) {
+        final String key = expression.trim();
+        Selector retval = selectors.get(key);
+
+        if (retval == null) {
+            retval = new SelectorParser(key).parse();
+
+            if (selectors.size() < MAX_CACHED) {
+                final Selector previous = selectors.putIfAbsent(key, retval);
+
+                if (previous != null) {
+                    retval = previous;
+                }
+            }
+        }
+
+        return retval;
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.wildcard;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * A concurrent trie that associates values to destination patterns. A destination is split in segments separated by
+ * a '/' or a '.' character. In a pattern, the {@link #ANY_SEGMENT} segment matches exactly one segment and the
+ * {@link #ANY_SEGMENTS} segment, which must be the last one, matches zero or more segments. For instance,
+ * {@code /topic/prices.*} matches {@code /topic/prices.eur} and {@code /topic/prices.#} also matches
+ * {@code /topic/prices.eur.spot}.
+ * </p>
+ *
+ * <p>
+ * Looking for the values matching a destination only follows, for each segment, the literal child and the wildcard
+ * children of the current nodes, so the cost depends on the depth of the destination and not on the number of
+ * patterns. Nodes are never removed: the number of distinct patterns is expected to be small compared to the number of
+ * subscriptions.
+ * </p>
+ *
+ * <p>
+ * The trie can also associate values to concrete destinations and {@link #search(String) search} the destinations
+ * matching a pattern, following only the children the pattern selects.
+ * </p>
+ *
+ * @param <T> the type of values
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class DestinationTrie<T> {
+
+    /**
+     * The segment matching exactly one segment.
+     */
+    public static final String ANY_SEGMENT = "*";
+
+    /**
+     * The segment matching zero or more segments.
+     */
+    public static final String ANY_SEGMENTS = "#";
+
+    /**
+     * <p>
+     * A node of the trie.
+     * </p>
+     *
+     * @param <T> the type of values
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private static final class Node<T> {
+
+        /**
+         * The children associated to their segment.
+         */
+        private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<String, Node<T>>();
+
+        /**
+         * The values of the pattern ending at this node.
+         */
+        private final Set<T> values = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    }
+
+    /**
+     * The root node.
+     */
+    private final Node<T> root = new Node<T>();
+
+    /**
+     * <p>
+     * Splits the given destination in segments.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the segments
+     */
+    public static String[] segments(final String destination) {
+        int count = 1;
+
+        for (int i = 0; i < destination.length(); i++) {
+            if (isSeparator(destination.charAt(i))) {
+                count++;
+            }
+        }
+
+        final String[] retval = new String[count];
+        int start = 0;
+        int index = 0;
+
+        for (int i = 0; i < destination.length(); i++) {
+            if (isSeparator(destination.charAt(i))) {
+                retval[index++] = destination.substring(start, i);
+                start = i + 1;
+            }
+        }
+
+        retval[index] = destination.substring(start);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given character separates two segments.
+     * </p>
+     *
+     * @param c the character
+     * @return {@code true} if the character is a '/' or a '.', {@code false} otherwise
+     */
+    private static boolean isSeparator(final char c) {
+        return c == '/' || c == '.';
+    }
+
+    /**
+     * <p>
+     * Indicates if the given destination contains a wildcard segment.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if the destination is a pattern, {@code false} otherwise
+     */
+    public static boolean isPattern(final String destination) {
+        if (destination.indexOf(ANY_SEGMENT) == -1 && destination.indexOf(ANY_SEGMENTS) == -1) {
+            return false;
+        }
+
+        for (final String segment : segments(destination)) {
+            if (ANY_SEGMENT.equals(segment) || ANY_SEGMENTS.equals(segment)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given destination matches the given pattern.
+     * </p>
+     *
+     * @param pattern the pattern segments
+     * @param destination the destination
+     * @return {@code true} if the destination matches, {@code false} otherwise
+     */
+    public static boolean matches(final String[] pattern, final String destination) {
+        return matches(pattern, segments(destination));
+    }
+
+    /**
+     * <p>
+     * Indicates if the given destination segments match the given pattern. The destination can be split once with
+     * {@link #segments(String)} and compared to several patterns.
+     * </p>
+     *
+     * @param pattern the pattern segments
+     * @param segments the destination segments
+     * @return {@code true} if the destination matches, {@code false} otherwise
+     */
+    public static boolean matches(final String[] pattern, final String[] segments) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (ANY_SEGMENTS.equals(pattern[i])) {
+                return true;
+            } else if (i == segments.length || (!ANY_SEGMENT.equals(pattern[i]) && !pattern[i].equals(segments[i]))) {
+                return false;
+            }
+        }
+
+        return pattern.length == segments.length;
+    }
+
+    /**
+     * <p>
+     * Associates a value to the given pattern.
+     * </p>
+     *
+     * @param pattern the pattern
+     * @param value the value
+     * @throws IllegalArgumentException if {@link #ANY_SEGMENTS} is not the last segment
+     */
+    public void add(final String pattern, final T value) {
+        final String[] segments = segments(pattern);
+        Node<T> node = root;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (ANY_SEGMENTS.equals(segments[i]) && i != segments.length - 1) {
+                throw new IllegalArgumentException(ANY_SEGMENTS + " must be the last segment of " + pattern);
+            }
+
+            Node<T> child = node.children.get(segments[i]);
+
+            if (child == null) {
+                final Node<T> created = new Node<T>();
+                child = node.children.putIfAbsent(segments[i], created);
+
+                if (child == null) {
+                    child = created;
+                }
+            }
+
+            node = child;
+        }
+
+        node.values.add(value);
+    }
+
+    /**
+     * <p>
+     * Removes the value associated to the given pattern.
+     * </p>
+     *
+     * @param pattern the pattern
+     * @param value the value
+     * @return {@code true} if the value was associated to the pattern, {@code false} otherwise
+     */
+    public boolean remove(final String pattern, final T value) {
+        Node<T> node = root;
+
+        for (final String segment : segments(pattern)) {
+            node = node.children.get(segment);
+
+            if (node == null) {
+                return false;
+            }
+        }
+
+        return node.values.remove(value);
+    }
+
+    /**
+     * <p>
+     * Gets the values of all the patterns matching the given destination.
+     * </p>
+     *
+     * @param destination the destination
+     * @return the values
+     */
+    public Set<T> match(final String destination) {
+        final Set<T> retval = new HashSet<T>();
+        collect(root, segments(destination), 0, retval);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the values associated to the concrete destinations matching the given pattern.
+     * </p>
+     *
+     * @param pattern the pattern
+     * @return the values
+     */
+    public Set<T> search(final String pattern) {
+        final Set<T> retval = new HashSet<T>();
+        search(root, segments(pattern), 0, retval);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Collects the values of the destinations matching the given pattern segments from the given node.
+     * </p>
+     *
+     * @param node the node
+     * @param pattern the pattern segments
+     * @param index the index of the pattern segment to match against the children of the node
+     * @param values the collected values
+     */
+    private void search(final Node<T> node, final String[] pattern, final int index, final Set<T> values) {
+        if (index == pattern.length) {
+            values.addAll(node.values);
+        } else if (ANY_SEGMENTS.equals(pattern[index])) {
+            collectAll(node, values);
+        } else if (ANY_SEGMENT.equals(pattern[index])) {
+            for (final Node<T> child : node.children.values()) {
+                search(child, pattern, index + 1, values);
+            }
+        } else {
+            final Node<T> literal = node.children.get(pattern[index]);
+
+            if (literal != null) {
+                search(literal, pattern, index + 1, values);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Collects the values of the given node and of all its descendants.
+     * </p>
+     *
+     * @param node the node
+     * @param values the collected values
+     */
+    private void collectAll(final Node<T> node, final Set<T> values) {
+        values.addAll(node.values);
+
+        for (final Node<T> child : node.children.values()) {
+            collectAll(child, values);
+        }
+    }
+
+    /**
+     * <p>
+     * Collects the values of the patterns matching the given segments from the given node.
+     * </p>
+     *
+     * @param node the node
+     * @param segments the destination segments
+     * @param index the index of the segment to match against the children of the node
+     * @param values the collected values
+     */
+    private void collect(final Node<T> node, final String[] segments, final int index, final Set<T> values) {
+        final Node<T> any = node.children.get(ANY_SEGMENTS);
+
+        if (any != null) {
+            values.addAll(any.values);
+        }
+
+        if (index == segments.length) {
+            values.addAll(node.values);
+            return;
+        }
+
+        final Node<T> literal = node.children.get(segments[index]);
+
+        if (literal != null) {
+            collect(literal, segments, index + 1, values);
+        }
+
+        final Node<T> one = node.children.get(ANY_SEGMENT);
+
+        if (one != null) {
+            collect(one, segments, index + 1, values);
+        }
+    }
+}
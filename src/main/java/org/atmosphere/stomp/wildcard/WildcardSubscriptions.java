@@ -0,0 +1,312 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.wildcard;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterListenerAdapter;
+import org.atmosphere.stomp.Subscriptions;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Keeps the subscriptions to destination patterns of all the clients. A wildcard subscriber is added to the
+ * {@link Broadcaster} of each existing destination matching the pattern. When a {@link Broadcaster} is created later,
+ * the subscribers whose pattern matches its ID are retrieved from a {@link DestinationTrie} and added to it. The
+ * {@link org.atmosphere.stomp.StompBroadcastFilter} then builds the frames with the concrete destination and the IDs
+ * that {@link Subscriptions#getSubscriptionsForDestination(String)} resolves for the subscriber.
+ * </p>
+ *
+ * <p>
+ * The existing destinations are indexed in another {@link DestinationTrie}, so a subscription only visits the
+ * destinations its pattern selects. The destinations joined by each subscriber are remembered: when the client
+ * reconnects, the new request is {@link #rejoin(AtmosphereResource) added} to them without matching any pattern.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class WildcardSubscriptions extends BroadcasterListenerAdapter {
+
+    /**
+     * The key used to store wildcard subscriptions in {@link AtmosphereConfig#properties()}.
+     */
+    private static final String ATTRIBUTE_KEY = WildcardSubscriptions.class.getName() + ".key";
+
+    /**
+     * The configuration.
+     */
+    private final AtmosphereConfig config;
+
+    /**
+     * The UUID of subscribers associated to their patterns.
+     */
+    private final DestinationTrie<String> trie;
+
+    /**
+     * The ID of the existing broadcasters associated to themselves.
+     */
+    private final DestinationTrie<String> destinations;
+
+    /**
+     * The destinations joined through a pattern associated to the UUID of the subscriber.
+     */
+    private final ConcurrentMap<String, Set<String>> joined;
+
+    /**
+     * <p>
+     * Gets a {@link WildcardSubscriptions} object from the given configuration. If no wildcard subscriptions are bound
+     * to the configuration, a new object is created, registered as a listener of the
+     * {@link org.atmosphere.cpr.BroadcasterFactory} and then returned.
+     * </p>
+     *
+     * @param config the configuration
+     * @return the wildcard subscriptions
+     */
+    public static WildcardSubscriptions getFromConfig(final AtmosphereConfig config) {
+        final Map<String, Object> properties = config.properties();
+
+        synchronized (properties) {
+            Object retval = properties.get(ATTRIBUTE_KEY);
+
+            if (retval == null) {
+                final WildcardSubscriptions subscriptions = new WildcardSubscriptions(config);
+                config.getBroadcasterFactory().addBroadcasterListener(subscriptions);
+
+                // Broadcasters created before the listener has been registered
+                for (final Broadcaster b : config.getBroadcasterFactory().lookupAll()) {
+                    subscriptions.index(b.getID());
+                }
+
+                retval = subscriptions;
+                properties.put(ATTRIBUTE_KEY, retval);
+            }
+
+            return WildcardSubscriptions.class.cast(retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param config the configuration
+     */
+    public WildcardSubscriptions(final AtmosphereConfig config) {
+        this.config = config;
+        this.trie = new DestinationTrie<String>();
+        this.destinations = new DestinationTrie<String>();
+        this.joined = new ConcurrentHashMap<String, Set<String>>();
+    }
+
+    /**
+     * <p>
+     * Subscribes the given resource to the given pattern. The subscription is discarded when the resource disconnects.
+     * </p>
+     *
+     * @param resource the subscriber
+     * @param pattern the pattern
+     * @throws IllegalArgumentException if pattern is not valid
+     */
+    public void subscribe(final AtmosphereResource resource, final String pattern) {
+        final String uuid = resource.uuid();
+        trie.add(pattern, uuid);
+
+        resource.addEventListener(new AtmosphereResourceEventListenerAdapter() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onDisconnect(final AtmosphereResourceEvent event) {
+                trie.remove(pattern, uuid);
+                joined.remove(uuid);
+            }
+        });
+
+        join(resource, pattern);
+    }
+
+    /**
+     * <p>
+     * Adds the given resource to all the existing {@link Broadcaster broadcasters} matching the given pattern.
+     * </p>
+     *
+     * @param resource the resource
+     * @param pattern the pattern
+     */
+    public void join(final AtmosphereResource resource, final String pattern) {
+        for (final String id : destinations.search(pattern)) {
+            final Broadcaster b = config.getBroadcasterFactory().lookup(id);
+
+            if (b == null) {
+                // Removed without being destroyed
+                destinations.remove(id, id);
+            } else {
+                b.addAtmosphereResource(resource);
+                joined(resource.uuid()).add(id);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Adds the given resource to all the {@link Broadcaster broadcasters} joined through a pattern by a previous
+     * request of the same client.
+     * </p>
+     *
+     * @param resource the resource of the new request
+     */
+    public void rejoin(final AtmosphereResource resource) {
+        final Set<String> ids = joined.get(resource.uuid());
+
+        if (ids == null) {
+            return;
+        }
+
+        for (final String id : ids) {
+            final Broadcaster b = config.getBroadcasterFactory().lookup(id);
+
+            if (b == null) {
+                ids.remove(id);
+            } else {
+                b.addAtmosphereResource(resource);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Unsubscribes the given resource from the given pattern. The resource is removed from the matching
+     * {@link Broadcaster broadcasters} unless it still has a subscription to their destination.
+     * </p>
+     *
+     * @param resource the subscriber
+     * @param pattern the pattern
+     * @param subscriptions the subscriptions of the resource, the unsubscribed one being already removed
+     */
+    public void unsubscribe(final AtmosphereResource resource, final String pattern, final Subscriptions subscriptions) {
+        if (!subscriptions.getAllDestinations().contains(pattern)) {
+            trie.remove(pattern, resource.uuid());
+        }
+
+        final Set<String> ids = joined.get(resource.uuid());
+
+        if (ids == null) {
+            return;
+        }
+
+        final String[] segments = DestinationTrie.segments(pattern);
+
+        for (final String id : ids) {
+            if (DestinationTrie.matches(segments, id) && subscriptions.getSubscriptionsForDestination(id).isEmpty()) {
+                ids.remove(id);
+                final Broadcaster b = config.getBroadcasterFactory().lookup(id);
+
+                if (b != null) {
+                    b.removeAtmosphereResource(resource);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if a pattern matching the given destination has been subscribed to.
+     * </p>
+     *
+     * @param destination the destination
+     * @return {@code true} if at least one resource subscribed to a matching pattern, {@code false} otherwise
+     */
+    public boolean hasSubscribers(final String destination) {
+        return !trie.match(destination).isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPostCreate(final Broadcaster b) {
+        index(b.getID());
+
+        for (final String uuid : trie.match(b.getID())) {
+            final AtmosphereResource resource = config.resourcesFactory().find(uuid);
+
+            if (resource != null) {
+                b.addAtmosphereResource(resource);
+                joined(uuid).add(b.getID());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPreDestroy(final Broadcaster b) {
+        destinations.remove(b.getID(), b.getID());
+    }
+
+    /**
+     * <p>
+     * Indexes the given destination so the patterns subscribed later can find it.
+     * </p>
+     *
+     * @param destination the destination
+     */
+    private void index(final String destination) {
+        try {
+            destinations.add(destination, destination);
+        } catch (IllegalArgumentException iae) {
+            // A destination looking like an invalid pattern can't be joined through a pattern anyway
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the destinations joined through a pattern by the given subscriber, creating the set the first time.
+     * </p>
+     *
+     * @param uuid the UUID of the subscriber
+     * @return the destinations
+     */
+    private Set<String> joined(final String uuid) {
+        Set<String> retval = joined.get(uuid);
+
+        if (retval == null) {
+            final Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            retval = joined.putIfAbsent(uuid, created);
+
+            if (retval == null) {
+                retval = created;
+            }
+        }
+
+        return retval;
+    }
+}
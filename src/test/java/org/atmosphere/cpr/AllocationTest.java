@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.StompBroadcastFilter;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.protocol.StompFormatImpl;
+import org.atmosphere.stomp.test.StompBusinessService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Properties;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Measures the bytes allocated by the current thread for each frame going through the main stages of the pipeline
+ * and fails if a number exceeds its budget in {@code allocation-budgets.properties}. When an optimization reduces the
+ * allocations, the budget should be lowered in the same change.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class AllocationTest extends StompTest {
+
+    /**
+     * The resource containing the budgets in bytes per frame.
+     */
+    private static final String BUDGETS = "/allocation-budgets.properties";
+
+    /**
+     * Number of frames processed before the measurement, so the code is compiled.
+     */
+    private static final int WARMUP = 20000;
+
+    /**
+     * Number of measured frames.
+     */
+    private static final int ITERATIONS = 5000;
+
+    /**
+     * The frame sent by the client.
+     */
+    private static final String SEND = "SEND\ndestination:" + StompBusinessService.DESTINATION_HELLO_WORLD2
+            + "\ncontent-type:text/plain\n\n{\"timestamp\":1400000000000, \"message\":\"hello\"}";
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * <p>
+     * A workload processing one frame.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private interface Workload {
+
+        /**
+         * <p>
+         * Prepares the next frame, the allocations of this method are not measured.
+         * </p>
+         *
+         * @throws Exception if preparation fails
+         */
+        void prepare() throws Exception;
+
+        /**
+         * <p>
+         * Processes the frame.
+         * </p>
+         *
+         * @return the result, kept to prevent dead code elimination
+         * @throws Exception if processing fails
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * <p>
+     * Base class of workloads that need no preparation.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private abstract static class SimpleWorkload implements Workload {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare() {
+        }
+    }
+
+    /**
+     * <p>
+     * Parsing a frame with {@link StompFormatImpl}.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void parseTest() throws Exception {
+        final StompFormat format = new StompFormatImpl();
+
+        check("format.parse", new SimpleWorkload() {
+            @Override
+            public Object run() throws Exception {
+                return format.parse(SEND);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Formatting a frame with {@link StompFormatImpl}.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void formatTest() throws Exception {
+        final StompFormat format = new StompFormatImpl();
+        final Frame frame = format.parse(SEND);
+
+        check("format.format", new SimpleWorkload() {
+            @Override
+            public Object run() {
+                return format.format(frame);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Inspecting a SEND frame with the {@link FrameInterceptor}, including the invocation of the service. The
+     * broadcast runs in other threads and is not measured.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void inspectTest() throws Exception {
+        FrameInterceptor interceptor = null;
+
+        for (final AtmosphereInterceptor i : framework.interceptors()) {
+            if (i instanceof FrameInterceptor) {
+                interceptor = FrameInterceptor.class.cast(i);
+            }
+        }
+
+        assertNotNull(interceptor);
+
+        final FrameInterceptor frameInterceptor = interceptor;
+        final AtmosphereResource ar = newClient();
+
+        check("interceptor.inspect", new Workload() {
+            @Override
+            public void prepare() throws Exception {
+                final AtmosphereRequest req = new AtmosphereRequestImpl.Builder().body(SEND + "\u0000").build();
+                ar.getRequest().body(req.body().asString());
+                ar.getRequest().body(req.getInputStream());
+            }
+
+            @Override
+            public Object run() {
+                return frameInterceptor.inspect(ar);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Filtering a broadcasted message for one subscriber with the {@link StompBroadcastFilter}.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void filterTest() throws Exception {
+        final String destination = StompBusinessService.DESTINATION_HELLO_WORLD2;
+        final StompBroadcastFilter filter = new StompBroadcastFilter();
+        filter.init(config);
+
+        final AtmosphereResource ar = newClient();
+        Subscriptions.getFromSession(config.sessionFactory().getSession(ar)).addSubscription("1", destination);
+
+        check("filter.filter", new SimpleWorkload() {
+            @Override
+            public Object run() {
+                return filter.filter(destination, ar, "hello", "hello");
+            }
+        });
+
+        filter.destroy();
+    }
+
+    /**
+     * <p>
+     * Builds the resource of a client whose writes are discarded.
+     * </p>
+     *
+     * @return the resource
+     */
+    private AtmosphereResource newClient() {
+        final AtmosphereRequest req = newRequest("/stomp", "", new HashMap<String, String>());
+        final AtmosphereResponse res = newResponse();
+        res.asyncIOWriter(new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                return this;
+            }
+        });
+
+        final AtmosphereResource ar = new AtmosphereResourceImpl();
+        ar.initialize(config, framework.getBroadcasterFactory().lookup(StompBusinessService.DESTINATION_HELLO_WORLD2, true),
+                req, res, framework.asyncSupport, mock(AtmosphereHandler.class));
+        ((AtmosphereResourceImpl) ar).transport(AtmosphereResource.TRANSPORT.WEBSOCKET);
+        req.setAttribute(FrameworkConfig.INJECTED_ATMOSPHERE_RESOURCE, ar);
+        framework.arFactory.resources().put(ar.uuid(), ar);
+        return ar;
+    }
+
+    /**
+     * <p>
+     * Measures the bytes allocated by the given workload for each frame and compares them to the budget.
+     * </p>
+     *
+     * @param name the budget name
+     * @param workload the workload
+     * @throws Exception if test fails
+     */
+    private void check(final String name, final Workload workload) throws Exception {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !com.sun.management.ThreadMXBean.class.cast(bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocated bytes can't be measured in this JVM");
+        }
+
+        final com.sun.management.ThreadMXBean threads = com.sun.management.ThreadMXBean.class.cast(bean);
+        final long thread = Thread.currentThread().getId();
+        int sink = 0;
+
+        for (int i = 0; i < WARMUP; i++) {
+            workload.prepare();
+            sink += System.identityHashCode(workload.run());
+        }
+
+        long allocated = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            workload.prepare();
+            final long before = threads.getThreadAllocatedBytes(thread);
+            final Object result = workload.run();
+            allocated += threads.getThreadAllocatedBytes(thread) - before;
+            sink += System.identityHashCode(result);
+        }
+
+        final long perFrame = allocated / ITERATIONS;
+        final long budget = budget(name);
+        logger.info("{}: {} bytes per frame, budget {} ({})", name, perFrame, budget, sink);
+        assertTrue(perFrame <= budget, name + " allocates " + perFrame + " bytes per frame, budget is " + budget);
+    }
+
+    /**
+     * <p>
+     * Reads the budget with the given name.
+     * </p>
+     *
+     * @param name the name
+     * @return the budget in bytes per frame
+     * @throws IOException if budgets can't be read
+     */
+    private long budget(final String name) throws IOException {
+        final Properties budgets = new Properties();
+        final InputStream is = getClass().getResourceAsStream(BUDGETS);
+        assertNotNull(is, BUDGETS + " not found");
+
+        try {
+            budgets.load(is);
+        } finally {
+            is.close();
+        }
+
+        final String retval = budgets.getProperty(name);
+        assertNotNull(retval, "No budget for " + name);
+        return Long.parseLong(retval.trim());
+    }
+}
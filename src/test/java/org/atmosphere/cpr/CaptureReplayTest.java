@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.capture.CaptureReader;
+import org.atmosphere.stomp.capture.CaptureWriter;
+import org.atmosphere.stomp.capture.CapturedFrame;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the capture of the inbound frames by the {@link FrameInterceptor} and their replay by the
+ * {@link StompLoadHarness}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class CaptureReplayTest extends StompTest {
+
+    /**
+     * The capture file.
+     */
+    private final File file;
+
+    /**
+     * <p>
+     * Builds a new instance with capture enabled.
+     * </p>
+     *
+     * @throws IOException if capture file can't be created
+     */
+    public CaptureReplayTest() throws IOException {
+        file = File.createTempFile("stomp", ".capture");
+        file.deleteOnExit();
+        initParameters.put(FrameInterceptor.Property.CAPTURE_FILE.toString(), file.getAbsolutePath());
+    }
+
+    /**
+     * <p>
+     * The frames of all the sessions are captured, then replayed in a new framework where they produce the same
+     * messages.
+     * </p>
+     *
+     * @throws Throwable if test fails
+     */
+    @Test
+    public void captureAndReplayTest() throws Throwable {
+        final StompLoadHarness.Report report = new StompLoadHarness(framework, processor).run(5, 2, 2, 10000L);
+        assertEquals(report.getDeliveries(), 50);
+        CaptureWriter.getFromConfig(config).close();
+
+        // 5 CONNECT, 5 SUBSCRIBE and 10 SEND
+        final Set<String> sessions = new HashSet<String>();
+        CaptureReader reader = new CaptureReader(new FileInputStream(file));
+        int frames = 0;
+
+        try {
+            for (CapturedFrame f = reader.next(); f != null; f = reader.next()) {
+                sessions.add(f.getSession());
+                assertTrue(f.getFrame().endsWith("\u0000"));
+                frames++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(frames, 20);
+        assertEquals(sessions.size(), 5);
+
+        // Replay in a new framework without capture
+        framework.destroy();
+        initParameters.clear();
+        create();
+
+        final CountDownLatch latch = new CountDownLatch(50);
+        final Pattern message = Pattern.compile("^MESSAGE$", Pattern.MULTILINE);
+        reader = new CaptureReader(new FileInputStream(file));
+
+        try {
+            assertEquals(new StompLoadHarness(framework, processor).replay(reader, 0, new AsyncIOWriterAdapter() {
+                @Override
+                public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                    final Matcher m = message.matcher(new String(data, CaptureWriter.CHARSET));
+
+                    while (m.find()) {
+                        latch.countDown();
+                    }
+
+                    return this;
+                }
+            }), 20);
+        } finally {
+            reader.close();
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "Missing messages: " + latch.getCount());
+    }
+
+    /**
+     * <p>
+     * The delays between the frames are divided by the replay speed.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void speedTest() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final CaptureWriter writer = new CaptureWriter(bos);
+        writer.record("first", "CONNECT\naccept-version:1.1\nhost:localhost\n\n\u0000");
+        Thread.sleep(400);
+        writer.record("second", "CONNECT\naccept-version:1.1\nhost:localhost\n\n\u0000");
+        writer.close();
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AsyncIOWriter discard = new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                return this;
+            }
+        };
+
+        long start = System.nanoTime();
+        assertEquals(harness.replay(new CaptureReader(new ByteArrayInputStream(bos.toByteArray())), 1, discard), 2);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(350));
+
+        start = System.nanoTime();
+        assertEquals(harness.replay(new CaptureReader(new ByteArrayInputStream(bos.toByteArray())), 0, discard), 2);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(350));
+    }
+}
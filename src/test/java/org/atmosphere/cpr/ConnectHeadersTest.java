@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Sends CONNECT frames with malformed {@code accept-version} and {@code heart-beat} headers. The client must receive
+ * an ERROR frame, or a CONNECTED frame when a supported version can still be negotiated.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class ConnectHeadersTest extends StompTest {
+
+    /**
+     * <p>
+     * Provides the headers of the CONNECT frame and the expected command of the answer.
+     * </p>
+     *
+     * @return the headers and the answer
+     */
+    @DataProvider
+    public Object[][] headers() {
+        final StringBuilder versions = new StringBuilder("1.1");
+
+        for (int i = 0; i < 1000; i++) {
+            versions.append(",9.9");
+        }
+
+        return new Object[][] {
+            { "accept-version:1.1\nheart-beat:0,0", "CONNECTED" },
+            { "accept-version:abc,1.1", "CONNECTED" },
+            { "accept-version:" + versions, "CONNECTED" },
+            { "accept-version:" + versions + versions + versions, "ERROR" },
+            { "accept-version:,,,,", "ERROR" },
+            { "accept-version:NaN", "ERROR" },
+            { "accept-version:1.1\nheart-beat:", "ERROR" },
+            { "accept-version:1.1\nheart-beat:1000", "ERROR" },
+            { "accept-version:1.1\nheart-beat:a,b", "ERROR" },
+            { "accept-version:1.1\nheart-beat:1,2,3", "ERROR" },
+            { "accept-version:1.1\nheart-beat:-1,0", "ERROR" },
+            { "accept-version:1.1\nheart-beat:99999999999,0", "ERROR" },
+            { "accept-version:1.1\nheart-beat:,,,,,,,,,,", "ERROR" },
+        };
+    }
+
+    /**
+     * <p>
+     * The malformed headers are answered with the expected frame.
+     * </p>
+     *
+     * @param headers the headers of the CONNECT frame
+     * @param expected the expected command
+     * @throws Exception if test fails
+     */
+    @Test(dataProvider = "headers")
+    public void malformedHeadersTest(final String headers, final String expected) throws Exception {
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AtmosphereResource ar = harness.newClient("connect", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                written.add(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(ar, "CONNECT\n" + headers + "\nhost:localhost\n\n");
+
+        assertEquals(written.size(), 1, written.toString());
+        assertTrue(written.get(0).startsWith(expected + "\n"), written.get(0));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.listener.FrameEvent;
+import org.atmosphere.stomp.listener.FrameListener;
+import org.atmosphere.stomp.listener.FrameListeners;
+import org.atmosphere.stomp.protocol.Header;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the notification of the {@link FrameListeners}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class FrameListenerTest extends StompTest {
+
+    /**
+     * The events counted by the {@link CountingListener}.
+     */
+    private static final Map<FrameEvent.Type, AtomicInteger> COUNTS = new ConcurrentHashMap<FrameEvent.Type, AtomicInteger>();
+
+    /**
+     * <p>
+     * A listener declared in the init-params that counts the events.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public static class CountingListener implements FrameListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFrameEvent(final FrameEvent event) {
+            final AtomicInteger count = COUNTS.get(event.getType());
+
+            if (count != null) {
+                count.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance that declares the {@link CountingListener}.
+     * </p>
+     */
+    public FrameListenerTest() {
+        initParameters.put(FrameInterceptor.Property.FRAME_LISTENERS.toString(), CountingListener.class.getName());
+    }
+
+    /**
+     * <p>
+     * Each step of the lifecycle is notified.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void lifecycleTest() throws Exception {
+        for (final FrameEvent.Type t : FrameEvent.Type.values()) {
+            COUNTS.put(t, new AtomicInteger());
+        }
+
+        assertEquals(new StompLoadHarness(framework, processor).run(5, 2, 2, 10000L).getDeliveries(), 50);
+
+        // 5 CONNECT, 5 SUBSCRIBE and 10 SEND, each SEND delivered to the 5 subscribers
+        assertEquals(COUNTS.get(FrameEvent.Type.RECEIVED).get(), 20);
+        assertEquals(COUNTS.get(FrameEvent.Type.PARSED).get(), 20);
+        assertEquals(COUNTS.get(FrameEvent.Type.DISPATCHED).get(), 20);
+        assertEquals(COUNTS.get(FrameEvent.Type.HANDLER_COMPLETED).get(), 10);
+        assertEquals(COUNTS.get(FrameEvent.Type.MESSAGE_ENCODED).get(), 50);
+        // 5 CONNECTED and the 50 deliveries
+        assertEquals(COUNTS.get(FrameEvent.Type.WRITTEN).get(), 55);
+        assertEquals(COUNTS.get(FrameEvent.Type.RECEIPTED).get(), 0);
+    }
+
+    /**
+     * <p>
+     * The event describes the receipted frame and is cleared once notified. A failing listener does not prevent the
+     * frame to be processed.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void receiptTest() throws Exception {
+        final FrameListeners listeners = FrameListeners.getFromConfig(config);
+        final AtomicReference<FrameEvent> receipted = new AtomicReference<FrameEvent>();
+        final AtomicReference<String> receipt = new AtomicReference<String>();
+        final FrameListener failing = new FrameListener() {
+            @Override
+            public void onFrameEvent(final FrameEvent event) {
+                throw new IllegalStateException();
+            }
+        };
+        final FrameListener listener = new FrameListener() {
+            @Override
+            public void onFrameEvent(final FrameEvent event) {
+                if (event.getType() == FrameEvent.Type.RECEIPTED) {
+                    receipted.set(event);
+                    receipt.set(event.getDestination() + " " + event.getFrame().getHeaders().get(Header.RECEIPT_ID));
+                }
+            }
+        };
+
+        listeners.add(failing);
+        listeners.add(listener);
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AtomicReference<String> written = new AtomicReference<String>();
+        final AtmosphereResource ar = harness.newClient("receipt", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                written.set(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(ar, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\n" + Header.RECEIPT_ID + ":42\n\n{}");
+
+        assertEquals(receipt.get(), StompLoadHarness.DESTINATION + " 42");
+        assertTrue(written.get().startsWith("RECEIPT"), written.get());
+        assertNull(receipted.get().getFrame());
+        assertNull(receipted.get().getResource());
+
+        assertTrue(listeners.remove(failing));
+        assertTrue(listeners.remove(listener));
+        assertFalse(listeners.remove(listener));
+    }
+}
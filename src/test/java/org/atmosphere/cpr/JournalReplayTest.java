@@ -0,0 +1,244 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.journal.Journals;
+import org.atmosphere.stomp.protocol.Header;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the replay of the history of a durable destination.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class JournalReplayTest extends StompTest {
+
+    /**
+     * The journal directory.
+     */
+    private final File directory;
+
+    /**
+     * <p>
+     * Builds a new instance that stores the journals in a temporary directory.
+     * </p>
+     *
+     * @throws IOException if directory can't be created
+     */
+    public JournalReplayTest() throws IOException {
+        directory = File.createTempFile("journal", "replay");
+        assertTrue(directory.delete());
+        initParameters.put(FrameInterceptor.Property.JOURNAL_DIRECTORY.toString(), directory.getPath());
+    }
+
+    /**
+     * <p>
+     * Deletes the journals.
+     * </p>
+     */
+    @AfterMethod
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    /**
+     * <p>
+     * Deletes the given file recursively.
+     * </p>
+     *
+     * @param file the file
+     */
+    private void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * <p>
+     * The history is replayed with the forwarded headers, then live messages are delivered once.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void replayTest() throws Exception {
+        Journals.getFromConfig(config).open(StompLoadHarness.DESTINATION);
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final StringBuffer received = new StringBuffer();
+        final AtmosphereResource publisher = harness.newClient("publisher", new AsyncIOWriterAdapter());
+        final AtmosphereResource subscriber = harness.newClient("subscriber", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                received.append(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(publisher, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(publisher, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\n\n");
+        harness.send(publisher, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\nx-trace:history\n\n"
+                + "{\"timestamp\":1, \"message\":\"history\"}");
+
+        harness.send(subscriber, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(subscriber, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\n"
+                + Header.REPLAY_SINCE + ":0\n\n");
+        harness.send(publisher, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\nx-trace:live\n\n"
+                + "{\"timestamp\":2, \"message\":\"live\"}");
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+
+        while (count(received.toString(), "MESSAGE") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        Thread.sleep(100L);
+        final String frames = received.toString();
+
+        assertEquals(count(frames, "MESSAGE"), 2, frames);
+        assertTrue(frames.indexOf("x-trace:history") != -1, frames);
+        assertTrue(frames.indexOf("x-trace:history") < frames.indexOf("x-trace:live"), frames);
+    }
+
+    /**
+     * <p>
+     * The history rejected by the selector of the subscription is not replayed.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void selectorReplayTest() throws Exception {
+        Journals.getFromConfig(config).open(StompLoadHarness.DESTINATION);
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final StringBuffer received = new StringBuffer();
+        final AtmosphereResource publisher = harness.newClient("publisher", new AsyncIOWriterAdapter());
+        final AtmosphereResource subscriber = harness.newClient("subscriber", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                received.append(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(publisher, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(publisher, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\n\n");
+
+        for (final String symbol : new String[] { "EUR", "USD", "EUR" }) {
+            harness.send(publisher, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\nsymbol:" + symbol + "\n\n"
+                    + "{\"timestamp\":1, \"message\":\"" + symbol + "\"}");
+        }
+
+        harness.send(subscriber, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(subscriber, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\n"
+                + Header.SELECTOR + ":symbol = 'USD'\n" + Header.REPLAY_SINCE + ":0\n\n");
+
+        Thread.sleep(100L);
+        final String frames = received.toString();
+
+        assertEquals(count(frames, "MESSAGE"), 1, frames);
+        assertEquals(count(frames, "symbol:EUR"), 0, frames);
+        assertEquals(count(frames, "symbol:USD"), 1, frames);
+    }
+
+    /**
+     * <p>
+     * The replayed messages must be acknowledged like live messages when the subscription requires it.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void ackReplayTest() throws Exception {
+        Journals.getFromConfig(config).open(StompLoadHarness.DESTINATION);
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final StringBuffer received = new StringBuffer();
+        final AtmosphereResource publisher = harness.newClient("publisher", new AsyncIOWriterAdapter());
+        final AtmosphereResource subscriber = harness.newClient("subscriber", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                received.append(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(publisher, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(publisher, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\n\n");
+        harness.send(publisher, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\n\n"
+                + "{\"timestamp\":1, \"message\":\"history\"}");
+
+        harness.send(subscriber, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(subscriber, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\nack:"
+                + Subscriptions.ACK_CLIENT_INDIVIDUAL + "\n" + Header.REPLAY_SINCE + ":0\n\n");
+
+        Thread.sleep(100L);
+        final String frames = received.toString();
+        final Matcher m = Pattern.compile("\n" + Header.ACK + ":([^\n]+)\n").matcher(frames);
+        assertTrue(m.find(), frames);
+
+        final Subscriptions subscriptions = Subscriptions.getFromSession(config.sessionFactory().getSession(subscriber));
+        assertEquals(subscriptions.getPendingAcks(StompLoadHarness.DESTINATION), 1);
+
+        harness.send(subscriber, "ACK\nsubscription:1\n" + Header.MESSAGE_ID + ":" + m.group(1) + "\n\n");
+        assertEquals(subscriptions.getPendingAcks(StompLoadHarness.DESTINATION), 0);
+    }
+
+    /**
+     * <p>
+     * Counts the occurrences of the given string.
+     * </p>
+     *
+     * @param s the string
+     * @param search the searched string
+     * @return the number of occurrences
+     */
+    private int count(final String s, final String search) {
+        int retval = 0;
+
+        for (int i = s.indexOf(search); i != -1; i = s.indexOf(search, i + 1)) {
+            retval++;
+        }
+
+        return retval;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Runs the {@link StompLoadHarness} as a regression gate for the whole pipeline. The load is small by default so the
+ * test stays fast, it can be increased with the {@code stomp.load.clients}, {@code stomp.load.messages} and
+ * {@code stomp.load.threads} system properties. The run fails if a message is lost or if the 99th percentile exceeds
+ * {@code stomp.load.maxP99Millis}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class LoadTest extends StompTest {
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * <p>
+     * All the subscribers receive all the messages with a bounded latency.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void sendToMessageTest() throws Exception {
+        final int clients = Integer.getInteger("stomp.load.clients", 50);
+        final int messages = Integer.getInteger("stomp.load.messages", 4);
+        final int threads = Integer.getInteger("stomp.load.threads", 4);
+        final long maxP99 = Long.getLong("stomp.load.maxP99Millis", 5000L);
+
+        final StompLoadHarness.Report report = new StompLoadHarness(framework, processor).run(clients, messages, threads, 60000L);
+        logger.info("{} clients sending {} messages: {}", clients, messages, report);
+
+        assertEquals(report.getDeliveries(), report.getExpected(), report.toString());
+        assertTrue(report.getPercentile(0.99) <= TimeUnit.MILLISECONDS.toNanos(maxP99), report.toString());
+    }
+}
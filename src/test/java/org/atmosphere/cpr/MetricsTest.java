@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.metrics.DestinationMetrics;
+import org.atmosphere.stomp.metrics.HistogramSnapshot;
+import org.atmosphere.stomp.metrics.Metrics;
+import org.atmosphere.stomp.metrics.Stage;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the {@link Metrics} and the {@link Stage} histograms recorded by the pipeline.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class MetricsTest extends StompTest {
+
+    /**
+     * <p>
+     * The frames sent to a destination and the messages delivered to its subscribers are counted, then exposed as an
+     * MBean until the framework is destroyed.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void destinationMetricsTest() throws Exception {
+        final StompLoadHarness.Report report = new StompLoadHarness(framework, processor).run(5, 2, 2, 10000L);
+        assertEquals(report.getDeliveries(), 50);
+
+        final Metrics metrics = Metrics.getFromConfig(config);
+        final DestinationMetrics m = metrics.get(StompLoadHarness.DESTINATION);
+        assertEquals(m.getSendFramesIn(), 10);
+        assertTrue(m.getBytesIn() > 0);
+        assertEquals(m.getHandlerInvocations(), 10);
+        assertTrue(m.getHandlerMaxNanos() >= m.getHandlerAverageNanos());
+        assertEquals(m.getMessageFramesOut(), 50);
+        assertEquals(m.getFanOuts(), 50);
+        assertTrue(m.getBytesOut() > m.getBytesIn());
+        assertEquals(m.getSubscribers(), 5);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = metrics.getObjectName(StompLoadHarness.DESTINATION);
+        assertEquals(server.getAttribute(name, "SendFramesIn"), 10L);
+        assertEquals(server.getAttribute(name, "MessageFramesOut"), 50L);
+
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(m.getSendFramesIn(), 0);
+        assertEquals(m.getHandlerMaxNanos(), 0);
+
+        framework.destroy();
+        assertFalse(server.isRegistered(name));
+    }
+
+    /**
+     * <p>
+     * The metrics of a destination are removed and unregistered when its broadcaster is destroyed, except for the
+     * destinations declared by a service.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void destroyedBroadcasterTest() throws Exception {
+        final Metrics metrics = Metrics.getFromConfig(config);
+        final Broadcaster b = framework.getBroadcasterFactory().get("/metrics/destroyed");
+        metrics.get(b.getID()).received(1);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = metrics.getObjectName(b.getID());
+        assertTrue(server.isRegistered(name));
+
+        b.destroy();
+        assertFalse(metrics.getDestinations().containsKey(b.getID()));
+        assertFalse(server.isRegistered(name));
+
+        // Declared by the service, so kept
+        metrics.get(StompLoadHarness.DESTINATION).received(1);
+        framework.getBroadcasterFactory().lookup(StompLoadHarness.DESTINATION).destroy();
+        assertEquals(metrics.get(StompLoadHarness.DESTINATION).getSendFramesIn(), 1);
+        assertTrue(server.isRegistered(metrics.getObjectName(StompLoadHarness.DESTINATION)));
+    }
+
+    /**
+     * <p>
+     * Each stage of the pipeline is recorded when the histograms are enabled.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void stageHistogramsTest() throws Exception {
+        final boolean enabled = Stage.isEnabled();
+        Stage.setEnabled(true);
+
+        try {
+            Stage.snapshots(true);
+            assertEquals(new StompLoadHarness(framework, processor).run(5, 2, 2, 10000L).getDeliveries(), 50);
+            final Map<Stage, HistogramSnapshot> snapshots = Stage.snapshots(true);
+
+            // 5 CONNECT, 5 SUBSCRIBE and 10 SEND
+            assertEquals(snapshots.get(Stage.READ).getCount(), 20);
+            assertEquals(snapshots.get(Stage.PARSE).getCount(), 20);
+            assertEquals(snapshots.get(Stage.DISPATCH).getCount(), 20);
+            assertEquals(snapshots.get(Stage.HANDLER).getCount(), 10);
+            assertTrue(snapshots.get(Stage.ENCODE).getCount() >= 5);
+            assertTrue(snapshots.get(Stage.WRITE).getCount() >= 5);
+
+            for (final HistogramSnapshot s : snapshots.values()) {
+                assertTrue(s.getValueAtPercentile(99) <= s.getMaxNanos());
+            }
+        } finally {
+            Stage.setEnabled(enabled);
+        }
+    }
+}
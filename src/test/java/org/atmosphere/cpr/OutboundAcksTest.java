@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.outbound.OutboundQueue;
+import org.atmosphere.stomp.outbound.OverflowPolicy;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * <p>
+ * Tests that the messages dropped by a bounded {@link OutboundQueue} are not awaited as pending acknowledgments.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class OutboundAcksTest extends StompTest {
+
+    /**
+     * <p>
+     * Builds a new instance that keeps only the last frame of a subscriber during a long coalescing window and
+     * accepts two pending messages per subscription.
+     * </p>
+     */
+    public OutboundAcksTest() {
+        initParameters.put(FrameInterceptor.Property.OUTBOUND_MAX_FRAMES.toString(), "1");
+        initParameters.put(FrameInterceptor.Property.OUTBOUND_OVERFLOW_POLICY.toString(), OverflowPolicy.DROP_OLDEST.name());
+        initParameters.put(FrameInterceptor.Property.OUTBOUND_COALESCING_WINDOW.toString(), "60000");
+        initParameters.put(FrameInterceptor.Property.OUTBOUND_COALESCING_ADAPTIVE.toString(), "false");
+        initParameters.put(FrameInterceptor.Property.MAX_PENDING_ACKS.toString(), "2");
+    }
+
+    /**
+     * <p>
+     * The client can't acknowledge the dropped messages, so only the message still queued is pending and the
+     * subscription never saturates.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void droppedAcksTest() throws Exception {
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AtmosphereResource ar = harness.newClient("consumer", new AsyncIOWriterAdapter());
+
+        harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(ar, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\nack:"
+                + Subscriptions.ACK_CLIENT_INDIVIDUAL + "\n\n");
+
+        for (int i = 0; i < 5; i++) {
+            harness.send(ar, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\n\n"
+                    + String.format("{\"timestamp\":%d, \"message\":\"%d\"}", System.currentTimeMillis(), i));
+        }
+
+        final AtmosphereResourceSession session = config.sessionFactory().getSession(ar);
+        final OutboundQueue queue = OutboundQueue.getFromSession(session);
+        final long deadline = System.currentTimeMillis() + 2000L;
+
+        while (queue.getDropped() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+
+        assertEquals(queue.getDropped(), 4);
+        assertEquals(queue.size(), 1);
+        assertEquals(Subscriptions.getFromSession(session).getPendingAcks(StompLoadHarness.DESTINATION), 1);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.listener.FrameEvent;
+import org.atmosphere.stomp.listener.FrameListener;
+import org.atmosphere.stomp.listener.FrameListeners;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * <p>
+ * Tests the {@link FrameEvent.Type#WRITTEN} events of the frames delivered to subscribers through their
+ * {@link org.atmosphere.stomp.outbound.OutboundQueue}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class OutboundWrittenTest extends StompTest {
+
+    /**
+     * <p>
+     * Builds a new instance that bounds the outbound queues.
+     * </p>
+     */
+    public OutboundWrittenTest() {
+        initParameters.put(FrameInterceptor.Property.OUTBOUND_MAX_FRAMES.toString(), "10");
+    }
+
+    /**
+     * <p>
+     * Each message polled from the outbound queue of a subscriber is notified as written.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void queuedWrittenTest() throws Exception {
+        final AtomicInteger written = new AtomicInteger();
+        FrameListeners.getFromConfig(config).add(new FrameListener() {
+            @Override
+            public void onFrameEvent(final FrameEvent event) {
+                if (event.getType() == FrameEvent.Type.WRITTEN && event.getFrame() == null) {
+                    written.addAndGet(event.getData().split("MESSAGE\n", -1).length - 1);
+                }
+            }
+        });
+
+        assertEquals(new StompLoadHarness(framework, processor).run(5, 2, 2, 10000L).getDeliveries(), 50);
+        assertEquals(written.get(), 50);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.broadcast.PartitionStats;
+import org.atmosphere.stomp.broadcast.PartitionedBroadcaster;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the {@link PartitionedBroadcaster}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class PartitionedBroadcasterTest extends StompTest {
+
+    /**
+     * The destination.
+     */
+    private static final String DESTINATION = "/partitioned";
+
+    /**
+     * Number of subscribers.
+     */
+    private static final int SUBSCRIBERS = 20;
+
+    /**
+     * Number of broadcasted messages.
+     */
+    private static final int MESSAGES = 50;
+
+    /**
+     * <p>
+     * All the subscribers receive all the messages in the broadcast order and the timings of each partition are
+     * recorded.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void orderedFanOutTest() throws Exception {
+        framework.addInitParameter(FrameInterceptor.Property.FANOUT_PARTITIONS.toString(), "4");
+        final PartitionedBroadcaster b = framework.getBroadcasterFactory().lookup(PartitionedBroadcaster.class, DESTINATION, true);
+        final CountDownLatch latch = new CountDownLatch(SUBSCRIBERS * MESSAGES);
+        final List<List<String>> received = new ArrayList<List<String>>();
+        final Pattern body = Pattern.compile("\n\n(m\\d+)");
+
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            final AtmosphereRequest req = newRequest(DESTINATION, "", new HashMap<String, String>());
+            req.setAttribute(ApplicationConfig.SUSPENDED_ATMOSPHERE_RESOURCE_UUID, "subscriber-" + i);
+
+            final AtmosphereHandler ah = mock(AtmosphereHandler.class);
+            final AtmosphereResource ar = new AtmosphereResourceImpl();
+            ar.initialize(config, b, req, newResponse(), framework.asyncSupport, ah);
+            ((AtmosphereResourceImpl) ar).transport(AtmosphereResource.TRANSPORT.WEBSOCKET);
+
+            final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+            received.add(messages);
+
+            doAnswer(new Answer() {
+                @Override
+                public Object answer(final InvocationOnMock invocationOnMock) throws Throwable {
+                    final Matcher m = body.matcher(String.valueOf(((AtmosphereResourceEvent) invocationOnMock.getArguments()[0]).getMessage()));
+
+                    while (m.find()) {
+                        messages.add(m.group(1));
+                        latch.countDown();
+                    }
+
+                    return null;
+                }
+            }).when(ah).onStateChange(any(AtmosphereResourceEvent.class));
+
+            Subscriptions.getFromSession(config.sessionFactory().getSession(ar)).addSubscription("1", DESTINATION);
+            b.addAtmosphereResource(ar);
+        }
+
+        for (int i = 0; i < MESSAGES; i++) {
+            b.broadcast("m" + i);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "Missing messages: " + latch.getCount());
+
+        for (final List<String> messages : received) {
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(messages.get(i), "m" + i);
+            }
+        }
+
+        final List<PartitionStats> stats = b.getPartitionStats();
+        long subscribers = 0;
+        int used = 0;
+
+        for (final PartitionStats s : stats) {
+            subscribers += s.getSubscribers();
+            used += s.getDeliveries() > 0 ? 1 : 0;
+        }
+
+        assertEquals(stats.size(), 4);
+        assertEquals(subscribers, SUBSCRIBERS * MESSAGES);
+        assertTrue(used > 1);
+    }
+}
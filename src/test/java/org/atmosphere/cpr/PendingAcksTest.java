@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.protocol.Header;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * <p>
+ * Tests the {@link FrameInterceptor.Property#MAX_PENDING_ACKS limit} of messages waiting for an acknowledgment.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class PendingAcksTest extends StompTest {
+
+    /**
+     * Extracts the ID of the messages to acknowledge.
+     */
+    private static final Pattern ACK = Pattern.compile("\n" + Header.ACK + ":([^\n]+)\n");
+
+    /**
+     * <p>
+     * Builds a new instance that accepts two pending messages per subscription.
+     * </p>
+     */
+    public PendingAcksTest() {
+        initParameters.put(FrameInterceptor.Property.MAX_PENDING_ACKS.toString(), "2");
+    }
+
+    /**
+     * <p>
+     * No message is delivered to a saturated subscription until a message is acknowledged.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void maxPendingAcksTest() throws Exception {
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final StringBuffer received = new StringBuffer();
+        final AtmosphereResource ar = harness.newClient("consumer", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                received.append(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(ar, "SUBSCRIBE\nid:1\ndestination:" + StompLoadHarness.DESTINATION + "\nack:"
+                + Subscriptions.ACK_CLIENT_INDIVIDUAL + "\n\n");
+
+        for (int i = 0; i < 4; i++) {
+            send(harness, ar, i);
+        }
+
+        assertEquals(awaitAcks(received, 2).length, 2, received.toString());
+
+        harness.send(ar, "ACK\nsubscription:1\n" + Header.MESSAGE_ID + ":" + awaitAcks(received, 2)[0] + "\n\n");
+        send(harness, ar, 4);
+        send(harness, ar, 5);
+
+        final String[] acks = awaitAcks(received, 3);
+        assertEquals(acks.length, 3, received.toString());
+        assertEquals(received.toString().indexOf("\"message\":\"3\""), -1, received.toString());
+    }
+
+    /**
+     * <p>
+     * Sends a message to the destination.
+     * </p>
+     *
+     * @param harness the harness
+     * @param ar the client
+     * @param index the message index
+     * @throws Exception if message can't be sent
+     */
+    private void send(final StompLoadHarness harness, final AtmosphereResource ar, final int index) throws Exception {
+        harness.send(ar, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\n\n"
+                + String.format("{\"timestamp\":%d, \"message\":\"%d\"}", System.currentTimeMillis(), index));
+    }
+
+    /**
+     * <p>
+     * Waits a short time for the frames to be delivered and gets the IDs of the messages to acknowledge.
+     * </p>
+     *
+     * @param received the received frames
+     * @param expected the number of expected messages
+     * @return the message IDs
+     * @throws InterruptedException if thread is interrupted
+     */
+    private String[] awaitAcks(final StringBuffer received, final int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 2000L;
+        String[] retval;
+
+        do {
+            Thread.sleep(50L);
+            final StringBuilder sb = new StringBuilder();
+            final Matcher m = ACK.matcher(received.toString());
+
+            while (m.find()) {
+                sb.append(sb.length() == 0 ? "" : " ").append(m.group(1));
+            }
+
+            retval = sb.length() == 0 ? new String[0] : sb.toString().split(" ");
+        } while (retval.length < expected && System.currentTimeMillis() < deadline);
+
+        return retval;
+    }
+}
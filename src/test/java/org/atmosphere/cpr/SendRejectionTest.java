@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.executor.ShardedExecutor;
+import org.atmosphere.stomp.interceptor.FrameInterceptor;
+import org.atmosphere.stomp.interceptor.SendInterceptor;
+import org.atmosphere.stomp.protocol.Header;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * <p>
+ * Tests the rejection of the frames when the {@link ShardedExecutor} processing the
+ * {@link org.atmosphere.stomp.protocol.Action#SEND} frames is saturated.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class SendRejectionTest extends StompTest {
+
+    /**
+     * <p>
+     * Builds a new instance with a single shard that accepts only one waiting frame.
+     * </p>
+     */
+    public SendRejectionTest() {
+        initParameters.put(FrameInterceptor.Property.SEND_EXECUTOR.toString(), "true");
+        initParameters.put(FrameInterceptor.Property.SEND_SHARDS.toString(), "1");
+        initParameters.put(FrameInterceptor.Property.SEND_QUEUE_CAPACITY.toString(), "1");
+    }
+
+    /**
+     * <p>
+     * A rejected frame is answered with an {@link org.atmosphere.stomp.protocol.Action#ERROR} and no receipt.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void rejectionTest() throws Exception {
+        final ShardedExecutor executor = ShardedExecutor.getSendExecutor(config);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // One task is running and one is waiting, the shard is full
+        executor.execute(StompLoadHarness.DESTINATION, blocking);
+        executor.execute(StompLoadHarness.DESTINATION, blocking);
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final StringBuffer written = new StringBuffer();
+        final AtmosphereResource ar = harness.newClient("rejected", new AsyncIOWriterAdapter() {
+            @Override
+            public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                written.append(new String(data, "UTF-8"));
+                return this;
+            }
+        });
+
+        try {
+            harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+            harness.send(ar, "SEND\ndestination:" + StompLoadHarness.DESTINATION + "\n" + Header.RECEIPT_ID + ":42\n\n{}");
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(written.indexOf("ERROR\n") != -1, written.toString());
+        assertTrue(written.indexOf("Server busy") != -1, written.toString());
+        assertFalse(written.indexOf("RECEIPT") != -1, written.toString());
+    }
+
+    /**
+     * <p>
+     * The sharded executor and the virtual threads can't be both enabled.
+     * </p>
+     */
+    @Test
+    public void conflictingExecutorsTest() {
+        final AtmosphereConfig conflicting = mock(AtmosphereConfig.class);
+        when(conflicting.getInitParameter(FrameInterceptor.Property.SEND_EXECUTOR.toString(), "false")).thenReturn("true");
+        when(conflicting.getInitParameter(FrameInterceptor.Property.SEND_VIRTUAL_THREADS.toString(), "false")).thenReturn("true");
+
+        try {
+            new SendInterceptor().configure(conflicting);
+            fail("Conflicting executors should be rejected");
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains(FrameInterceptor.Property.SEND_VIRTUAL_THREADS.toString()));
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package org.atmosphere.cpr;
 
 import org.atmosphere.stomp.protocol.Action;
+import org.atmosphere.stomp.relay.Relays;
+import org.atmosphere.stomp.wildcard.WildcardSubscriptions;
 import org.atmosphere.stomp.test.StompBusinessService;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -158,4 +160,75 @@ public class StompInterceptorTest extends StompTest {
         receipt = false;
         runMessage("null", destination,  newRequest(destination), response, false, true);
     }
+
+    /**
+     * <p>
+     * Tests that a frame sent to a relay destination is forwarded as is without any handler.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void relayTest() throws Exception {
+        final String destination = "/relay/news";
+        Relays.getFromConfig(config).add("/relay/*");
+        framework.getBroadcasterFactory().lookup(destination, true);
+        action = Action.SEND;
+        runMessage("(.*)?MESSAGE.*destination:" + destination + ".*\\{\"timestamp\":(\\d)*,\\s\"message\":\"hello\".*",
+                destination, newRequest("/stomp", toRead(destination), new HashMap<String, String>()), newResponse(), true);
+    }
+
+    /**
+     * <p>
+     * Tests that a frame sent to a relay destination nobody subscribed to is dropped without creating a broadcaster.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void relayWithoutSubscriberTest() throws Exception {
+        final String destination = "/relay/nobody";
+        Relays.getFromConfig(config).add("/relay/*");
+
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AtmosphereResource ar = harness.newClient("relay", new AsyncIOWriterAdapter());
+        harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(ar, "SEND\ndestination:" + destination + "\n\nhello");
+
+        Assert.assertNull(framework.getBroadcasterFactory().lookup(destination));
+    }
+
+    /**
+     * <p>
+     * Tests that a wildcard subscriber joins the existing and the new matching broadcasters, and that a new request of
+     * the client is added to the joined broadcasters without matching the pattern again.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void wildcardSubscriptionTest() throws Exception {
+        final Broadcaster existing = framework.getBroadcasterFactory().lookup("/wildcard/existing", true);
+        final StompLoadHarness harness = new StompLoadHarness(framework, processor);
+        final AtmosphereResource ar = harness.newClient("wildcard", new AsyncIOWriterAdapter());
+        harness.send(ar, "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+        harness.send(ar, "SUBSCRIBE\nid:1\ndestination:/wildcard/*\n\n");
+
+        final Broadcaster created = framework.getBroadcasterFactory().lookup("/wildcard/created", true);
+        final Broadcaster other = framework.getBroadcasterFactory().lookup("/other/created", true);
+        Assert.assertTrue(existing.getAtmosphereResources().contains(ar));
+        Assert.assertTrue(created.getAtmosphereResources().contains(ar));
+        Assert.assertFalse(other.getAtmosphereResources().contains(ar));
+
+        // The client reconnects
+        existing.removeAtmosphereResource(ar);
+        created.removeAtmosphereResource(ar);
+        WildcardSubscriptions.getFromConfig(config).rejoin(ar);
+        Assert.assertTrue(existing.getAtmosphereResources().contains(ar));
+        Assert.assertTrue(created.getAtmosphereResources().contains(ar));
+
+        harness.send(ar, "UNSUBSCRIBE\nid:1\ndestination:/wildcard/*\n\n");
+        Assert.assertFalse(existing.getAtmosphereResources().contains(ar));
+        Assert.assertFalse(created.getAtmosphereResources().contains(ar));
+    }
 }
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.capture.CaptureReader;
+import org.atmosphere.stomp.capture.CapturedFrame;
+import org.atmosphere.stomp.test.StompBusinessService;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Simulates STOMP clients in the same JVM, without network. Each client has its own {@link AtmosphereResource}, then
+ * sends CONNECT and SUBSCRIBE frames through the {@link org.atmosphere.stomp.interceptor.FrameInterceptor}. The
+ * clients then send SEND frames that the {@link StompBusinessService} echoes to all the subscribers.
+ * </p>
+ *
+ * <p>
+ * The latency of each MESSAGE frame is measured from the moment its SEND frame is submitted to the moment the
+ * response of the subscriber writes it. The {@link Report} gives the percentiles and the throughput.
+ * </p>
+ *
+ * <p>
+ * The harness can also {@link #replay(CaptureReader, double, AsyncIOWriter) replay} the traffic recorded by a
+ * {@link org.atmosphere.stomp.capture.CaptureWriter}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StompLoadHarness {
+
+    /**
+     * The destination the clients subscribe and send to.
+     */
+    static final String DESTINATION = StompBusinessService.DESTINATION_HELLO_WORLD3;
+
+    /**
+     * Extracts the index of the sent message from the body echoed to the subscribers.
+     */
+    private static final Pattern MESSAGE_INDEX = Pattern.compile("\"message\":\"(\\d+)\"");
+
+    /**
+     * The handler of the clients, the frames are received by their {@link AsyncIOWriter}.
+     */
+    private static final AtmosphereHandler HANDLER = new AtmosphereHandler() {
+        @Override
+        public void onRequest(final AtmosphereResource resource) throws IOException {
+        }
+
+        @Override
+        public void onStateChange(final AtmosphereResourceEvent event) throws IOException {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    };
+
+    /**
+     * The framework.
+     */
+    private final AtmosphereFramework framework;
+
+    /**
+     * The processor the frames go through.
+     */
+    private final AsynchronousProcessor processor;
+
+    /**
+     * <p>
+     * A summary of a run.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    public static final class Report {
+
+        /**
+         * The sorted latencies in nanoseconds.
+         */
+        private final long[] latencies;
+
+        /**
+         * The number of expected deliveries.
+         */
+        private final long expected;
+
+        /**
+         * The duration of the run in nanoseconds.
+         */
+        private final long elapsedNanos;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param latencies the latencies in nanoseconds, sorted by this constructor
+         * @param expected the number of expected deliveries
+         * @param elapsedNanos the duration of the run
+         */
+        Report(final long[] latencies, final long expected, final long elapsedNanos) {
+            Arrays.sort(latencies);
+            this.latencies = latencies;
+            this.expected = expected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * <p>
+         * Gets the number of messages received by the subscribers.
+         * </p>
+         *
+         * @return the deliveries
+         */
+        public long getDeliveries() {
+            return latencies.length;
+        }
+
+        /**
+         * <p>
+         * Gets the number of messages the subscribers should have received.
+         * </p>
+         *
+         * @return the expected deliveries
+         */
+        public long getExpected() {
+            return expected;
+        }
+
+        /**
+         * <p>
+         * Gets the latency under which the given fraction of the deliveries has been received.
+         * </p>
+         *
+         * @param fraction the fraction between 0 and 1, for instance 0.99 for the 99th percentile
+         * @return the latency in nanoseconds, 0 if nothing has been received
+         */
+        public long getPercentile(final double fraction) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+
+            final int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.min(latencies.length - 1, Math.max(0, index))];
+        }
+
+        /**
+         * <p>
+         * Gets the number of deliveries per second.
+         * </p>
+         *
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : latencies.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%d/%d deliveries, %.0f msg/s, p50 %.3fms, p99 %.3fms, p999 %.3fms, max %.3fms",
+                    latencies.length, expected, getThroughput(), getPercentile(0.5) / 1e6, getPercentile(0.99) / 1e6,
+                    getPercentile(0.999) / 1e6, getPercentile(1) / 1e6);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param framework the initialized framework
+     * @param processor the processor of the framework
+     */
+    public StompLoadHarness(final AtmosphereFramework framework, final AsynchronousProcessor processor) {
+        this.framework = framework;
+        this.processor = processor;
+    }
+
+    /**
+     * <p>
+     * Connects and subscribes the clients, then sends the messages and waits until all the subscribers receive them
+     * or until the timeout expires.
+     * </p>
+     *
+     * @param clients the number of clients, each one is a subscriber and a sender
+     * @param messages the number of messages sent by each client
+     * @param threads the number of threads sending the messages
+     * @param timeout the maximum duration of the run in milliseconds
+     * @return the report
+     * @throws Exception if the run fails
+     */
+    public Report run(final int clients, final int messages, final int threads, final long timeout) throws Exception {
+        final int sends = clients * messages;
+        final long expected = (long) sends * clients;
+        final AtomicLongArray sentAt = new AtomicLongArray(sends);
+        final long[] latencies = new long[(int) Math.min(expected, Integer.MAX_VALUE - 8)];
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(latencies.length);
+        final AtmosphereResource[] resources = new AtmosphereResource[clients];
+
+        for (int i = 0; i < clients; i++) {
+            resources[i] = newClient("load-" + i, new AsyncIOWriterAdapter() {
+                @Override
+                public AsyncIOWriter write(final AtmosphereResponse r, final byte[] data) throws IOException {
+                    final long now = System.nanoTime();
+                    final Matcher m = MESSAGE_INDEX.matcher(new String(data, "UTF-8"));
+
+                    while (m.find()) {
+                        final int index = received.getAndIncrement();
+
+                        if (index < latencies.length) {
+                            latencies[index] = now - sentAt.get(Integer.parseInt(m.group(1)));
+                            done.countDown();
+                        }
+                    }
+
+                    return this;
+                }
+            });
+
+            send(resources[i], "CONNECT\naccept-version:1.1\nhost:localhost\n\n");
+            send(resources[i], "SUBSCRIBE\nid:1\ndestination:" + DESTINATION + "\n\n");
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Future<?>[] senders = new Future<?>[threads];
+        final long start = System.nanoTime();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+
+                // Each client is driven by one thread so its frames are sent in order
+                senders[t] = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int n = 0; n < messages; n++) {
+                            for (int c = thread; c < clients; c += threads) {
+                                final int index = c * messages + n;
+                                sentAt.set(index, System.nanoTime());
+                                send(resources[c], "SEND\ndestination:" + DESTINATION + "\ncontent-type:text/plain\n\n"
+                                        + String.format("{\"timestamp\":%d, \"message\":\"%d\"}", System.currentTimeMillis(), index));
+                            }
+                        }
+
+                        return null;
+                    }
+                });
+            }
+
+            for (final Future<?> f : senders) {
+                f.get(timeout, TimeUnit.MILLISECONDS);
+            }
+
+            done.await(timeout, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        return new Report(Arrays.copyOf(latencies, Math.min(received.get(), latencies.length)), expected, elapsed);
+    }
+
+    /**
+     * <p>
+     * Replays the frames of a capture, each session of the capture being a new client. The delay between two frames
+     * is the delay of the capture divided by the given speed, so 1 replays the traffic in real time.
+     * </p>
+     *
+     * @param reader the capture
+     * @param speed how many times faster than the capture the frames are sent, 0 to send them as fast as possible
+     * @param writer the writer receiving the frames sent to the clients
+     * @return the number of replayed frames
+     * @throws Exception if the replay fails
+     */
+    public int replay(final CaptureReader reader, final double speed, final AsyncIOWriter writer) throws Exception {
+        final Map<String, AtmosphereResource> clients = new HashMap<String, AtmosphereResource>();
+        final long start = System.nanoTime();
+        long first = -1;
+        int retval = 0;
+
+        for (CapturedFrame f = reader.next(); f != null; f = reader.next()) {
+            if (first < 0) {
+                first = f.getElapsedNanos();
+            }
+
+            if (speed > 0) {
+                final long wait = start + (long) ((f.getElapsedNanos() - first) / speed) - System.nanoTime();
+
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+
+            AtmosphereResource client = clients.get(f.getSession());
+
+            if (client == null) {
+                client = newClient(f.getSession(), writer);
+                clients.put(f.getSession(), client);
+            }
+
+            // The captured frame still ends with its null byte
+            send(client, f.getFrame().substring(0, f.getFrame().length() - 1));
+            retval++;
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Builds the resource of a client.
+     * </p>
+     *
+     * @param uuid the client ID
+     * @param writer the writer receiving the frames sent to the client
+     * @return the resource
+     */
+    AtmosphereResource newClient(final String uuid, final AsyncIOWriter writer) {
+        final AtmosphereRequest req = new AtmosphereRequestImpl.Builder().pathInfo("/stomp").method("GET").build();
+        req.setAttribute(ApplicationConfig.SUSPENDED_ATMOSPHERE_RESOURCE_UUID, uuid);
+
+        final AtmosphereResponse res = AtmosphereResponseImpl.newInstance();
+        res.asyncIOWriter(writer);
+
+        final AtmosphereResource ar = new AtmosphereResourceImpl();
+        ar.initialize(framework.getAtmosphereConfig(), framework.getBroadcasterFactory().lookup(DESTINATION, true),
+                req, res, framework.asyncSupport, HANDLER);
+        ((AtmosphereResourceImpl) ar).transport(AtmosphereResource.TRANSPORT.WEBSOCKET);
+        req.setAttribute(FrameworkConfig.INJECTED_ATMOSPHERE_RESOURCE, ar);
+        framework.arFactory.resources().put(ar.uuid(), ar);
+        return ar;
+    }
+
+    /**
+     * <p>
+     * Sends a frame from the given client.
+     * </p>
+     *
+     * @param ar the client resource
+     * @param frame the frame without its null byte
+     * @throws Exception if the frame can't be processed
+     */
+    void send(final AtmosphereResource ar, final String frame) throws Exception {
+        final AtmosphereRequest req = new AtmosphereRequestImpl.Builder().body(frame + "\u0000").build();
+        ar.getRequest().body(req.body().asString());
+        ar.getRequest().body(req.getInputStream());
+        processor.service(ar.getRequest(), ar.getResponse());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.cpr;
+
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.StompPublisher;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.protocol.Frame;
+import org.atmosphere.stomp.protocol.Header;
+import org.atmosphere.stomp.protocol.StompFormatImpl;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the {@link StompPublisher}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StompPublisherTest extends StompTest {
+
+    /**
+     * The destination.
+     */
+    private static final String DESTINATION = "/published";
+
+    /**
+     * <p>
+     * Published messages are received by the subscriber with the forwarded headers and the subscription headers.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void publishTest() throws Exception {
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(2);
+        subscribe(written, latch);
+
+        final StompPublisher publisher = StompPublisher.getFromConfig(config);
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("type", "event");
+        publisher.publish(DESTINATION, headers, "first".getBytes(StompPublisher.CHARSET)).get(5, TimeUnit.SECONDS);
+        publisher.publish(DESTINATION, Arrays.asList(new StompMessage(headers, "second"), new StompMessage(headers, "third")))
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        final List<Frame> frames = new ArrayList<Frame>();
+
+        for (final String w : written) {
+            for (final String f : w.split("\u0000")) {
+                if (!f.trim().isEmpty()) {
+                    frames.add(new StompFormatImpl().parse(f.replaceFirst("^\n+", "")));
+                }
+            }
+        }
+
+        assertEquals(frames.size(), 3);
+        assertEquals(frames.get(0).getBody(), "first");
+        assertEquals(frames.get(1).getBody(), "second");
+        assertEquals(frames.get(2).getBody(), "third");
+
+        for (final Frame f : frames) {
+            assertEquals(f.getAction(), org.atmosphere.stomp.protocol.Action.MESSAGE);
+            assertEquals(f.getHeaders().get(Header.DESTINATION), DESTINATION);
+            assertEquals(f.getHeaders().get(Header.SUBSCRIPTION), "1");
+            assertEquals(f.getHeaders().get("type"), "event");
+            assertTrue(f.getHeaders().containsKey(Header.MESSAGE_ID));
+        }
+    }
+
+    /**
+     * <p>
+     * Adds a subscriber to the destination.
+     * </p>
+     *
+     * @param written the writes received by the subscriber
+     * @param latch the latch counting the writes
+     * @throws Exception if subscription fails
+     */
+    private void subscribe(final List<String> written, final CountDownLatch latch) throws Exception {
+        final Broadcaster b = framework.getBroadcasterFactory().lookup(DESTINATION, true);
+        final AtmosphereRequest req = newRequest(DESTINATION, "", new HashMap<String, String>());
+        final AtmosphereHandler ah = mock(AtmosphereHandler.class);
+        final AtmosphereResource ar = new AtmosphereResourceImpl();
+        ar.initialize(config, b, req, newResponse(), framework.asyncSupport, ah);
+        ((AtmosphereResourceImpl) ar).transport(AtmosphereResource.TRANSPORT.WEBSOCKET);
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocationOnMock) throws Throwable {
+                written.add(String.valueOf(((AtmosphereResourceEvent) invocationOnMock.getArguments()[0]).getMessage()));
+                latch.countDown();
+                return null;
+            }
+        }).when(ah).onStateChange(any(AtmosphereResourceEvent.class));
+
+        Subscriptions.getFromSession(config.sessionFactory().getSession(ar)).addSubscription("1", DESTINATION);
+        b.addAtmosphereResource(ar);
+    }
+}
@@ -73,6 +73,11 @@ public class StompTest {
      */
     protected boolean receipt = false;
 
+    /**
+     * Parameters added to the framework before its initialization.
+     */
+    protected final Map<String, String> initParameters = new HashMap<String, String>();
+
     /**
      * <p>
      * Initializes framework.
@@ -84,6 +89,10 @@ public class StompTest {
     public void create() throws Throwable {
         framework = new AtmosphereFramework();
 
+        for (final Map.Entry<String, String> p : initParameters.entrySet()) {
+            framework.addInitParameter(p.getKey(), p.getValue());
+        }
+
         // Detect processor
         framework.addCustomAnnotationPackage(StompEndpointProcessor.class);
 
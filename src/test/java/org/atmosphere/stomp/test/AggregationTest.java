@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.StompMessageBatch;
+import org.atmosphere.stomp.handler.ResultMerger;
+import org.atmosphere.stomp.handler.StompSendActionAtmosphereHandler;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * Tests the aggregation of the results returned by a {@link org.atmosphere.stomp.annotation.StompService} method.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class AggregationTest {
+
+    /**
+     * Service echoing the bodies.
+     */
+    public static class EchoService {
+
+        /**
+         * <p>
+         * Returns the body.
+         * </p>
+         *
+         * @param body the body
+         * @return the body
+         */
+        public String echo(final String body) {
+            return body;
+        }
+    }
+
+    /**
+     * Merger joining the results.
+     */
+    public static class JoinMerger implements ResultMerger<String> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object merge(final List<String> results) {
+            final StringBuilder sb = new StringBuilder();
+
+            for (final String r : results) {
+                sb.append(r);
+            }
+
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The scheduler.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the scheduler.
+     */
+    @BeforeMethod
+    public void create() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Shuts down the scheduler.
+     */
+    @AfterMethod
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * <p>
+     * Results returned within the window are broadcasted in a single multi-frame delivery.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void multiFrameTest() throws Exception {
+        final Broadcaster broadcaster = mock(Broadcaster.class);
+        final StompSendActionAtmosphereHandler handler = newHandler(broadcaster, null);
+
+        handler.invoke(mock(AtmosphereResource.class), "a", new HashMap<String, String>());
+        handler.invoke(mock(AtmosphereResource.class), "b", new HashMap<String, String>());
+        verify(broadcaster, never()).broadcast(any());
+
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(broadcaster, timeout(5000)).broadcast(captor.capture());
+        final List<Object> messages = StompMessageBatch.class.cast(captor.getValue()).getMessages();
+        Assert.assertEquals(messages.size(), 2);
+        Assert.assertEquals(StompMessage.class.cast(messages.get(0)).getBody(), "a");
+        Assert.assertEquals(StompMessage.class.cast(messages.get(1)).getBody(), "b");
+    }
+
+    /**
+     * <p>
+     * Results returned within the window are merged in a single message.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void mergeTest() throws Exception {
+        final Broadcaster broadcaster = mock(Broadcaster.class);
+        final StompSendActionAtmosphereHandler handler = newHandler(broadcaster, new JoinMerger());
+
+        handler.invoke(mock(AtmosphereResource.class), "a", new HashMap<String, String>());
+        handler.invoke(mock(AtmosphereResource.class), "b", new HashMap<String, String>());
+        handler.invoke(mock(AtmosphereResource.class), "c", new HashMap<String, String>());
+
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(broadcaster, timeout(5000)).broadcast(captor.capture());
+        Assert.assertEquals(StompMessage.class.cast(captor.getValue()).getBody(), "abc");
+    }
+
+    /**
+     * <p>
+     * Creates a handler invoking {@link EchoService#echo(String)} with a long aggregation window.
+     * </p>
+     *
+     * @param broadcaster the broadcaster
+     * @param merger the merger
+     * @return the handler
+     * @throws Exception if method is not found
+     */
+    private StompSendActionAtmosphereHandler newHandler(final Broadcaster broadcaster, final ResultMerger<?> merger)
+            throws Exception {
+        final StompSendActionAtmosphereHandler retval = new StompSendActionAtmosphereHandler(new EchoService(),
+                EchoService.class.getMethod("echo", String.class), null, null, broadcaster, null);
+        retval.aggregate(200, merger, scheduler);
+        return retval;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.protocol.ParseException;
+import org.atmosphere.stomp.protocol.StompFormat;
+import org.atmosphere.stomp.protocol.StompFormatImpl;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Feeds the decoder with mutated and pathological frames. A frame must be decoded or rejected with a
+ * {@link ParseException}, and the decoding time and the allocated memory must grow linearly with the size of the
+ * input so a client can't make the server spend much more than what it sends.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class DecoderFuzzTest {
+
+    /**
+     * The valid frame mutated by the fuzzer.
+     */
+    private static final String SEED = "SEND\ndestination:/a\\cb\ncontent-type:text/plain\ncontent-length:4\n\nbody";
+
+    /**
+     * The characters inserted by the fuzzer, mostly separators.
+     */
+    private static final String ALPHABET = ":\n\r\\c\u0000ab";
+
+    /**
+     * How many times the input is enlarged to check the growth.
+     */
+    private static final int SCALE = 8;
+
+    /**
+     * The maximum growth of the decoding time when the input is {@link #SCALE} times larger, leaving room for the
+     * garbage collections triggered by the large input. A quadratic decoding would grow by 64.
+     */
+    private static final int MAX_TIME_GROWTH = SCALE * 4;
+
+    /**
+     * The maximum growth of the allocated memory when the input is {@link #SCALE} times larger.
+     */
+    private static final int MAX_ALLOCATION_GROWTH = SCALE * 2;
+
+    /**
+     * The maximum number of bytes allocated for each character of input. Each header costs more than one kilobyte
+     * in the decoder, so a frame made of short headers reaches about 150 bytes per character.
+     */
+    private static final int MAX_ALLOCATION_RATIO = 256;
+
+    /**
+     * The decoder.
+     */
+    private final StompFormat format = new StompFormatImpl();
+
+    /**
+     * <p>
+     * Builds a pathological frame.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5
+     * @version 1.0
+     */
+    private interface Shape {
+
+        /**
+         * <p>
+         * Builds the frame with the given size.
+         * </p>
+         *
+         * @param n the number of repeated elements
+         * @return the frame
+         */
+        String frame(int n);
+    }
+
+    /**
+     * <p>
+     * Repeats a string.
+     * </p>
+     *
+     * @param s the string
+     * @param n the number of times
+     * @return the result
+     */
+    private static String repeat(final String s, final int n) {
+        final StringBuilder sb = new StringBuilder(s.length() * n);
+
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * <p>
+     * Provides the pathological frames and the number of repeated elements of the smallest one.
+     * </p>
+     *
+     * @return the shapes
+     */
+    @DataProvider
+    public Object[][] shapes() {
+        return new Object[][] {
+            { "header count", 4000, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    final StringBuilder sb = new StringBuilder("SEND\ndestination:/a\n");
+
+                    for (int i = 0; i < n; i++) {
+                        sb.append('h').append(i).append(":v\n");
+                    }
+
+                    return sb.append("\nbody").toString();
+                }
+            }, },
+            { "duplicated headers", 4000, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\n" + repeat("h:v\n", n) + "\nbody";
+                }
+            }, },
+            { "header value length", 128 * 1024, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\nh:" + repeat("x", n) + "\n\nbody";
+                }
+            }, },
+            { "repeated colons", 128 * 1024, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\nh:" + repeat(":", n) + "\n\nbody";
+                }
+            }, },
+            { "repeated new lines", 128 * 1024, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\n" + repeat("\n", n) + "body";
+                }
+            }, },
+            { "repeated escapes", 64 * 1024, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\nh:" + repeat("\\c", n) + "\n\nbody";
+                }
+            }, },
+            { "carriage returns", 4000, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\r\n" + repeat("h:v\r\n", n) + "\r\nbody";
+                }
+            }, },
+            { "null bytes in body", 128 * 1024, new Shape() {
+                @Override
+                public String frame(final int n) {
+                    return "SEND\n\n" + repeat("\u0000", n);
+                }
+            }, },
+        };
+    }
+
+    /**
+     * <p>
+     * Randomly mutated frames are decoded or rejected with a {@link ParseException}.
+     * </p>
+     */
+    @Test
+    public void mutationTest() {
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            final StringBuilder sb = new StringBuilder(SEED);
+            final int mutations = 1 + random.nextInt(6);
+
+            for (int m = 0; m < mutations; m++) {
+                final int index = random.nextInt(sb.length() + 1);
+                final char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+
+                if (index == sb.length()) {
+                    sb.append(c);
+                } else if (random.nextBoolean()) {
+                    sb.deleteCharAt(index);
+                } else {
+                    sb.insert(index, c);
+                }
+            }
+
+            try {
+                format.parse(sb.toString());
+            } catch (ParseException pe) {
+                // expected for invalid frames
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The decoding time grows linearly with the input.
+     * </p>
+     *
+     * @param name the shape name
+     * @param n the size of the smallest input
+     * @param shape the shape
+     */
+    @Test(dataProvider = "shapes")
+    public void linearTimeTest(final String name, final int n, final Shape shape) {
+        final String small = shape.frame(n);
+        final String large = shape.frame(n * SCALE);
+
+        // Compile the decoder
+        for (int i = 0; i < 10; i++) {
+            parse(small);
+        }
+
+        parse(large);
+
+        final long smallTime = bestTime(small);
+        final long largeTime = bestTime(large);
+
+        assertTrue(largeTime <= smallTime * MAX_TIME_GROWTH,
+                name + ": " + smallTime + "ns for " + small.length() + " chars, " + largeTime + "ns for " + large.length() + " chars");
+    }
+
+    /**
+     * <p>
+     * The memory allocated by the decoder is proportional to the input.
+     * </p>
+     *
+     * @param name the shape name
+     * @param n the size of the smallest input
+     * @param shape the shape
+     */
+    @Test(dataProvider = "shapes")
+    public void boundedMemoryTest(final String name, final int n, final Shape shape) {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !com.sun.management.ThreadMXBean.class.cast(bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocated bytes can't be measured in this JVM");
+        }
+
+        final com.sun.management.ThreadMXBean threads = com.sun.management.ThreadMXBean.class.cast(bean);
+        final String large = shape.frame(n * SCALE);
+        final long smallAllocation = allocation(threads, shape.frame(n));
+        final long largeAllocation = allocation(threads, large);
+
+        assertTrue(largeAllocation <= smallAllocation * MAX_ALLOCATION_GROWTH,
+                name + ": " + smallAllocation + " bytes allocated, then " + largeAllocation + " bytes for a " + SCALE + " times larger input");
+        assertTrue(largeAllocation <= (long) large.length() * MAX_ALLOCATION_RATIO,
+                name + ": " + largeAllocation + " bytes allocated for " + large.length() + " chars");
+    }
+
+    /**
+     * <p>
+     * Measures the bytes allocated by the current thread to decode the given frame.
+     * </p>
+     *
+     * @param threads the bean giving the allocated bytes
+     * @param frame the frame
+     * @return the allocated bytes
+     */
+    private long allocation(final com.sun.management.ThreadMXBean threads, final String frame) {
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        parse(frame);
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+
+    /**
+     * <p>
+     * Measures the best decoding time of the given frame.
+     * </p>
+     *
+     * @param frame the frame
+     * @return the time in nanoseconds
+     */
+    private long bestTime(final String frame) {
+        long retval = Long.MAX_VALUE;
+
+        for (int i = 0; i < 7; i++) {
+            final long start = System.nanoTime();
+            parse(frame);
+            retval = Math.min(retval, System.nanoTime() - start);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Decodes the given frame, the frame may be rejected.
+     * </p>
+     *
+     * @param frame the frame
+     */
+    private void parse(final String frame) {
+        try {
+            format.parse(frame);
+        } catch (ParseException pe) {
+            // The time to reject the frame is measured too
+        }
+    }
+}
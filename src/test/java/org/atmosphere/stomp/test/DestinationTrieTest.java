@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.wildcard.DestinationTrie;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * <p>
+ * Test {@link DestinationTrie} class and wildcard {@link Subscriptions}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class DestinationTrieTest {
+
+    /**
+     * Single and multiple segments wildcards.
+     */
+    @Test
+    public void matchTest() {
+        final DestinationTrie<String> trie = new DestinationTrie<String>();
+        trie.add("/topic/prices.*", "one");
+        trie.add("/topic/prices.#", "many");
+        trie.add("/topic/*.eur", "currency");
+        trie.add("/topic/prices.usd", "literal");
+
+        Assert.assertEquals(trie.match("/topic/prices.eur"), new HashSet<String>(Arrays.asList("one", "many", "currency")));
+        Assert.assertEquals(trie.match("/topic/prices.usd"), new HashSet<String>(Arrays.asList("one", "many", "literal")));
+        Assert.assertEquals(trie.match("/topic/prices.eur.spot"), Collections.singleton("many"));
+        Assert.assertEquals(trie.match("/topic/prices"), Collections.singleton("many"));
+        Assert.assertTrue(trie.match("/topic/rates.eur.spot").isEmpty());
+
+        Assert.assertTrue(trie.remove("/topic/prices.#", "many"));
+        Assert.assertFalse(trie.remove("/topic/rates.#", "many"));
+        Assert.assertEquals(trie.match("/topic/prices.eur.spot"), Collections.emptySet());
+    }
+
+    /**
+     * Patterns detection and validation.
+     */
+    @Test
+    public void patternTest() {
+        Assert.assertTrue(DestinationTrie.isPattern("/topic/prices.*"));
+        Assert.assertTrue(DestinationTrie.isPattern("/topic/#"));
+        Assert.assertFalse(DestinationTrie.isPattern("/topic/prices*"));
+        Assert.assertFalse(DestinationTrie.isPattern("/topic/prices"));
+        Assert.assertTrue(DestinationTrie.matches(DestinationTrie.segments("/topic/*.eur"), "/topic/prices.eur"));
+        Assert.assertFalse(DestinationTrie.matches(DestinationTrie.segments("/topic/*.eur"), "/topic/prices.eur.spot"));
+
+        try {
+            new DestinationTrie<String>().add("/topic/#.eur", "invalid");
+            Assert.fail("# must be the last segment");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Concrete destinations matching a pattern are found without matching each of them.
+     */
+    @Test
+    public void searchTest() {
+        final DestinationTrie<String> trie = new DestinationTrie<String>();
+
+        for (final String d : Arrays.asList("/topic/prices", "/topic/prices.eur", "/topic/prices.eur.spot", "/topic/rates.eur")) {
+            trie.add(d, d);
+        }
+
+        Assert.assertEquals(trie.search("/topic/prices.*"), Collections.singleton("/topic/prices.eur"));
+        Assert.assertEquals(trie.search("/topic/*.eur"), new HashSet<String>(Arrays.asList("/topic/prices.eur", "/topic/rates.eur")));
+        Assert.assertEquals(trie.search("/topic/prices.#"),
+                new HashSet<String>(Arrays.asList("/topic/prices", "/topic/prices.eur", "/topic/prices.eur.spot")));
+        Assert.assertTrue(trie.search("/queue/*").isEmpty());
+    }
+
+    /**
+     * Destinations are split on both separators, empty segments included.
+     */
+    @Test
+    public void segmentsTest() {
+        Assert.assertEquals(DestinationTrie.segments("/topic/prices.eur"), new String[] { "", "topic", "prices", "eur" });
+        Assert.assertEquals(DestinationTrie.segments("prices."), new String[] { "prices", "" });
+        Assert.assertEquals(DestinationTrie.segments(""), new String[] { "" });
+        Assert.assertTrue(DestinationTrie.matches(DestinationTrie.segments("/topic/*.eur"), DestinationTrie.segments("/topic/rates.eur")));
+    }
+
+    /**
+     * Wildcard subscriptions are resolved for concrete destinations.
+     */
+    @Test
+    public void subscriptionsTest() {
+        final Subscriptions subscriptions = new Subscriptions();
+        subscriptions.addSubscription("sub-1", "/topic/prices.*");
+        subscriptions.addSubscription("sub-2", "/topic/prices.eur");
+
+        Assert.assertEquals(subscriptions.getSubscriptionsForDestination("/topic/prices.eur"), Arrays.asList("sub-1", "sub-2"));
+        Assert.assertEquals(subscriptions.getSubscriptionsForDestination("/topic/prices.usd"), Arrays.asList("sub-1"));
+        Assert.assertEquals(subscriptions.getDestinationForId("sub-1"), "/topic/prices.*");
+    }
+}
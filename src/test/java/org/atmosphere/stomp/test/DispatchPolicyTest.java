@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceSessionFactory;
+import org.atmosphere.cpr.DefaultAtmosphereResourceSessionFactory;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.queue.DispatchPolicy;
+import org.atmosphere.stomp.queue.LeastPendingAcksDispatchPolicy;
+import org.atmosphere.stomp.queue.RoundRobinDispatchPolicy;
+import org.atmosphere.stomp.queue.StickyGroupDispatchPolicy;
+import org.atmosphere.stomp.protocol.Header;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * Test {@link DispatchPolicy} implementations.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class DispatchPolicyTest {
+
+    /**
+     * The queue.
+     */
+    private static final String QUEUE = "/queue/work";
+
+    /**
+     * The consumers.
+     */
+    private List<AtmosphereResource> consumers;
+
+    /**
+     * The session factory shared by consumers.
+     */
+    private AtmosphereResourceSessionFactory sessionFactory;
+
+    /**
+     * Creates three consumers subscribed to the queue.
+     */
+    @BeforeMethod
+    public void createConsumers() {
+        sessionFactory = new DefaultAtmosphereResourceSessionFactory();
+        final AtmosphereConfig config = mock(AtmosphereConfig.class);
+        when(config.sessionFactory()).thenReturn(sessionFactory);
+
+        final AtmosphereResource[] resources = new AtmosphereResource[3];
+
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] = mock(AtmosphereResource.class);
+            when(resources[i].uuid()).thenReturn(String.valueOf(i));
+            when(resources[i].getAtmosphereConfig()).thenReturn(config);
+            subscriptions(resources[i]).addSubscription("sub-" + i, QUEUE, Subscriptions.ACK_CLIENT_INDIVIDUAL);
+        }
+
+        consumers = Arrays.asList(resources);
+    }
+
+    /**
+     * <p>
+     * Gets the subscriptions of the given resource.
+     * </p>
+     *
+     * @param r the resource
+     * @return the subscriptions
+     */
+    private Subscriptions subscriptions(final AtmosphereResource r) {
+        return Subscriptions.getFromSession(sessionFactory.getSession(r));
+    }
+
+    /**
+     * Consumers are selected one after the other.
+     */
+    @Test
+    public void roundRobinTest() {
+        final DispatchPolicy policy = new RoundRobinDispatchPolicy();
+
+        for (int i = 0; i < 6; i++) {
+            Assert.assertSame(policy.select(QUEUE, "message", consumers), consumers.get(i % consumers.size()));
+        }
+    }
+
+    /**
+     * The consumer with less pending messages is selected.
+     */
+    @Test
+    public void leastPendingAcksTest() {
+        final DispatchPolicy policy = new LeastPendingAcksDispatchPolicy();
+        subscriptions(consumers.get(0)).addPendingAck("sub-0", "m1");
+        subscriptions(consumers.get(1)).addPendingAck("sub-1", "m2");
+        subscriptions(consumers.get(1)).addPendingAck("sub-1", "m3");
+
+        Assert.assertSame(policy.select(QUEUE, "message", consumers), consumers.get(2));
+        subscriptions(consumers.get(2)).addPendingAck("sub-2", "m4");
+        subscriptions(consumers.get(2)).addPendingAck("sub-2", "m5");
+
+        Assert.assertSame(policy.select(QUEUE, "message", consumers), consumers.get(0));
+        Assert.assertTrue(subscriptions(consumers.get(1)).acknowledge("m2"));
+        Assert.assertTrue(subscriptions(consumers.get(1)).acknowledge("m3"));
+        Assert.assertFalse(subscriptions(consumers.get(1)).acknowledge("m3"));
+
+        Assert.assertSame(policy.select(QUEUE, "message", consumers), consumers.get(1));
+    }
+
+    /**
+     * Messages of the same group are consumed by the same subscriber.
+     */
+    @Test
+    public void stickyGroupTest() {
+        final DispatchPolicy policy = new StickyGroupDispatchPolicy();
+        final StompMessage a = new StompMessage(Collections.singletonMap(Header.GROUP, "a"), "message");
+        final StompMessage b = new StompMessage(Collections.singletonMap(Header.GROUP, "b"), "message");
+
+        final AtmosphereResource ownerA = policy.select(QUEUE, a, consumers);
+        final AtmosphereResource ownerB = policy.select(QUEUE, b, consumers);
+        Assert.assertNotSame(ownerA, ownerB);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertSame(policy.select(QUEUE, a, consumers), ownerA);
+            Assert.assertSame(policy.select(QUEUE, b, consumers), ownerB);
+        }
+
+        // Owner has gone
+        final List<AtmosphereResource> remaining = Collections.singletonList(ownerB);
+        Assert.assertSame(policy.select(QUEUE, a, remaining), ownerB);
+    }
+
+    /**
+     * The least recently used group is forgotten when too many groups are remembered.
+     */
+    @Test
+    public void stickyGroupEvictionTest() {
+        final DispatchPolicy policy = new StickyGroupDispatchPolicy(2);
+        final StompMessage a = new StompMessage(Collections.singletonMap(Header.GROUP, "a"), "message");
+        final StompMessage b = new StompMessage(Collections.singletonMap(Header.GROUP, "b"), "message");
+        final StompMessage c = new StompMessage(Collections.singletonMap(Header.GROUP, "c"), "message");
+
+        Assert.assertSame(policy.select(QUEUE, a, consumers), consumers.get(0));
+        Assert.assertSame(policy.select(QUEUE, b, consumers), consumers.get(1));
+        Assert.assertSame(policy.select(QUEUE, a, consumers), consumers.get(0));
+
+        // "b" is the least recently used group and is forgotten
+        Assert.assertSame(policy.select(QUEUE, c, consumers), consumers.get(2));
+        Assert.assertSame(policy.select(QUEUE, a, consumers), consumers.get(0));
+
+        // "b" is assigned again with the round-robin policy
+        Assert.assertSame(policy.select(QUEUE, b, consumers), consumers.get(0));
+    }
+}
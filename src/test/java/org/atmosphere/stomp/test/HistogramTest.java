@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.metrics.Histogram;
+import org.atmosphere.stomp.metrics.HistogramSnapshot;
+import org.atmosphere.stomp.metrics.Stage;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * <p>
+ * Tests the {@link Histogram} and the {@link Stage} switch.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class HistogramTest {
+
+    /**
+     * The relative error allowed on a percentile.
+     */
+    private static final double PRECISION = 1d / Histogram.SUB_BUCKETS;
+
+    /**
+     * <p>
+     * Percentiles are reported within the bucket precision, whatever the magnitude of the values.
+     * </p>
+     */
+    @Test
+    public void percentileTest() {
+        for (final long scale : new long[] { 1L, 1000L, 1000000L }) {
+            final Histogram histogram = new Histogram();
+
+            for (long i = 1; i <= 10000; i++) {
+                histogram.record(i * scale);
+            }
+
+            final HistogramSnapshot snapshot = histogram.snapshot(false);
+            assertEquals(snapshot.getCount(), 10000);
+            assertEquals(snapshot.getMaxNanos(), 10000 * scale);
+            assertEquals(snapshot.getAverageNanos(), 10001 * scale / 2);
+            assertPercentile(snapshot, 50, 5000 * scale);
+            assertPercentile(snapshot, 99, 9900 * scale);
+            assertPercentile(snapshot, 99.9, 9990 * scale);
+            assertEquals(snapshot.getValueAtPercentile(100), 10000 * scale);
+        }
+
+        final Histogram histogram = new Histogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(histogram.snapshot(false).getValueAtPercentile(0), 0);
+        assertEquals(histogram.snapshot(false).getMaxNanos(), Histogram.HIGHEST_TRACKABLE);
+    }
+
+    /**
+     * <p>
+     * A snapshot with reset only contains the values recorded since the previous one.
+     * </p>
+     */
+    @Test
+    public void intervalTest() {
+        final Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.record(200);
+        assertEquals(histogram.snapshot(true).getCount(), 2);
+
+        histogram.record(50);
+        final HistogramSnapshot snapshot = histogram.snapshot(true);
+        assertEquals(snapshot.getCount(), 1);
+        assertEquals(snapshot.getMaxNanos(), 50);
+        assertEquals(snapshot.getAverageNanos(), 50);
+        assertEquals(histogram.snapshot(false).getCount(), 0);
+        assertEquals(histogram.snapshot(false).getValueAtPercentile(99), 0);
+    }
+
+    /**
+     * <p>
+     * Nothing is recorded when the stages are disabled.
+     * </p>
+     */
+    @Test
+    public void switchTest() {
+        final boolean enabled = Stage.isEnabled();
+
+        try {
+            Stage.setEnabled(false);
+            Stage.snapshots(true);
+            Stage.PARSE.end(Stage.start());
+            assertEquals(Stage.start(), Stage.DISABLED);
+            assertEquals(Stage.snapshots(false).get(Stage.PARSE).getCount(), 0);
+
+            Stage.setEnabled(true);
+            Stage.PARSE.end(Stage.start());
+            assertEquals(Stage.snapshots(true).get(Stage.PARSE).getCount(), 1);
+        } finally {
+            Stage.setEnabled(enabled);
+        }
+    }
+
+    /**
+     * <p>
+     * Recording does not allocate.
+     * </p>
+     */
+    @Test
+    public void allocationTest() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !com.sun.management.ThreadMXBean.class.cast(bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocated bytes can't be measured in this JVM");
+        }
+
+        final com.sun.management.ThreadMXBean threads = com.sun.management.ThreadMXBean.class.cast(bean);
+        final long thread = Thread.currentThread().getId();
+        final Histogram histogram = new Histogram();
+
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(i);
+        }
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(i * 31L);
+        }
+
+        // Less than a byte per record, what remains is allocated by the measurement and the compiler
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(allocated < 100000, allocated + " bytes allocated");
+    }
+
+    /**
+     * <p>
+     * Checks that a percentile is reported within the precision.
+     * </p>
+     *
+     * @param snapshot the snapshot
+     * @param percentile the percentile
+     * @param expected the exact value
+     */
+    private void assertPercentile(final HistogramSnapshot snapshot, final double percentile, final long expected) {
+        final long actual = snapshot.getValueAtPercentile(percentile);
+        assertTrue(actual >= expected && actual <= expected + expected * PRECISION,
+                "p" + percentile + " is " + actual + ", expected " + expected);
+    }
+}
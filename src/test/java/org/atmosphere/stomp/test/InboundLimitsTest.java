@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereRequestImpl;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.stomp.inbound.InboundLimitException;
+import org.atmosphere.stomp.inbound.InboundLimits;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * <p>
+ * Tests the {@link InboundLimits}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class InboundLimitsTest {
+
+    /**
+     * The limits: 1000 bytes per frame, 3 headers, 20 bytes per line and 100 bytes of body.
+     */
+    private final InboundLimits limits = new InboundLimits(1000, 3, 20, 100);
+
+    /**
+     * <p>
+     * Frames within the limits are accepted, heartbeats included.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void withinLimitsTest() throws Exception {
+        limits.check("\n");
+        limits.check("\n\nSEND\r\na:1\r\nb:2\r\nc:3\r\n\r\n" + repeat('x', 100) + "\u0000");
+        assertTrue(limits.isBounded());
+        assertTrue(!new InboundLimits(0, 0, 0, 0).isBounded());
+        new InboundLimits(0, 0, 0, 0).check("SEND\n" + repeat('h', 100000) + ":v\n\n");
+    }
+
+    /**
+     * <p>
+     * Each limit is detected.
+     * </p>
+     */
+    @Test
+    public void exceededLimitsTest() {
+        assertExceeded("SEND\na:1\nb:2\nc:3\nd:4\n\n", "Frame has more than 3 headers");
+        assertExceeded("SEND\nheader:" + repeat('x', 20) + "\n\n", "Header line exceeds 20 bytes");
+        assertExceeded(repeat('S', 21) + "\n\n", "Header line exceeds 20 bytes");
+        assertExceeded("SEND\n\n" + repeat('x', 101), "Body exceeds 100 bytes");
+        assertExceeded(repeat('\n', 1001), "Frame exceeds 1000 bytes");
+    }
+
+    /**
+     * <p>
+     * Limits are measured in UTF-8 bytes, including when the container has already buffered the frame.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        limits.check("SEND\n\n" + repeat('\u00e9', 50));
+        assertExceeded("SEND\n\n" + repeat('\u00e9', 51), "Body exceeds 100 bytes");
+        assertExceeded("SEND\n\n" + repeat('\u20ac', 34), "Body exceeds 100 bytes");
+        assertExceeded("SEND\nh:" + repeat('\u20ac', 7) + "\n\n", "Header line exceeds 20 bytes");
+
+        final byte[] accepted = ("SEND\n\n" + repeat('\u00e9', 50)).getBytes("UTF-8");
+        assertEquals(limits.read(resource(new AtmosphereRequestImpl.Builder().method("POST").body(accepted).build())),
+                "SEND\n\n" + repeat('\u00e9', 50));
+
+        try {
+            final byte[] rejected = ("SEND\n\n" + repeat('\u00e9', 51)).getBytes("UTF-8");
+            limits.read(resource(new AtmosphereRequestImpl.Builder().method("POST").body(rejected).build()));
+            fail("Body should exceed the limit");
+        } catch (InboundLimitException ile) {
+            assertEquals(ile.getMessage(), "Body exceeds 100 bytes");
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a resource for the given request.
+     * </p>
+     *
+     * @param request the request
+     * @return the resource
+     */
+    private AtmosphereResource resource(final AtmosphereRequest request) {
+        final AtmosphereConfig config = mock(AtmosphereConfig.class);
+        final AtmosphereResource r = mock(AtmosphereResource.class);
+        when(r.getRequest()).thenReturn(request);
+        when(r.getAtmosphereConfig()).thenReturn(config);
+        return r;
+    }
+
+    /**
+     * <p>
+     * The reading of a request stops when a limit is exceeded.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void earlyAbortTest() throws Exception {
+        final AtomicLong read = new AtomicLong();
+        final byte[] headers = "SEND\ndestination:/a\n\n".getBytes("UTF-8");
+
+        // A never ending body
+        final InputStream is = new InputStream() {
+            @Override
+            public int read() {
+                final long i = read.getAndIncrement();
+                return i < headers.length ? headers[(int) i] : 'x';
+            }
+        };
+
+        try {
+            limits.read(resource(new AtmosphereRequestImpl.Builder().method("POST").inputStream(is).build()));
+            fail("Body should exceed the limit");
+        } catch (InboundLimitException ile) {
+            assertEquals(ile.getMessage(), "Body exceeds 100 bytes");
+        }
+
+        assertTrue(read.get() < 64 * 1024, read.get() + " bytes read");
+    }
+
+    /**
+     * <p>
+     * Checks that the given frame exceeds a limit.
+     * </p>
+     *
+     * @param frame the frame
+     * @param message the expected message
+     */
+    private void assertExceeded(final String frame, final String message) {
+        try {
+            limits.check(frame);
+            fail(message);
+        } catch (InboundLimitException ile) {
+            assertEquals(ile.getMessage(), message);
+        }
+    }
+
+    /**
+     * <p>
+     * Repeats a character.
+     * </p>
+     *
+     * @param c the character
+     * @param n the number of times
+     * @return the string
+     */
+    private static String repeat(final char c, final int n) {
+        final StringBuilder sb = new StringBuilder(n);
+
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+
+        return sb.toString();
+    }
+}
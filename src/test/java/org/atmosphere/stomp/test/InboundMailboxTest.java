@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.inbound.InboundMailbox;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Test {@link InboundMailbox} class.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class InboundMailboxTest {
+
+    /**
+     * Frames waiting for the mailbox are processed in arrival order.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void arrivalOrderTest() throws Exception {
+        final InboundMailbox mailbox = new InboundMailbox();
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(5);
+
+        mailbox.enter();
+
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mailbox.enter();
+
+                    try {
+                        processed.add(value);
+                    } finally {
+                        mailbox.leave();
+                        done.countDown();
+                    }
+                }
+            }).start();
+
+            // Wait for the thread to be queued before the next one arrives
+            final long deadline = System.currentTimeMillis() + 5000;
+
+            while (mailbox.getPending() != i + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+
+        Assert.assertTrue(processed.isEmpty());
+        mailbox.leave();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(processed.get(i).intValue(), i);
+        }
+    }
+}
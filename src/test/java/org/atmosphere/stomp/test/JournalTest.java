@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.journal.Journal;
+import org.atmosphere.stomp.journal.Journals;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Test {@link Journal} class.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class JournalTest {
+
+    /**
+     * The journal directory.
+     */
+    private File directory;
+
+    /**
+     * Creates a temporary directory.
+     *
+     * @throws IOException if directory can't be created
+     */
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("journal", "test");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdirs());
+    }
+
+    /**
+     * Deletes the temporary directory.
+     */
+    @AfterMethod
+    public void deleteDirectory() {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * Reads the entire journal.
+     *
+     * @param journal the journal
+     * @param since the timestamp
+     * @return the records
+     * @throws IOException if test fails
+     */
+    private List<String> replay(final Journal journal, final long since) throws IOException {
+        return replay(journal, since, -1L);
+    }
+
+    /**
+     * Reads the journal after the given position.
+     *
+     * @param journal the journal
+     * @param since the timestamp
+     * @param after the position
+     * @return the records
+     * @throws IOException if test fails
+     */
+    private List<String> replay(final Journal journal, final long since, final long after) throws IOException {
+        final List<String> retval = new ArrayList<String>();
+
+        journal.replay(since, after, new Journal.Procedure() {
+            @Override
+            public void apply(final long timestamp, final ByteBuffer payload) {
+                retval.add(Journals.CHARSET.decode(payload).toString());
+            }
+        });
+
+        return retval;
+    }
+
+    /**
+     * Appends then replays records, segments are rolled.
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void appendAndReplayTest() throws IOException {
+        final Journal journal = new Journal(directory, 64, 60000L);
+        final List<String> expected = new ArrayList<String>();
+
+        for (int i = 0; i < 20; i++) {
+            expected.add("message " + i);
+            journal.append(("message " + i).getBytes(Journals.CHARSET));
+        }
+
+        Assert.assertTrue(directory.list().length > 1);
+        Assert.assertEquals(replay(journal, 0), expected);
+        Assert.assertTrue(replay(journal, System.currentTimeMillis() + 1000L).isEmpty());
+    }
+
+    /**
+     * Records are loaded when the journal is opened again.
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void reopenTest() throws IOException {
+        Journal journal = new Journal(directory, 64, 60000L);
+        journal.append("first".getBytes(Journals.CHARSET));
+        journal.append("second".getBytes(Journals.CHARSET));
+        journal.flush();
+
+        journal = new Journal(directory, 64, 60000L);
+        journal.append("third".getBytes(Journals.CHARSET));
+
+        final List<String> records = replay(journal, 0);
+        Assert.assertEquals(records.size(), 3);
+        Assert.assertEquals(records.get(0), "first");
+        Assert.assertEquals(records.get(2), "third");
+    }
+
+    /**
+     * Expired segments are deleted.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void retentionTest() throws Exception {
+        final Journal journal = new Journal(directory, 32, 50L);
+
+        for (int i = 0; i < 5; i++) {
+            journal.append(("old " + i).getBytes(Journals.CHARSET));
+        }
+
+        Thread.sleep(100L);
+        Assert.assertTrue(replay(journal, 0).isEmpty());
+
+        journal.append("recent".getBytes(Journals.CHARSET));
+        journal.append("recent again".getBytes(Journals.CHARSET));
+        journal.purge();
+
+        Assert.assertEquals(replay(journal, 0).size(), 2);
+        Assert.assertTrue(directory.list().length <= 2);
+    }
+
+    /**
+     * A replay continues after the position returned by the previous one.
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void replayAfterTest() throws IOException {
+        final Journal journal = new Journal(directory, 64, 60000L);
+
+        for (int i = 0; i < 5; i++) {
+            journal.append(("message " + i).getBytes(Journals.CHARSET));
+        }
+
+        final long position = journal.replay(0, new Journal.Procedure() {
+            @Override
+            public void apply(final long timestamp, final ByteBuffer payload) {
+            }
+        });
+
+        journal.append("message 5".getBytes(Journals.CHARSET));
+        final long last = journal.append("message 6".getBytes(Journals.CHARSET));
+
+        Assert.assertTrue(last > position);
+        Assert.assertEquals(replay(journal, 0, position), Arrays.asList("message 5", "message 6"));
+        Assert.assertTrue(replay(journal, 0, last).isEmpty());
+        Assert.assertEquals(replay(journal, 0).size(), 7);
+    }
+
+    /**
+     * The active segment is also deleted when it expires, positions keep growing.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void activeSegmentPurgeTest() throws Exception {
+        final Journal journal = new Journal(directory, 1024, 50L);
+        final long position = journal.append("old".getBytes(Journals.CHARSET));
+
+        Thread.sleep(100L);
+        journal.purge();
+        Assert.assertEquals(directory.list().length, 0);
+
+        Assert.assertTrue(journal.append("recent".getBytes(Journals.CHARSET)) > position);
+        Assert.assertEquals(replay(journal, 0, position), Collections.singletonList("recent"));
+    }
+
+    /**
+     * Headers are journaled with the body.
+     */
+    @Test
+    public void encodeTest() {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("plain", "value");
+        headers.put("special:name", "line\nbreak\\colon:");
+        final StompMessage decoded = Journals.decode(ByteBuffer.wrap(Journals.encode(new StompMessage(headers, "body\n\nend"))));
+
+        Assert.assertEquals(decoded.getHeaders(), headers);
+        Assert.assertEquals(decoded.toString(), "body\n\nend");
+
+        final StompMessage noHeader = Journals.decode(ByteBuffer.wrap(Journals.encode("text")));
+        Assert.assertTrue(noHeader.getHeaders().isEmpty());
+        Assert.assertEquals(noHeader.toString(), "text");
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.StompMessageBatch;
+import org.atmosphere.stomp.handler.StompSendActionAtmosphereHandler;
+import org.atmosphere.stomp.metrics.Stage;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * Tests the invocation of a {@link org.atmosphere.stomp.annotation.StompService} method once per batch of frames.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class MicroBatchTest {
+
+    /**
+     * Service receiving the batches.
+     */
+    public static class BatchService {
+
+        /**
+         * The received batches.
+         */
+        final List<List<String>> batches = new CopyOnWriteArrayList<List<String>>();
+
+        /**
+         * <p>
+         * Receives a batch and returns a result for each body.
+         * </p>
+         *
+         * @param bodies the bodies
+         * @return the results
+         */
+        public List<String> ingest(final List<String> bodies) {
+            batches.add(new ArrayList<String>(bodies));
+            final List<String> retval = new ArrayList<String>();
+
+            for (final String b : bodies) {
+                retval.add(b.toUpperCase());
+            }
+
+            return retval;
+        }
+    }
+
+    /**
+     * The scheduler.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the scheduler.
+     */
+    @BeforeMethod
+    public void create() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Shuts down the scheduler.
+     */
+    @AfterMethod
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * <p>
+     * A full batch is processed in one invocation and its results are broadcasted at once.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void fullBatchTest() throws Exception {
+        final BatchService service = new BatchService();
+        final Broadcaster broadcaster = mock(Broadcaster.class);
+        final StompSendActionAtmosphereHandler handler = newHandler(service, broadcaster, 3, 60000);
+        final AtmosphereResource r = mock(AtmosphereResource.class);
+
+        handler.invoke(r, "a", new HashMap<String, String>());
+        handler.invoke(r, "b", new HashMap<String, String>());
+        Assert.assertTrue(service.batches.isEmpty());
+        handler.invoke(r, "c", new HashMap<String, String>());
+
+        Assert.assertEquals(service.batches.size(), 1);
+        Assert.assertEquals(service.batches.get(0), Arrays.asList("a", "b", "c"));
+
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(broadcaster).broadcast(captor.capture());
+        final List<Object> messages = StompMessageBatch.class.cast(captor.getValue()).getMessages();
+        Assert.assertEquals(messages.size(), 3);
+        Assert.assertEquals(StompMessage.class.cast(messages.get(2)).getBody(), "C");
+    }
+
+    /**
+     * <p>
+     * An incomplete batch is processed when the delay expires.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void delayedBatchTest() throws Exception {
+        final BatchService service = new BatchService();
+        final Broadcaster broadcaster = mock(Broadcaster.class);
+        final StompSendActionAtmosphereHandler handler = newHandler(service, broadcaster, 100, 10);
+
+        handler.invoke(mock(AtmosphereResource.class), "a", new HashMap<String, String>());
+        verify(broadcaster, timeout(5000)).broadcast(any(StompMessageBatch.class));
+        Assert.assertEquals(service.batches, Collections.singletonList(Collections.singletonList("a")));
+    }
+
+    /**
+     * <p>
+     * The completion of each frame runs when its batch is processed, not when the frame is enqueued, and the handler
+     * stage is recorded once for the batch.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void completionTest() throws Exception {
+        final boolean enabled = Stage.isEnabled();
+        Stage.setEnabled(true);
+
+        try {
+            final StompSendActionAtmosphereHandler handler = newHandler(new BatchService(), mock(Broadcaster.class), 2, 60000);
+            final AtmosphereResource r = mock(AtmosphereResource.class);
+            final AtomicInteger completed = new AtomicInteger();
+            final Runnable completion = new Runnable() {
+                @Override
+                public void run() {
+                    completed.incrementAndGet();
+                }
+            };
+
+            Assert.assertTrue(handler.isBatching());
+            Stage.snapshots(true);
+            handler.invoke(r, "a", new HashMap<String, String>(), completion);
+            Assert.assertEquals(completed.get(), 0);
+            Assert.assertEquals(Stage.snapshots(false).get(Stage.HANDLER).getCount(), 0);
+
+            handler.invoke(r, "b", new HashMap<String, String>(), completion);
+            Assert.assertEquals(completed.get(), 2);
+            Assert.assertEquals(Stage.snapshots(true).get(Stage.HANDLER).getCount(), 1);
+        } finally {
+            Stage.setEnabled(enabled);
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a handler invoking {@link BatchService#ingest(List)} once per batch.
+     * </p>
+     *
+     * @param service the service
+     * @param broadcaster the broadcaster
+     * @param size the batch size
+     * @param delay the batch delay
+     * @return the handler
+     * @throws Exception if method is not found
+     */
+    private StompSendActionAtmosphereHandler newHandler(final BatchService service,
+                                                        final Broadcaster broadcaster,
+                                                        final int size,
+                                                        final long delay) throws Exception {
+        return new StompSendActionAtmosphereHandler(service, BatchService.class.getMethod("ingest", List.class),
+                null, null, broadcaster, null, size, delay, scheduler);
+    }
+}
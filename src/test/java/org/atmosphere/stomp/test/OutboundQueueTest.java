@@ -0,0 +1,349 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListener;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.atmosphere.cpr.DefaultAtmosphereResourceSessionFactory;
+import org.atmosphere.stomp.outbound.Coalescing;
+import org.atmosphere.stomp.outbound.Conflations;
+import org.atmosphere.stomp.outbound.OutboundLimits;
+import org.atmosphere.stomp.outbound.OutboundQueue;
+import org.atmosphere.stomp.outbound.OverflowPolicy;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * Test {@link OutboundQueue}, {@link OutboundLimits}, {@link Coalescing} and {@link Conflations} classes.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class OutboundQueueTest {
+
+    /**
+     * A long write timeout.
+     */
+    private static final long TIMEOUT = 60000L;
+
+    /**
+     * No limit.
+     */
+    private static final OutboundLimits UNBOUNDED = new OutboundLimits(0, 0, OverflowPolicy.DROP_OLDEST);
+
+    /**
+     * No coalescing.
+     */
+    private static final Coalescing NO_COALESCING = new Coalescing(0, 0, false, null);
+
+    /**
+     * The resource.
+     */
+    private AtmosphereResource resource;
+
+    /**
+     * The broadcaster.
+     */
+    private Broadcaster broadcaster;
+
+    /**
+     * The queue.
+     */
+    private OutboundQueue queue;
+
+    /**
+     * Creates a suspended websocket resource and its queue.
+     */
+    @BeforeMethod
+    public void create() {
+        final AtmosphereConfig config = mock(AtmosphereConfig.class);
+        final BroadcasterFactory factory = mock(BroadcasterFactory.class);
+        broadcaster = mock(Broadcaster.class);
+        when(config.getBroadcasterFactory()).thenReturn(factory);
+        when(config.properties()).thenReturn(new HashMap<String, Object>());
+        when(factory.lookup("/prices")).thenReturn(broadcaster);
+
+        resource = mock(AtmosphereResource.class);
+        when(resource.uuid()).thenReturn("1");
+        when(resource.getAtmosphereConfig()).thenReturn(config);
+        when(resource.isSuspended()).thenReturn(true);
+        when(resource.transport()).thenReturn(AtmosphereResource.TRANSPORT.WEBSOCKET);
+
+        queue = OutboundQueue.getFromSession(new DefaultAtmosphereResourceSessionFactory().getSession(resource));
+    }
+
+    /**
+     * <p>
+     * Enqueues a frame sent to "/prices".
+     * </p>
+     *
+     * @param key the conflation key
+     * @param frame the frame
+     * @param limits the limits
+     * @return the result
+     */
+    private OutboundQueue.Result enqueue(final String key, final String frame, final OutboundLimits limits) {
+        return queue.enqueue(resource, "/prices", key, frame, 1, limits);
+    }
+
+    /**
+     * Pending frames with the same key replace each other and are flushed when write completes.
+     */
+    @Test
+    public void conflationTest() {
+        Assert.assertEquals(enqueue("/prices\nEUR", "EUR 1\n", UNBOUNDED), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(queue.poll(TIMEOUT, NO_COALESCING), "EUR 1\n");
+
+        // Write is in progress
+        Assert.assertEquals(enqueue("/prices\nEUR", "EUR 2\n", UNBOUNDED), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue("/prices\nUSD", "USD 1\n", UNBOUNDED), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue(null, "news\n", UNBOUNDED), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue("/prices\nEUR", "EUR 3\n", UNBOUNDED), OutboundQueue.Result.CONFLATED);
+        Assert.assertNull(queue.poll(TIMEOUT, NO_COALESCING));
+        Assert.assertEquals(queue.size(), 3);
+
+        // Write completes
+        written();
+        verify(broadcaster).broadcast(OutboundQueue.FLUSH, resource);
+
+        Assert.assertEquals(queue.poll(TIMEOUT, NO_COALESCING), "EUR 3\nUSD 1\nnews\n");
+        Assert.assertEquals(queue.size(), 0);
+        Assert.assertEquals(queue.getDropped(), 1L);
+    }
+
+    /**
+     * Oldest frames are dropped when the queue is full.
+     */
+    @Test
+    public void dropOldestTest() {
+        final OutboundLimits limits = new OutboundLimits(2, 0, OverflowPolicy.DROP_OLDEST);
+        enqueue(null, "in flight\n", limits);
+        queue.poll(TIMEOUT, NO_COALESCING);
+
+        Assert.assertEquals(enqueue(null, "1\n", limits), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue(null, "2\n", limits), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue(null, "3\n", limits), OutboundQueue.Result.DROPPED);
+        Assert.assertEquals(queue.size(), 2);
+        Assert.assertEquals(queue.sizeInBytes(), 4L);
+        Assert.assertEquals(queue.poll(0L, NO_COALESCING), "2\n3\n");
+    }
+
+    /**
+     * Newest frames are dropped when the queue is full in bytes.
+     */
+    @Test
+    public void dropNewestTest() {
+        final OutboundLimits limits = new OutboundLimits(0, 4, OverflowPolicy.DROP_NEWEST);
+        enqueue(null, "0\n", limits);
+        queue.poll(TIMEOUT, NO_COALESCING);
+
+        Assert.assertEquals(enqueue(null, "\u00e91\n", limits), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(queue.sizeInBytes(), 4L);
+        Assert.assertEquals(enqueue(null, "2\n", limits), OutboundQueue.Result.DROPPED);
+        Assert.assertEquals(queue.poll(0L, NO_COALESCING), "\u00e91\n");
+        Assert.assertEquals(queue.getDropped(), 1L);
+    }
+
+    /**
+     * Newest frame replaces the last frame of the same destination when the queue is full.
+     */
+    @Test
+    public void conflateTest() {
+        final OutboundLimits limits = new OutboundLimits(2, 0, OverflowPolicy.CONFLATE);
+        enqueue(null, "in flight\n", limits);
+        queue.poll(TIMEOUT, NO_COALESCING);
+
+        enqueue(null, "1\n", limits);
+        queue.enqueue(resource, "/news", null, "news\n", 1, limits);
+        Assert.assertEquals(enqueue(null, "2\n", limits), OutboundQueue.Result.CONFLATED);
+        Assert.assertEquals(queue.poll(0L, NO_COALESCING), "2\nnews\n");
+    }
+
+    /**
+     * The messages to acknowledge in conflated frames are discarded, the messages of the frames still pending are not.
+     */
+    @Test
+    public void conflatedAcksTest() {
+        final OutboundLimits limits = new OutboundLimits(2, 0, OverflowPolicy.CONFLATE);
+        enqueue(null, "in flight\n", limits);
+        queue.poll(TIMEOUT, NO_COALESCING);
+
+        queue.enqueue(resource, "/prices", "/prices\nEUR", "EUR 1\n", 1, Collections.singletonList("m1"), limits);
+        Assert.assertEquals(queue.enqueue(resource, "/prices", "/prices\nEUR", "EUR 2\n", 1,
+                Collections.singletonList("m2"), limits), OutboundQueue.Result.CONFLATED);
+        Assert.assertEquals(queue.drainDiscardedAcks(), Collections.singletonList("m1"));
+        Assert.assertTrue(queue.drainDiscardedAcks().isEmpty());
+
+        // The policy replaces the last frame of the destination when the queue is full
+        queue.enqueue(resource, "/news", null, "news\n", 1, Collections.singletonList("m3"), limits);
+        Assert.assertEquals(queue.enqueue(resource, "/news", null, "more news\n", 1,
+                Collections.singletonList("m4"), limits), OutboundQueue.Result.CONFLATED);
+        Assert.assertEquals(queue.drainDiscardedAcks(), Collections.singletonList("m3"));
+        Assert.assertEquals(queue.poll(0L, NO_COALESCING), "EUR 2\nmore news\n");
+    }
+
+    /**
+     * Client is disconnected when the queue is full.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void disconnectTest() throws Exception {
+        final OutboundLimits limits = new OutboundLimits(1, 0, OverflowPolicy.DISCONNECT);
+        enqueue(null, "in flight\n", limits);
+        queue.poll(TIMEOUT, NO_COALESCING);
+
+        Assert.assertEquals(enqueue(null, "1\n", limits), OutboundQueue.Result.QUEUED);
+        Assert.assertEquals(enqueue(null, "2\n", limits), OutboundQueue.Result.OVERFLOW);
+        Assert.assertEquals(enqueue(null, "3\n", limits), OutboundQueue.Result.DROPPED);
+        Assert.assertEquals(queue.size(), 0);
+
+        // Error frame has been written
+        written();
+        verify(resource).close();
+    }
+
+    /**
+     * A write that lasts too long is considered as lost.
+     *
+     * @throws InterruptedException if test fails
+     */
+    @Test
+    public void writeTimeoutTest() throws InterruptedException {
+        enqueue(null, "first\n", UNBOUNDED);
+        Assert.assertEquals(queue.poll(TIMEOUT, NO_COALESCING), "first\n");
+        enqueue(null, "second\n", UNBOUNDED);
+        Thread.sleep(20L);
+        Assert.assertEquals(queue.poll(10L, NO_COALESCING), "second\n");
+    }
+
+    /**
+     * Conflated messages are counted per destination.
+     */
+    @Test
+    public void conflationsTest() {
+        final Conflations conflations = Conflations.getFromConfig(resource.getAtmosphereConfig());
+        Assert.assertSame(Conflations.getFromConfig(resource.getAtmosphereConfig()), conflations);
+        Assert.assertFalse(conflations.isEnabled("/prices"));
+
+        conflations.enable("/prices");
+        conflations.conflated("/prices");
+        conflations.conflated("/prices");
+        conflations.conflated("/news");
+
+        Assert.assertTrue(conflations.isEnabled("/prices"));
+        Assert.assertEquals(conflations.getConflatedCount("/prices"), 2L);
+        Assert.assertEquals(conflations.getConflatedCount("/news"), 0L);
+        Assert.assertEquals(conflations.getConflatedCounts().size(), 1);
+    }
+
+    /**
+     * Frames are coalesced until the end of the window or until the budget is reached.
+     *
+     * @throws InterruptedException if test fails
+     */
+    @Test
+    public void coalescingTest() throws InterruptedException {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            final Coalescing coalescing = new Coalescing(100L, 8L, false, scheduler);
+            enqueue(null, "1\n", UNBOUNDED);
+            enqueue(null, "2\n", UNBOUNDED);
+            Assert.assertNull(queue.poll(TIMEOUT, coalescing));
+
+            // Flushed at the end of the window
+            verify(broadcaster, timeout(1000)).broadcast(OutboundQueue.FLUSH, resource);
+            Assert.assertEquals(queue.poll(TIMEOUT, coalescing), "1\n2\n");
+
+            // Budget reached before the end of the window
+            written();
+
+            enqueue(null, "3\n", UNBOUNDED);
+            Assert.assertNull(queue.poll(TIMEOUT, coalescing));
+            enqueue(null, "4\n", UNBOUNDED);
+            enqueue(null, "5\n", UNBOUNDED);
+            enqueue(null, "6\n", UNBOUNDED);
+            Assert.assertEquals(queue.poll(TIMEOUT, coalescing), "3\n4\n5\n6\n");
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Adaptive window grows when frames are coalesced and shrinks otherwise.
+     *
+     * @throws InterruptedException if test fails
+     */
+    @Test
+    public void adaptiveWindowTest() throws InterruptedException {
+        final Coalescing coalescing = new Coalescing(100L, 0L, true, null);
+
+        // No window at startup
+        enqueue(null, "1\n", UNBOUNDED);
+        Assert.assertEquals(queue.poll(TIMEOUT, coalescing), "1\n");
+        Assert.assertEquals(queue.getWindow(), 0L);
+
+        // Frames accumulated during the write are coalesced
+        enqueue(null, "2\n", UNBOUNDED);
+        enqueue(null, "3\n", UNBOUNDED);
+        written();
+        Assert.assertEquals(queue.poll(TIMEOUT, coalescing), "2\n3\n");
+        Assert.assertEquals(queue.getWindow(), 1L);
+
+        // Low load
+        written();
+        enqueue(null, "4\n", UNBOUNDED);
+        Thread.sleep(5L);
+        Assert.assertEquals(queue.poll(TIMEOUT, coalescing), "4\n");
+        Assert.assertEquals(queue.getWindow(), 0L);
+    }
+
+    /**
+     * <p>
+     * Notifies the queue that the write in progress has completed.
+     * </p>
+     */
+    private void written() {
+        final ArgumentCaptor<AtmosphereResourceEventListener> listener = ArgumentCaptor.forClass(AtmosphereResourceEventListener.class);
+        verify(resource, atLeastOnce()).addEventListener(listener.capture());
+        final AtmosphereResourceEvent event = mock(AtmosphereResourceEvent.class);
+        when(event.getResource()).thenReturn(resource);
+        listener.getValue().onBroadcast(event);
+    }
+}
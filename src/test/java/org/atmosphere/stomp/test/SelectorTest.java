@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.StompMessage;
+import org.atmosphere.stomp.Subscriptions;
+import org.atmosphere.stomp.selector.Selector;
+import org.atmosphere.stomp.selector.Selectors;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Test {@link Selector} compilation and evaluation.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class SelectorTest {
+
+    /**
+     * The headers of the tested message.
+     */
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    {
+        headers.put("symbol", "EUR");
+        headers.put("price", "1.25");
+        headers.put("venue-id", "it's");
+    }
+
+    /**
+     * <p>
+     * Compiles and evaluates the given expression.
+     * </p>
+     *
+     * @param expression the expression
+     * @return the result
+     */
+    private boolean eval(final String expression) {
+        return new Selectors().compile(expression).matches(headers);
+    }
+
+    /**
+     * Comparisons, ranges and lists.
+     */
+    @Test
+    public void evaluateTest() {
+        Assert.assertTrue(eval("symbol = 'EUR'"));
+        Assert.assertFalse(eval("symbol <> 'EUR'"));
+        Assert.assertTrue(eval("price > 1"));
+        Assert.assertTrue(eval("price >= 1.25 and price <= 1.25"));
+        Assert.assertFalse(eval("price < 1e0"));
+        Assert.assertTrue(eval("price BETWEEN 1 AND 2"));
+        Assert.assertFalse(eval("price NOT BETWEEN 1 AND 2"));
+        Assert.assertTrue(eval("symbol IN ('USD', 'EUR')"));
+        Assert.assertFalse(eval("symbol NOT IN ('USD', 'EUR')"));
+        Assert.assertTrue(eval("price IN (1.25, 2)"));
+        Assert.assertTrue(eval("venue-id = 'it''s'"));
+        Assert.assertTrue(eval("missing IS NULL AND symbol IS NOT NULL"));
+        Assert.assertFalse(eval("missing = 'x'"));
+        Assert.assertFalse(eval("symbol > 2"));
+        Assert.assertTrue(eval("symbol = 'USD' OR (price > 1 AND NOT symbol = 'GBP')"));
+    }
+
+    /**
+     * Invalid expressions are rejected.
+     */
+    @Test
+    public void invalidTest() {
+        for (final String expression : Arrays.asList("symbol", "symbol = ", "symbol = 'EUR", "(symbol = 'EUR'", "symbol ~ 1", "symbol NOT = 1", "= 1")) {
+            try {
+                new Selectors().compile(expression);
+                Assert.fail(expression + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Deeply nested or very long expressions are rejected instead of exhausting the stack.
+     */
+    @Test
+    public void limitsTest() {
+        final StringBuilder parentheses = new StringBuilder();
+        final StringBuilder negations = new StringBuilder();
+        final StringBuilder disjunction = new StringBuilder("symbol = 'EUR'");
+
+        for (int i = 0; i < 2000; i++) {
+            parentheses.append('(');
+            negations.append("NOT ");
+            disjunction.append(" OR symbol = 'EUR'");
+        }
+
+        parentheses.append("symbol = 'EUR'");
+
+        for (int i = 0; i < 2000; i++) {
+            parentheses.append(')');
+        }
+
+        negations.append("symbol = 'EUR'");
+
+        for (final String expression : Arrays.asList(parentheses.toString(), negations.toString(), disjunction.toString())) {
+            try {
+                new Selectors().compile(expression);
+                Assert.fail(expression.substring(0, 20) + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+
+        Assert.assertTrue(eval("((((NOT NOT (symbol = 'EUR'))))) AND NOT NOT price > 1"));
+    }
+
+    /**
+     * Identical selectors are shared and evaluated once per message.
+     */
+    @Test
+    public void deduplicateTest() {
+        final Selectors selectors = new Selectors();
+        Assert.assertSame(selectors.compile("symbol = 'EUR'"), selectors.compile(" symbol = 'EUR' "));
+
+        final AtomicInteger evaluations = new AtomicInteger();
+        final Selector selector = new Selector() {
+            @Override
+            public boolean matches(final Map<String, String> h) {
+                evaluations.incrementAndGet();
+                return "EUR".equals(h.get("symbol"));
+            }
+        };
+
+        final Subscriptions first = new Subscriptions();
+        first.addSubscription("1", "/topic/prices", null, selector);
+        final Subscriptions second = new Subscriptions();
+        second.addSubscription("2", "/topic/prices", null, selector);
+        second.addSubscription("3", "/topic/prices", null, selectors.compile("symbol = 'USD'"));
+
+        final StompMessage message = new StompMessage(headers, "1.25");
+        Assert.assertEquals(first.getSubscriptionsForDestination("/topic/prices", message), Collections.singletonList("1"));
+        Assert.assertEquals(second.getSubscriptionsForDestination("/topic/prices", message), Collections.singletonList("2"));
+        Assert.assertEquals(evaluations.get(), 1);
+
+        Assert.assertTrue(second.getSubscriptionsForDestination("/topic/prices", null).isEmpty());
+        Assert.assertEquals(second.getSubscriptionsForDestination("/topic/prices").size(), 2);
+    }
+}
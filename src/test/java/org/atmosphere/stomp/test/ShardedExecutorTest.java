@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.executor.ShardedExecutor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Test {@link ShardedExecutor} class.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class ShardedExecutorTest {
+
+    /**
+     * Tasks with the same key are executed in order.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void orderTest() throws Exception {
+        final ShardedExecutor executor = new ShardedExecutor("test", 4, 1024);
+        final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(200);
+
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            executor.execute("/first", new Runnable() {
+                @Override
+                public void run() {
+                    first.add(value);
+                    latch.countDown();
+                }
+            });
+            executor.execute("/second", new Runnable() {
+                @Override
+                public void run() {
+                    second.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(first.get(i).intValue(), i);
+            Assert.assertEquals(second.get(i).intValue(), i);
+        }
+    }
+
+    /**
+     * Tasks are rejected when the shard is full.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void rejectionTest() throws Exception {
+        final ShardedExecutor executor = new ShardedExecutor("test", 2, 2);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        executor.execute("/slow", new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+
+                try {
+                    blocked.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute("/slow", noop);
+        executor.execute("/slow", noop);
+        Assert.assertEquals(executor.getQueueDepth(executor.shardOf("/slow")), 2);
+
+        try {
+            executor.execute("/slow", noop);
+            Assert.fail("Shard should be full");
+        } catch (RejectedExecutionException ree) {
+            // expected
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+}
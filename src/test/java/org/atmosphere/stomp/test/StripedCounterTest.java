@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.metrics.LatencyCounter;
+import org.atmosphere.stomp.metrics.StripedCounter;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * <p>
+ * Tests the {@link StripedCounter} and the {@link LatencyCounter}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class StripedCounterTest {
+
+    /**
+     * Number of threads.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Number of records per thread.
+     */
+    private static final int RECORDS = 100000;
+
+    /**
+     * <p>
+     * No value is lost when many threads record at the same time.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void concurrentTest() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        final LatencyCounter latency = new LatencyCounter();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREADS];
+
+        for (int t = 0; t < THREADS; t++) {
+            final int max = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+
+                    for (int i = 0; i < RECORDS; i++) {
+                        counter.add(2);
+                        latency.record(i == RECORDS / 2 ? 1000 + max : 1);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        start.countDown();
+
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(counter.sum(), 2L * THREADS * RECORDS);
+        assertEquals(latency.getCount(), (long) THREADS * RECORDS);
+        assertEquals(latency.getTotalNanos(), (long) THREADS * (RECORDS - 1) + THREADS * 1000 + THREADS * (THREADS - 1) / 2);
+        assertEquals(latency.getMaxNanos(), 1000 + THREADS - 1);
+
+        counter.reset();
+        latency.reset();
+        assertEquals(counter.sum(), 0);
+        assertEquals(latency.getCount(), 0);
+        assertEquals(latency.getAverageNanos(), 0);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Jeanfrancois Arcand
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package org.atmosphere.stomp.test;
+
+import org.atmosphere.stomp.executor.VirtualThreadExecutors;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Test {@link VirtualThreadExecutors} class.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5
+ * @version 1.0
+ */
+public class VirtualThreadExecutorsTest {
+
+    /**
+     * Blocking tasks run concurrently whatever the runtime.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void concurrentTest() throws Exception {
+        final ExecutorService executor = VirtualThreadExecutors.newExecutor("test", 8, 8);
+        final CountDownLatch started = new CountDownLatch(8);
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The platform pool rejects tasks when it is saturated.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void platformRejectionTest() throws Exception {
+        final ExecutorService executor = VirtualThreadExecutors.newPlatformExecutor("test", 1, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+
+                try {
+                    blocked.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute(noop);
+
+        try {
+            executor.execute(noop);
+            Assert.fail("Pool should be saturated");
+        } catch (RejectedExecutionException ree) {
+            // expected
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+}